@@ -43,6 +43,8 @@ import com.google.appinventor.client.widgets.properties.EditableProperty;
 import com.google.appinventor.client.widgets.properties.PropertiesPanel;
 import com.google.appinventor.client.widgets.properties.PropertyChangeListener;
 import com.google.appinventor.client.youngandroid.YoungAndroidFormUpgrader;
+import com.google.appinventor.client.youngandroid.UpgradedSourceCache;
+import com.google.appinventor.client.youngandroid.UpgradedSourceCache.UpgradedSource;
 import com.google.appinventor.components.common.YaVersion;
 import com.google.appinventor.shared.properties.json.JSONArray;
 import com.google.appinventor.shared.properties.json.JSONObject;
@@ -434,8 +436,23 @@ public final class YaFormEditor extends SimpleEditor implements FormChangeListen
    */
   private void upgradeFile(FileContentHolder fileContentHolder,
       final Command afterUpgradeComplete) {
+    String content = fileContentHolder.getFileContent();
+    UpgradedSource cached = UpgradedSourceCache.getInstance().get(content);
+    if (cached != null) {
+      // This source was already loaded and tagged during this session.
+      authURL = JSON_PARSER.parse(cached.authURL).asArray();
+      preUpgradeJsonString = cached.preUpgradeJson;
+      if (cached.upgradedContent != null) {
+        fileContentHolder.setFileContent(cached.upgradedContent);
+        saveUpgradedFile(cached.upgradedContent, afterUpgradeComplete);
+      } else if (afterUpgradeComplete != null) {
+        afterUpgradeComplete.execute();
+      }
+      return;
+    }
+
     JSONObject propertiesObject = YoungAndroidSourceAnalyzer.parseSourceFile(
-        fileContentHolder.getFileContent(), JSON_PARSER);
+        content, JSON_PARSER);
 
     // BEGIN PROJECT TAGGING CODE
 
@@ -500,27 +517,14 @@ public final class YaFormEditor extends SimpleEditor implements FormChangeListen
     preUpgradeJsonString =  propertiesObject.toJson(); // [lyn, [2014/10/13] remember pre-upgrade component versions.
     if (YoungAndroidFormUpgrader.upgradeSourceProperties(propertiesObject.getProperties())) {
       String upgradedContent = YoungAndroidSourceAnalyzer.generateSourceFile(propertiesObject);
+      UpgradedSourceCache.getInstance().put(content, preUpgradeJsonString, upgradedContent,
+          authURL.toJson());
       fileContentHolder.setFileContent(upgradedContent);
-      Ode ode = Ode.getInstance();
-      if (ode.isReadOnly()) {   // Do not attempt to save out the project if we are in readonly mode
-        if (afterUpgradeComplete != null) {
-          afterUpgradeComplete.execute(); // But do call the afterUpgradeComplete call
-        }
-      } else {
-        Ode.getInstance().getProjectService().save(Ode.getInstance().getSessionId(),
-          getProjectId(), getFileId(), upgradedContent,
-          new OdeAsyncCallback<Long>(MESSAGES.saveError()) {
-            @Override
-            public void onSuccess(Long result) {
-              // Execute the afterUpgradeComplete command if one was given.
-              if (afterUpgradeComplete != null) {
-                afterUpgradeComplete.execute();
-              }
-            }
-          });
-      }
+      saveUpgradedFile(upgradedContent, afterUpgradeComplete);
     } else {
       // No upgrade was necessary.
+      UpgradedSourceCache.getInstance().put(content, preUpgradeJsonString, null,
+          authURL.toJson());
       // Execute the afterUpgradeComplete command if one was given.
       if (afterUpgradeComplete != null) {
         afterUpgradeComplete.execute();
@@ -528,6 +532,31 @@ public final class YaFormEditor extends SimpleEditor implements FormChangeListen
     }
   }
 
+  /*
+   * Saves the upgraded file content back to the ODE server, unless we are in
+   * readonly mode, and then calls the afterUpgradeComplete command.
+   */
+  private void saveUpgradedFile(String upgradedContent, final Command afterUpgradeComplete) {
+    Ode ode = Ode.getInstance();
+    if (ode.isReadOnly()) {   // Do not attempt to save out the project if we are in readonly mode
+      if (afterUpgradeComplete != null) {
+        afterUpgradeComplete.execute(); // But do call the afterUpgradeComplete call
+      }
+    } else {
+      Ode.getInstance().getProjectService().save(Ode.getInstance().getSessionId(),
+        getProjectId(), getFileId(), upgradedContent,
+        new OdeAsyncCallback<Long>(MESSAGES.saveError()) {
+          @Override
+          public void onSuccess(Long result) {
+            // Execute the afterUpgradeComplete command if one was given.
+            if (afterUpgradeComplete != null) {
+              afterUpgradeComplete.execute();
+            }
+          }
+        });
+    }
+  }
+
   private void onFileLoaded(String content) {
     JSONObject propertiesObject = YoungAndroidSourceAnalyzer.parseSourceFile(
         content, JSON_PARSER);
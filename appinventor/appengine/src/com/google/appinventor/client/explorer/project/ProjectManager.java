@@ -11,6 +11,7 @@ import static com.google.appinventor.client.Ode.MESSAGES;
 import com.google.appinventor.client.OdeAsyncCallback;
 import com.google.appinventor.shared.rpc.project.ProjectNode;
 import com.google.appinventor.shared.rpc.project.UserProject;
+import com.google.appinventor.shared.rpc.project.UserProjectPage;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -40,15 +41,29 @@ public final class ProjectManager {
   public ProjectManager() {
     projectsMap = new HashMap<Long, Project>();
     projectManagerEventListeners = new ArrayList<ProjectManagerEventListener>();
-    Ode.getInstance().getProjectService().getProjectInfos(
-      new OdeAsyncCallback<List<UserProject>>(
+    loadProjectInfos(null);
+  }
+
+  /*
+   * Loads the project infos a page at a time, starting with the page at the
+   * given cursor. The project page loaded event is fired after each page but
+   * the last, and the projects loaded event after the last page.
+   */
+  private void loadProjectInfos(String cursor) {
+    Ode.getInstance().getProjectService().getProjectInfoPage(cursor,
+      new OdeAsyncCallback<UserProjectPage>(
         MESSAGES.projectInformationRetrievalError()) {
         @Override
-        public void onSuccess(List<UserProject> projectInfos) {
-          for (UserProject projectInfo : projectInfos) {
+        public void onSuccess(UserProjectPage page) {
+          for (UserProject projectInfo : page.getProjects()) {
             addProject(projectInfo);
           }
-          fireProjectsLoaded();
+          if (page.getCursor() != null) {
+            fireProjectPageLoaded();
+            loadProjectInfos(page.getCursor());
+          } else {
+            fireProjectsLoaded();
+          }
         }
       });
   }
@@ -241,6 +256,15 @@ public final class ProjectManager {
     }
   }
 
+  /*
+   * Triggers a 'project page loaded' event to be sent to the listener on the listener list.
+   */
+  private void fireProjectPageLoaded() {
+    for (ProjectManagerEventListener listener : copyProjectManagerEventListeners()) {
+      listener.onProjectPageLoaded();
+    }
+  }
+
   private void fireProjectPublishedOrUnpublished() {
     for (ProjectManagerEventListener listener : copyProjectManagerEventListeners()) {
       listener.onProjectPublishedOrUnpublished();
@@ -35,6 +35,10 @@ public class ProjectManagerEventAdapter implements ProjectManagerEventListener {
   @Override
   public void onProjectsLoaded() { }
 
+  @Override
+  public void onProjectPageLoaded() {
+  }
+
   @Override
   public void onProjectPublishedOrUnpublished() {
   }
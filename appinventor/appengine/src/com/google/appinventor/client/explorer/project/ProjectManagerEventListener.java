@@ -56,6 +56,13 @@ public interface ProjectManagerEventListener {
    */
   void onProjectsLoaded();
 
+  /**
+   * Invoked after a page of projects has been loaded by ProjectManager, when
+   * there are more pages to come, so that the projects can be shown before
+   * all of them have been loaded.
+   */
+  void onProjectPageLoaded();
+
   /**
    * Invoked after a project is published so we can change its button to "Update"
    *
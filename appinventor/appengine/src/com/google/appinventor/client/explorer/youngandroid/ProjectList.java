@@ -434,6 +434,12 @@ public class ProjectList extends Composite implements ProjectManagerEventListene
     refreshTable(true);
   }
 
+  @Override
+  public void onProjectPageLoaded() {
+    // Show the projects loaded so far, instead of an empty list until the last page.
+    refreshTable(true);
+  }
+
   public void onProjectPublishedOrUnpublished() {
     refreshTable(false);
   }
@@ -0,0 +1,118 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.client.youngandroid;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the outcome of loading form source files during a session, so that reopening a
+ * source that was loaded before, for example a read-only project whose upgraded content is never
+ * saved, does not parse, tag and upgrade it again.
+ *
+ * <p>The least recently used sources are forgotten once the cached strings add up to more than
+ * a fixed number of characters.</p>
+ */
+public final class UpgradedSourceCache {
+
+  /**
+   * The outcome of loading a form source file.
+   */
+  public static final class UpgradedSource {
+    /**
+     * The form properties as JSON, before they were upgraded.
+     */
+    public final String preUpgradeJson;
+
+    /**
+     * The upgraded source file, or null if the source did not need to be upgraded.
+     */
+    public final String upgradedContent;
+
+    /**
+     * The versions of App Inventor that have edited the form, as a JSON array, including this
+     * one. See the project tagging code in YaFormEditor.
+     */
+    public final String authURL;
+
+    private UpgradedSource(String preUpgradeJson, String upgradedContent, String authURL) {
+      this.preUpgradeJson = preUpgradeJson;
+      this.upgradedContent = upgradedContent;
+      this.authURL = authURL;
+    }
+
+    private int cost() {
+      return preUpgradeJson.length() + authURL.length()
+          + (upgradedContent == null ? 0 : upgradedContent.length());
+    }
+  }
+
+  private static final int MAX_CACHED_SOURCE_CHARS = 4 * 1024 * 1024;
+
+  private static final UpgradedSourceCache INSTANCE =
+      new UpgradedSourceCache(MAX_CACHED_SOURCE_CHARS);
+
+  private final int maxChars;
+  // Keys count against the budget too, since they are whole source files.
+  private int cachedChars;
+  private final LinkedHashMap<String, UpgradedSource> sources =
+      new LinkedHashMap<String, UpgradedSource>(16, 0.75f, true);
+
+  @VisibleForTesting
+  UpgradedSourceCache(int maxChars) {
+    this.maxChars = maxChars;
+  }
+
+  /**
+   * Returns the cache shared by all of the forms loaded during the session.
+   */
+  public static UpgradedSourceCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Returns the remembered outcome of loading the given source file, or null if it has not been
+   * loaded during this session.
+   *
+   * @param source the contents of the source file
+   */
+  public UpgradedSource get(String source) {
+    return sources.get(source);
+  }
+
+  /**
+   * Remembers the outcome of loading the given source file.
+   *
+   * @param source the contents of the source file, as loaded
+   * @param preUpgradeJson the form properties as JSON, before they were upgraded
+   * @param upgradedContent the upgraded source file, or null if no upgrade was necessary
+   * @param authURL the versions of App Inventor that have edited the form, as a JSON array
+   */
+  public void put(String source, String preUpgradeJson, String upgradedContent,
+      String authURL) {
+    UpgradedSource entry = new UpgradedSource(preUpgradeJson, upgradedContent, authURL);
+    UpgradedSource old = sources.remove(source);
+    if (old != null) {
+      cachedChars -= source.length() + old.cost();
+    }
+    int cost = source.length() + entry.cost();
+    if (cost > maxChars / 4) {
+      // One huge project would flush out everything else.
+      return;
+    }
+    sources.put(source, entry);
+    cachedChars += cost;
+    Iterator<Map.Entry<String, UpgradedSource>> it = sources.entrySet().iterator();
+    while (cachedChars > maxChars && it.hasNext()) {
+      Map.Entry<String, UpgradedSource> eldest = it.next();
+      cachedChars -= eldest.getKey().length() + eldest.getValue().cost();
+      it.remove();
+    }
+  }
+}
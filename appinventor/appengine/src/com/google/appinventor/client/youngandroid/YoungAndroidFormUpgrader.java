@@ -8,6 +8,7 @@ package com.google.appinventor.client.youngandroid;
 
 import static com.google.appinventor.client.Ode.MESSAGES;
 
+import java.util.HashMap;
 import java.util.Map;
 
 import com.google.appinventor.client.editor.simple.SimpleComponentDatabase;
@@ -42,6 +43,24 @@ public final class YoungAndroidFormUpgrader {
   private static final SimpleComponentDatabase COMPONENT_DATABASE =
       SimpleComponentDatabase.getInstance();
 
+  /*
+   * What loading a component of a given type and source version involves. Plans for the built-in
+   * components are computed once per (type, version) pair and shared by every instance in every
+   * project loaded during the session, so a component that is already current only costs a map
+   * lookup.
+   */
+  private static final class UpgradePlan {
+    final int sysCompVersion;
+    final boolean upToDate;
+
+    UpgradePlan(int sysCompVersion, boolean upToDate) {
+      this.sysCompVersion = sysCompVersion;
+      this.upToDate = upToDate;
+    }
+  }
+
+  private static final Map<String, UpgradePlan> UPGRADE_PLANS = new HashMap<String, UpgradePlan>();
+
   private YoungAndroidFormUpgrader() {
   }
 
@@ -153,10 +172,10 @@ public final class YoungAndroidFormUpgrader {
       }
     }
 
-    // Get the system component version from the component database.
-    final int sysCompVersion;
+    // Get the upgrade plan, which knows the system component version.
+    final UpgradePlan plan;
     try {
-      sysCompVersion = COMPONENT_DATABASE.getComponentVersion(componentType);
+      plan = getUpgradePlan(componentType, srcCompVersion);
     } catch (IllegalArgumentException e) {
       OdeLog.wlog("Cound not find component of type = " + componentType
         + " assuming it is an external component.");
@@ -165,7 +184,10 @@ public final class YoungAndroidFormUpgrader {
     }
 
     // Upgrade if necessary.
-    upgradeComponentProperties(componentProperties, componentType, srcCompVersion, sysCompVersion);
+    if (!plan.upToDate) {
+      upgradeComponentProperties(componentProperties, componentType, srcCompVersion,
+          plan.sysCompVersion);
+    }
 
     if (srcYaVersion < 26) {
       // Beginning with YOUNG_ANDROID_VERSION 26:
@@ -183,6 +205,23 @@ public final class YoungAndroidFormUpgrader {
     }
   }
 
+  private static UpgradePlan getUpgradePlan(String componentType, int srcCompVersion) {
+    String key = componentType + ':' + srcCompVersion;
+    UpgradePlan plan = UPGRADE_PLANS.get(key);
+    if (plan == null) {
+      // Throws IllegalArgumentException if componentType is not in the component database.
+      int sysCompVersion = COMPONENT_DATABASE.getComponentVersion(componentType);
+      // A missing version is treated as version 1. See upgradeComponentProperties.
+      plan = new UpgradePlan(sysCompVersion, Math.max(srcCompVersion, 1) == sysCompVersion);
+      if (!COMPONENT_DATABASE.getComponentExternal(componentType)) {
+        // Extensions can be imported, upgraded and removed during a session, so their versions
+        // are looked up every time.
+        UPGRADE_PLANS.put(key, plan);
+      }
+    }
+    return plan;
+  }
+
   private static void upgradeComponentProperties(Map<String, JSONValue> componentProperties,
       String componentType, int srcCompVersion, final int sysCompVersion) {
     // Compare the source file's component version with the system's component version.
@@ -740,6 +779,11 @@ public final class YoungAndroidFormUpgrader {
       // The BackgroundImageinBase64 property was added in version 13.
       srcCompVersion = 13;
     }
+    if (srcCompVersion < 14) {
+      // The SaveInBackground method and Saved event were added in version 14.
+      // No properties need to be modified to upgrade to version 14.
+      srcCompVersion = 14;
+    }
     return srcCompVersion;
   }
 
@@ -768,6 +812,21 @@ public final class YoungAndroidFormUpgrader {
     return srcCompVersion;
   }
 
+  private static int upgradeCloudDBProperties(Map<String, JSONValue> componentProperties,
+      int srcCompVersion) {
+    if (srcCompVersion < 2) {
+      // The BatchInterval property and the StoreValues and GetValues methods were added.
+      // No properties need to be modified to upgrade to version 2.
+      srcCompVersion = 2;
+    }
+    if (srcCompVersion < 3) {
+      // The DataChangedInterval and WatchedTags properties were added.
+      // No properties need to be modified to upgrade to version 3.
+      srcCompVersion = 3;
+    }
+    return srcCompVersion;
+  }
+
   private static int upgradeContactPickerProperties(Map<String, JSONValue> componentProperties,
       int srcCompVersion) {
     if (srcCompVersion < 2) {
@@ -1613,6 +1672,12 @@ public final class YoungAndroidFormUpgrader {
       // of XML using dictionaries.
       srcCompVersion = 7;
     }
+    if (srcCompVersion < 8) {
+      // The CacheResponses property was added.
+      // No properties need to be modified to upgrade to version 8.
+      // CacheResponses defaults to false, so prior components keep their behavior.
+      srcCompVersion = 8;
+    }
     return srcCompVersion;
   }
 
@@ -9,13 +9,12 @@ package com.google.appinventor.server;
 import com.google.appinventor.common.utils.StringUtils;
 import com.google.appinventor.server.storage.StorageIo;
 import com.google.appinventor.server.storage.StorageIoInstanceHolder;
+import com.google.appinventor.server.storage.StoredRawFile;
 import com.google.appinventor.server.util.CacheHeaders;
 import com.google.appinventor.server.util.CacheHeadersImpl;
 import com.google.appinventor.shared.rpc.Nonce;
 import com.google.appinventor.shared.rpc.ServerLayout;
 import com.google.appinventor.shared.rpc.project.ProjectSourceZip;
-import com.google.appinventor.shared.rpc.project.RawFile;
-import com.google.appinventor.shared.storage.StorageUtil;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
@@ -53,10 +52,10 @@ public class BuildOutputServlet extends OdeServlet {
   @Override
   public void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
     // Set a default http header to avoid security vulnerabilities.
-    CACHE_HEADERS.setNotCacheable(resp);
     resp.setContentType(CONTENT_TYPE);
     if ("store=1".equals(req.getQueryString())) {  // Play Store companion adds this for Chrome to
                                                    // do the right thing w.r.t. the download
+      CACHE_HEADERS.setNotCacheable(resp);
       String body = "<!DOCTYPE html><html><head><meta http-equiv=\"refresh\" content=\"0; url=" +
           req.getRequestURI() + "\" /></head><body></body></html>";
       resp.setContentLength(body.length());
@@ -66,7 +65,7 @@ public class BuildOutputServlet extends OdeServlet {
       return;
     }
 
-    RawFile downloadableFile;
+    StoredRawFile downloadableFile;
 
     String userId = null;
     String nonceValue = null;
@@ -76,46 +75,50 @@ public class BuildOutputServlet extends OdeServlet {
       // First, call split with no limit parameter.
       String[] uriComponents = uri.split("/");
       if (uriComponents.length < 3) {
-        resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        sendError(resp, HttpServletResponse.SC_BAD_REQUEST, null);
         return;
       }
       nonceValue = uriComponents[2];
 
       storageIo.cleanupNonces(); // This removes expired Nonce objects
-                                 // (10 at a time so we don't spend too
-                                 // much time doing it)
+                                 // (a few batches at a time so we don't
+                                 // spend too much time doing it)
 
       Nonce nonce = storageIo.getNoncebyValue(nonceValue);
       if (nonce == null) {
-        resp.sendError(resp.SC_NOT_FOUND, "Invalid Link");
+        sendError(resp, HttpServletResponse.SC_NOT_FOUND, "Invalid Link");
         return;
       }
       Date now = new Date();
       if ((now.getTime() - nonce.getTimeStamp().getTime()) > 7200*1024) {
-        resp.sendError(resp.SC_NOT_FOUND, "Link has timed out");
+        sendError(resp, HttpServletResponse.SC_NOT_FOUND, "Link has timed out");
         return;
       }
-      downloadableFile = fileExporter.exportProjectOutputFile(nonce.getUserId(), nonce.getProjectId(), null);
+      downloadableFile = fileExporter.openProjectOutputFile(nonce.getUserId(), nonce.getProjectId(), null);
 
     } catch (FileNotFoundException e) {
       // This can happen if a new build is running while an attempt is made to download
       // a previous built version of the project
-      resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
+      sendError(resp, HttpServletResponse.SC_NOT_FOUND, null);
       return;
     }
 
-    String fileName = downloadableFile.getFileName();
-    byte[] content = downloadableFile.getContent();
-
-    // Set http response information
-    resp.setStatus(HttpServletResponse.SC_OK);
-    resp.setHeader("content-disposition", "attachment; filename=\"" + fileName + "\"");
-    resp.setContentType(StorageUtil.getContentTypeForFilePath(fileName));
-    resp.setContentLength(content.length);
+    // Let the phone resume an interrupted download or revalidate the file it has
+    CACHE_HEADERS.setCacheablePrivate(resp);
+    StoredFileDownload.send(req, resp, CACHE_HEADERS, downloadableFile);
+  }
 
-    // Attach download data
-    ServletOutputStream out = resp.getOutputStream();
-    out.write(content);
-    out.close();
+  /*
+   * Sends an error status that clients must not cache, with a message page
+   * if message is not null.
+   */
+  private static void sendError(HttpServletResponse resp, int status, String message)
+      throws IOException {
+    CACHE_HEADERS.setNotCacheable(resp);
+    if (message == null) {
+      resp.setStatus(status);
+    } else {
+      resp.sendError(status, message);
+    }
   }
 }
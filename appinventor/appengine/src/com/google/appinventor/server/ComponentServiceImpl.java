@@ -15,16 +15,15 @@ import com.google.appinventor.shared.rpc.BlocksTruncatedException;
 import com.google.appinventor.shared.rpc.component.ComponentService;
 import com.google.appinventor.shared.rpc.project.FileNode;
 import com.google.appinventor.shared.rpc.project.ProjectNode;
-
 import com.google.common.io.ByteStreams;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -51,7 +50,18 @@ public class ComponentServiceImpl extends OdeRemoteServiceServlet
 
   private final transient StorageIo storageIo = StorageIoInstanceHolder.getInstance();
 
-  private final FileImporter fileImporter = new FileImporterImpl();
+  // Base names of the component descriptor files, which are read before the rest of an extension
+  private static final Set<String> DESCRIPTOR_FILES = new HashSet<>(Arrays.asList(
+      "component.json", "components.json",
+      "component_build_info.json", "component_build_infos.json"));
+
+  /**
+   * The source of an extension archive, which is read once to find its component descriptors and
+   * again to import its files. Both reads must see the same archive.
+   */
+  private interface ExtensionSource {
+    InputStream open() throws IOException;
+  }
 
   /**
    * ExtensionDowngradeException is thrown when ComponentServiceImpl detects that an extension
@@ -74,7 +84,7 @@ public class ComponentServiceImpl extends OdeRemoteServiceServlet
   }
 
   @Override
-  public ComponentImportResponse importComponentToProject(String fileOrUrl, long projectId,
+  public ComponentImportResponse importComponentToProject(final String fileOrUrl, long projectId,
       String folderPath) {
     ComponentImportResponse response = new ComponentImportResponse(ComponentImportResponse.Status.FAILED);
     response.setProjectId(projectId);
@@ -84,17 +94,35 @@ public class ComponentServiceImpl extends OdeRemoteServiceServlet
       return response;
     }
 
-    Map<String, byte[]> contents;
+    ExtensionSource source;
     String fileNameToDelete = null;
     try {
       if (fileOrUrl.startsWith("__TEMP__")) {
         fileNameToDelete = fileOrUrl;
-        contents = extractContents(storageIo.openTempFile(fileOrUrl));
+        source = new ExtensionSource() {
+          @Override
+          public InputStream open() throws IOException {
+            return storageIo.openTempFile(fileOrUrl);
+          }
+        };
       } else {
-        URL compUrl = new URL(fileOrUrl);
-        contents = extractContents(compUrl.openStream());
+        // Download the extension only once, since the server might send something different the
+        // second time.
+        InputStream in = new URL(fileOrUrl).openStream();
+        final byte[] archive;
+        try {
+          archive = ByteStreams.toByteArray(in);
+        } finally {
+          in.close();
+        }
+        source = new ExtensionSource() {
+          @Override
+          public InputStream open() {
+            return new ByteArrayInputStream(archive);
+          }
+        };
       }
-      importToProject(contents, projectId, folderPath, response);
+      importToProject(source, projectId, folderPath, response);
       return response;
     } catch (FileImporterException | IOException | JSONException | IllegalArgumentException e) {
       response.setStatus(Status.FAILED);
@@ -142,29 +170,101 @@ public class ComponentServiceImpl extends OdeRemoteServiceServlet
     }
   }
 
-  private Map<String, byte[]> extractContents(InputStream inputStream)
-      throws IOException {
+  /**
+   * Lists the files in an extension. Only the component descriptor files are read into memory.
+   * The content of every other file is null in the result, and is read again from the extension
+   * when the extension is written to the project, so that a large extension is never held in
+   * memory all at once.
+   *
+   * @param inputStream The extension archive
+   * @param maxSizeBytes The size of the largest file that can be imported
+   * @return A mapping of path names to file content, or to null if the content was not read
+   */
+  private static Map<String, byte[]> extractContents(InputStream inputStream, int maxSizeBytes)
+      throws FileImporterException, IOException {
     Map<String, byte[]> contents = new HashMap<String, byte[]>();
 
     // assumption: the zip is non-empty
     ZipInputStream zip = new ZipInputStream(inputStream);
-    ZipEntry entry;
-    while ((entry = zip.getNextEntry()) != null) {
-      if (entry.isDirectory())  continue;
-      ByteArrayOutputStream contentStream = new ByteArrayOutputStream();
-      ByteStreams.copy(zip, contentStream);
-      contents.put(entry.getName(), contentStream.toByteArray());
+    try {
+      ZipEntry entry;
+      while ((entry = zip.getNextEntry()) != null) {
+        if (entry.isDirectory())  continue;
+        byte[] content = null;
+        if (DESCRIPTOR_FILES.contains(StorageUtil.basename(entry.getName()))) {
+          content = FileImporterImpl.readContent(zip, entry.getSize(), maxSizeBytes);
+        }
+        contents.put(entry.getName(), content);
+      }
+    } finally {
+      zip.close();
     }
-    zip.close();
 
     return contents;
   }
 
-  private void importToProject(Map<String, byte[]> contents, long projectId,
+  /**
+   * Writes the files of an extension to the project. Files whose content was read by
+   * {@link #extractContents} are written from memory, and the rest are read from the extension
+   * one at a time and uploaded in parallel with reading the next.
+   */
+  private void writeContents(String userId, long projectId, String basepath,
+      ExtensionSource source, Map<String, byte[]> contents, Set<String> sourceFiles,
+      int maxSizeBytes) throws FileImporterException, IOException {
+    // Add all of the new files to the project at once, rather than one at a time.
+    List<String> newFiles = new ArrayList<>();
+    Set<String> unread = new HashSet<>();
+    for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+      String dest = basepath + entry.getKey();
+      if (!sourceFiles.contains(dest)) {
+        newFiles.add(dest);
+      }
+      if (entry.getValue() == null) {
+        unread.add(entry.getKey());
+      }
+    }
+    if (!newFiles.isEmpty()) {
+      storageIo.addSourceFilesToProject(userId, projectId, false,
+          newFiles.toArray(new String[newFiles.size()]));
+    }
+
+    ProjectFileUploader uploader = new ProjectFileUploader(storageIo, userId, projectId);
+    try {
+      for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+        if (entry.getValue() != null) {
+          uploader.upload(basepath + entry.getKey(), entry.getValue());
+        }
+      }
+      if (!unread.isEmpty()) {
+        ZipInputStream zip = new ZipInputStream(source.open());
+        try {
+          ZipEntry entry;
+          while ((entry = zip.getNextEntry()) != null) {
+            if (unread.remove(entry.getName())) {
+              uploader.upload(basepath + entry.getName(),
+                  FileImporterImpl.readContent(zip, entry.getSize(), maxSizeBytes));
+            }
+          }
+        } finally {
+          zip.close();
+        }
+        if (!unread.isEmpty()) {
+          throw new IOException("Extension is missing " + unread.iterator().next());
+        }
+      }
+      uploader.finish();
+    } finally {
+      uploader.close();
+    }
+  }
+
+  private void importToProject(ExtensionSource source, long projectId,
       String folderPath, ComponentImportResponse response) throws FileImporterException, IOException {
     Status status = Status.IMPORTED;
     final String userId = userInfoProvider.getUserId();
     final String basepath = folderPath + "/external_comps/";
+    int maxSizeBytes = FileImporterImpl.getMaxFileSizeBytes(storageIo);
+    Map<String, byte[]> contents = extractContents(source.open(), maxSizeBytes);
     Set<String> sourceFiles = new HashSet<>(storageIo.getProjectSourceFiles(userInfoProvider.getUserId(), projectId));
     Map<String, String> nameMap = buildExtensionPathnameMap(contents.keySet());
 
@@ -218,11 +318,10 @@ public class ComponentServiceImpl extends OdeRemoteServiceServlet
     }
 
     // Write new extension files
+    writeContents(userId, projectId, basepath, source, contents, sourceFiles, maxSizeBytes);
     List<ProjectNode> compNodes = new ArrayList<>();
-    for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
-      String dest = basepath + entry.getKey();
-      FileNode fileNode = new YoungAndroidComponentNode(StorageUtil.basename(entry.getKey()), dest);
-      fileImporter.importFile(userId, projectId, dest, new ByteArrayInputStream(entry.getValue()));
+    for (String name : contents.keySet()) {
+      FileNode fileNode = new YoungAndroidComponentNode(StorageUtil.basename(name), basepath + name);
       compNodes.add(fileNode);
     }
 
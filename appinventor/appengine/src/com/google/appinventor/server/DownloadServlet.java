@@ -9,12 +9,12 @@ package com.google.appinventor.server;
 import com.google.appinventor.common.utils.StringUtils;
 import com.google.appinventor.server.storage.StorageIo;
 import com.google.appinventor.server.storage.StorageIoInstanceHolder;
+import com.google.appinventor.server.storage.StoredRawFile;
 import com.google.appinventor.server.util.CacheHeaders;
 import com.google.appinventor.server.util.CacheHeadersImpl;
 import com.google.appinventor.shared.rpc.ServerLayout;
 import com.google.appinventor.shared.rpc.project.ProjectSourceZip;
 import com.google.appinventor.shared.rpc.project.RawFile;
-import com.google.appinventor.shared.storage.StorageUtil;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
@@ -93,10 +93,12 @@ public class DownloadServlet extends OdeServlet {
   @Override
   public void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
     // Set a default http header to avoid security vulnerabilities.
-    CACHE_HEADERS.setNotCacheable(resp);
     resp.setContentType(CONTENT_TYPE);
 
-    RawFile downloadableFile;
+    StoredRawFile downloadableFile;
+    // Whether clients may keep the file and revalidate it. The cache headers are set once, when
+    // it is known which kind of response is sent.
+    boolean revalidate = false;
 
     String userId = null;
 
@@ -113,7 +115,9 @@ public class DownloadServlet extends OdeServlet {
         uriComponents = uri.split("/", SPLIT_LIMIT_PROJECT_OUTPUT);
         long projectId = Long.parseLong(uriComponents[PROJECT_ID_INDEX]);
         String target = (uriComponents.length > TARGET_INDEX) ? uriComponents[TARGET_INDEX] : null;
-        downloadableFile = fileExporter.exportProjectOutputFile(userId, projectId, target);
+        downloadableFile = fileExporter.openProjectOutputFile(userId, projectId, target);
+        // Let clients revalidate the file they have, it is only sent again if it changed
+        revalidate = true;
 
       } else if (downloadKind.equals(ServerLayout.DOWNLOAD_PROJECT_SOURCE)) {
         // Download project source files as a zip.
@@ -132,7 +136,7 @@ public class DownloadServlet extends OdeServlet {
         ProjectSourceZip zipFile = fileExporter.exportProjectSourceZip(userId,
           projectId, includeProjectHistory, false, zipName, includeYail,
           includeScreenShots, false, false);
-        downloadableFile = zipFile.getRawFile();
+        downloadableFile = inMemory(zipFile.getRawFile());
 
       } else if (downloadKind.equals(ServerLayout.DOWNLOAD_USER_PROJECT_SOURCE)) {
         if (!userInfoProvider.getIsAdmin()) {
@@ -187,7 +191,7 @@ public class DownloadServlet extends OdeServlet {
         }
         ProjectSourceZip zipFile = fileExporter.exportProjectSourceZip(projectUserId,
           projectId, /* include history*/ true, /* include keystore */ true, zipName, true, true, false, false);
-        downloadableFile = zipFile.getRawFile();
+        downloadableFile = inMemory(zipFile.getRawFile());
       } else if (downloadKind.equals(ServerLayout.DOWNLOAD_SELECTED_PROJECTS_SOURCE)) {
         String[] projectIdStrings = uriComponents[PROJECT_ID_INDEX].split("-");
         List<Long> projectIds = new ArrayList<Long>();
@@ -196,12 +200,12 @@ public class DownloadServlet extends OdeServlet {
         }
         ProjectSourceZip zipFile = fileExporter.exportSelectedProjectsSourceZip(
           userId, "selected-projects.zip", projectIds);
-        downloadableFile = zipFile.getRawFile();
+        downloadableFile = inMemory(zipFile.getRawFile());
       } else if (downloadKind.equals(ServerLayout.DOWNLOAD_ALL_PROJECTS_SOURCE)) {
         // Download all project source files as a zip of zips.
         ProjectSourceZip zipFile = fileExporter.exportAllProjectsSourceZip(
             userId, "all-projects.zip");
-        downloadableFile = zipFile.getRawFile();
+        downloadableFile = inMemory(zipFile.getRawFile());
 
       } else if (downloadKind.equals(ServerLayout.DOWNLOAD_FILE)) {
         // Download a specific file.
@@ -209,14 +213,14 @@ public class DownloadServlet extends OdeServlet {
         long projectId = Long.parseLong(uriComponents[PROJECT_ID_INDEX]);
         String filePath = (uriComponents.length > FILE_PATH_INDEX) ?
             uriComponents[FILE_PATH_INDEX] : null;
-        downloadableFile = fileExporter.exportFile(userId, projectId, filePath);
+        downloadableFile = inMemory(fileExporter.exportFile(userId, projectId, filePath));
 
       } else if (downloadKind.equals(ServerLayout.DOWNLOAD_USERFILE)) {
         // Download a specific user file, such as android.keystore
         uriComponents = uri.split("/", SPLIT_LIMIT_USERFILE);
         if (uriComponents.length > USERFILE_PATH_INDEX) {
           String filePath = uriComponents[USERFILE_PATH_INDEX];
-          downloadableFile = fileExporter.exportUserFile(userId, filePath);
+          downloadableFile = inMemory(fileExporter.exportUserFile(userId, filePath));
         } else {
           throw new IllegalArgumentException("Missing user file path.");
         }
@@ -225,11 +229,13 @@ public class DownloadServlet extends OdeServlet {
         throw new IllegalArgumentException("Unknown download kind: " + downloadKind);
       }
     } catch (IllegalArgumentException e) {
+      CACHE_HEADERS.setNotCacheable(resp);
       throw CrashReport.createAndLogError(LOG, req, "user=" + userId, e);
     } catch (SecurityException e) {
       // Not having appropriate permission is akin to not being able to find the project anyway,
       // so we use 404 here to not leak that the project may exist.
       final String message = "404 Not Found";
+      CACHE_HEADERS.setNotCacheable(resp);
       resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
       resp.setContentType("text/plain");
       resp.setContentLength(message.length());
@@ -239,18 +245,15 @@ public class DownloadServlet extends OdeServlet {
       return;
     }
 
-    String fileName = downloadableFile.getFileName();
-    byte[] content = downloadableFile.getContent();
-
-    // Set http response information
-    resp.setStatus(HttpServletResponse.SC_OK);
-    resp.setHeader("content-disposition", "attachment; filename=\"" + fileName + "\"");
-    resp.setContentType(StorageUtil.getContentTypeForFilePath(fileName));
-    resp.setContentLength(content.length);
+    if (revalidate) {
+      CACHE_HEADERS.setCacheablePrivate(resp);
+    } else {
+      CACHE_HEADERS.setNotCacheable(resp);
+    }
+    StoredFileDownload.send(req, resp, CACHE_HEADERS, downloadableFile);
+  }
 
-    // Attach download data
-    ServletOutputStream out = resp.getOutputStream();
-    out.write(content);
-    out.close();
+  private static StoredRawFile inMemory(RawFile file) {
+    return StoredRawFile.fromContent(file.getFileName(), file.getContent());
   }
 }
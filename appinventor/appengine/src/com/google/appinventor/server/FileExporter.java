@@ -6,9 +6,11 @@
 
 package com.google.appinventor.server;
 
+import com.google.appinventor.server.storage.StoredRawFile;
 import com.google.appinventor.shared.rpc.project.ProjectSourceZip;
 import com.google.appinventor.shared.rpc.project.RawFile;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.List;
 
@@ -35,6 +37,19 @@ public interface FileExporter {
   RawFile exportProjectOutputFile(String userId, long projectId, @Nullable String target)
       throws IOException;
 
+  /**
+   * Opens a project output file for streaming, without reading it into memory.
+   *
+   * @param userId the userId
+   * @param projectId the project id belonging to the userId
+   * @param target the output target platform, or null
+   * @return StoredRawFile with the name of the exported file, whose content is
+   *         read when its stream is opened
+   * @throws FileNotFoundException if there is no output file
+   */
+  StoredRawFile openProjectOutputFile(String userId, long projectId, @Nullable String target)
+      throws IOException;
+
   /**
    * Exports the project source files as a zip.
    *
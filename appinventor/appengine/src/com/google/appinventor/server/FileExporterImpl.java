@@ -10,6 +10,7 @@ import com.google.common.base.Strings;
 import com.google.appinventor.server.storage.ObjectifyStorageIo;
 import com.google.appinventor.server.storage.StorageIo;
 import com.google.appinventor.server.storage.StorageIoInstanceHolder;
+import com.google.appinventor.server.storage.StoredRawFile;
 import com.google.appinventor.shared.rpc.project.ProjectSourceZip;
 import com.google.appinventor.shared.rpc.project.RawFile;
 import com.google.appinventor.shared.storage.StorageUtil;
@@ -36,6 +37,24 @@ public final class FileExporterImpl implements FileExporter {
   public RawFile exportProjectOutputFile(String userId, long projectId, @Nullable String target)
       throws IOException {
     // Download project output file.
+    String fileName = findProjectOutputFile(userId, projectId, target);
+    byte[] content = storageIo.downloadRawFile(userId, projectId, fileName);
+    return new RawFile(StorageUtil.basename(fileName), content);
+  }
+
+  @Override
+  public StoredRawFile openProjectOutputFile(String userId, long projectId,
+      @Nullable String target) throws IOException {
+    // Stream project output file.
+    String fileName = findProjectOutputFile(userId, projectId, target);
+    return storageIo.openRawFile(userId, projectId, fileName);
+  }
+
+  /*
+   * Returns the name of the .apk file among the project output files.
+   */
+  private String findProjectOutputFile(String userId, long projectId, @Nullable String target)
+      throws FileNotFoundException {
     List<String> files = storageIo.getProjectOutputFiles(userId, projectId);
     if (target != null) {
       // Target given - filter file list
@@ -50,8 +69,7 @@ public final class FileExporterImpl implements FileExporter {
 
     for (String fileName : files) {
       if (fileName.endsWith(".apk")) {
-        byte[] content = storageIo.downloadRawFile(userId, projectId, fileName);
-        return new RawFile(StorageUtil.basename(fileName), content);
+        return fileName;
       }
     }
 
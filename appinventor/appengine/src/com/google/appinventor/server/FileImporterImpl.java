@@ -24,8 +24,6 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.io.ByteStreams;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -129,10 +127,8 @@ public final class FileImporterImpl implements FileImporter {
             }
 
             // Get the file content from the ZipEntry.
-            ByteArrayOutputStream contentStream = new ByteArrayOutputStream();
-            ByteStreams.copy(zin, contentStream);
-
-            project.addRawFile(new RawFile(fileName, contentStream.toByteArray()));
+            byte[] content = readContent(zin, entry.getSize(), Integer.MAX_VALUE);
+            project.addRawFile(new RawFile(fileName, content));
           }
         }
       }
@@ -159,30 +155,9 @@ public final class FileImporterImpl implements FileImporter {
   @VisibleForTesting
   public long importFile(String userId, long projectId, String fileName,
       InputStream uploadedFileStream) throws FileImporterException, IOException {
-    int maxAssetSizeBytes = (int) (maxAssetSizeMegs.get() * 1024 * 1024);
-    int maxSizeBytes = Math.min(maxAssetSizeBytes, storageIo.getMaxJobSizeBytes());
-
-    BufferedInputStream bis = new BufferedInputStream(uploadedFileStream);
-    ByteArrayOutputStream os = new ByteArrayOutputStream();
-    BufferedOutputStream bos = new BufferedOutputStream(os);
-
-    // Alledgedly since it is buffered, reading in units of one byte
-    // should be as fast as many bytes, but we can always adjust this.
-    int bytes = 0;
-    long fileLength = 0;
-    byte[] buffer = new byte[1];
-    while ((bytes = bis.read(buffer, 0, buffer.length)) != -1) {
-      bos.write(buffer, 0, bytes);
-      fileLength += bytes;
-    }
-    bos.flush();
-
-    // First check the file length, to avoid loading the file into memory if it is too large anyhow.
-    if (fileLength > maxSizeBytes) {
-      throw new FileImporterException(UploadResponse.Status.FILE_TOO_LARGE);
-    }
-
-    byte[] content = os.toByteArray();
+    // Stop reading as soon as the file turns out to be too large, rather than loading all of it
+    // into memory first.
+    byte[] content = readContent(uploadedFileStream, -1, getMaxFileSizeBytes(storageIo));
 
     // If the file already exists, we will overwrite the content.
     List<String> sourceFiles = storageIo.getProjectSourceFiles(userId, projectId);
@@ -192,6 +167,57 @@ public final class FileImporterImpl implements FileImporter {
     return storageIo.uploadRawFileForce(projectId, fileName, userId, content);
   }
 
+  /**
+   * Returns the maximum size of a file imported into a project, in bytes.
+   */
+  static int getMaxFileSizeBytes(StorageIo storageIo) {
+    int maxAssetSizeBytes = (int) (maxAssetSizeMegs.get() * 1024 * 1024);
+    return Math.min(maxAssetSizeBytes, storageIo.getMaxJobSizeBytes());
+  }
+
+  /**
+   * Reads the remaining content of a stream, copying it only once when its size is known in
+   * advance, as it usually is for zip entries.
+   *
+   * @param in the stream to read
+   * @param size the number of bytes expected, or -1 if unknown
+   * @param maxSizeBytes the largest acceptable content
+   * @return the content
+   * @throws FileImporterException if the content is larger than maxSizeBytes
+   */
+  static byte[] readContent(InputStream in, long size, int maxSizeBytes)
+      throws FileImporterException, IOException {
+    if (size > maxSizeBytes) {
+      throw new FileImporterException(UploadResponse.Status.FILE_TOO_LARGE);
+    }
+    if (size >= 0) {
+      byte[] content = new byte[(int) size];
+      ByteStreams.readFully(in, content);
+      int next = in.read();
+      if (next == -1) {
+        return content;
+      }
+      // The declared size was wrong, so fall back on reading the whole stream.
+      ByteArrayOutputStream os = new ByteArrayOutputStream();
+      os.write(content);
+      os.write(next);
+      return readContent(in, os, maxSizeBytes);
+    }
+    return readContent(in, new ByteArrayOutputStream(), maxSizeBytes);
+  }
+
+  private static byte[] readContent(InputStream in, ByteArrayOutputStream os, int maxSizeBytes)
+      throws FileImporterException, IOException {
+    long limit = (long) maxSizeBytes + 1 - os.size();
+    if (limit > 0) {
+      ByteStreams.copy(ByteStreams.limit(in, limit), os);
+    }
+    if (os.size() > maxSizeBytes) {
+      throw new FileImporterException(UploadResponse.Status.FILE_TOO_LARGE);
+    }
+    return os.toByteArray();
+  }
+
   @Override
   public void importUserFile(String userId, String fileName, InputStream uploadedFileStream)
       throws IOException {
@@ -0,0 +1,162 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server;
+
+import com.google.appengine.api.ThreadManager;
+import com.google.appinventor.server.storage.StorageIo;
+import com.google.common.annotations.VisibleForTesting;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Uploads the contents of project files, several at a time. The caller reads the files one at a
+ * time and hands each to {@link #upload}, which blocks while the files waiting to be uploaded add
+ * up to more than a fixed number of bytes. This keeps the memory used by a large import bounded
+ * while the uploads to storage overlap.
+ *
+ * <p>On the development server, and in tests, files are uploaded on the calling thread.</p>
+ */
+final class ProjectFileUploader {
+  // Number of files uploaded at the same time
+  @VisibleForTesting
+  static final int UPLOAD_THREADS = 4;
+
+  // Most file content waiting to be uploaded at once, in kilobytes
+  @VisibleForTesting
+  static final int MAX_PENDING_KB = 16 * 1024;
+
+  private final StorageIo storageIo;
+  private final String userId;
+  private final long projectId;
+  private final ExecutorService executor;
+  private final Semaphore pendingKb = new Semaphore(MAX_PENDING_KB);
+  private final List<Future<Long>> uploads = new ArrayList<>();
+  private long modDate;
+
+  ProjectFileUploader(StorageIo storageIo, String userId, long projectId) {
+    this(storageIo, userId, projectId, Server.isProductionServer()
+        ? Executors.newFixedThreadPool(UPLOAD_THREADS, ThreadManager.currentRequestThreadFactory())
+        : null);
+  }
+
+  /**
+   * Creates an uploader that runs the uploads on the given executor, which it shuts down when it
+   * is finished, or on the calling thread if the executor is null.
+   */
+  @VisibleForTesting
+  ProjectFileUploader(StorageIo storageIo, String userId, long projectId,
+      ExecutorService executor) {
+    this.storageIo = storageIo;
+    this.userId = userId;
+    this.projectId = projectId;
+    this.executor = executor;
+  }
+
+  /**
+   * Uploads the content of a file that has already been added to the project. This may return
+   * before the upload is complete.
+   *
+   * @param fileName the name of the file in the project
+   * @param content the content of the file
+   * @throws IOException if an earlier upload failed
+   */
+  void upload(final String fileName, final byte[] content) throws IOException {
+    if (executor == null) {
+      modDate = Math.max(modDate,
+          storageIo.uploadRawFileForce(projectId, fileName, userId, content));
+      return;
+    }
+    // A file larger than the whole budget waits until nothing else is pending.
+    final int kb = Math.min(MAX_PENDING_KB, (content.length + 1023) / 1024);
+    try {
+      pendingKb.acquire(kb);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while uploading " + fileName, e);
+    }
+    checkCompleted();
+    uploads.add(executor.submit(new Callable<Long>() {
+      @Override
+      public Long call() {
+        try {
+          return storageIo.uploadRawFileForce(projectId, fileName, userId, content);
+        } finally {
+          pendingKb.release(kb);
+        }
+      }
+    }));
+  }
+
+  /**
+   * Waits for all uploads to finish.
+   *
+   * @return the latest modification date of the project reported by storage
+   * @throws IOException if any upload failed
+   */
+  long finish() throws IOException {
+    if (executor != null) {
+      try {
+        for (Future<Long> upload : uploads) {
+          modDate = Math.max(modDate, get(upload));
+        }
+        uploads.clear();
+      } finally {
+        close();
+      }
+    }
+    return modDate;
+  }
+
+  /**
+   * Stops any uploads that have not started. Callers that give up before calling
+   * {@link #finish} must call this.
+   */
+  void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Fails fast if an upload that has already completed failed, so the caller stops reading.
+   */
+  private void checkCompleted() throws IOException {
+    Iterator<Future<Long>> i = uploads.iterator();
+    while (i.hasNext()) {
+      Future<Long> upload = i.next();
+      if (upload.isDone()) {
+        modDate = Math.max(modDate, get(upload));
+        i.remove();
+      }
+    }
+  }
+
+  private static long get(Future<Long> upload) throws IOException {
+    try {
+      return upload.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while uploading project files", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+}
@@ -28,6 +28,7 @@ import com.google.appinventor.shared.rpc.project.ProjectRootNode;
 import com.google.appinventor.shared.rpc.project.ProjectService;
 import com.google.appinventor.shared.rpc.project.TextFile;
 import com.google.appinventor.shared.rpc.project.UserProject;
+import com.google.appinventor.shared.rpc.project.UserProjectPage;
 import com.google.appinventor.shared.rpc.project.youngandroid.YoungAndroidProjectNode;
 import com.google.appinventor.shared.util.Base64Util;
 import com.google.common.collect.Lists;
@@ -67,6 +68,10 @@ public class ProjectServiceImpl extends OdeRemoteServiceServlet implements Proje
 
   private static final boolean DEBUG = Flag.createFlag("appinventor.debugging", false).get();
 
+  // The number of projects returned in each page of project infos. Pages are read from the
+  // project summaries, so a page of this size is a single small datastore query.
+  private static final int PROJECT_PAGE_SIZE = 250;
+
   /**
    * Creates a new project.
    * @param projectType  type of new project
@@ -264,8 +269,25 @@ public class ProjectServiceImpl extends OdeRemoteServiceServlet implements Proje
   @Override
   public List<UserProject> getProjectInfos() {
     String userId = userInfoProvider.getUserId();
-    List<Long> projectIds = storageIo.getProjects(userId);
-    return makeUserProjects(userId, projectIds);
+    List<UserProject> projects = Lists.newArrayList();
+    String cursor = null;
+    do {
+      UserProjectPage page = storageIo.getUserProjectPage(userId, cursor, PROJECT_PAGE_SIZE);
+      projects.addAll(page.getProjects());
+      cursor = page.getCursor();
+    } while (cursor != null);
+    return projects;
+  }
+
+  /**
+   * Returns a page of project infos.
+   *
+   * @param cursor the cursor returned with the previous page, or null for the first page
+   * @return page of project infos found by the backend
+   */
+  @Override
+  public UserProjectPage getProjectInfoPage(String cursor) {
+    return storageIo.getUserProjectPage(userInfoProvider.getUserId(), cursor, PROJECT_PAGE_SIZE);
   }
 
   /**
@@ -577,12 +599,6 @@ public class ProjectServiceImpl extends OdeRemoteServiceServlet implements Proje
     return storageIo.getUserProject(userId, projectId);
   }
 
-  // Bulk fetch UserProjects -- efficiently get all project infos asked for
-  // using a minimum number of datastore API calls
-  private List<UserProject> makeUserProjects(String userId, List<Long> projectIds) {
-    return storageIo.getUserProjects(userId, projectIds);
-  }
-
   /*
    * Returns the RPC implementation for the given project type.
    */
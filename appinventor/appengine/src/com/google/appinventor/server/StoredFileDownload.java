@@ -0,0 +1,149 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server;
+
+import com.google.appinventor.server.storage.StoredRawFile;
+import com.google.appinventor.server.util.CacheHeaders;
+import com.google.appinventor.shared.storage.StorageUtil;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.io.ByteStreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Sends a {@link StoredRawFile} as the attachment of a response, streaming
+ * it from storage so that the servlet never holds the whole file in memory.
+ *
+ * <p>Conditional requests (If-None-Match) are answered with 304 Not Modified,
+ * and a request for a single byte range (Range, optionally with If-Range) is
+ * answered with just that range, which lets clients resume an interrupted
+ * download. Requests for several ranges are answered with the whole file.</p>
+ */
+final class StoredFileDownload {
+
+  // Returned by parseRange when the range starts after the end of the file.
+  @VisibleForTesting
+  static final long[] UNSATISFIABLE = new long[0];
+
+  private StoredFileDownload() {
+  }
+
+  /**
+   * Sends a file as the attachment of a response. The caller sets the cache
+   * headers beforehand.
+   *
+   * @param req the request
+   * @param resp the response
+   * @param cacheHeaders used to set the entity tag and check the request's
+   *        preconditions
+   * @param file the file to send
+   */
+  static void send(HttpServletRequest req, HttpServletResponse resp, CacheHeaders cacheHeaders,
+      StoredRawFile file) throws IOException {
+    String fileName = file.getFileName();
+    long length = file.getLength();
+
+    // Set http response information
+    resp.setHeader("content-disposition", "attachment; filename=\"" + fileName + "\"");
+    resp.setContentType(StorageUtil.getContentTypeForFilePath(fileName));
+    resp.setHeader("Accept-Ranges", "bytes");
+    if (cacheHeaders.setEtag(req, resp, file.getEtag())) {
+      resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    long start = 0;
+    long end = length - 1;
+    String range = req.getHeader("Range");
+    long[] bounds = range != null && cacheHeaders.isRangeCurrent(req, file.getEtag())
+        ? parseRange(range, length) : null;
+    if (bounds == UNSATISFIABLE) {
+      resp.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+      resp.setHeader("Content-Range", "bytes */" + length);
+      resp.setContentLength(0);
+      return;
+    } else if (bounds != null) {
+      start = bounds[0];
+      end = bounds[1];
+      resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+      resp.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+    } else {
+      resp.setStatus(HttpServletResponse.SC_OK);
+    }
+    long count = end - start + 1;
+    if (count <= Integer.MAX_VALUE) {
+      resp.setContentLength((int) count);
+    } else {
+      resp.setHeader("Content-Length", Long.toString(count));
+    }
+
+    // Attach download data
+    InputStream in = file.openStream(start);
+    try {
+      ServletOutputStream out = resp.getOutputStream();
+      // When the response runs to the end of the file, the stream is read to its end, so that a
+      // stream that checks its length, like the one for a GCS file, notices if the file changed
+      // while it was being sent. A range that ends earlier is cut off where it ends.
+      ByteStreams.copy(end == length - 1 ? in : ByteStreams.limit(in, count), out);
+      out.close();
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Parses the value of a Range header for a file of the given length.
+   *
+   * @return the first and last byte of the range, {@link #UNSATISFIABLE} if
+   *         the range starts after the end of the file, or null if the whole
+   *         file should be sent because the header asks for several ranges,
+   *         cannot be parsed, or the file is empty
+   */
+  @VisibleForTesting
+  static long[] parseRange(String range, long length) {
+    range = range.trim();
+    if (!range.startsWith("bytes=") || range.indexOf(',') >= 0 || length == 0) {
+      return null;
+    }
+    String spec = range.substring("bytes=".length()).trim();
+    int dash = spec.indexOf('-');
+    if (dash < 0) {
+      return null;
+    }
+    try {
+      String first = spec.substring(0, dash).trim();
+      String last = spec.substring(dash + 1).trim();
+      long start;
+      long end;
+      if (first.length() == 0) {
+        // bytes=-N asks for the last N bytes
+        long suffix = Long.parseLong(last);
+        if (suffix <= 0) {
+          return UNSATISFIABLE;
+        }
+        start = Math.max(0, length - suffix);
+        end = length - 1;
+      } else {
+        start = Long.parseLong(first);
+        end = last.length() == 0 ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+        if (start < 0 || end < start) {
+          return start >= length ? UNSATISFIABLE : null;
+        }
+        if (start >= length) {
+          return UNSATISFIABLE;
+        }
+      }
+      return new long[] { start, end };
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+}
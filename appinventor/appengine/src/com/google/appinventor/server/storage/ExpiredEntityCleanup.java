@@ -0,0 +1,211 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server.storage;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheService.SetPolicy;
+import com.google.apphosting.api.ApiProxy;
+
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Objectify;
+import com.googlecode.objectify.ObjectifyService;
+import com.googlecode.objectify.Query;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Deletes the entities of one kind whose timestamp is older than a maximum age, a few batches at
+ * a time. Periodic maintenance in {@link ObjectifyStorageIo}, such as removing expired nonces, is
+ * done by calling {@link #run} from requests that happen often anyway.
+ *
+ * <p>The entities older than a cutoff are removed in a sweep that may take many calls of
+ * {@link #run}. Between calls, the cutoff and a query cursor are kept in memcache, so that a call
+ * picks up where the last one stopped instead of scanning over the entities that were already
+ * deleted. If the checkpoint is lost, the next call starts a new sweep, which is safe since
+ * deleting an entity twice does no harm. Calls are limited to one per interval across all
+ * instances, and each call stops after a time budget, so a large backlog is worked off over
+ * time without slowing down the requests that do the work. If memcache is not available, each
+ * instance still waits for the interval between calls that do any work.</p>
+ *
+ * <p>When a sweep finishes, the number of entities it deleted and the rate at which it deleted
+ * them are logged.</p>
+ */
+final class ExpiredEntityCleanup<T> {
+  private static final Logger LOG = Logger.getLogger(ExpiredEntityCleanup.class.getName());
+
+  // Stop early if the request has less time than this left, in milliseconds.
+  private static final long MIN_REMAINING_MILLIS = 5000;
+
+  // How long a checkpoint is kept in memcache, in seconds. A sweep that has not made progress
+  // for this long starts over.
+  private static final int CHECKPOINT_EXPIRATION = 24 * 3600;
+
+  /**
+   * The state of a sweep, kept in memcache between calls.
+   */
+  static final class Checkpoint implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final long cutoff;          // Entities older than this are deleted, in ms since the epoch
+    final String cursor;        // Where the next batch starts, or null at the start
+    final long deleted;         // Entities deleted so far
+    final long elapsed;         // Time spent deleting them so far, in milliseconds
+
+    Checkpoint(long cutoff, String cursor, long deleted, long elapsed) {
+      this.cutoff = cutoff;
+      this.cursor = cursor;
+      this.deleted = deleted;
+      this.elapsed = elapsed;
+    }
+  }
+
+  private final String name;
+  private final Class<T> kind;
+  private final String timestampProperty;
+  private final long maxAge;
+  private final int batchSize;
+  private final long interval;
+  private final long budget;
+  private final MemcacheService memcache;
+
+  // When a call on this instance last did any work, or found that another instance had, in
+  // milliseconds since the epoch
+  private final AtomicLong lastRun = new AtomicLong();
+
+  /**
+   * Creates a cleanup job.
+   *
+   * @param name the name of the job, used in memcache keys and log messages
+   * @param kind the class of the entities to delete
+   * @param timestampProperty the name of the indexed {@link Date} property holding the time at
+   *     which each entity was created
+   * @param maxAge the age after which entities are deleted, in milliseconds
+   * @param batchSize the maximum number of entities deleted at a time
+   * @param interval the minimum time between two calls of {@link #run} that do any work, in
+   *     milliseconds
+   * @param budget the time after which a call of {@link #run} stops starting new batches, in
+   *     milliseconds
+   * @param memcache where the checkpoints are kept
+   */
+  ExpiredEntityCleanup(String name, Class<T> kind, String timestampProperty, long maxAge,
+      int batchSize, long interval, long budget, MemcacheService memcache) {
+    this.name = name;
+    this.kind = kind;
+    this.timestampProperty = timestampProperty;
+    this.maxAge = maxAge;
+    this.batchSize = batchSize;
+    this.interval = interval;
+    this.budget = budget;
+    this.memcache = memcache;
+  }
+
+  /**
+   * Deletes the next few batches of expired entities, unless another call has done so less than
+   * the interval ago. Errors are logged and otherwise ignored, since the next call will try
+   * again.
+   *
+   * @return the number of entities deleted
+   */
+  int run() {
+    long start = System.currentTimeMillis();
+    if (interval > 0 && !acquire(start)) {
+      return 0;                 // Another call did the work recently
+    }
+    Checkpoint checkpoint = (Checkpoint) memcache.get(checkpointKey());
+    if (checkpoint == null) {
+      checkpoint = new Checkpoint(start - maxAge, null, 0, 0);
+    }
+    int deleted = 0;
+    try {
+      Objectify datastore = ObjectifyService.begin();
+      long batchStart = start;
+      while (true) {
+        Query<T> query = datastore.query(kind)
+            .filter(timestampProperty + " <", new Date(checkpoint.cutoff))
+            .limit(batchSize);
+        if (checkpoint.cursor != null) {
+          query.startCursor(Cursor.fromWebSafeString(checkpoint.cursor));
+        }
+        List<Key<T>> keys = new ArrayList<Key<T>>(batchSize);
+        QueryResultIterator<Key<T>> iterator = query.fetchKeys().iterator();
+        while (iterator.hasNext()) {
+          keys.add(iterator.next());
+        }
+        datastore.delete(keys);
+        deleted += keys.size();
+        long now = System.currentTimeMillis();
+        long sweepDeleted = checkpoint.deleted + keys.size();
+        long sweepElapsed = checkpoint.elapsed + now - batchStart;
+        if (keys.size() < batchSize) {
+          memcache.delete(checkpointKey());
+          LOG.info(name + " cleanup deleted " + sweepDeleted + " entities in " + sweepElapsed
+              + " ms (" + rate(sweepDeleted, sweepElapsed) + " per second)");
+          return deleted;
+        }
+        checkpoint = new Checkpoint(checkpoint.cutoff, iterator.getCursor().toWebSafeString(),
+            sweepDeleted, sweepElapsed);
+        memcache.put(checkpointKey(), checkpoint,
+            Expiration.byDeltaSeconds(CHECKPOINT_EXPIRATION));
+        if (now - start >= budget || isRunningOutOfTime()) {
+          return deleted;       // The next call carries on from the checkpoint
+        }
+        batchStart = now;
+      }
+    } catch (Exception e) {
+      LOG.log(Level.WARNING, "Exception during " + name + " cleanup", e);
+      return deleted;
+    }
+  }
+
+  /*
+   * Returns true if no call has done any work for the interval, on this instance or, as far as
+   * memcache tells, on any other.
+   */
+  private boolean acquire(long now) {
+    long last = lastRun.get();
+    if (now - last < interval || !lastRun.compareAndSet(last, now)) {
+      return false;
+    }
+    try {
+      if (memcache.put(lockKey(), Boolean.TRUE, Expiration.byDeltaMillis((int) interval),
+          SetPolicy.ADD_ONLY_IF_NOT_PRESENT)) {
+        return true;
+      }
+      // put also returns false if memcache fails. Then only the lock being there means that
+      // another instance has it, and otherwise the time of the last call here has to do.
+      return !memcache.contains(lockKey());
+    } catch (RuntimeException e) {
+      LOG.log(Level.WARNING, "Unable to check the " + name + " cleanup lock", e);
+      return true;
+    }
+  }
+
+  private String lockKey() {
+    return "cleanup-lock-" + name;
+  }
+
+  private String checkpointKey() {
+    return "cleanup-checkpoint-" + name;
+  }
+
+  private static long rate(long count, long millis) {
+    return millis > 0 ? count * 1000 / millis : count;
+  }
+
+  private static boolean isRunningOutOfTime() {
+    ApiProxy.Environment environment = ApiProxy.getCurrentEnvironment();
+    return environment != null && environment.getRemainingMillis() < MIN_REMAINING_MILLIS;
+  }
+}
@@ -9,9 +9,14 @@ package com.google.appinventor.server.storage;
 import com.google.appengine.api.appidentity.AppIdentityService;
 import com.google.appengine.api.appidentity.AppIdentityServiceFactory;
 import com.google.appengine.api.appidentity.AppIdentityServiceFailureException;
+import com.google.appengine.api.blobstore.BlobInfo;
+import com.google.appengine.api.blobstore.BlobInfoFactory;
 import com.google.appengine.api.blobstore.BlobKey;
 import com.google.appengine.api.blobstore.BlobstoreInputStream;
 import com.google.appengine.api.blobstore.BlobstoreServiceFactory;
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.appengine.api.datastore.TransactionOptions;
 import com.google.appengine.api.memcache.ErrorHandlers;
 import com.google.appengine.api.memcache.MemcacheService;
 import com.google.appengine.api.memcache.MemcacheServiceFactory;
@@ -26,6 +31,8 @@ import com.google.appinventor.server.FileExporter;
 import com.google.appinventor.server.Server;
 import com.google.appinventor.server.flags.Flag;
 import com.google.appinventor.server.storage.StoredData.Backpack;
+import com.google.appinventor.server.storage.StoredData.ContentData;
+import com.google.appinventor.server.storage.StoredData.ContentShardData;
 import com.google.appinventor.server.storage.StoredData.CorruptionRecord;
 import com.google.appinventor.server.storage.StoredData.FeedbackData;
 import com.google.appinventor.server.storage.StoredData.FileData;
@@ -49,6 +56,7 @@ import com.google.appinventor.shared.rpc.project.ProjectSourceZip;
 import com.google.appinventor.shared.rpc.project.RawFile;
 import com.google.appinventor.shared.rpc.project.TextFile;
 import com.google.appinventor.shared.rpc.project.UserProject;
+import com.google.appinventor.shared.rpc.project.UserProjectPage;
 import com.google.appinventor.shared.rpc.project.youngandroid.YoungAndroidProjectNode;
 import com.google.appinventor.shared.rpc.user.SplashConfig;
 import com.google.appinventor.shared.rpc.user.User;
@@ -57,18 +65,20 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
 import com.google.common.io.ByteSource;
 import com.google.common.io.ByteStreams;
 
 import com.googlecode.objectify.Key;
 import com.googlecode.objectify.Objectify;
+import com.googlecode.objectify.ObjectifyOpts;
 import com.googlecode.objectify.ObjectifyService;
 import com.googlecode.objectify.Query;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 
 // GCS imports
+import com.google.appengine.tools.cloudstorage.GcsFileMetadata;
 import com.google.appengine.tools.cloudstorage.GcsFileOptions;
 import com.google.appengine.tools.cloudstorage.GcsFilename;
 import com.google.appengine.tools.cloudstorage.GcsInputChannel;
@@ -78,18 +88,24 @@ import com.google.appengine.tools.cloudstorage.GcsServiceFactory;
 import com.google.appengine.tools.cloudstorage.RetryParams;
 
 import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.ConcurrentModificationException;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.NoSuchElementException;
+import java.util.Random;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
@@ -121,10 +137,37 @@ public class ObjectifyStorageIo implements  StorageIo {
   // TODO(user): need a way to modify this. Also, what is really a good value?
   private static final int MAX_JOB_RETRIES = 10;
 
+  // Number of shards that the reference count of shared contents is split into. A transaction
+  // that deletes unreferenced contents reads all of them, which must stay within the 25 entity
+  // groups that a cross-group transaction can span.
+  private static final int CONTENT_REFERENCE_SHARDS = 8;
+
+  // Read ahead buffer used when streaming temp files and downloads out of GCS
+  private static final int STREAM_READ_BUFFER_SIZE = 1024 * 1024;
+
+  // The modification date of a project, and with it the summary of the project in the user's
+  // entity group, is only updated if it is older than this, in milliseconds.
+  private static final long MOD_DATE_RESOLUTION = 60 * 1000;
+
   private final MemcacheService memcache = MemcacheServiceFactory.getMemcacheService();
 
+  // Expired nonces and password reset data are removed in batches of up to 50, at most once
+  // every 10 seconds. The cleanup runs inline in the requests that create them, such as logins,
+  // so it stops starting new batches after 50 ms. Nonces are normally valid for 2 hours and are
+  // kept for another hour so that they return "link expired" instead of "link not found".
+  // Password reset data is kept for 24 hours.
+  private final ExpiredEntityCleanup<NonceData> nonceCleanup =
+      new ExpiredEntityCleanup<NonceData>("nonce", NonceData.class, "timestamp",
+          3 * 3600 * 1000L, 50, 10 * 1000L, 50L, memcache);
+  private final ExpiredEntityCleanup<PWData> pwDataCleanup =
+      new ExpiredEntityCleanup<PWData>("pwdata", PWData.class, "timestamp",
+          24 * 3600 * 1000L, 50, 10 * 1000L, 50L, memcache);
+
   private final GcsService gcsService;
 
+  // Picks the shard of a reference count that a reference is added to or released from
+  private final Random contentShardRandom = new Random();
+
   private static final String GCS_BUCKET_NAME;
 
   private static final long TWENTYFOURHOURS = 24*3600*1000; // 24 hours in milliseconds
@@ -195,6 +238,8 @@ public class ObjectifyStorageIo implements  StorageIo {
     ObjectifyService.register(PWData.class);
     ObjectifyService.register(SplashData.class);
     ObjectifyService.register(Backpack.class);
+    ObjectifyService.register(ContentData.class);
+    ObjectifyService.register(ContentShardData.class);
 
     // Learn GCS Bucket from App Configuration or App Engine Default
     String gcsBucket = Flag.createFlag("gcs.bucket", "").get();
@@ -622,8 +667,55 @@ public class ObjectifyStorageIo implements  StorageIo {
   @Override
   public long createProject(final String userId, final Project project,
       final String projectSettings) {
+    return createProject(userId, project, projectSettings, 0,
+        Collections.<String, String>emptyMap());
+  }
+
+  @Override
+  public long createProject(final String userId, final Project project,
+      final String projectSettings, final long sourceProjectId,
+      final Map<String, String> copiedFiles) {
+    validateGCS();
     final Result<Long> projectId = new Result<Long>();
+    final Result<Long> projectDate = new Result<Long>();
     final List<FileData> addedFiles = new ArrayList<FileData>();
+    // The contents of the files that are stored with the project, and the shared contents that
+    // the project refers to. References to the shared contents are taken before the project is
+    // created and are released again if it cannot be created.
+    final Map<String, byte[]> contents = new LinkedHashMap<String, byte[]>();
+    final Map<String, ContentData> sharedContents = new LinkedHashMap<String, ContentData>();
+
+    try {
+      for (Map.Entry<String, String> copiedFile : copiedFiles.entrySet()) {
+        ContentData shared = addContentReference(userId, sourceProjectId, copiedFile.getKey());
+        if (shared != null) {
+          sharedContents.put(copiedFile.getValue(), shared);
+        } else {
+          contents.put(copiedFile.getValue(),
+              downloadRawFile(userId, sourceProjectId, copiedFile.getKey()));
+        }
+      }
+      for (TextFile file : project.getSourceFiles()) {
+        contents.put(file.getFileName(), file.getContent().getBytes(DEFAULT_ENCODING));
+      }
+      for (RawFile file : project.getRawSourceFiles()) {
+        contents.put(file.getFileName(), file.getContent());
+      }
+      Iterator<Map.Entry<String, byte[]>> it = contents.entrySet().iterator();
+      while (it.hasNext()) {
+        Map.Entry<String, byte[]> entry = it.next();
+        if (useContentStoreForFile(entry.getKey(), entry.getValue().length)) {
+          sharedContents.put(entry.getKey(), storeContent(entry.getValue()));
+          it.remove();
+        }
+      }
+    } catch (IOException | ObjectifyException e) {
+      releaseContents(sharedContents.values());
+      throw CrashReport.createAndLogError(LOG, null, collectUserErrorInfo(userId), e);
+    } catch (RuntimeException e) {
+      releaseContents(sharedContents.values());
+      throw e;
+    }
 
     try {
       // first job is on the project entity, creating the ProjectData object
@@ -636,6 +728,7 @@ public class ObjectifyStorageIo implements  StorageIo {
           pd.id = null;  // let Objectify auto-generate the project id
           pd.dateCreated = date;
           pd.dateModified = date;
+          projectDate.t = date;
           pd.history = project.getProjectHistory();
           pd.name = project.getProjectName();
           pd.settings = projectSettings;
@@ -653,23 +746,18 @@ public class ObjectifyStorageIo implements  StorageIo {
           // written in this job, reading the assigned id from pd should work.
 
           Key<ProjectData> projectKey = projectKey(projectId.t);
-          for (TextFile file : project.getSourceFiles()) {
+          for (Map.Entry<String, byte[]> file : contents.entrySet()) {
             try {
               addedFiles.add(createRawFile(projectKey, FileData.RoleEnum.SOURCE, userId,
-                  file.getFileName(), file.getContent().getBytes(DEFAULT_ENCODING)));
+                  file.getKey(), file.getValue()));
             } catch (IOException e) { // GCS throws this
               throw CrashReport.createAndLogError(LOG, null,
-                collectProjectErrorInfo(userId, projectId.t, file.getFileName()), e);
+                collectProjectErrorInfo(userId, projectId.t, file.getKey()), e);
             }
           }
-          for (RawFile file : project.getRawSourceFiles()) {
-            try {
-              addedFiles.add(createRawFile(projectKey, FileData.RoleEnum.SOURCE, userId, file.getFileName(),
-                  file.getContent()));
-            } catch (IOException e) {
-              throw CrashReport.createAndLogError(LOG, null,
-                collectProjectErrorInfo(userId, projectId.t, file.getFileName()), e);
-            }
+          for (Map.Entry<String, ContentData> file : sharedContents.entrySet()) {
+            addedFiles.add(createSharedFile(projectKey, FileData.RoleEnum.SOURCE, userId,
+                file.getKey(), file.getValue()));
           }
           datastore.put(addedFiles);  // batch put
         }
@@ -694,29 +782,35 @@ public class ObjectifyStorageIo implements  StorageIo {
         public void run(Objectify datastore) {
           UserProjectData upd = new UserProjectData();
           upd.projectId = projectId.t;
-          upd.settings = projectSettings;
           upd.state = UserProjectData.StateEnum.OPEN;
           upd.userKey = userKey(userId);
+          upd.name = project.getProjectName();
+          upd.type = project.getProjectType();
+          upd.dateCreated = projectDate.t;
+          upd.dateModified = projectDate.t;
+          upd.galleryId = UserProject.NOTPUBLISHED;
+          upd.attributionId = UserProject.FROMSCRATCH;
           datastore.put(upd);
         }
       }, true);
     } catch (ObjectifyException e) {
       for (FileData addedFile : addedFiles) {
-        if (isTrue(addedFile.isGCS)) {  // Do something
-          if (addedFile.gcsName != null) {
-            try {
-              gcsService.delete(new GcsFilename(GCS_BUCKET_NAME, addedFile.gcsName));
-            } catch (IOException ee) {
-              LOG.log(Level.WARNING, "Unable to delete " + addedFile.gcsName +
-                " from GCS while aborting project creation.", ee);
+        // Shared contents are released below rather than deleted
+        if (isTrue(addedFile.isGCS) && addedFile.contentHash == null
+            && addedFile.gcsName != null) {
+          try {
+            gcsService.delete(new GcsFilename(GCS_BUCKET_NAME, addedFile.gcsName));
+          } catch (IOException ee) {
+            LOG.log(Level.WARNING, "Unable to delete " + addedFile.gcsName +
+              " from GCS while aborting project creation.", ee);
           }
         }
       }
       // clear addedFiles in case we end up here more than once
       addedFiles.clear();
+      releaseContents(sharedContents.values());
       throw CrashReport.createAndLogError(LOG, null,
           collectUserProjectErrorInfo(userId, projectId.t), e);
-      }
     }
     return projectId.t;
   }
@@ -747,12 +841,32 @@ public class ObjectifyStorageIo implements  StorageIo {
     return file;
   }
 
+  /*
+   *  Creates and returns a new FileData object for shared contents. The
+   *  caller must hold a reference to the contents for the new object.
+   *  Does not check for the existence of the object and does not update
+   *  the database.
+   */
+  private FileData createSharedFile(Key<ProjectData> projectKey, FileData.RoleEnum role,
+      String userId, String fileName, ContentData shared) {
+    FileData file = new FileData();
+    file.fileName = fileName;
+    file.projectKey = projectKey;
+    file.role = role;
+    file.userId = userId;
+    file.isGCS = true;
+    file.gcsName = shared.gcsName;
+    file.contentHash = shared.hash;
+    return file;
+  }
+
   @Override
   public void deleteProject(final String userId, final long projectId) {
     validateGCS();
     // blobs associated with the project
     final List<String> blobKeys = new ArrayList<String>();
     final List<String> gcsPaths = new ArrayList<String>();
+    final List<String> contentHashes = new ArrayList<String>();
     try {
       // first job deletes the UserProjectData in the user's entity group
       runJobWithRetries(new JobRetryHelper() {
@@ -771,8 +885,13 @@ public class ObjectifyStorageIo implements  StorageIo {
         public void run(Objectify datastore) {
           Key<ProjectData> projectKey = projectKey(projectId);
           Query<FileData> fdq = datastore.query(FileData.class).ancestor(projectKey);
+          blobKeys.clear();
+          gcsPaths.clear();
+          contentHashes.clear();
           for (FileData fd: fdq) {
-            if (isTrue(fd.isGCS)) {
+            if (fd.contentHash != null) {
+              contentHashes.add(fd.contentHash);
+            } else if (isTrue(fd.isGCS)) {
               gcsPaths.add(fd.gcsName);
             } else if (fd.isBlob) {
               blobKeys.add(fd.blobKey);
@@ -795,6 +914,7 @@ public class ObjectifyStorageIo implements  StorageIo {
           LOG.log(Level.WARNING, "Unable to delete " + gcsName + " from GCS while deleting project", e);
         }
       }
+      releaseContentHashes(contentHashes);
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null,
           collectUserProjectErrorInfo(userId, projectId), e);
@@ -811,9 +931,10 @@ public class ObjectifyStorageIo implements  StorageIo {
           if (projectData != null) {
             projectData.projectMovedToTrashFlag = flag;
             datastore.put(projectData);
+            updateProjectSummary(datastore, userId, projectData);
           }
         }
-      }, true);
+      }, true, true);
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null, collectUserErrorInfo(userId), e);
     }
@@ -829,9 +950,10 @@ public class ObjectifyStorageIo implements  StorageIo {
           if (projectData != null) {
             projectData.galleryId = galleryId;
             datastore.put(projectData);
+            updateProjectSummary(datastore, userId, projectData);
           }
         }
-      }, true);
+      }, true, true);
     } catch (ObjectifyException e) {
        throw CrashReport.createAndLogError(LOG, null, collectUserErrorInfo(userId), e);
     }
@@ -846,9 +968,10 @@ public class ObjectifyStorageIo implements  StorageIo {
           if (projectData != null) {
             projectData.attributionId = attributionId;
             datastore.put(projectData);
+            updateProjectSummary(datastore, userId, projectData);
           }
         }
-      }, true);
+      }, true, true);
     } catch (ObjectifyException e) {
        throw CrashReport.createAndLogError(LOG, null,"error in setProjectAttributionId",  e);
     }
@@ -1003,6 +1126,123 @@ public class ObjectifyStorageIo implements  StorageIo {
     }
   }
 
+  @Override
+  public UserProjectPage getUserProjectPage(final String userId, final String cursor,
+      final int limit) {
+    final List<UserProjectData> summaries = new ArrayList<UserProjectData>();
+    final Result<String> nextCursor = new Result<String>();
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          summaries.clear();
+          nextCursor.t = null;
+          Query<UserProjectData> query = datastore.query(UserProjectData.class)
+              .ancestor(userKey(userId)).limit(limit);
+          if (cursor != null) {
+            query = query.startCursor(Cursor.fromWebSafeString(cursor));
+          }
+          QueryResultIterator<UserProjectData> iterator = query.iterator();
+          while (iterator.hasNext()) {
+            summaries.add(iterator.next());
+          }
+          if (summaries.size() == limit) {
+            nextCursor.t = iterator.getCursor().toWebSafeString();
+          }
+        }
+      }, false);
+    } catch (ObjectifyException e) {
+      throw CrashReport.createAndLogError(LOG, null, collectUserErrorInfo(userId), e);
+    }
+
+    fillMissingProjectSummaries(userId, summaries);
+    List<UserProject> projects = Lists.newArrayListWithExpectedSize(summaries.size());
+    for (UserProjectData upd : summaries) {
+      if (upd.name != null) {  // Otherwise the ProjectData is missing too
+        projects.add(new UserProject(upd.projectId, upd.name, upd.type, upd.dateCreated,
+            upd.dateModified, upd.galleryId, upd.attributionId, upd.projectMovedToTrashFlag));
+      }
+    }
+    return new UserProjectPage(projects, nextCursor.t);
+  }
+
+  /*
+   * Fills in the summaries of projects that were created before summaries were kept in the
+   * UserProjectData, and stores them so that this is only done once for each project.
+   */
+  private void fillMissingProjectSummaries(final String userId,
+      List<UserProjectData> summaries) {
+    final Map<Long, UserProjectData> missing = new LinkedHashMap<Long, UserProjectData>();
+    for (UserProjectData upd : summaries) {
+      if (upd.name == null) {
+        missing.put(upd.projectId, upd);
+      }
+    }
+    if (missing.isEmpty()) {
+      return;
+    }
+
+    List<UserProject> projects = getUserProjects(userId, new ArrayList<Long>(missing.keySet()));
+    final List<UserProjectData> filled = new ArrayList<UserProjectData>(projects.size());
+    for (UserProject project : projects) {
+      UserProjectData upd = missing.get(project.getProjectId());
+      upd.name = project.getProjectName();
+      upd.type = project.getProjectType();
+      upd.dateCreated = project.getDateCreated();
+      upd.dateModified = project.getDateModified();
+      upd.galleryId = project.getGalleryId();
+      upd.attributionId = project.getAttributionId();
+      upd.projectMovedToTrashFlag = project.isInTrash();
+      filled.add(upd);
+    }
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          List<Key<UserProjectData>> keys = new ArrayList<Key<UserProjectData>>(filled.size());
+          for (UserProjectData upd : filled) {
+            keys.add(userProjectKey(upd.userKey, upd.projectId));
+          }
+          Map<Key<UserProjectData>, UserProjectData> current = datastore.get(keys);
+          List<UserProjectData> changed = new ArrayList<UserProjectData>(filled.size());
+          for (UserProjectData upd : filled) {
+            UserProjectData currentUpd = current.get(userProjectKey(upd.userKey, upd.projectId));
+            // Leave summaries that have been filled in since they were read alone.
+            if (currentUpd != null && currentUpd.name == null) {
+              upd.settings = null;  // Never read, and a copy of the ProjectData settings
+              changed.add(upd);
+            }
+          }
+          datastore.put(changed);
+        }
+      }, true);
+    } catch (ObjectifyException e) {
+      // The summaries will be filled in again the next time they are read.
+      LOG.log(Level.WARNING, "Unable to store project summaries for user " + userId, e);
+    }
+  }
+
+  /*
+   * Copies the fields of a project that are shown in the project list to its summary in the
+   * UserProjectData, as part of a job on the project. The UserProjectData is in the user's entity
+   * group, so a job that uses a transaction must use a cross-group one. The summary is then
+   * written if and only if the project is.
+   */
+  private void updateProjectSummary(Objectify datastore, String userId, ProjectData pd) {
+    UserProjectData upd = datastore.find(userProjectKey(userKey(userId), pd.id));
+    // Summaries that have not been filled in yet are filled in when they are next read.
+    if (upd != null && upd.name != null) {
+      upd.name = pd.name;
+      upd.type = pd.type;
+      upd.dateCreated = pd.dateCreated;
+      upd.dateModified = pd.dateModified;
+      upd.galleryId = pd.galleryId;
+      upd.attributionId = pd.attributionId;
+      upd.projectMovedToTrashFlag = pd.projectMovedToTrashFlag;
+      datastore.put(upd);
+    }
+  }
+
   @Override
   public String getProjectName(final String userId, final long projectId) {
     final Result<String> projectName = new Result<String>();
@@ -1339,13 +1579,15 @@ public class ObjectifyStorageIo implements  StorageIo {
   @Override
   public void addSourceFilesToProject(final String userId, final long projectId,
     final boolean changeModDate, final String... fileNames) {
+    final boolean crossGroup = changeModDate && isProjectModDateDue(projectId);
     try {
       runJobWithRetries(new JobRetryHelper() {
         @Override
         public void run(Objectify datastore) {
-          addFilesToProject(datastore, projectId, FileData.RoleEnum.SOURCE, changeModDate, userId, fileNames);
+          addFilesToProject(datastore, projectId, FileData.RoleEnum.SOURCE, changeModDate,
+              crossGroup, userId, fileNames);
         }
-      }, true);
+      }, true, crossGroup);
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null,
           collectProjectErrorInfo(userId, projectId, fileNames[0]), e);
@@ -1359,7 +1601,8 @@ public class ObjectifyStorageIo implements  StorageIo {
       runJobWithRetries(new JobRetryHelper() {
         @Override
         public void run(Objectify datastore) {
-          addFilesToProject(datastore, projectId, FileData.RoleEnum.TARGET, false, userId, fileNames);
+          addFilesToProject(datastore, projectId, FileData.RoleEnum.TARGET, false, false, userId,
+              fileNames);
         }
       }, true);
     } catch (ObjectifyException e) {
@@ -1369,7 +1612,7 @@ public class ObjectifyStorageIo implements  StorageIo {
   }
 
   private void addFilesToProject(Objectify datastore, long projectId, FileData.RoleEnum role,
-    boolean changeModDate, String userId, String... fileNames) {
+    boolean changeModDate, boolean crossGroup, String userId, String... fileNames) {
     List<FileData> addedFiles = new ArrayList<FileData>();
     Key<ProjectData> projectKey = projectKey(projectId);
     for (String fileName : fileNames) {
@@ -1381,7 +1624,7 @@ public class ObjectifyStorageIo implements  StorageIo {
     }
     datastore.put(addedFiles); // batch put
     if (changeModDate) {
-      updateProjectModDate(datastore, projectId, false);
+      updateProjectModDate(datastore, userId, projectId, false, crossGroup);
     }
   }
 
@@ -1405,37 +1648,51 @@ public class ObjectifyStorageIo implements  StorageIo {
   @Override
   public void removeSourceFilesFromProject(final String userId, final long projectId,
       final boolean changeModDate, final String... fileNames) {
+    final List<String> contentHashes = new ArrayList<String>();
+    final boolean crossGroup = changeModDate && isProjectModDateDue(projectId);
     try {
       runJobWithRetries(new JobRetryHelper() {
         @Override
         public void run(Objectify datastore) {
-          removeFilesFromProject(datastore, projectId, FileData.RoleEnum.SOURCE, changeModDate, fileNames);
+          contentHashes.clear();
+          removeFilesFromProject(datastore, projectId, FileData.RoleEnum.SOURCE, changeModDate,
+              crossGroup, userId, contentHashes, fileNames);
         }
-      }, true);
+      }, true, crossGroup);
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null,
           collectProjectErrorInfo(userId, projectId, fileNames[0]), e);
     }
+    releaseContentHashes(contentHashes);
   }
 
   @Override
   public void removeOutputFilesFromProject(final String userId, final long projectId,
       final String... fileNames) {
+    final List<String> contentHashes = new ArrayList<String>();
     try {
       runJobWithRetries(new JobRetryHelper() {
         @Override
         public void run(Objectify datastore) {
-          removeFilesFromProject(datastore, projectId, FileData.RoleEnum.TARGET, false, fileNames);
+          contentHashes.clear();
+          removeFilesFromProject(datastore, projectId, FileData.RoleEnum.TARGET, false, false,
+              userId, contentHashes, fileNames);
         }
       }, true);
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null,
           collectProjectErrorInfo(userId, projectId, fileNames[0]), e);
     }
+    releaseContentHashes(contentHashes);
   }
 
+  /*
+   * Removes the files from the project. The hashes of the shared contents that the removed files
+   * referred to are added to contentHashes, so that they can be released once the job commits.
+   */
   private void removeFilesFromProject(Objectify datastore, long projectId,
-      FileData.RoleEnum role, boolean changeModDate, String... fileNames) {
+      FileData.RoleEnum role, boolean changeModDate, boolean crossGroup, String userId,
+      List<String> contentHashes, String... fileNames) {
     Key<ProjectData> projectKey = projectKey(projectId);
     List<Key<FileData>> filesToRemove = new ArrayList<Key<FileData>>();
     for (String fileName : fileNames) {
@@ -1445,6 +1702,9 @@ public class ObjectifyStorageIo implements  StorageIo {
       if (fd != null) {
         if (fd.role.equals(role)) {
           filesToRemove.add(projectFileKey(projectKey, fileName));
+          if (fd.contentHash != null) {
+            contentHashes.add(fd.contentHash);
+          }
         } else {
           throw CrashReport.createAndLogError(LOG, null,
               collectProjectErrorInfo(null, projectId, fileName),
@@ -1454,7 +1714,7 @@ public class ObjectifyStorageIo implements  StorageIo {
     }
     datastore.delete(filesToRemove);  // batch delete
     if (changeModDate) {
-      updateProjectModDate(datastore, projectId, false);
+      updateProjectModDate(datastore, userId, projectId, false, crossGroup);
     }
   }
 
@@ -1526,7 +1786,24 @@ public class ObjectifyStorageIo implements  StorageIo {
     }
   }
 
-  private long updateProjectModDate(Objectify datastore, long projectId, boolean doingConversion) {
+  /*
+   * Returns true if changing the project now would update its modification date, and with it the
+   * summary in the user's entity group, so that a transaction making the change needs to be a
+   * cross-group one. The project is read outside of any transaction, usually from memcache.
+   */
+  private boolean isProjectModDateDue(long projectId) {
+    ProjectData pd = ObjectifyService.begin().find(projectKey(projectId));
+    return pd != null && System.currentTimeMillis() > pd.dateModified + MOD_DATE_RESOLUTION;
+  }
+
+  /*
+   * Updates the modification date of a project and its summary, unless it was updated less than
+   * MOD_DATE_RESOLUTION ago, and returns the new or old date. canWriteSummary is false for a job
+   * in a transaction that is not a cross-group one. The date is then left alone, even if it is
+   * due, since the summary could not be written with it, and the next change updates it.
+   */
+  private long updateProjectModDate(Objectify datastore, String userId, long projectId,
+      boolean doingConversion, boolean canWriteSummary) {
     long modDate = System.currentTimeMillis();
     ProjectData pd = datastore.find(projectKey(projectId));
     if (pd != null) {
@@ -1534,9 +1811,11 @@ public class ObjectifyStorageIo implements  StorageIo {
       // in the future. Do this to avoid unnecessary datastore puts.
       // Also do not update modification time when doing conversion from
       // blobstore to GCS
-      if ((modDate > (pd.dateModified + 1000*60)) && !doingConversion) {
+      if ((modDate > (pd.dateModified + MOD_DATE_RESOLUTION)) && !doingConversion
+          && canWriteSummary) {
         pd.dateModified = modDate;
         datastore.put(pd);
+        updateProjectSummary(datastore, userId, pd);
       } else {
         // return the (old) dateModified
         modDate = pd.dateModified;
@@ -1571,6 +1850,19 @@ public class ObjectifyStorageIo implements  StorageIo {
     final Result<Long> modTime = new Result<Long>();
     final boolean useGCS = useGCSforFile(fileName, content.length);
     final Result<String> oldBlobstoreKey = new Result<String>();
+    final Result<String> oldContentHash = new Result<String>();
+    final Result<String> oldgcsName = new Result<String>();
+    final ContentData shared;
+    if (useContentStoreForFile(fileName, content.length)) {
+      try {
+        shared = storeContent(content);
+      } catch (IOException | ObjectifyException e) {
+        throw CrashReport.createAndLogError(LOG, null,
+            collectProjectErrorInfo(userId, projectId, fileName), e);
+      }
+    } else {
+      shared = null;
+    }
     final boolean considerBackup = (useGcs?((fileName.contains("src/") && fileName.endsWith(".blk")) // AI1 Blocks Files
         || (fileName.contains("src/") && fileName.endsWith(".bky")) // Blockly files
         || (fileName.contains("src/") && fileName.endsWith(".scm"))) // Form Definitions
@@ -1619,7 +1911,22 @@ public class ObjectifyStorageIo implements  StorageIo {
             // mark the old blobstore blob for deletion
            oldBlobstoreKey.t = fd.blobKey;
           }
-          if (useGCS) {
+          // The old shared contents are released once the new contents are committed
+          oldContentHash.t = fd.contentHash;
+          oldgcsName.t = null;
+          if (shared != null) {
+            if (fd.contentHash == null && isTrue(fd.isGCS)) {
+              // The file's own GCS file is deleted once the shared contents are committed
+              oldgcsName.t = fd.gcsName;
+            }
+            fd.isGCS = true;
+            fd.gcsName = shared.gcsName;
+            fd.contentHash = shared.hash;
+            fd.content = null;
+            fd.isBlob = false;
+            fd.blobstorePath = null;
+          } else if (useGCS) {
+            fd.contentHash = null;
             fd.isGCS = true;
             fd.gcsName = makeGCSfileName(fileName, projectId);
             try {
@@ -1636,7 +1943,11 @@ public class ObjectifyStorageIo implements  StorageIo {
             fd.isBlob = false;  // in case we are converting from a blob
             fd.blobstorePath = null;
           } else {
-            if (isTrue(fd.isGCS)) {     // Was a GCS file, must have gotten smaller
+            if (fd.contentHash != null) {  // Was shared, released below
+              fd.isGCS = false;
+              fd.gcsName = null;
+              fd.contentHash = null;
+            } else if (isTrue(fd.isGCS)) {     // Was a GCS file, must have gotten smaller
               try {             // and is now stored in the data store
                 gcsService.delete(new GcsFilename(GCS_BUCKET_NAME, fd.gcsName));
               } catch (IOException e) {
@@ -1675,7 +1986,7 @@ public class ObjectifyStorageIo implements  StorageIo {
           }
           datastore.put(fd);
           memcache.put(key.getString(), fd); // Store the updated data in memcache
-          modTime.t = updateProjectModDate(datastore, projectId, doingConversion);
+          modTime.t = updateProjectModDate(datastore, userId, projectId, doingConversion, true);
         }
 
         @Override
@@ -1694,12 +2005,30 @@ public class ObjectifyStorageIo implements  StorageIo {
       if (oldBlobstoreKey.t != null) {
         deleteBlobstoreFile(oldBlobstoreKey.t);
       }
+      if (oldContentHash.t != null) {
+        releaseContent(oldContentHash.t);
+      }
+      if (oldgcsName.t != null) {
+        try {
+          gcsService.delete(new GcsFilename(GCS_BUCKET_NAME, oldgcsName.t));
+        } catch (IOException e) {
+          LOG.log(Level.WARNING, "Unable to delete " + oldgcsName.t + " from GCS.", e);
+        }
+      }
     } catch (ObjectifyException e) {
+      if (shared != null) {
+        releaseContent(shared.hash);
+      }
       if (e.getMessage().startsWith("Blocks")) { // Convert Exception
         throw new BlocksTruncatedException();
       }
       throw CrashReport.createAndLogError(LOG, null,
           collectProjectErrorInfo(userId, projectId, fileName), e);
+    } catch (RuntimeException e) {
+      if (shared != null) {
+        releaseContent(shared.hash);
+      }
+      throw e;
     }
     return modTime.t;
   }
@@ -1738,12 +2067,241 @@ public class ObjectifyStorageIo implements  StorageIo {
     return (projectId + "/" + fileName);
   }
 
+  /*
+   * Returns true if the contents of the given file are stored once and shared by all identical
+   * files. This is the case for project assets, which include media and extensions and which are
+   * copied unchanged between projects, the gallery and templates.
+   */
+  @VisibleForTesting
+  boolean useContentStoreForFile(String fileName, int length) {
+    return useGCSforFile(fileName, length) && fileName.contains("assets/");
+  }
+
+  /*
+   * Stores the contents as shared contents, or finds identical contents that are already stored,
+   * and returns the ContentData after adding a reference to it. The caller must release the
+   * reference when it is not used by a FileData object after all.
+   */
+  private ContentData storeContent(final byte[] content) throws ObjectifyException, IOException {
+    final String hash = Hashing.sha256().hashBytes(content).toString();
+    final Result<ContentData> stored = new Result<ContentData>();
+    // The GCS file written by this request, which is reused if the job is retried
+    final Result<String> written = new Result<String>();
+    JobRetryHelper job = new JobRetryHelper() {
+      @Override
+      public void run(Objectify datastore) throws IOException {
+        ContentData cd = datastore.find(ContentData.class, hash);
+        if (cd == null) {
+          // Write the GCS file before the ContentData is visible to other requests, so that
+          // anyone who finds the ContentData can read the contents.
+          if (written.t == null) {
+            written.t = makeContentGcsName(hash);
+            setGcsFileContent(written.t, content);
+          }
+          cd = new ContentData();
+          cd.hash = hash;
+          cd.gcsName = written.t;
+          cd.size = content.length;
+          datastore.put(cd);
+        }
+        // Contents that are already stored are only read, so that storing popular contents
+        // again only writes to one shard of the reference count.
+        addContentShardReference(datastore, hash);
+        stored.t = cd;
+      }
+    };
+    // See createProject for why the dev server can't use a transaction here
+    try {
+      runJobWithRetries(job, Server.isProductionServer(), true);
+    } catch (ObjectifyException | RuntimeException e) {
+      deleteUncommittedContent(hash, written.t);
+      throw e;
+    }
+    if (job.getIOException() != null) {
+      deleteUncommittedContent(hash, written.t);
+      throw job.getIOException();
+    }
+    if (written.t != null && !written.t.equals(stored.t.gcsName)) {
+      // Another request stored the same contents first
+      deleteContentGcsFile(written.t);
+    }
+    return stored.t;
+  }
+
+  /*
+   * Adds a reference to the shared contents of a project file. Returns null if the file does not
+   * have shared contents.
+   */
+  private ContentData addContentReference(String userId, long projectId, String fileName)
+      throws ObjectifyException {
+    FileData fd = ObjectifyService.begin().find(projectFileKey(projectKey(projectId), fileName));
+    if (fd == null || fd.contentHash == null) {
+      return null;
+    }
+    if (fd.userId != null && !fd.userId.equals("") && !fd.userId.equals(userId)) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectUserProjectErrorInfo(userId, projectId),
+          new UnauthorizedAccessException(userId, projectId, null));
+    }
+    final String hash = fd.contentHash;
+    final Result<ContentData> result = new Result<ContentData>();
+    runJobWithRetries(new JobRetryHelper() {
+      @Override
+      public void run(Objectify datastore) {
+        // Reading the ContentData in the transaction makes it fail if the contents are deleted
+        // before it commits.
+        result.t = datastore.find(ContentData.class, hash);
+        if (result.t != null) {
+          addContentShardReference(datastore, hash);
+        }
+      }
+    }, true, true);
+    return result.t;
+  }
+
+  /*
+   * Adds a reference to one shard of the reference count of shared contents, chosen at random.
+   */
+  private void addContentShardReference(Objectify datastore, String hash) {
+    Key<ContentShardData> key =
+        contentShardKey(hash, contentShardRandom.nextInt(CONTENT_REFERENCE_SHARDS));
+    ContentShardData shard = datastore.find(key);
+    if (shard == null) {
+      shard = new ContentShardData();
+      shard.id = key.getName();
+    }
+    shard.refCount++;
+    datastore.put(shard);
+  }
+
+  private static Key<ContentShardData> contentShardKey(String hash, int shard) {
+    return new Key<ContentShardData>(ContentShardData.class, hash + "-" + shard);
+  }
+
+  private static List<Key<ContentShardData>> contentShardKeys(String hash) {
+    List<Key<ContentShardData>> keys = new ArrayList<Key<ContentShardData>>();
+    for (int i = 0; i < CONTENT_REFERENCE_SHARDS; i++) {
+      keys.add(contentShardKey(hash, i));
+    }
+    return keys;
+  }
+
+  private static int sumContentShards(Collection<ContentShardData> shards) {
+    int sum = 0;
+    for (ContentShardData shard : shards) {
+      sum += shard.refCount;
+    }
+    return sum;
+  }
+
+  /*
+   * Releases a reference to shared contents. The contents are deleted when the last reference is
+   * released. Failures are logged rather than thrown because the caller has already committed
+   * its own changes; the worst outcome is contents that are never deleted.
+   */
+  private void releaseContent(final String hash) {
+    final Result<String> unreferenced = new Result<String>();
+    try {
+      final Key<ContentShardData> key =
+          contentShardKey(hash, contentShardRandom.nextInt(CONTENT_REFERENCE_SHARDS));
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          ContentShardData shard = datastore.find(key);
+          if (shard == null) {
+            shard = new ContentShardData();
+            shard.id = key.getName();
+          }
+          shard.refCount--;
+          datastore.put(shard);
+        }
+      }, true);
+      final List<Key<ContentShardData>> keys = contentShardKeys(hash);
+      if (sumContentShards(ObjectifyService.begin().get(keys).values()) > 0) {
+        return;
+      }
+      // That may have been the last reference. Check again in a transaction that reads every
+      // shard, so that it fails if a reference is added before it commits.
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          unreferenced.t = null;
+          ContentData cd = datastore.find(ContentData.class, hash);
+          if (cd == null) {
+            return;
+          }
+          Map<Key<ContentShardData>, ContentShardData> shards = datastore.get(keys);
+          if (sumContentShards(shards.values()) <= 0) {
+            datastore.delete(shards.keySet());
+            datastore.delete(cd);
+            unreferenced.t = cd.gcsName;
+          }
+        }
+      }, true, true);
+    } catch (ObjectifyException e) {
+      LOG.log(Level.WARNING, "Unable to release shared contents " + hash, e);
+      return;
+    }
+    if (unreferenced.t != null) {
+      // A new ContentData for the same hash gets a new GCS file name, so this cannot delete
+      // contents that were stored again in the meantime.
+      deleteContentGcsFile(unreferenced.t);
+    }
+  }
+
+  private void releaseContents(Collection<ContentData> contents) {
+    for (ContentData content : contents) {
+      releaseContent(content.hash);
+    }
+  }
+
+  private void releaseContentHashes(Collection<String> hashes) {
+    for (String hash : hashes) {
+      releaseContent(hash);
+    }
+  }
+
+  private void deleteContentGcsFile(String gcsName) {
+    try {
+      gcsService.delete(new GcsFilename(GCS_BUCKET_NAME, gcsName));
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, "Unable to delete shared contents " + gcsName + " from GCS.", e);
+    }
+  }
+
+  /*
+   * Deletes a GCS file written by storeContent whose job failed, unless the ContentData that
+   * refers to it was committed after all.
+   */
+  private void deleteUncommittedContent(String hash, String gcsName) {
+    if (gcsName == null) {
+      return;
+    }
+    try {
+      ContentData cd = ObjectifyService.begin().find(ContentData.class, hash);
+      if (cd != null && gcsName.equals(cd.gcsName)) {
+        return;
+      }
+    } catch (RuntimeException e) {
+      LOG.log(Level.WARNING, "Unable to check whether " + gcsName + " is used.", e);
+      return;
+    }
+    deleteContentGcsFile(gcsName);
+  }
+
+  // Make a GCS file name for shared contents
+  private static String makeContentGcsName(String hash) {
+    return "__CONTENT__/" + hash + "/" + UUID.randomUUID().toString();
+  }
+
   @Override
   public long deleteFile(final String userId, final long projectId, final String fileName) {
     validateGCS();
     final Result<Long> modTime = new Result<Long>();
     final Result<String> oldBlobKeyString = new Result<String>();
     final Result<String> oldgcsName = new Result<String>();
+    final Result<String> oldContentHash = new Result<String>();
+    final boolean crossGroup = isProjectModDateDue(projectId);
     try {
       runJobWithRetries(new JobRetryHelper() {
         @Override
@@ -1760,14 +2318,16 @@ public class ObjectifyStorageIo implements  StorageIo {
               }
             }
             oldBlobKeyString.t = fileData.blobKey;
-            if (isTrue(fileData.isGCS)) {
+            if (fileData.contentHash != null) {
+              oldContentHash.t = fileData.contentHash;
+            } else if (isTrue(fileData.isGCS)) {
               oldgcsName.t = fileData.gcsName;
             }
           }
           datastore.delete(fileKey);
-          modTime.t = updateProjectModDate(datastore, projectId, false);
+          modTime.t = updateProjectModDate(datastore, userId, projectId, false, crossGroup);
         }
-      }, true);
+      }, true, crossGroup);
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null,
           collectProjectErrorInfo(userId, projectId, fileName), e);
@@ -1782,6 +2342,9 @@ public class ObjectifyStorageIo implements  StorageIo {
         LOG.log(Level.WARNING, "Unable to delete " + oldgcsName + " from GCS.", e);
       }
     }
+    if (oldContentHash.t != null) {
+      releaseContent(oldContentHash.t);
+    }
     return (modTime.t == null) ? 0 : modTime.t;
   }
 
@@ -1825,32 +2388,9 @@ public class ObjectifyStorageIo implements  StorageIo {
   public byte[] downloadRawFile(final String userId, final long projectId, final String fileName) {
     validateGCS();
     final Result<byte[]> result = new Result<byte[]>();
-    final Result<FileData> fd = new Result<FileData>();
-    try {
-      runJobWithRetries(new JobRetryHelper() {
-        @Override
-        public void run(Objectify datastore) {
-          Key<FileData> fileKey = projectFileKey(projectKey(projectId), fileName);
-          fd.t = (FileData) memcache.get(fileKey.getString());
-          if (fd.t == null) {
-            fd.t = datastore.find(fileKey);
-          }
-        }
-      }, false); // Transaction not needed
-    } catch (ObjectifyException e) {
-      throw CrashReport.createAndLogError(LOG, null,
-          collectProjectErrorInfo(userId, projectId, fileName), e);
-    }
     // read the blob/GCS File outside of the job
-    FileData fileData = fd.t;
+    FileData fileData = findRawFileData(userId, projectId, fileName);
     if (fileData != null) {
-      if (fileData.userId != null && !fileData.userId.equals("")) {
-        if (!fileData.userId.equals(userId)) {
-          throw CrashReport.createAndLogError(LOG, null,
-            collectUserProjectErrorInfo(userId, projectId),
-            new UnauthorizedAccessException(userId, projectId, null));
-        }
-      }
       if (isTrue(fileData.isGCS)) {     // It's in the Cloud Store
         try {
           int count;
@@ -1964,6 +2504,96 @@ public class ObjectifyStorageIo implements  StorageIo {
     return result.t;
   }
 
+  @Override
+  public StoredRawFile openRawFile(final String userId, final long projectId,
+      final String fileName) throws IOException {
+    validateGCS();
+    FileData fileData = findRawFileData(userId, projectId, fileName);
+    if (fileData == null) {
+      throw new FileNotFoundException("No data for " + fileName);
+    }
+    String baseName = StorageUtil.basename(fileName);
+    if (isTrue(fileData.isGCS)) {     // It's in the Cloud Store
+      final GcsFilename gcsFileName = new GcsFilename(GCS_BUCKET_NAME, fileData.gcsName);
+      GcsFileMetadata metadata = gcsService.getMetadata(gcsFileName);
+      if (metadata == null) {
+        // Older zero length files are missing in GCS, see downloadRawFile
+        return StoredRawFile.fromContent(baseName, new byte[0]);
+      }
+      final long length = metadata.getLength();
+      String etag = metadata.getEtag();
+      if (etag == null) {
+        etag = length + "-" + metadata.getLastModified().getTime();
+      }
+      return new StoredRawFile(baseName, length, etag) {
+        @Override
+        public InputStream openStream(long offset) {
+          // The read channel does not tell us the length of what it reads, so the content
+          // is checked against the length from the metadata instead.
+          return new FixedLengthInputStream(Channels.newInputStream(
+              gcsService.openPrefetchingReadChannel(gcsFileName, offset,
+                  STREAM_READ_BUFFER_SIZE)), Math.max(0, length - offset), gcsFileName);
+        }
+      };
+    } else if (fileData.isBlob) {
+      if (fileData.blobKey == null) {
+        throw new FileNotFoundException("blobKey is null for " + fileName);
+      }
+      final BlobKey blobKey = new BlobKey(fileData.blobKey);
+      BlobInfo blobInfo = new BlobInfoFactory().loadBlobInfo(blobKey);
+      if (blobInfo == null) {
+        throw new FileNotFoundException("No blob for " + fileName);
+      }
+      String etag = blobInfo.getMd5Hash();
+      if (etag == null) {
+        // Blobs written by older versions of the Blobstore have no MD5 hash.
+        etag = blobInfo.getSize() + "-" + blobInfo.getCreation().getTime();
+      }
+      return new StoredRawFile(baseName, blobInfo.getSize(), etag) {
+        @Override
+        public InputStream openStream(long offset) throws IOException {
+          return new BlobstoreInputStream(blobKey, offset);
+        }
+      };
+    } else {
+      return StoredRawFile.fromContent(baseName,
+          fileData.content == null ? new byte[0] : fileData.content);
+    }
+  }
+
+  /*
+   * Looks up the entity of a project file, checking that the user may read
+   * it. Returns null if there is no such file.
+   */
+  private FileData findRawFileData(final String userId, final long projectId,
+      final String fileName) {
+    final Result<FileData> fd = new Result<FileData>();
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          Key<FileData> fileKey = projectFileKey(projectKey(projectId), fileName);
+          fd.t = (FileData) memcache.get(fileKey.getString());
+          if (fd.t == null) {
+            fd.t = datastore.find(fileKey);
+          }
+        }
+      }, false); // Transaction not needed
+    } catch (ObjectifyException e) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectProjectErrorInfo(userId, projectId, fileName), e);
+    }
+    FileData fileData = fd.t;
+    if (fileData != null && fileData.userId != null && !fileData.userId.equals("")) {
+      if (!fileData.userId.equals(userId)) {
+        throw CrashReport.createAndLogError(LOG, null,
+          collectUserProjectErrorInfo(userId, projectId),
+          new UnauthorizedAccessException(userId, projectId, null));
+      }
+    }
+    return fileData;
+  }
+
   // Note: this must be called outside of any transaction, since getBlobKey()
   // uses the current transaction and it will most likely have the wrong
   // entity group!
@@ -2409,28 +3039,15 @@ public class ObjectifyStorageIo implements  StorageIo {
     }
   }
 
-  // Cleanup expired nonces which are older then 3 hours. Normal Nonce lifetime
-  // is 2 hours. So for one hour they persist and return "link expired" instead of
-  // "link not found" (after the object itself is removed).
-  //
-  // Note: We only process up to 10 here to limit the amount of processing time
-  // we spend here. If we remove up to 10 for each call, we should keep ahead
-  // of the growing garbage.
+  // Cleanup expired nonces which are older then 3 hours. This is called
+  // whenever someone downloads a built APK via a QR Code, and does the next
+  // few batches of the work, so we keep ahead of the growing garbage without
+  // slowing down the download.
   //
   // Also note that we are not running in a transaction, there is no need
+  @Override
   public void cleanupNonces() {
-    Objectify datastore = ObjectifyService.begin();
-    // We do not use runJobWithRetries because if we fail here, we will be
-    // called again the next time someone attempts to download a built APK
-    // via a QR Code.
-    try {
-      datastore.delete(datastore.query(NonceData.class)
-        .filter("timestamp <", new Date((new Date()).getTime() - 3600*3*1000L))
-        .limit(10).fetchKeys());
-    } catch (Exception ex) {
-        LOG.log(Level.WARNING, "Exception during cleanupNonces", ex);
-    }
-
+    nonceCleanup.run();
   }
 
   @Override
@@ -2472,20 +3089,11 @@ public class ObjectifyStorageIo implements  StorageIo {
     return result.t;
   }
 
-  // Remove up to 10 expired PWData elements from the datastore
+  // Remove expired PWData elements, which are older than 24 hours, from the
+  // datastore. Like cleanupNonces, this does the next few batches of the work.
   @Override
   public void cleanuppwdata() {
-    Objectify datastore = ObjectifyService.begin();
-    // We do not use runJobWithRetries because if we fail here, we will be
-    // called again the next time someone attempts to set a password
-    // Note: we remove data after 24 hours.
-    try {
-      datastore.delete(datastore.query(PWData.class)
-        .filter("timestamp <", new Date((new Date()).getTime() - 3600*24*1000L))
-        .limit(10).fetchKeys());
-    } catch (Exception ex) {
-        LOG.log(Level.WARNING, "Exception during cleanupNonces", ex);
-    }
+    pwDataCleanup.run();
   }
 
   private Key<StoredData.PWData> pwdataKey(String uid) {
@@ -2543,10 +3151,22 @@ public class ObjectifyStorageIo implements  StorageIo {
    */
   @VisibleForTesting
   void runJobWithRetries(JobRetryHelper job, boolean useTransaction) throws ObjectifyException {
+    runJobWithRetries(job, useTransaction, false);
+  }
+
+  /*
+   * Runs a job like runJobWithRetries(job, useTransaction), except that if crossGroup is true the
+   * transaction may span up to 25 entity groups.
+   */
+  private void runJobWithRetries(JobRetryHelper job, boolean useTransaction, boolean crossGroup)
+      throws ObjectifyException {
     int tries = 0;
     while (tries <= MAX_JOB_RETRIES) {
       Objectify datastore;
-      if (useTransaction) {
+      if (useTransaction && crossGroup) {
+        datastore = ObjectifyService.begin(new ObjectifyOpts().setBeginTransaction(true)
+            .setTransactionOptions(TransactionOptions.Builder.withXG(true)));
+      } else if (useTransaction) {
         datastore = ObjectifyService.beginTransaction();
       } else {
         datastore = ObjectifyService.begin();
@@ -2618,19 +3238,11 @@ public class ObjectifyStorageIo implements  StorageIo {
     if (!fileName.startsWith("__TEMP__")) {
       throw new RuntimeException("deleteTempFile (" + fileName + ") Invalid File Name");
     }
+    // Temp files hold uploaded archives, which are read once from start to end, so stream them
+    // rather than reading the whole file into memory first.
     GcsFilename gcsFileName = new GcsFilename(GCS_BUCKET_NAME, fileName);
-    int fileSize = (int) gcsService.getMetadata(gcsFileName).getLength();
-    ByteBuffer resultBuffer = ByteBuffer.allocate(fileSize);
-    GcsInputChannel readChannel = gcsService.openReadChannel(gcsFileName, 0);
-    int bytesRead = 0;
-    try {
-      while (bytesRead < fileSize) {
-        bytesRead += readChannel.read(resultBuffer);
-      }
-    } finally {
-      readChannel.close();
-    }
-    return new ByteArrayInputStream(resultBuffer.array());
+    return Channels.newInputStream(gcsService.openPrefetchingReadChannel(gcsFileName, 0,
+        STREAM_READ_BUFFER_SIZE));
   }
 
   @Override
@@ -2669,6 +3281,19 @@ public class ObjectifyStorageIo implements  StorageIo {
     }
   }
 
+  @VisibleForTesting
+  int getContentReferenceCount(long projectId, String fileName) {
+    Objectify datastore = ObjectifyService.begin();
+    FileData fd = datastore.find(projectFileKey(projectKey(projectId), fileName));
+    if (fd == null || fd.contentHash == null) {
+      return 0;
+    }
+    if (datastore.find(ContentData.class, fd.contentHash) == null) {
+      return 0;
+    }
+    return sumContentShards(datastore.get(contentShardKeys(fd.contentHash)).values());
+  }
+
   @VisibleForTesting
   ProjectData getProject(long projectId) {
     return ObjectifyService.begin().find(projectKey(projectId));
@@ -2975,6 +3600,62 @@ public class ObjectifyStorageIo implements  StorageIo {
     }
   }
 
+  /*
+   * Reads exactly the given number of bytes from a stream, failing if the
+   * stream ends early or has more. A GCS file that is replaced while it is
+   * being sent, such as an APK that is built again, is not sent as a mix of
+   * the old and new content under the old length.
+   */
+  private static class FixedLengthInputStream extends FilterInputStream {
+    private final GcsFilename gcsFileName;
+    private long remaining;
+
+    FixedLengthInputStream(InputStream in, long length, GcsFilename gcsFileName) {
+      super(in);
+      this.remaining = length;
+      this.gcsFileName = gcsFileName;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (remaining == 0) {
+        if (len > 0 && in.read() != -1) {
+          throw new IOException(gcsFileName + " changed while it was being read");
+        }
+        return -1;
+      }
+      int count = in.read(b, off, (int) Math.min(len, remaining));
+      if (count == -1) {
+        throw new IOException(gcsFileName + " changed while it was being read");
+      }
+      remaining -= count;
+      return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = in.skip(Math.min(n, remaining));
+      remaining -= skipped;
+      return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return (int) Math.min(in.available(), remaining);
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+  }
+
   @Override
   public void assertUserHasProject(final String userId, final long projectId) {
     try {
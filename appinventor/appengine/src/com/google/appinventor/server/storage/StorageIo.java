@@ -14,6 +14,7 @@ import com.google.appinventor.shared.rpc.AdminInterfaceException;
 import com.google.appinventor.shared.rpc.project.Project;
 import com.google.appinventor.shared.rpc.project.ProjectSourceZip;
 import com.google.appinventor.shared.rpc.project.UserProject;
+import com.google.appinventor.shared.rpc.project.UserProjectPage;
 import com.google.appinventor.shared.rpc.user.User;
 import com.google.appinventor.shared.rpc.user.SplashConfig;
 
@@ -21,6 +22,7 @@ import java.io.InputStream;
 import java.io.IOException;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 import javax.annotation.Nullable;
@@ -176,6 +178,25 @@ public interface StorageIo {
    */
   long createProject(String userId, Project project, String projectSettings);
 
+  /**
+   * Creates a new project from the files of an existing project and uploads any additional
+   * files.
+   *
+   * <p>
+   * Files whose contents are shared between projects are copied by reference, without reading
+   * or writing their contents. This is an atomic operation.
+   *
+   * @param userId user id
+   * @param project project information and the files that are not copied
+   * @param projectSettings project settings
+   * @param sourceProjectId id of the project to copy files from
+   * @param copiedFiles map from file names in the source project to the names of the copies in
+   *                    the new project
+   * @return project id
+   */
+  long createProject(String userId, Project project, String projectSettings,
+      long sourceProjectId, Map<String, String> copiedFiles);
+
   /**
    * Deletes a project and all its files.
    *
@@ -260,6 +281,18 @@ public interface StorageIo {
 
   List<UserProject> getUserProjects(String userId, List<Long> projectIds);
 
+  /**
+   * Returns a page of the user's projects, in order of project id. The page
+   * is read from the project summaries kept with the user, without reading
+   * the projects themselves.
+   * @param userId a userId
+   * @param cursor the cursor returned with the previous page, or null for
+   *     the first page
+   * @param limit the largest number of projects to return
+   * @return the projects, and the cursor for the next page
+   */
+  UserProjectPage getUserProjectPage(String userId, String cursor, int limit);
+
   /**
    * Returns a project name.
    *
@@ -539,6 +572,17 @@ public interface StorageIo {
    */
   byte[] downloadRawFile(String userId, long projectId, String fileId);
 
+  /**
+   * Opens raw file data for streaming, without reading it into memory.
+   * @param userId a user Id (the request is made on behalf of this user)
+   * @param projectId  project ID
+   * @param fileId  file ID
+   *
+   * @return  the file, whose content is read when its stream is opened
+   * @throws java.io.FileNotFoundException if there is no such file
+   */
+  StoredRawFile openRawFile(String userId, long projectId, String fileId) throws IOException;
+
   /**
    * Creates a temporary file with the given content and returns
    * its file name, which will always begin with __TEMP__
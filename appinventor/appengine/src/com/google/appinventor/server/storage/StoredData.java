@@ -126,6 +126,17 @@ public class StoredData {
     // User specific project settings
     // TODO(user): is this ever used?
     String settings;
+
+    // A copy of the ProjectData fields shown in the project list, so that the list can be loaded
+    // with a single ancestor query. The name is null for projects created before these fields
+    // were added, until their summary is filled in from the ProjectData.
+    String name;
+    String type;
+    long dateCreated;
+    long dateModified;
+    long galleryId;
+    long attributionId;
+    boolean projectMovedToTrashFlag;
   }
 
   // Non-project-specific files (tied to user)
@@ -191,6 +202,11 @@ public class StoredData {
     // The GCS filename, sans bucket name
     String gcsName;
 
+    // If not null, the file contents are shared with other files and gcsName is the gcsName of
+    // the ContentData with this hash. The GCS file must not be written or deleted through this
+    // FileData; the ContentData reference has to be released instead.
+    String contentHash;
+
     // File settings
     String settings;
 
@@ -202,6 +218,35 @@ public class StoredData {
                                 // it yet
   }
 
+  // File contents that are shared by identical files in any number of projects, for example the
+  // media and extensions that are copied along with a project. The contents are stored once in
+  // GCS and FileData objects refer to them by hash.
+  @Unindexed
+  static final class ContentData {
+    // Hex encoded SHA-256 hash of the contents
+    @Id String hash;
+
+    // The GCS filename, sans bucket name. Each ContentData gets a new name, so contents that
+    // are stored again after being deleted never share a GCS file with the deleted ones.
+    String gcsName;
+
+    // Length of the contents in bytes
+    long size;
+  }
+
+  // One shard of the number of FileData objects that refer to a ContentData. Popular contents
+  // gain and lose references often, so the count is split over several entities, each in its own
+  // entity group, and a reference is added to or released from one of them at random. A shard
+  // can go below zero; only the sum of the shards is meaningful. The ContentData and its GCS file
+  // are deleted when the sum drops to zero.
+  @Unindexed
+  static final class ContentShardData {
+    // The hash of the contents, a dash and the number of the shard
+    @Id String id;
+
+    int refCount;
+  }
+
   // MOTD data.
   @Unindexed
   static final class MotdData {
@@ -0,0 +1,86 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server.storage;
+
+import com.google.common.hash.Hashing;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A raw file whose content is read from storage as a stream, rather than
+ * being held in memory, so that large files such as APKs can be sent to a
+ * client without reading them into memory first.
+ *
+ * <p>The entity tag changes whenever the content changes, so it can be used
+ * to answer conditional and range requests.</p>
+ */
+public abstract class StoredRawFile {
+
+  private final String fileName;
+  private final long length;
+  private final String etag;
+
+  /**
+   * Creates a stored raw file.
+   *
+   * @param fileName the file name, without any directories
+   * @param length the length of the content in bytes
+   * @param etag an opaque string that changes whenever the content changes
+   */
+  protected StoredRawFile(String fileName, long length, String etag) {
+    this.fileName = fileName;
+    this.length = length;
+    this.etag = etag;
+  }
+
+  /**
+   * Wraps content that is already in memory, such as a generated zip file.
+   *
+   * @param fileName the file name, without any directories
+   * @param content the content
+   */
+  public static StoredRawFile fromContent(String fileName, final byte[] content) {
+    return new StoredRawFile(fileName, content.length,
+        Hashing.md5().hashBytes(content).toString()) {
+      @Override
+      public InputStream openStream(long offset) {
+        int start = (int) Math.min(offset, content.length);
+        return new ByteArrayInputStream(content, start, content.length - start);
+      }
+    };
+  }
+
+  /**
+   * Returns the file name, without any directories.
+   */
+  public String getFileName() {
+    return fileName;
+  }
+
+  /**
+   * Returns the length of the content in bytes.
+   */
+  public long getLength() {
+    return length;
+  }
+
+  /**
+   * Returns an opaque string that changes whenever the content changes.
+   */
+  public String getEtag() {
+    return etag;
+  }
+
+  /**
+   * Opens the content for reading, starting at the given offset. The caller
+   * must close the stream.
+   *
+   * @param offset the number of bytes to skip at the start of the content
+   */
+  public abstract InputStream openStream(long offset) throws IOException;
+}
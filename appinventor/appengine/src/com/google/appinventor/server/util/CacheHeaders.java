@@ -6,6 +6,7 @@
 
 package com.google.appinventor.server.util;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 /**
@@ -30,4 +31,26 @@ public interface CacheHeaders {
    * @param resp the response
    */
   void setCacheablePrivate(HttpServletResponse resp);
+
+  /**
+   * Sets the entity tag of the given response, and checks whether the
+   * request's If-None-Match header matches it. If it does, the response
+   * should be sent with status 304 Not Modified and without a body.
+   *
+   * @param req the request
+   * @param resp the response
+   * @param etag the entity tag, without quotes
+   * @return whether the client already has the entity
+   */
+  boolean setEtag(HttpServletRequest req, HttpServletResponse resp, String etag);
+
+  /**
+   * Returns whether a range of the entity with the given tag may be sent in
+   * answer to the request, which is the case unless the request has an
+   * If-Range header that names some other version of the entity.
+   *
+   * @param req the request
+   * @param etag the entity tag, without quotes
+   */
+  boolean isRangeCurrent(HttpServletRequest req, String etag);
 }
@@ -8,6 +8,7 @@ package com.google.appinventor.server.util;
 
 import com.google.common.annotations.VisibleForTesting;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 /**
@@ -34,4 +35,35 @@ public class CacheHeadersImpl implements CacheHeaders {
     resp.setDateHeader("Expires", nowMillis);  // Forces HTTP/1.0 not to cache
     resp.setHeader("Cache-Control", "private,max-age=0");
   }
+
+  @Override
+  public boolean setEtag(HttpServletRequest req, HttpServletResponse resp, String etag) {
+    String quoted = quote(etag);
+    resp.setHeader("ETag", quoted);
+    String ifNoneMatch = req.getHeader("If-None-Match");
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String candidate : ifNoneMatch.split(",")) {
+      candidate = candidate.trim();
+      if (candidate.startsWith("W/")) {
+        candidate = candidate.substring(2);   // Weak comparison is fine for GET
+      }
+      if (candidate.equals("*") || candidate.equals(quoted)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public boolean isRangeCurrent(HttpServletRequest req, String etag) {
+    String ifRange = req.getHeader("If-Range");
+    // An If-Range with a date is not supported, so it never matches.
+    return ifRange == null || ifRange.trim().equals(quote(etag));
+  }
+
+  private static String quote(String etag) {
+    return "\"" + etag.replace("\"", "") + "\"";
+  }
 }
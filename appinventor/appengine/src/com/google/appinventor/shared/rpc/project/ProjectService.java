@@ -111,6 +111,14 @@ public interface ProjectService extends RemoteService {
    */
   List<UserProject> getProjectInfos();
 
+  /**
+   * Returns a page of project infos.
+   * @param cursor  the cursor returned with the previous page, or null for
+   *                the first page
+   * @return page of project infos found by the back-end
+   */
+  UserProjectPage getProjectInfoPage(String cursor);
+
   /**
    * Returns the root node for the given project.
    * @param projectId  project ID as received by
@@ -76,6 +76,11 @@ public interface ProjectServiceAsync {
    */
   void getProjectInfos(AsyncCallback<List<UserProject>> callback);
 
+  /**
+   * @see ProjectService#getProjectInfoPage(String)
+   */
+  void getProjectInfoPage(String cursor, AsyncCallback<UserProjectPage> callback);
+
   /**
    * @see ProjectService#getProject(long)
    */
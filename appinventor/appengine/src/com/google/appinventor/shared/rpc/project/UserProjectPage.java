@@ -0,0 +1,59 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.shared.rpc.project;
+
+import com.google.gwt.user.client.rpc.IsSerializable;
+
+import java.util.List;
+
+/**
+ * Bundles a page of a user's project infos with the cursor for the next page
+ * to send them over an RPC.
+ */
+public class UserProjectPage implements IsSerializable {
+  /**
+   * The project infos on this page.
+   */
+  private List<UserProject> projects;
+
+  /**
+   * The cursor for the next page, or null if this is the last page.
+   */
+  private String cursor;
+
+  /**
+   * Default constructor. This constructor is required by GWT.
+   */
+  @SuppressWarnings("unused")
+  private UserProjectPage() {
+  }
+
+  /**
+   * Creates a new page of project infos.
+   *
+   * @param projects the project infos
+   * @param cursor the cursor for the next page, or null if this is the last
+   *     page
+   */
+  public UserProjectPage(List<UserProject> projects, String cursor) {
+    this.projects = projects;
+    this.cursor = cursor;
+  }
+
+  /**
+   * Returns the project infos on this page.
+   */
+  public List<UserProject> getProjects() {
+    return projects;
+  }
+
+  /**
+   * Returns the cursor for the next page, or null if this is the last page.
+   */
+  public String getCursor() {
+    return cursor;
+  }
+}
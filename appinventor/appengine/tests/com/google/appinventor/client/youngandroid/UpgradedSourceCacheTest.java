@@ -0,0 +1,58 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.client.youngandroid;
+
+import com.google.appinventor.client.youngandroid.UpgradedSourceCache.UpgradedSource;
+import com.google.appinventor.server.properties.json.ServerJsonParser;
+import com.google.appinventor.shared.properties.json.JSONArray;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests UpgradedSourceCache.
+ */
+public class UpgradedSourceCacheTest extends TestCase {
+  private static final String SOURCE = "#|\n$JSON\n{\"YaVersion\":\"200\",\"Source\":\"Form\","
+      + "\"authURL\":[\"ai2.appinventor.mit.edu\"],\"Properties\":{\"$Name\":\"Screen1\"}}\n|#";
+  private static final String AUTH_URL = "[\"ai2.appinventor.mit.edu\",\"localhost\"]";
+
+  public void testAuthUrlSurvivesSecondLoad() {
+    UpgradedSourceCache cache = new UpgradedSourceCache(1024 * 1024);
+    assertNull(cache.get(SOURCE));
+    cache.put(SOURCE, "{}", null, AUTH_URL);
+
+    // Loading the same source again must tag the form as the first load did, or saving it
+    // would drop its edit history.
+    for (int i = 0; i < 2; i++) {
+      UpgradedSource cached = cache.get(SOURCE);
+      assertNotNull(cached);
+      assertNull(cached.upgradedContent);
+      JSONArray authURL = new ServerJsonParser().parse(cached.authURL).asArray();
+      assertEquals(2, authURL.getElements().size());
+      assertEquals("localhost", authURL.getElements().get(1).asString().getString());
+    }
+  }
+
+  public void testLeastRecentlyUsedSourceIsForgotten() {
+    // Each entry costs 2 + 2 + 2 characters.
+    UpgradedSourceCache cache = new UpgradedSourceCache(24);
+    cache.put("s1", "{}", null, "[]");
+    cache.put("s2", "{}", null, "[]");
+    cache.put("s3", "{}", null, "[]");
+    cache.get("s1");
+    cache.put("s4", "{}", null, "[]");
+    cache.put("s5", "{}", null, "[]");
+    assertNotNull(cache.get("s1"));
+    assertNull(cache.get("s2"));
+    assertNotNull(cache.get("s5"));
+  }
+
+  public void testHugeSourceIsNotCached() {
+    UpgradedSourceCache cache = new UpgradedSourceCache(24);
+    cache.put("a huge source file", "{}", null, "[]");
+    assertNull(cache.get("a huge source file"));
+  }
+}
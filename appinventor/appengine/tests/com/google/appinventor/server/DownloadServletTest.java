@@ -8,6 +8,7 @@ package com.google.appinventor.server;
 
 import com.google.appinventor.server.storage.StorageIo;
 import com.google.appinventor.server.storage.StorageIoInstanceHolder;
+import com.google.appinventor.server.storage.StoredRawFile;
 import com.google.appinventor.shared.rpc.project.ProjectSourceZip;
 import com.google.appinventor.shared.rpc.project.RawFile;
 import com.riq.MockHttpServletRequest;
@@ -20,10 +21,16 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
 import java.util.List;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
 import static junit.framework.Assert.fail;
 import static org.easymock.EasyMock.expect;
 
@@ -45,10 +52,11 @@ public class DownloadServletTest {
   private static final String DUMMY_ZIP_FILENAME = "filename123.aia";
   private static final String DUMMY_ZIP_FILENAME_WITH_TITLE = "MyProjectTitle123.aia";
   private static final String DOWNLOAD_URL = "http://localhost/baseUrl/download/";
+  private static final byte[] APK_CONTENT = { (byte) 0, (byte) 1, (byte) 2, (byte) 3, (byte) 4 };
 
   private ProjectSourceZip dummyZip;
   private ProjectSourceZip dummyZipWithTitle;
-  private RawFile dummyApk;
+  private StoredRawFile dummyApk;
   private RawFile dummyFile;
 
   private FileExporterImpl exporterMock;
@@ -69,7 +77,7 @@ public class DownloadServletTest {
 
     dummyZip = new ProjectSourceZip(DUMMY_ZIP_FILENAME, new byte[] {}, 2);
     dummyZipWithTitle = new ProjectSourceZip(DUMMY_ZIP_FILENAME_WITH_TITLE, new byte[] {}, 2);
-    dummyApk = new RawFile(DUMMY_APK_FILENAME, new byte[] {});
+    dummyApk = StoredRawFile.fromContent(DUMMY_APK_FILENAME, APK_CONTENT);
     dummyFile = new RawFile(DUMMY_FILENAME, new byte[] {});
   }
 
@@ -131,7 +139,7 @@ public class DownloadServletTest {
   public void testDownloadProjectOutputFileWithoutTarget() throws IOException {
     MockHttpServletRequest request = new MockHttpServletRequest(DOWNLOAD_URL +
         "project-output/1234");
-    expect(exporterMock.exportProjectOutputFile(USER_ID, PROJECT_ID, null))
+    expect(exporterMock.openProjectOutputFile(USER_ID, PROJECT_ID, null))
         .andReturn(dummyApk);
     PowerMock.replayAll();
     DownloadServlet download = new DownloadServlet();
@@ -147,7 +155,7 @@ public class DownloadServletTest {
   public void testDownloadProjectOutputFileWithTarget() throws IOException {
     MockHttpServletRequest request = new MockHttpServletRequest(DOWNLOAD_URL +
         "project-output/1234/target1");
-    expect(exporterMock.exportProjectOutputFile(USER_ID, PROJECT_ID, "target1"))
+    expect(exporterMock.openProjectOutputFile(USER_ID, PROJECT_ID, "target1"))
         .andReturn(dummyApk);
     PowerMock.replayAll();
     DownloadServlet download = new DownloadServlet();
@@ -159,12 +167,141 @@ public class DownloadServletTest {
     PowerMock.verifyAll();
   }
 
+  @Test
+  public void testDownloadProjectOutputFileRange() throws IOException {
+    MockHttpServletRequest request = new MockHttpServletRequest(DOWNLOAD_URL +
+        "project-output/1234");
+    request.setHeader("Range", "bytes=2-");
+    expect(exporterMock.openProjectOutputFile(USER_ID, PROJECT_ID, null))
+        .andReturn(dummyApk);
+    PowerMock.replayAll();
+    DownloadServlet download = new DownloadServlet();
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    download.doGet(request, response);
+    assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+    assertEquals("bytes 2-4/5", response.getHeaders("Content-Range").get(0));
+    assertTrue(Arrays.equals(new byte[] { (byte) 2, (byte) 3, (byte) 4 },
+        response.getContentAsByteArray()));
+    PowerMock.verifyAll();
+  }
+
+  @Test
+  public void testDownloadProjectOutputFileRangeOfOtherVersion() throws IOException {
+    MockHttpServletRequest request = new MockHttpServletRequest(DOWNLOAD_URL +
+        "project-output/1234");
+    request.setHeader("Range", "bytes=2-");
+    request.setHeader("If-Range", "\"some-other-version\"");
+    expect(exporterMock.openProjectOutputFile(USER_ID, PROJECT_ID, null))
+        .andReturn(dummyApk);
+    PowerMock.replayAll();
+    DownloadServlet download = new DownloadServlet();
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    download.doGet(request, response);
+    assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+    assertTrue(Arrays.equals(APK_CONTENT, response.getContentAsByteArray()));
+    PowerMock.verifyAll();
+  }
+
+  @Test
+  public void testDownloadProjectOutputFileNotModified() throws IOException {
+    MockHttpServletRequest request = new MockHttpServletRequest(DOWNLOAD_URL +
+        "project-output/1234");
+    request.setHeader("If-None-Match", "\"" + dummyApk.getEtag() + "\"");
+    expect(exporterMock.openProjectOutputFile(USER_ID, PROJECT_ID, null))
+        .andReturn(dummyApk);
+    PowerMock.replayAll();
+    DownloadServlet download = new DownloadServlet();
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    download.doGet(request, response);
+    assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+    assertEquals(0, response.getContentAsByteArray().length);
+    PowerMock.verifyAll();
+  }
+
+  @Test
+  public void testDownloadProjectOutputFileIsRevalidated() throws IOException {
+    MockHttpServletRequest request = new MockHttpServletRequest(DOWNLOAD_URL +
+        "project-output/1234");
+    expect(exporterMock.openProjectOutputFile(USER_ID, PROJECT_ID, null))
+        .andReturn(dummyApk);
+    PowerMock.replayAll();
+    DownloadServlet download = new DownloadServlet();
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    download.doGet(request, response);
+    assertEquals("private,max-age=0", response.getHeaders("Cache-Control").get(0));
+    assertFalse(response.containsHeader("Pragma"));
+    PowerMock.verifyAll();
+  }
+
+  @Test
+  public void testDownloadProjectSourceZipIsNotCacheable() throws IOException {
+    MockHttpServletRequest request = new MockHttpServletRequest(DOWNLOAD_URL +
+        "project-source/1234");
+    expect(exporterMock.exportProjectSourceZip(USER_ID, PROJECT_ID, true, false, null, false, false, false, false))
+        .andReturn(dummyZip);
+    PowerMock.replayAll();
+    DownloadServlet download = new DownloadServlet();
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    download.doGet(request, response);
+    assertEquals("no-cache", response.getHeaders("Pragma").get(0));
+    PowerMock.verifyAll();
+  }
+
+  @Test
+  public void testDownloadProjectOutputFileReadsStreamToEnd() throws IOException {
+    // A stream that checks its length can only notice extra content if it is read to its end.
+    final boolean[] readToEnd = { false };
+    StoredRawFile apk = new StoredRawFile(DUMMY_APK_FILENAME, APK_CONTENT.length, "etag") {
+      @Override
+      public InputStream openStream(long offset) {
+        return new ByteArrayInputStream(APK_CONTENT, (int) offset, APK_CONTENT.length) {
+          @Override
+          public int read(byte[] b, int off, int len) {
+            int count = super.read(b, off, len);
+            if (count == -1) {
+              readToEnd[0] = true;
+            }
+            return count;
+          }
+        };
+      }
+    };
+    MockHttpServletRequest request = new MockHttpServletRequest(DOWNLOAD_URL +
+        "project-output/1234");
+    expect(exporterMock.openProjectOutputFile(USER_ID, PROJECT_ID, null))
+        .andReturn(apk);
+    PowerMock.replayAll();
+    DownloadServlet download = new DownloadServlet();
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    download.doGet(request, response);
+    assertTrue(Arrays.equals(APK_CONTENT, response.getContentAsByteArray()));
+    assertTrue(readToEnd[0]);
+    PowerMock.verifyAll();
+  }
+
+  @Test
+  public void testParseRange() {
+    assertRange(0, 9, "bytes=0-9");
+    assertRange(90, 99, "bytes=90-");
+    assertRange(80, 99, "bytes=-20");
+    assertRange(50, 99, "bytes=50-500");
+    assertEquals(StoredFileDownload.UNSATISFIABLE, StoredFileDownload.parseRange("bytes=100-", 100));
+    assertNull(StoredFileDownload.parseRange("bytes=0-1,5-6", 100));
+    assertNull(StoredFileDownload.parseRange("bytes=9-0", 100));
+    assertNull(StoredFileDownload.parseRange("items=0-9", 100));
+  }
+
+  private void assertRange(long start, long end, String range) {
+    assertTrue(Arrays.equals(new long[] { start, end },
+        StoredFileDownload.parseRange(range, 100)));
+  }
+
   @Test
   public void testDownloadProjectOutputFileWithNonExistingProject() throws IOException {
     IllegalArgumentException expectedException = new IllegalArgumentException();
     MockHttpServletRequest request = new MockHttpServletRequest(DOWNLOAD_URL +
         "project-output/12345");
-    expect(exporterMock.exportProjectOutputFile(USER_ID, 12345L, null))
+    expect(exporterMock.openProjectOutputFile(USER_ID, 12345L, null))
         .andThrow(expectedException);
     PowerMock.replayAll();
     DownloadServlet download = new DownloadServlet();
@@ -182,7 +319,7 @@ public class DownloadServletTest {
     IllegalArgumentException expectedException = new IllegalArgumentException();
     MockHttpServletRequest request = new MockHttpServletRequest(DOWNLOAD_URL +
         "project-output/1234/target3");
-    expect(exporterMock.exportProjectOutputFile(USER_ID, PROJECT_ID, "target3"))
+    expect(exporterMock.openProjectOutputFile(USER_ID, PROJECT_ID, "target3"))
         .andThrow(expectedException);
     PowerMock.replayAll();
     DownloadServlet download = new DownloadServlet();
@@ -15,8 +15,10 @@ import com.google.appinventor.shared.rpc.project.youngandroid.YoungAndroidProjec
 
 import junitx.framework.ListAssert;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -198,4 +200,45 @@ public class FileImporterImplTest extends LocalDatastoreTestCase {
     }
   }
 
+  public void testReadContent_knownSize() throws Exception {
+    byte[] content = {1, 2, 3, 4};
+    assertTrue(Arrays.equals(content,
+        FileImporterImpl.readContent(new ByteArrayInputStream(content), 4, 10)));
+  }
+
+  public void testReadContent_unknownSize() throws Exception {
+    byte[] content = {1, 2, 3, 4};
+    assertTrue(Arrays.equals(content,
+        FileImporterImpl.readContent(new ByteArrayInputStream(content), -1, 10)));
+  }
+
+  public void testReadContent_wrongSize() throws Exception {
+    // The declared size is too small, so the rest of the stream is read too.
+    byte[] content = {1, 2, 3, 4, 5, 6};
+    assertTrue(Arrays.equals(content,
+        FileImporterImpl.readContent(new ByteArrayInputStream(content), 2, 10)));
+  }
+
+  public void testReadContent_tooLarge() throws Exception {
+    byte[] content = new byte[11];
+    try {
+      FileImporterImpl.readContent(new ByteArrayInputStream(content), 11, 10);
+      fail();
+    } catch (FileImporterException e) {
+      assertEquals(UploadResponse.Status.FILE_TOO_LARGE, e.uploadResponse.getStatus());
+    }
+    // The declared size may be wrong, so the content read is checked too.
+    try {
+      FileImporterImpl.readContent(new ByteArrayInputStream(content), 4, 10);
+      fail();
+    } catch (FileImporterException e) {
+      assertEquals(UploadResponse.Status.FILE_TOO_LARGE, e.uploadResponse.getStatus());
+    }
+    try {
+      FileImporterImpl.readContent(new ByteArrayInputStream(content), -1, 10);
+      fail();
+    } catch (FileImporterException e) {
+      assertEquals(UploadResponse.Status.FILE_TOO_LARGE, e.uploadResponse.getStatus());
+    }
+  }
 }
@@ -0,0 +1,193 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server;
+
+import com.google.appinventor.server.storage.StorageIo;
+import com.google.appinventor.server.storage.StorageIoInstanceHolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests ProjectFileUploader.
+ */
+public class ProjectFileUploaderTest extends LocalDatastoreTestCase {
+  private static final String USER_ID = "12345678";
+  private static final String USER_EMAIL_ADDRESS = "joeuser@gmail.com";
+  private static final String PROJECT_NAME = "project1";
+  private static final String FILE_NAME_1 = "assets/one.txt";
+  private static final String FILE_NAME_2 = "assets/two.txt";
+
+  private StorageIo storageIo;
+  private long projectId;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    storageIo = StorageIoInstanceHolder.getInstance();
+    storageIo.getUser(USER_ID, USER_EMAIL_ADDRESS);
+    File zip = new File(FileImporterImplTest.TESTING_SOURCE_PATH + "Project1.zip");
+    projectId = new FileImporterImpl().importProject(USER_ID, PROJECT_NAME,
+        new FileInputStream(zip)).getProjectId();
+    storageIo.addSourceFilesToProject(USER_ID, projectId, false, FILE_NAME_1, FILE_NAME_2);
+  }
+
+  public void testUpload() throws Exception {
+    byte[] content1 = {1, 2, 3};
+    byte[] content2 = {4, 5, 6, 7};
+    ProjectFileUploader uploader = new ProjectFileUploader(storageIo, USER_ID, projectId);
+    try {
+      uploader.upload(FILE_NAME_1, content1);
+      uploader.upload(FILE_NAME_2, content2);
+      long modDate = uploader.finish();
+      assertEquals(storageIo.getProjectDateModified(USER_ID, projectId), modDate);
+    } finally {
+      uploader.close();
+    }
+    assertTrue(Arrays.equals(content1, storageIo.downloadRawFile(USER_ID, projectId, FILE_NAME_1)));
+    assertTrue(Arrays.equals(content2, storageIo.downloadRawFile(USER_ID, projectId, FILE_NAME_2)));
+  }
+
+  public void testFinishWithoutUploads() throws Exception {
+    ProjectFileUploader uploader = new ProjectFileUploader(storageIo, USER_ID, projectId);
+    assertEquals(0, uploader.finish());
+  }
+
+  public void testParallelUploads() throws Exception {
+    // Each upload waits until all of them have started, so this only finishes if the files are
+    // uploaded at the same time. They report modification dates out of order.
+    final CountDownLatch started = new CountDownLatch(ProjectFileUploader.UPLOAD_THREADS);
+    final List<String> uploaded = Collections.synchronizedList(new ArrayList<String>());
+    StorageIo storage = fakeStorage(new RawUpload() {
+      @Override
+      public long upload(String fileName, byte[] content) throws InterruptedException {
+        started.countDown();
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        uploaded.add(fileName);
+        return content[0];
+      }
+    });
+    ExecutorService executor = Executors.newFixedThreadPool(ProjectFileUploader.UPLOAD_THREADS);
+    ProjectFileUploader uploader = new ProjectFileUploader(storage, USER_ID, projectId, executor);
+    try {
+      uploader.upload("assets/a.txt", new byte[] {20});
+      uploader.upload("assets/b.txt", new byte[] {40});
+      uploader.upload("assets/c.txt", new byte[] {10});
+      uploader.upload("assets/d.txt", new byte[] {30});
+      assertEquals(40, uploader.finish());
+    } finally {
+      uploader.close();
+    }
+    assertEquals(
+        new HashSet<String>(Arrays.asList("assets/a.txt", "assets/b.txt", "assets/c.txt",
+            "assets/d.txt")),
+        new HashSet<String>(uploaded));
+    assertTrue(executor.isShutdown());
+  }
+
+  public void testUploadWaitsForPendingContent() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<String> uploaded = Collections.synchronizedList(new ArrayList<String>());
+    StorageIo storage = fakeStorage(new RawUpload() {
+      @Override
+      public long upload(String fileName, byte[] content) throws InterruptedException {
+        if (fileName.equals(FILE_NAME_1)) {
+          assertTrue(release.await(10, TimeUnit.SECONDS));
+        }
+        uploaded.add(fileName);
+        return 0;
+      }
+    });
+    final ProjectFileUploader uploader = new ProjectFileUploader(storage, USER_ID, projectId,
+        Executors.newFixedThreadPool(ProjectFileUploader.UPLOAD_THREADS));
+    try {
+      // The first file takes up the whole budget, so the second waits for it to be uploaded.
+      uploader.upload(FILE_NAME_1, new byte[ProjectFileUploader.MAX_PENDING_KB * 1024]);
+      Thread second = new Thread() {
+        @Override
+        public void run() {
+          try {
+            uploader.upload(FILE_NAME_2, new byte[1]);
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      };
+      second.start();
+      second.join(200);
+      assertTrue(second.isAlive());
+      release.countDown();
+      second.join(10000);
+      assertFalse(second.isAlive());
+      uploader.finish();
+    } finally {
+      uploader.close();
+    }
+    assertEquals(Arrays.asList(FILE_NAME_1, FILE_NAME_2), uploaded);
+  }
+
+  public void testFailedUploadIsRethrown() throws Exception {
+    final RuntimeException failure = new IllegalStateException("Storage failed");
+    StorageIo storage = fakeStorage(new RawUpload() {
+      @Override
+      public long upload(String fileName, byte[] content) {
+        if (fileName.equals(FILE_NAME_1)) {
+          throw failure;
+        }
+        return 1;
+      }
+    });
+    ExecutorService executor = Executors.newFixedThreadPool(ProjectFileUploader.UPLOAD_THREADS);
+    ProjectFileUploader uploader = new ProjectFileUploader(storage, USER_ID, projectId, executor);
+    try {
+      // The failure is rethrown by whichever call first sees that the upload completed.
+      uploader.upload(FILE_NAME_1, new byte[1]);
+      uploader.upload(FILE_NAME_2, new byte[1]);
+      uploader.finish();
+      fail("Expected the failed upload to be rethrown");
+    } catch (IllegalStateException e) {
+      assertSame(failure, e);
+    } finally {
+      uploader.close();
+    }
+    assertTrue(executor.isShutdown());
+  }
+
+  private interface RawUpload {
+    long upload(String fileName, byte[] content) throws InterruptedException;
+  }
+
+  /**
+   * Returns a StorageIo that passes raw file uploads to the given upload and supports nothing
+   * else.
+   */
+  private static StorageIo fakeStorage(final RawUpload upload) {
+    return (StorageIo) Proxy.newProxyInstance(
+        StorageIo.class.getClassLoader(), new Class<?>[] { StorageIo.class },
+        new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("uploadRawFileForce")) {
+              return upload.upload((String) args[1], (byte[]) args[3]);
+            }
+            throw new UnsupportedOperationException(method.getName());
+          }
+        });
+  }
+}
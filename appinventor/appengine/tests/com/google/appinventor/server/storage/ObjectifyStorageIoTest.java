@@ -7,14 +7,20 @@
 package com.google.appinventor.server.storage;
 
 import com.google.appengine.api.blobstore.BlobKey;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
 import com.google.appinventor.server.LocalDatastoreTestCase;
+import com.google.appinventor.server.storage.StoredData.NonceData;
 import com.google.appinventor.server.storage.StoredData.ProjectData;
+import com.google.appinventor.server.storage.StoredData.UserData;
+import com.google.appinventor.server.storage.StoredData.UserProjectData;
 import com.google.appinventor.shared.rpc.BlocksTruncatedException;
 import com.google.appinventor.shared.rpc.component.Component;
 import com.google.appinventor.shared.rpc.project.Project;
 import com.google.appinventor.shared.rpc.project.RawFile;
 import com.google.appinventor.shared.rpc.project.TextFile;
 import com.google.appinventor.shared.rpc.project.UserProject;
+import com.google.appinventor.shared.rpc.project.UserProjectPage;
 import com.google.appinventor.shared.rpc.project.ProjectSourceZip;
 import com.google.appinventor.shared.rpc.project.youngandroid.YoungAndroidProjectNode;
 import com.google.appinventor.shared.rpc.user.User;
@@ -22,16 +28,27 @@ import com.google.appinventor.shared.storage.StorageUtil;
 
 import com.google.common.base.Charsets;
 
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Objectify;
+import com.googlecode.objectify.ObjectifyService;
+
 import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.ConcurrentModificationException;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.json.JSONObject;
 
@@ -168,8 +185,9 @@ public class ObjectifyStorageIoTest extends LocalDatastoreTestCase {
   public void testCreateProjectFailFirst() {
     final String USER_ID = "600";
     final String USER_EMAIL = "newuser600@test.com";
-    // fail on first job in createProject (2nd job overall)
-    StorageIo throwingStorage = new FailingJobObjectifyStorageIo(2);
+    // fail on first job in createProject (4th job overall, after the jobs that store the
+    // contents of the two asset files)
+    StorageIo throwingStorage = new FailingJobObjectifyStorageIo(4);
 
     try {
       throwingStorage.getUser(USER_ID, USER_EMAIL);
@@ -185,8 +203,8 @@ public class ObjectifyStorageIoTest extends LocalDatastoreTestCase {
   public void testCreateProjectFailSecond() {
     final String USER_ID = "700";
     final String USER_EMAIL = "newuser700@test.com";
-    // fail on second job in createProject (3rd job overall)
-    StorageIo throwingStorage = new FailingJobObjectifyStorageIo(3);
+    // fail on second job in createProject (5th job overall)
+    StorageIo throwingStorage = new FailingJobObjectifyStorageIo(5);
 
     try {
       throwingStorage.getUser(USER_ID, USER_EMAIL);
@@ -446,6 +464,52 @@ public class ObjectifyStorageIoTest extends LocalDatastoreTestCase {
     // TODO(sharon): should test large blob files (e.g., >2MB (chunk size), >4MB (row size));
   }
 
+  public void testSharedAssetContents() throws BlocksTruncatedException {
+    final String USER_ID = "1350";
+    final String USER_EMAIL = "newuser1350@test.com";
+    storage.getUser(USER_ID, USER_EMAIL);
+    long projectId1 = createProject(
+        USER_ID, PROJECT_NAME, YoungAndroidProjectNode.YOUNG_ANDROID_PROJECT_TYPE,
+        FORM_QUALIFIED_NAME);
+    long projectId2 = createProject(
+        USER_ID, PROJECT_NAME, YoungAndroidProjectNode.YOUNG_ANDROID_PROJECT_TYPE,
+        FORM_QUALIFIED_NAME);
+    storage.addSourceFilesToProject(USER_ID, projectId1, false, ASSET_FILE_NAME1);
+    storage.uploadRawFile(projectId1, ASSET_FILE_NAME1, USER_ID, true, ASSET_FILE_CONTENT1);
+    storage.addSourceFilesToProject(USER_ID, projectId2, false, ASSET_FILE_NAME1);
+    storage.uploadRawFile(projectId2, ASSET_FILE_NAME1, USER_ID, true, ASSET_FILE_CONTENT1);
+    assertEquals(2, storage.getContentReferenceCount(projectId1, ASSET_FILE_NAME1));
+
+    // Changing the contents in one project doesn't affect the other
+    storage.uploadRawFile(projectId2, ASSET_FILE_NAME1, USER_ID, true, RAW_FILE_CONTENT3);
+    assertEquals(1, storage.getContentReferenceCount(projectId1, ASSET_FILE_NAME1));
+    assertTrue(Arrays.equals(ASSET_FILE_CONTENT1,
+        storage.downloadRawFile(USER_ID, projectId1, ASSET_FILE_NAME1)));
+    assertTrue(Arrays.equals(RAW_FILE_CONTENT3,
+        storage.downloadRawFile(USER_ID, projectId2, ASSET_FILE_NAME1)));
+
+    // Copies refer to the same contents
+    Project copy = new Project("Copy");
+    copy.setProjectType(YoungAndroidProjectNode.YOUNG_ANDROID_PROJECT_TYPE);
+    long copyId = storage.createProject(USER_ID, copy, SETTINGS, projectId1,
+        Collections.singletonMap(ASSET_FILE_NAME1, ASSET_FILE_NAME1));
+    assertEquals(2, storage.getContentReferenceCount(copyId, ASSET_FILE_NAME1));
+    assertTrue(Arrays.equals(ASSET_FILE_CONTENT1,
+        storage.downloadRawFile(USER_ID, copyId, ASSET_FILE_NAME1)));
+
+    // Deleting a project or file releases its references
+    storage.deleteProject(USER_ID, projectId1);
+    assertEquals(1, storage.getContentReferenceCount(copyId, ASSET_FILE_NAME1));
+    assertTrue(Arrays.equals(ASSET_FILE_CONTENT1,
+        storage.downloadRawFile(USER_ID, copyId, ASSET_FILE_NAME1)));
+    storage.deleteFile(USER_ID, projectId2, ASSET_FILE_NAME1);
+    storage.addSourceFilesToProject(USER_ID, projectId2, false, ASSET_FILE_NAME1);
+    storage.uploadRawFile(projectId2, ASSET_FILE_NAME1, USER_ID, true, ASSET_FILE_CONTENT1);
+    assertEquals(2, storage.getContentReferenceCount(projectId2, ASSET_FILE_NAME1));
+    storage.removeSourceFilesFromProject(USER_ID, copyId, false, ASSET_FILE_NAME1);
+    assertEquals(1, storage.getContentReferenceCount(projectId2, ASSET_FILE_NAME1));
+  }
+
   public void testOldBlockFilesInDatastoreStillWork() throws BlocksTruncatedException {
     // Create new storage object that forces storage in the datastore
     ObjectifyStorageIo oldStyleStorage = new ObjectifyStorageIo() {
@@ -495,6 +559,143 @@ public class ObjectifyStorageIoTest extends LocalDatastoreTestCase {
     assertNull(result);
   }
 
+  public void testUserProjectPage() {
+    final String USER_ID = "1510";
+    final String USER_EMAIL = "newuser1510@test.com";
+    storage.getUser(USER_ID, USER_EMAIL);
+    long projectId1 = createProject(USER_ID, "Page1", FAKE_PROJECT_TYPE, FORM_QUALIFIED_NAME);
+    long projectId2 = createProject(USER_ID, "Page2", FAKE_PROJECT_TYPE, FORM_QUALIFIED_NAME);
+    long projectId3 = createProject(USER_ID, "Page3", FAKE_PROJECT_TYPE, FORM_QUALIFIED_NAME);
+    storage.setMoveToTrashFlag(USER_ID, projectId2, true);
+    storage.setProjectGalleryId(USER_ID, projectId3, 42);
+
+    UserProjectPage page = storage.getUserProjectPage(USER_ID, null, 2);
+    assertEquals(2, page.getProjects().size());
+    assertNotNull(page.getCursor());
+    List<UserProject> projects = new ArrayList<UserProject>(page.getProjects());
+    page = storage.getUserProjectPage(USER_ID, page.getCursor(), 2);
+    assertEquals(1, page.getProjects().size());
+    assertNull(page.getCursor());
+    projects.addAll(page.getProjects());
+
+    Set<Long> projectIds = new HashSet<Long>();
+    for (UserProject userProject : projects) {
+      projectIds.add(userProject.getProjectId());
+      UserProject expected = storage.getUserProject(USER_ID, userProject.getProjectId());
+      assertEquals(expected.getProjectName(), userProject.getProjectName());
+      assertEquals(expected.getProjectType(), userProject.getProjectType());
+      assertEquals(expected.getDateCreated(), userProject.getDateCreated());
+      assertEquals(expected.getDateModified(), userProject.getDateModified());
+      assertEquals(expected.isInTrash(), userProject.isInTrash());
+      assertEquals(expected.getGalleryId(), userProject.getGalleryId());
+    }
+    assertEquals(new HashSet<Long>(Arrays.asList(projectId1, projectId2, projectId3)),
+        projectIds);
+    assertTrue(storage.getUserProject(USER_ID, projectId2).isInTrash());
+    assertEquals(42, storage.getUserProject(USER_ID, projectId3).getGalleryId());
+  }
+
+  public void testDeleteFileUpdatesSummaryModDate() {
+    final String USER_ID = "1515";
+    final String USER_EMAIL = "newuser1515@test.com";
+    storage.getUser(USER_ID, USER_EMAIL);
+    long projectId = createProject(USER_ID, PROJECT_NAME, FAKE_PROJECT_TYPE, FORM_QUALIFIED_NAME);
+    // Make the project look like it was last changed two minutes ago.
+    Objectify datastore = ObjectifyService.begin();
+    ProjectData pd = datastore.get(new Key<ProjectData>(ProjectData.class, projectId));
+    long oldDate = System.currentTimeMillis() - 2 * 60 * 1000;
+    pd.dateModified = oldDate;
+    datastore.put(pd);
+
+    long modDate = storage.deleteFile(USER_ID, projectId, FORM_QUALIFIED_NAME);
+    assertTrue(modDate > oldDate);
+    UserProjectPage page = storage.getUserProjectPage(USER_ID, null, 10);
+    assertEquals(modDate, page.getProjects().get(0).getDateModified());
+
+    // The date was just updated, so the next change leaves it alone.
+    assertEquals(modDate, storage.deleteFile(USER_ID, projectId, FORM_QUALIFIED_NAME));
+  }
+
+  public void testUserProjectPageFillsMissingSummaries() {
+    final String USER_ID = "1520";
+    final String USER_EMAIL = "newuser1520@test.com";
+    storage.getUser(USER_ID, USER_EMAIL);
+    long projectId = createProject(USER_ID, PROJECT_NAME, FAKE_PROJECT_TYPE, FORM_QUALIFIED_NAME);
+
+    // Make the project look like one created before summaries were kept.
+    Objectify datastore = ObjectifyService.begin();
+    Key<UserProjectData> key = new Key<UserProjectData>(
+        new Key<UserData>(UserData.class, USER_ID), UserProjectData.class, projectId);
+    UserProjectData upd = datastore.get(key);
+    upd.name = null;
+    upd.type = null;
+    datastore.put(upd);
+
+    UserProjectPage page = storage.getUserProjectPage(USER_ID, null, 10);
+    assertEquals(1, page.getProjects().size());
+    assertEquals(PROJECT_NAME, page.getProjects().get(0).getProjectName());
+    assertEquals(FAKE_PROJECT_TYPE, page.getProjects().get(0).getProjectType());
+    assertEquals(PROJECT_NAME, ObjectifyService.begin().get(key).name);
+  }
+
+  public void testExpiredEntityCleanupResumesFromCheckpoint() {
+    Objectify datastore = ObjectifyService.begin();
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < 5; i++) {
+      NonceData nonce = new NonceData();
+      nonce.nonce = "old" + i;
+      nonce.timestamp = new Date(now - 4 * 3600 * 1000L - i);
+      datastore.put(nonce);
+    }
+    NonceData recent = new NonceData();
+    recent.nonce = "recent";
+    recent.timestamp = new Date(now);
+    datastore.put(recent);
+
+    // With a budget of 0, each call deletes a single batch.
+    ExpiredEntityCleanup<NonceData> cleanup = new ExpiredEntityCleanup<NonceData>("test",
+        NonceData.class, "timestamp", 3 * 3600 * 1000L, 2, 0, 0,
+        MemcacheServiceFactory.getMemcacheService());
+    assertEquals(2, cleanup.run());
+    assertEquals(4, datastore.query(NonceData.class).count());
+    assertEquals(2, cleanup.run());
+    assertEquals(1, cleanup.run());
+    assertEquals(1, datastore.query(NonceData.class).count());
+    assertNotNull(storage.getNoncebyValue("recent"));
+    // The next sweep starts over and finds nothing to delete.
+    assertEquals(0, cleanup.run());
+  }
+
+  public void testExpiredEntityCleanupWithoutMemcache() {
+    Objectify datastore = ObjectifyService.begin();
+    NonceData nonce = new NonceData();
+    nonce.nonce = "old";
+    nonce.timestamp = new Date(System.currentTimeMillis() - 4 * 3600 * 1000L);
+    datastore.put(nonce);
+
+    // A memcache that fails every call, and so returns false or null like the real one does.
+    MemcacheService failing = (MemcacheService) Proxy.newProxyInstance(
+        MemcacheService.class.getClassLoader(), new Class<?>[] { MemcacheService.class },
+        new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            return method.getReturnType() == boolean.class ? Boolean.FALSE : null;
+          }
+        });
+    ExpiredEntityCleanup<NonceData> cleanup = new ExpiredEntityCleanup<NonceData>("test",
+        NonceData.class, "timestamp", 3 * 3600 * 1000L, 2, 3600 * 1000L, 1000L, failing);
+    assertEquals(1, cleanup.run());
+    assertEquals(0, datastore.query(NonceData.class).count());
+
+    // The interval still applies on this instance.
+    nonce = new NonceData();
+    nonce.nonce = "old2";
+    nonce.timestamp = new Date(System.currentTimeMillis() - 4 * 3600 * 1000L);
+    datastore.put(nonce);
+    assertEquals(0, cleanup.run());
+    assertEquals(1, datastore.query(NonceData.class).count());
+  }
+
   public void testWrongUserThrowsException() throws Exception {
     final String USER_ID = "1600";
     final String USER_EMAIL = "newuser1600@test.com";
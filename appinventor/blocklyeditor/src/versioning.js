@@ -1394,7 +1394,11 @@ Blockly.Versioning.AllUpgradeMaps =
 
     //  BackgroundImageinBase64 was added
     // No blocks need to be modified to upgrade to version 13.
-    13: "noUpgrade"
+    13: "noUpgrade",
+
+    // AI2: Added method SaveInBackground and event Saved
+    // No blocks need to be modified to upgrade to version 14.
+    14: "noUpgrade"
 
   }, // End Canvas upgraders
 
@@ -1436,7 +1440,15 @@ Blockly.Versioning.AllUpgradeMaps =
   "CloudDB": {
 
     //This is initial version. Placeholder for future upgrades
-    1: "noUpgrade"
+    1: "noUpgrade",
+
+    // The StoreValues and GetValues methods and the BatchInterval property were added.
+    // No blocks need to be modified to upgrade to version 2.
+    2: "noUpgrade",
+
+    // The DataChangedInterval and WatchedTags properties were added.
+    // No blocks need to be modified to upgrade to version 3.
+    3: "noUpgrade"
 
   },
 
@@ -2656,7 +2668,10 @@ Blockly.Versioning.AllUpgradeMaps =
     6: "noUpgrade",
 
     // AI2: Added methods JsonTextDecodeWithDictionaries and XMLTextDecodeAsDictionary
-    7: "noUpgrade"
+    7: "noUpgrade",
+
+    // AI2: Added property CacheResponses
+    8: "noUpgrade"
 
   }, // End Web upgraders
 
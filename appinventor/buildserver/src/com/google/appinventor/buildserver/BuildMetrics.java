@@ -0,0 +1,341 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+package com.google.appinventor.buildserver;
+
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics about the builds done by this server run: how long each stage of a build takes, how
+ * much memory the child processes of each stage use, how often the build caches are hit, and how
+ * many builds are waiting for their turn to run Kawa or DX.
+ *
+ * <p>The metrics are exported in the Prometheus text format and as JSON by
+ * {@link BuildServer#metrics}. All methods may be called from any thread.</p>
+ */
+final class BuildMetrics {
+
+  /**
+   * The timed stages of a build. BUILD covers the whole compilation, which includes all of the
+   * other stages except EXTRACT. PNG_CRUNCH is the crunching of a single PNG file that was not
+   * in the cache.
+   */
+  enum Stage {
+    EXTRACT("extract"),
+    PNG_CRUNCH("png_crunch"),
+    AAPT("aapt"),
+    KAWA("kawa"),
+    DX("dx"),
+    APKBUILDER("apkbuilder"),
+    ZIPALIGN("zipalign"),
+    SIGNING("signing"),
+    BUILD("build");
+
+    final String label;
+
+    Stage(String label) {
+      this.label = label;
+    }
+  }
+
+  /**
+   * The caches used by builds.
+   */
+  enum Cache {
+    // Libraries that were already pre-dexed into the dex cache directory
+    DEX("dex"),
+    // Runtime files and tools that were already extracted from the build server jar
+    RESOURCE("resource"),
+    // PNG files that were already crunched by AAPT
+    PNG("png");
+
+    final String label;
+
+    Cache(String label) {
+      this.label = label;
+    }
+  }
+
+  /**
+   * A histogram with fixed buckets, like a Prometheus histogram.
+   */
+  static final class Histogram {
+    private final double[] bounds;
+    private final AtomicLong[] counts;  // counts[i] is the number of values <= bounds[i]
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumMicros = new AtomicLong();
+
+    Histogram(double... bounds) {
+      this.bounds = bounds;
+      this.counts = new AtomicLong[bounds.length];
+      for (int i = 0; i < bounds.length; i++) {
+        counts[i] = new AtomicLong();
+      }
+    }
+
+    void observe(double value) {
+      for (int i = 0; i < bounds.length; i++) {
+        if (value <= bounds[i]) {
+          counts[i].incrementAndGet();
+        }
+      }
+      count.incrementAndGet();
+      sumMicros.addAndGet(Math.round(value * 1000000));
+    }
+
+    long getCount() {
+      return count.get();
+    }
+
+    double getSum() {
+      return sumMicros.get() / 1000000.0;
+    }
+
+    /*
+     * Returns the number of values <= the i-th bound, which is the count of the bucket with
+     * that bound in the Prometheus format.
+     */
+    long getBucketCount(int i) {
+      return counts[i].get();
+    }
+
+    private void writePrometheus(StringBuilder sb, String name, String labels) {
+      String prefix = labels.isEmpty() ? "{" : "{" + labels + ",";
+      for (int i = 0; i < bounds.length; i++) {
+        sb.append(name).append("_bucket").append(prefix).append("le=\"")
+            .append(formatBound(bounds[i])).append("\"} ").append(counts[i].get()).append('\n');
+      }
+      sb.append(name).append("_bucket").append(prefix).append("le=\"+Inf\"} ")
+          .append(count.get()).append('\n');
+      String suffix = labels.isEmpty() ? "" : "{" + labels + "}";
+      sb.append(name).append("_sum").append(suffix).append(' ').append(getSum()).append('\n');
+      sb.append(name).append("_count").append(suffix).append(' ').append(count.get())
+          .append('\n');
+    }
+
+    private JSONObject toJson() throws JSONException {
+      JSONObject json = new JSONObject();
+      JSONArray buckets = new JSONArray();
+      for (int i = 0; i < bounds.length; i++) {
+        JSONObject bucket = new JSONObject();
+        bucket.put("le", bounds[i]);
+        bucket.put("count", counts[i].get());
+        buckets.put(bucket);
+      }
+      json.put("buckets", buckets);
+      json.put("count", count.get());
+      json.put("sum", getSum());
+      return json;
+    }
+
+    private static String formatBound(double bound) {
+      return bound == Math.rint(bound) ? Long.toString((long) bound) : Double.toString(bound);
+    }
+  }
+
+  /**
+   * Measures the time spent in a stage. Child processes started on the same thread before the
+   * timer is stopped are counted against its stage.
+   */
+  static final class StageTimer {
+    private final Stage stage;
+    private final Stage outer;
+    private final long start = System.nanoTime();
+
+    private StageTimer(Stage stage) {
+      this.stage = stage;
+      this.outer = currentStage.get();
+      currentStage.set(stage);
+    }
+
+    /**
+     * Records the time since the timer was started.
+     */
+    void stop() {
+      STAGE_SECONDS.get(stage).observe((System.nanoTime() - start) / 1e9);
+      currentStage.set(outer);
+    }
+  }
+
+  // Buckets of stage latencies, in seconds
+  private static final double[] SECONDS_BUCKETS =
+      { 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 25, 50, 100, 250 };
+
+  // Buckets of child process peak resident set sizes, in megabytes
+  private static final double[] MEGABYTES_BUCKETS = { 64, 128, 256, 512, 1024, 2048, 4096 };
+
+  private static final Map<Stage, Histogram> STAGE_SECONDS =
+      new EnumMap<Stage, Histogram>(Stage.class);
+  private static final Map<Stage, Histogram> CHILD_PEAK_RSS_MEGABYTES =
+      new EnumMap<Stage, Histogram>(Stage.class);
+  private static final Map<Cache, AtomicLong> CACHE_HITS =
+      new EnumMap<Cache, AtomicLong>(Cache.class);
+  private static final Map<Cache, AtomicLong> CACHE_MISSES =
+      new EnumMap<Cache, AtomicLong>(Cache.class);
+
+  static {
+    for (Stage stage : Stage.values()) {
+      STAGE_SECONDS.put(stage, new Histogram(SECONDS_BUCKETS));
+      CHILD_PEAK_RSS_MEGABYTES.put(stage, new Histogram(MEGABYTES_BUCKETS));
+    }
+    for (Cache cache : Cache.values()) {
+      CACHE_HITS.put(cache, new AtomicLong());
+      CACHE_MISSES.put(cache, new AtomicLong());
+    }
+  }
+
+  // The number of builds waiting to run Kawa or DX, of which only one runs at a time.
+  private static final AtomicInteger childProcessQueueDepth = new AtomicInteger();
+
+  private static final ThreadLocal<Stage> currentStage = new ThreadLocal<Stage>();
+
+  private BuildMetrics() {
+  }
+
+  /**
+   * Starts timing a stage on the current thread.
+   */
+  static StageTimer startStage(Stage stage) {
+    return new StageTimer(stage);
+  }
+
+  /**
+   * Records the peak resident set size of a child process started by the current thread.
+   *
+   * @param kilobytes the peak resident set size, in kilobytes
+   */
+  static void recordChildPeakRss(long kilobytes) {
+    Stage stage = currentStage.get();
+    if (stage != null) {
+      CHILD_PEAK_RSS_MEGABYTES.get(stage).observe(kilobytes / 1024.0);
+    }
+  }
+
+  /**
+   * Records a lookup in one of the build caches.
+   */
+  static void recordCacheLookup(Cache cache, boolean hit) {
+    (hit ? CACHE_HITS : CACHE_MISSES).get(cache).incrementAndGet();
+  }
+
+  /**
+   * Notes that a build has started waiting for its turn to run Kawa or DX.
+   */
+  static void enterChildProcessQueue() {
+    childProcessQueueDepth.incrementAndGet();
+  }
+
+  /**
+   * Notes that a build has stopped waiting for its turn to run Kawa or DX.
+   */
+  static void leaveChildProcessQueue() {
+    childProcessQueueDepth.decrementAndGet();
+  }
+
+  static Histogram getStageSeconds(Stage stage) {
+    return STAGE_SECONDS.get(stage);
+  }
+
+  static Histogram getChildPeakRssMegabytes(Stage stage) {
+    return CHILD_PEAK_RSS_MEGABYTES.get(stage);
+  }
+
+  /**
+   * Returns the metrics in the Prometheus text exposition format.
+   *
+   * @param gauges additional values to export, such as the number of active builds, by metric
+   *     name
+   * @param counters additional values that only ever increase, such as the number of completed
+   *     builds, by metric name
+   */
+  static String toPrometheus(Map<String, Number> gauges, Map<String, Number> counters) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("# HELP buildserver_stage_seconds Time spent in each stage of a build.\n");
+    sb.append("# TYPE buildserver_stage_seconds histogram\n");
+    for (Stage stage : Stage.values()) {
+      STAGE_SECONDS.get(stage).writePrometheus(sb, "buildserver_stage_seconds",
+          "stage=\"" + stage.label + "\"");
+    }
+    sb.append("# HELP buildserver_child_peak_rss_megabytes Peak resident set size of the child"
+        + " processes of each stage.\n");
+    sb.append("# TYPE buildserver_child_peak_rss_megabytes histogram\n");
+    for (Stage stage : Stage.values()) {
+      Histogram histogram = CHILD_PEAK_RSS_MEGABYTES.get(stage);
+      if (histogram.getCount() > 0) {
+        histogram.writePrometheus(sb, "buildserver_child_peak_rss_megabytes",
+            "stage=\"" + stage.label + "\"");
+      }
+    }
+    sb.append("# HELP buildserver_cache_lookups_total Lookups in the build caches.\n");
+    sb.append("# TYPE buildserver_cache_lookups_total counter\n");
+    for (Cache cache : Cache.values()) {
+      sb.append("buildserver_cache_lookups_total{cache=\"").append(cache.label)
+          .append("\",result=\"hit\"} ").append(CACHE_HITS.get(cache).get()).append('\n');
+      sb.append("buildserver_cache_lookups_total{cache=\"").append(cache.label)
+          .append("\",result=\"miss\"} ").append(CACHE_MISSES.get(cache).get()).append('\n');
+    }
+    sb.append("# HELP buildserver_child_process_queue_depth Builds waiting to run Kawa or DX.\n");
+    sb.append("# TYPE buildserver_child_process_queue_depth gauge\n");
+    sb.append("buildserver_child_process_queue_depth ").append(childProcessQueueDepth.get())
+        .append('\n');
+    writePrometheus(sb, gauges, "gauge");
+    writePrometheus(sb, counters, "counter");
+    return sb.toString();
+  }
+
+  private static void writePrometheus(StringBuilder sb, Map<String, Number> values, String type) {
+    for (Map.Entry<String, Number> value : values.entrySet()) {
+      sb.append("# TYPE ").append(value.getKey()).append(' ').append(type).append('\n');
+      sb.append(value.getKey()).append(' ').append(value.getValue()).append('\n');
+    }
+  }
+
+  /**
+   * Returns the metrics as JSON.
+   *
+   * @param gauges additional values to export, such as the number of active builds, by metric
+   *     name
+   * @param counters additional values that only ever increase, such as the number of completed
+   *     builds, by metric name
+   */
+  static JSONObject toJson(Map<String, Number> gauges, Map<String, Number> counters)
+      throws JSONException {
+    JSONObject json = new JSONObject();
+    JSONObject stages = new JSONObject();
+    JSONObject childPeakRss = new JSONObject();
+    for (Stage stage : Stage.values()) {
+      stages.put(stage.label, STAGE_SECONDS.get(stage).toJson());
+      Histogram histogram = CHILD_PEAK_RSS_MEGABYTES.get(stage);
+      if (histogram.getCount() > 0) {
+        childPeakRss.put(stage.label, histogram.toJson());
+      }
+    }
+    json.put("stageSeconds", stages);
+    json.put("childPeakRssMegabytes", childPeakRss);
+    JSONObject caches = new JSONObject();
+    for (Cache cache : Cache.values()) {
+      long hits = CACHE_HITS.get(cache).get();
+      long misses = CACHE_MISSES.get(cache).get();
+      JSONObject lookups = new JSONObject();
+      lookups.put("hits", hits);
+      lookups.put("misses", misses);
+      if (hits + misses > 0) {
+        lookups.put("hitRate", (double) hits / (hits + misses));
+      }
+      caches.put(cache.label, lookups);
+    }
+    json.put("caches", caches);
+    json.put("childProcessQueueDepth", childProcessQueueDepth.get());
+    json.put("gauges", new JSONObject(gauges));
+    json.put("counters", new JSONObject(counters));
+    return json;
+  }
+}
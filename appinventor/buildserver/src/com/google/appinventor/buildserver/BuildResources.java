@@ -0,0 +1,210 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+package com.google.appinventor.buildserver;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.Hashing;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * The directory where the runtime files and tools that builds need, such as the Kawa and Android
+ * jars, are extracted.
+ *
+ * <p>The files are extracted once into a resource directory that all builds share. The resource
+ * directory is named after the build server jar, so a server that is restarted with the same jar
+ * finds the files it extracted before. Since the tools in it are run, the directory is only
+ * reused if it belongs to the user running the server and no one else can write to it, and the
+ * resource directories of other jars are deleted when it is first used.</p>
+ */
+final class BuildResources {
+  private static final Logger LOG = Logger.getLogger(BuildResources.class.getName());
+
+  private static final String RESOURCE_DIRECTORY_PREFIX = "appinventor-resources-";
+
+  private static final Set<PosixFilePermission> OWNER_ONLY =
+      EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE,
+          PosixFilePermission.OWNER_EXECUTE);
+
+  private static final BuildResources INSTANCE =
+      new BuildResources(new File(System.getProperty("java.io.tmpdir")));
+
+  private final File baseDir;
+  private final String resourceKey;   // Null if the resources may change without it changing
+
+  private File root;            // Created on first use
+  private File resourceDir;     // Created on first use
+
+  private BuildResources(File baseDir) {
+    this(baseDir, getCodeSourceKey());
+  }
+
+  @VisibleForTesting
+  BuildResources(File baseDir, String resourceKey) {
+    this.baseDir = baseDir;
+    this.resourceKey = resourceKey;
+  }
+
+  /**
+   * Returns the resources shared by all builds of this server run.
+   */
+  static BuildResources getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Returns the directory where the runtime files and tools used by builds are extracted.
+   */
+  synchronized File getResourceDirectory() throws IOException {
+    if (resourceDir == null) {
+      if (resourceKey != null) {
+        deleteStaleResourceDirectories();
+        resourceDir = createPrivateDirectory(
+            new File(baseDir, RESOURCE_DIRECTORY_PREFIX + resourceKey).getCanonicalFile());
+      }
+      if (resourceDir == null) {
+        // Not running from a jar, so the resources may change without the key changing, or the
+        // shared directory cannot be trusted. The root is only used by this server run.
+        resourceDir = new File(getRoot(), "resources");
+        if (!resourceDir.isDirectory() && !resourceDir.mkdirs()) {
+          throw new IOException("Unable to create resource directory " + resourceDir);
+        }
+      }
+    }
+    return resourceDir;
+  }
+
+  /**
+   * Returns a directory where builds can cache files that depend on the runtime files and tools,
+   * such as the output of a tool. The directory is kept with the resource directory.
+   *
+   * @param name the name of the cache
+   */
+  File getCacheDirectory(String name) throws IOException {
+    File cacheDir = new File(getResourceDirectory(), "cache" + File.separator + name);
+    if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+      throw new IOException("Unable to create cache directory " + cacheDir);
+    }
+    return cacheDir;
+  }
+
+  /*
+   * Creates a directory that only the user running the server can use, or checks that an existing
+   * one is such a directory. Returns null if the directory exists but belongs to someone else,
+   * can be written by others or is a symbolic link, or if the file system has no POSIX
+   * permissions.
+   */
+  private File createPrivateDirectory(File dir) throws IOException {
+    try {
+      java.nio.file.Files.createDirectory(dir.toPath(),
+          PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+      return dir;
+    } catch (FileAlreadyExistsException e) {
+      if (isPrivateDirectory(dir)) {
+        return dir;
+      }
+      LOG.warning("Not using resource directory " + dir + " since it is not private");
+      return null;
+    } catch (UnsupportedOperationException e) {
+      return null;
+    }
+  }
+
+  /*
+   * Returns true if a file is a directory, not a symbolic link, that belongs to the user running
+   * the server and that only its owner can use.
+   */
+  private boolean isPrivateDirectory(File dir) throws IOException {
+    Path path = dir.toPath();
+    PosixFileAttributeView view = java.nio.file.Files.getFileAttributeView(path,
+        PosixFileAttributeView.class, LinkOption.NOFOLLOW_LINKS);
+    if (view == null) {
+      return false;
+    }
+    PosixFileAttributes attributes = view.readAttributes();
+    // The root was just created by this server run, so it belongs to the right user.
+    return attributes.isDirectory()
+        && attributes.owner().equals(java.nio.file.Files.getOwner(getRoot().toPath()))
+        && OWNER_ONLY.containsAll(attributes.permissions());
+  }
+
+  /*
+   * Deletes the resource directories of other build server jars, which are no longer used.
+   * Directories that belong to other users are left alone.
+   */
+  private void deleteStaleResourceDirectories() throws IOException {
+    final String current = RESOURCE_DIRECTORY_PREFIX + resourceKey;
+    File[] stale = baseDir.listFiles(new FileFilter() {
+      @Override
+      public boolean accept(File file) {
+        return file.getName().startsWith(RESOURCE_DIRECTORY_PREFIX)
+            && !file.getName().equals(current);
+      }
+    });
+    if (stale == null) {
+      return;
+    }
+    for (File dir : stale) {
+      try {
+        if (isPrivateDirectory(dir)) {
+          LOG.info("Deleting stale resource directory " + dir);
+          FileUtils.deleteDirectory(dir);
+        }
+      } catch (IOException e) {
+        LOG.log(Level.WARNING, "Unable to delete stale resource directory " + dir, e);
+      }
+    }
+  }
+
+  private File getRoot() throws IOException {
+    if (root == null) {
+      root = java.nio.file.Files.createTempDirectory(baseDir.toPath(), "appinventor-build-")
+          .toFile().getCanonicalFile();
+      root.deleteOnExit();
+    }
+    return root;
+  }
+
+  /*
+   * Returns a string that changes whenever the jar that holds the build server classes changes,
+   * or null if the classes are not in a jar.
+   */
+  private static String getCodeSourceKey() {
+    try {
+      File jar = new File(BuildResources.class.getProtectionDomain().getCodeSource()
+          .getLocation().toURI());
+      if (!jar.isFile()) {
+        return null;
+      }
+      String identity = jar.getCanonicalPath() + ":" + jar.length() + ":" + jar.lastModified();
+      return Hashing.md5().hashString(identity, StandardCharsets.UTF_8).toString()
+          .substring(0, 16);
+    } catch (URISyntaxException e) {
+      return null;
+    } catch (IOException e) {
+      return null;
+    } catch (RuntimeException e) {
+      // No code source, or a location that is not a file
+      return null;
+    }
+  }
+}
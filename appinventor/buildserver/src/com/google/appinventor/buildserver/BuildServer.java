@@ -321,6 +321,32 @@ public class BuildServer {
     return Response.ok(html.toString(), MediaType.TEXT_HTML_TYPE).build();
   }
 
+  /**
+   * Returns the build metrics in the Prometheus text format, or as JSON.
+   *
+   * @param format -- "json" for JSON, otherwise the Prometheus text format
+   */
+  @GET
+  @Path("metrics")
+  @Produces({MediaType.TEXT_PLAIN, MediaType.APPLICATION_JSON})
+  public Response metrics(@QueryParam("format") String format) throws JSONException {
+    Map<String, Number> gauges = new LinkedHashMap<String, Number>();
+    gauges.put("buildserver_active_build_tasks", buildExecutor.getActiveTaskCount());
+    gauges.put("buildserver_max_build_tasks", buildExecutor.getMaxActiveTasks());
+    Map<String, Number> counters = new LinkedHashMap<String, Number>();
+    counters.put("buildserver_completed_build_tasks", buildExecutor.getCompletedTaskCount());
+    counters.put("buildserver_async_build_requests", asyncBuildRequests.get());
+    counters.put("buildserver_rejected_async_build_requests", rejectedAsyncBuildRequests.get());
+    counters.put("buildserver_successful_async_build_requests", successfulBuildRequests.get());
+    counters.put("buildserver_failed_async_build_requests", failedBuildRequests.get());
+    if ("json".equals(format)) {
+      return Response.ok(BuildMetrics.toJson(gauges, counters).toString(),
+          MediaType.APPLICATION_JSON_TYPE).build();
+    }
+    return Response.ok(BuildMetrics.toPrometheus(gauges, counters), MediaType.TEXT_PLAIN_TYPE)
+        .build();
+  }
+
   /**
    * Indicate that the server is shutting down.
    *
@@ -783,6 +809,8 @@ public class BuildServer {
       "/buildserver/health for server health");
     LOG.info("Visit: http://" + hostAddress + ":" + port +
       "/buildserver/vars for server values");
+    LOG.info("Visit: http://" + hostAddress + ":" + port +
+      "/buildserver/metrics for build metrics");
     LOG.info("Server running");
   }
 
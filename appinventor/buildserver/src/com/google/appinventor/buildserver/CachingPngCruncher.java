@@ -0,0 +1,166 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+package com.google.appinventor.buildserver;
+
+import com.android.ide.common.internal.PngCruncher;
+import com.android.ide.common.internal.PngException;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Crunches the PNG files of an app's resources one at a time with {@code aapt singleCrunch},
+ * keeping the crunched files in a cache directory named after the MD5 hash of their content.
+ *
+ * <p>Most of the PNG files in a build, such as those of the Android support libraries and the
+ * icons of a project that is built again, have been crunched by an earlier build, so they are
+ * copied from the cache instead of being crunched again. Since the resources are crunched while
+ * they are merged, AAPT packages them with {@code --no-crunch}.</p>
+ *
+ * <p>The cache is shared by the builds of all server runs with the same build server jar, which
+ * is also where the AAPT tool comes from. It is trimmed to the most recently used files from time
+ * to time.</p>
+ */
+final class CachingPngCruncher implements PngCruncher {
+  private static final Logger LOG = Logger.getLogger(CachingPngCruncher.class.getName());
+
+  private static final String NINE_PATCH_EXTENSION = ".9.png";
+
+  // The most files kept in the cache
+  private static final int MAX_CACHED_FILES = 20000;
+
+  // The cache is trimmed after this many misses
+  private static final int TRIM_INTERVAL = 1000;
+
+  private static final AtomicInteger misses = new AtomicInteger();
+
+  private final String aaptTool;
+  private final File cacheDir;
+
+  /**
+   * Creates a cruncher.
+   *
+   * @param aaptTool the path of the AAPT tool
+   * @param cacheDir the directory where crunched files are cached
+   */
+  CachingPngCruncher(String aaptTool, File cacheDir) {
+    this.aaptTool = aaptTool;
+    this.cacheDir = cacheDir;
+  }
+
+  @Override
+  public int start() {
+    return 0;
+  }
+
+  @Override
+  public void crunchPng(int key, File from, File to) throws PngException {
+    boolean ninePatch = from.getName().endsWith(NINE_PATCH_EXTENSION);
+    try {
+      // AAPT treats nine-patch files differently, so they are cached under a different name.
+      File cached = new File(cacheDir, Files.hash(from, Hashing.md5()).toString()
+          + (ninePatch ? NINE_PATCH_EXTENSION : ".png"));
+      boolean hit = cached.isFile();
+      BuildMetrics.recordCacheLookup(BuildMetrics.Cache.PNG, hit);
+      if (hit) {
+        cached.setLastModified(System.currentTimeMillis());
+        try {
+          Files.copy(cached, to);
+          return;
+        } catch (IOException e) {
+          // Another build trimmed the cache after the lookup, so the file is crunched again.
+          LOG.info("Unable to copy " + cached + ", crunching " + from + " again");
+        }
+      }
+      if (!crunch(from, cached, to)) {
+        if (ninePatch) {
+          throw new PngException("Unable to crunch " + from);
+        }
+        // AAPT can still package a PNG file that it cannot crunch.
+        LOG.warning("Unable to crunch " + from + ", using it as is");
+        Files.copy(from, to);
+      }
+    } catch (IOException e) {
+      throw new PngException(e);
+    }
+  }
+
+  @Override
+  public void end(int key) {
+  }
+
+  /*
+   * Crunches a file into the cache and to its destination. Other builds may be crunching the same
+   * file at the same time, so it is crunched to a temporary file first and then renamed. The
+   * destination is copied from the temporary file, since the cached file may be trimmed at any
+   * time.
+   */
+  private boolean crunch(File from, File cached, File to) throws IOException {
+    if (misses.incrementAndGet() % TRIM_INTERVAL == 0) {
+      trim(cacheDir, MAX_CACHED_FILES);
+    }
+    File partFile = File.createTempFile("." + cached.getName() + "-", ".part", cacheDir);
+    try {
+      String[] crunchCommandLine = {
+          aaptTool,
+          "s",
+          "-i", from.getAbsolutePath(),
+          "-o", partFile.getAbsolutePath()
+      };
+      // Using System.err and System.out on purpose. Don't want to pollute build messages with
+      // tools output
+      BuildMetrics.StageTimer timer = BuildMetrics.startStage(BuildMetrics.Stage.PNG_CRUNCH);
+      boolean crunchSuccess;
+      try {
+        crunchSuccess = Execution.execute(null, crunchCommandLine, System.out, System.err);
+      } finally {
+        timer.stop();
+      }
+      if (!crunchSuccess || partFile.length() == 0) {
+        return false;
+      }
+      Files.copy(partFile, to);
+      java.nio.file.Files.move(partFile.toPath(), cached.toPath(),
+          StandardCopyOption.ATOMIC_MOVE);
+      return true;
+    } finally {
+      partFile.delete();
+    }
+  }
+
+  /*
+   * Deletes the least recently used files in a cache directory, so that at most maxFiles are
+   * left.
+   */
+  static void trim(File cacheDir, int maxFiles) {
+    File[] files = cacheDir.listFiles();
+    if (files == null || files.length <= maxFiles) {
+      return;
+    }
+    Arrays.sort(files, new Comparator<File>() {
+      @Override
+      public int compare(File file1, File file2) {
+        long lastModified1 = file1.lastModified();
+        long lastModified2 = file2.lastModified();
+        return lastModified1 < lastModified2 ? -1 : lastModified1 == lastModified2 ? 0 : 1;
+      }
+    });
+    int deleted = 0;
+    for (int i = 0; i < files.length - maxFiles; i++) {
+      if (!files[i].getName().endsWith(".part") && files[i].delete()) {
+        deleted++;
+      }
+    }
+    LOG.info("Deleted " + deleted + " files from " + cacheDir);
+  }
+}
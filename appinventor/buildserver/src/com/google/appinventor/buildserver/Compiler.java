@@ -18,7 +18,6 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.common.io.Files;
 import com.google.common.io.Resources;
-import com.android.ide.common.internal.AaptCruncher;
 import com.android.ide.common.internal.PngCruncher;
 import com.android.sdklib.build.ApkBuilder;
 
@@ -36,7 +35,6 @@ import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
@@ -47,6 +45,9 @@ import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.Reader;
 import java.io.Writer;
+import java.net.URL;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -231,9 +232,9 @@ public final class Compiler {
 
   /**
    * Map used to hold the names and paths of resources that we've written out
-   * as temp files.
+   * to the resource directory.
    * Don't use this map directly. Please call getResource() with one of the
-   * constants above to get the (temp file) path to a resource.
+   * constants above to get the path to a resource.
    */
   private static final ConcurrentMap<String, File> resources =
       new ConcurrentHashMap<String, File>();
@@ -1437,6 +1438,7 @@ public final class Compiler {
    * can call System.exit(1), which will bring down our server.
    */
   private boolean runApkBuilder(String apkAbsolutePath, String zipArchive, String dexedClassesDir) {
+    BuildMetrics.StageTimer timer = BuildMetrics.startStage(BuildMetrics.Stage.APKBUILDER);
     try {
       ApkBuilder apkBuilder =
           new ApkBuilder(apkAbsolutePath, zipArchive,
@@ -1457,6 +1459,8 @@ public final class Compiler {
       err.println("YAIL compiler - ApkBuilder failed.");
       userErrors.print(String.format(ERROR_IN_STAGE, "ApkBuilder"));
       return false;
+    } finally {
+      timer.stop();
     }
   }
 
@@ -1634,9 +1638,16 @@ public final class Compiler {
       // buildserver/ProjectBuilder.processCompilerOutout.
       ByteArrayOutputStream kawaOutputStream = new ByteArrayOutputStream();
       boolean kawaSuccess;
+      BuildMetrics.enterChildProcessQueue();
       synchronized (SYNC_KAWA_OR_DX) {
-        kawaSuccess = Execution.execute(null, kawaCommandLine,
-            System.out, new PrintStream(kawaOutputStream));
+        BuildMetrics.leaveChildProcessQueue();
+        BuildMetrics.StageTimer timer = BuildMetrics.startStage(BuildMetrics.Stage.KAWA);
+        try {
+          kawaSuccess = Execution.execute(null, kawaCommandLine,
+              System.out, new PrintStream(kawaOutputStream));
+        } finally {
+          timer.stop();
+        }
       }
       if (!kawaSuccess) {
         LOG.log(Level.SEVERE, "Kawa compile has failed.");
@@ -1700,13 +1711,20 @@ public final class Compiler {
     long startZipAlign = System.currentTimeMillis();
     // Using System.err and System.out on purpose. Don't want to pollute build messages with
     // tools output
-    if (!Execution.execute(null, zipAlignCommandLine, System.out, System.err)) {
+    BuildMetrics.StageTimer timer = BuildMetrics.startStage(BuildMetrics.Stage.ZIPALIGN);
+    boolean zipAlignSuccess;
+    try {
+      zipAlignSuccess = Execution.execute(null, zipAlignCommandLine, System.out, System.err);
+    } finally {
+      timer.stop();
+    }
+    if (!zipAlignSuccess) {
       LOG.warning("YAIL compiler - ZIPALIGN execution failed.");
       err.println("YAIL compiler - ZIPALIGN execution failed.");
       userErrors.print(String.format(ERROR_IN_STAGE, "ZIPALIGN"));
       return false;
     }
-    if (!copyFile(zipAlignedPath, apkAbsolutePath)) {
+    if (!moveFile(zipAlignedPath, apkAbsolutePath)) {
       LOG.warning("YAIL compiler - ZIPALIGN file copy failed.");
       err.println("YAIL compiler - ZIPALIGN file copy failed.");
       userErrors.print(String.format(ERROR_IN_STAGE, "ZIPALIGN"));
@@ -1739,7 +1757,14 @@ public final class Compiler {
     };
 
     long startApkSigner = System.currentTimeMillis();
-    if (!Execution.execute(null, apksignerCommandLine, System.out, System.err)) {
+    BuildMetrics.StageTimer timer = BuildMetrics.startStage(BuildMetrics.Stage.SIGNING);
+    boolean apkSignerSuccess;
+    try {
+      apkSignerSuccess = Execution.execute(null, apksignerCommandLine, System.out, System.err);
+    } finally {
+      timer.stop();
+    }
+    if (!apkSignerSuccess) {
       LOG.warning("YAIL compiler - apksigner execution failed.");
       err.println("YAIL compiler - apksigner execution failed.");
       userErrors.print(String.format(ERROR_IN_STAGE, "APKSIGNER"));
@@ -1955,26 +1980,37 @@ public final class Compiler {
     // Using System.err and System.out on purpose. Don't want to pollute build messages with
     // tools output
     boolean dxSuccess;
+    boolean firstDexFailed;
+    BuildMetrics.enterChildProcessQueue();
     synchronized (SYNC_KAWA_OR_DX) {
-      setProgress(50);
-      dxSuccess = dexTask.execute(inputList);
-      if (dxSuccess && (class2List.size() > 0)) {
-        setProgress(60);
-        dexTask.setOutput(dexedClassesDir + File.separator + "classes2.dex");
-        inputList = new ArrayList<File>();
-        dxSuccess = dexTask.execute(class2List);
-        setProgress(75);
-        hasSecondDex = true;
-      } else if (!dxSuccess) {  // The initial dx blew out, try more conservative
-        LOG.info("DX execution failed, trying with fewer libraries.");
-        if (secondTry) {        // Already tried the more conservative approach!
-          LOG.warning("YAIL compiler - DX execution failed (secondTry!).");
-          err.println("YAIL compiler - DX execution failed.");
-          userErrors.print(String.format(ERROR_IN_STAGE, "DX"));
-          return false;
-        } else {
-          return runDx(classesDir, dexedClassesDir, true);
+      BuildMetrics.leaveChildProcessQueue();
+      BuildMetrics.StageTimer timer = BuildMetrics.startStage(BuildMetrics.Stage.DX);
+      try {
+        setProgress(50);
+        dxSuccess = dexTask.execute(inputList);
+        firstDexFailed = !dxSuccess;
+        if (dxSuccess && (class2List.size() > 0)) {
+          setProgress(60);
+          dexTask.setOutput(dexedClassesDir + File.separator + "classes2.dex");
+          inputList = new ArrayList<File>();
+          dxSuccess = dexTask.execute(class2List);
+          setProgress(75);
+          hasSecondDex = true;
         }
+      } finally {
+        timer.stop();
+      }
+    }
+    // The retry happens after the lock is released, so that each attempt is timed once.
+    if (firstDexFailed) {       // The initial dx blew out, try more conservative
+      LOG.info("DX execution failed, trying with fewer libraries.");
+      if (secondTry) {          // Already tried the more conservative approach!
+        LOG.warning("YAIL compiler - DX execution failed (secondTry!).");
+        err.println("YAIL compiler - DX execution failed.");
+        userErrors.print(String.format(ERROR_IN_STAGE, "DX"));
+        return false;
+      } else {
+        return runDx(classesDir, dexedClassesDir, true);
       }
     }
     if (!dxSuccess) {
@@ -2008,6 +2044,7 @@ public final class Compiler {
       userErrors.print(String.format(ERROR_IN_STAGE, "AAPT"));
       return false;
     }
+    libSetup();                 // Setup /tmp/lib64 on Linux
     if (!mergeResources(resDir, project.getBuildDirectory(), aaptTool)) {
       LOG.warning("Unable to merge resources");
       err.println("Unable to merge resources");
@@ -2019,6 +2056,7 @@ public final class Compiler {
     aaptPackageCommandLineArgs.add("package");
     aaptPackageCommandLineArgs.add("-v");
     aaptPackageCommandLineArgs.add("-f");
+    aaptPackageCommandLineArgs.add("--no-crunch");   // The PNG files were crunched while merging
     aaptPackageCommandLineArgs.add("-M");
     aaptPackageCommandLineArgs.add(manifestFile.getAbsolutePath());
     aaptPackageCommandLineArgs.add("-S");
@@ -2044,11 +2082,17 @@ public final class Compiler {
       appRTxt = new File(symbolOutputDir, "R.txt");
     }
     String[] aaptPackageCommandLine = aaptPackageCommandLineArgs.toArray(new String[aaptPackageCommandLineArgs.size()]);
-    libSetup();                 // Setup /tmp/lib64 on Linux
     long startAapt = System.currentTimeMillis();
     // Using System.err and System.out on purpose. Don't want to pollute build messages with
     // tools output
-    if (!Execution.execute(null, aaptPackageCommandLine, System.out, System.err)) {
+    BuildMetrics.StageTimer timer = BuildMetrics.startStage(BuildMetrics.Stage.AAPT);
+    boolean aaptSuccess;
+    try {
+      aaptSuccess = Execution.execute(null, aaptPackageCommandLine, System.out, System.err);
+    } finally {
+      timer.stop();
+    }
+    if (!aaptSuccess) {
       LOG.warning("YAIL compiler - AAPT execution failed.");
       err.println("YAIL compiler - AAPT execution failed.");
       userErrors.print(String.format(ERROR_IN_STAGE, "AAPT"));
@@ -2199,12 +2243,13 @@ public final class Compiler {
         }
       }
 
-      // Copy project assets to build/assets
+      // Link project assets into build/assets. The project directory belongs to this build alone,
+      // so the assets don't need to be copied a second time.
       File[] assets = project.getAssetsDirectory().listFiles();
       if (assets != null) {
         for (File asset : assets) {
           if (asset.isFile()) {
-            Files.copy(asset, new File(mergedAssetDir, asset.getName()));
+            linkOrCopyFile(asset, new File(mergedAssetDir, asset.getName()));
           }
         }
       }
@@ -2229,7 +2274,14 @@ public final class Compiler {
     File intermediates = createDir(buildDir, "intermediates");
     File resDir = createDir(intermediates, "res");
     mergedResDir = createDir(resDir, "merged");
-    PngCruncher cruncher = new AaptCruncher(getResource(aaptTool), null, null);
+    PngCruncher cruncher;
+    try {
+      cruncher = new CachingPngCruncher(getResource(aaptTool),
+          BuildResources.getInstance().getCacheDirectory("png"));
+    } catch (IOException e) {
+      e.printStackTrace();
+      return false;
+    }
     return explodedAarLibs.mergeResources(mergedResDir, mainResDir, cruncher);
   }
 
@@ -2254,40 +2306,39 @@ public final class Compiler {
   }
 
   /**
-   * Writes out the given resource as a temp file and returns the absolute path.
-   * Caches the location of the files, so we can reuse them.
+   * Writes out the given resource to the resource directory shared by all builds and
+   * returns the absolute path. Caches the location of the files, so we can reuse them.
    *
    * @param resourcePath the name of the resource
    */
   static synchronized String getResource(String resourcePath) {
     try {
       File file = resources.get(resourcePath);
+      BuildMetrics.recordCacheLookup(BuildMetrics.Cache.RESOURCE, file != null);
       if (file == null) {
-        String basename = PathUtil.basename(resourcePath);
-        String prefix;
-        String suffix;
-        int lastDot = basename.lastIndexOf(".");
-        if (lastDot != -1) {
-          prefix = basename.substring(0, lastDot);
-          suffix = basename.substring(lastDot);
-        } else {
-          prefix = basename;
-          suffix = "";
-        }
-        while (prefix.length() < 3) {
-          prefix = prefix + "_";
+        file = new File(BuildResources.getInstance().getResourceDirectory(), resourcePath);
+        if (!file.isFile()) {
+          // A server run with the same jar may have extracted the resource already. Otherwise,
+          // write it to a temporary file first, so that no build ever sees a partial file.
+          URL url = Compiler.class.getResource(resourcePath);
+          if (url == null) {
+            throw new IllegalStateException("Unable to find required library: " + resourcePath);
+          }
+          File dir = file.getParentFile();
+          dir.mkdirs();
+          File partFile = File.createTempFile("." + file.getName() + "-", ".part", dir);
+          try {
+            Files.copy(Resources.newInputStreamSupplier(url), partFile);
+            partFile.setExecutable(true);
+            java.nio.file.Files.move(partFile.toPath(), file.toPath(),
+                StandardCopyOption.ATOMIC_MOVE);
+          } finally {
+            partFile.delete();
+          }
         }
-        file = File.createTempFile(prefix, suffix);
-        file.setExecutable(true);
-        file.deleteOnExit();
-        file.getParentFile().mkdirs();
-        Files.copy(Resources.newInputStreamSupplier(Compiler.class.getResource(resourcePath)),
-            file);
         resources.put(resourcePath, file);
       }
       return file.getAbsolutePath();
-    } catch (NullPointerException e) {
-      throw new IllegalStateException("Unable to find required library: " + resourcePath, e);
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
@@ -2414,31 +2465,40 @@ public final class Compiler {
   }
 
   /**
-   * Copy one file to another. If destination file does not exist, it is created.
+   * Moves one file to another, replacing the destination file if it exists.
    *
    * @param srcPath absolute path to source file
    * @param dstPath absolute path to destination file
-   * @return  {@code true} if the copy succeeds, {@code false} otherwise
+   * @return  {@code true} if the move succeeds, {@code false} otherwise
    */
-  private static Boolean copyFile(String srcPath, String dstPath) {
+  private static boolean moveFile(String srcPath, String dstPath) {
     try {
-      FileInputStream in = new FileInputStream(srcPath);
-      FileOutputStream out = new FileOutputStream(dstPath);
-      byte[] buf = new byte[1024];
-      int len;
-      while ((len = in.read(buf)) > 0) {
-        out.write(buf, 0, len);
-      }
-      in.close();
-      out.close();
-    }
-    catch (IOException e) {
+      java.nio.file.Files.move(Paths.get(srcPath), Paths.get(dstPath),
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
       e.printStackTrace();
       return false;
     }
     return true;
   }
 
+  /**
+   * Makes {@code dst} a hard link to {@code src}, replacing {@code dst} if it exists. If the file
+   * system doesn't support hard links, copies the file instead.
+   *
+   * @param src the existing file
+   * @param dst the file to create
+   * @throws IOException if the file can be neither linked nor copied
+   */
+  private static void linkOrCopyFile(File src, File dst) throws IOException {
+    java.nio.file.Files.deleteIfExists(dst.toPath());
+    try {
+      java.nio.file.Files.createLink(dst.toPath(), src.toPath());
+    } catch (IOException | UnsupportedOperationException e) {
+      Files.copy(src, dst);
+    }
+  }
+
   /**
    * Creates a new directory (if it doesn't exist already).
    *
@@ -118,6 +118,7 @@ public class DexExecTask {
                     String fileName = getDexFileName(input);
                     File dexedLib = new File(mDexedLibs, fileName);
                     String dexedLibPath = dexedLib.getAbsolutePath();
+                    BuildMetrics.recordCacheLookup(BuildMetrics.Cache.DEX, dexedLib.isFile());
 
                     if (!dexedLib.isFile()/*||
                                                     dexedLib.lastModified() < input.lastModified()*/) {
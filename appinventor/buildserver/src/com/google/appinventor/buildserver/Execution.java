@@ -11,11 +11,14 @@ import com.google.common.base.Preconditions;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -87,6 +90,108 @@ public final class Execution {
     }
   }
 
+  /*
+   * Samples the peak resident set size of a child process while it runs. This only works on
+   * Linux, where /proc/<pid>/status has the VmHWM ("high water mark") line, and when the pid of
+   * the process can be found. The last sample may be up to SAMPLE_INTERVAL milliseconds old when
+   * the process exits.
+   */
+  private static class PeakRssSampler extends Thread {
+    private static final long SAMPLE_INTERVAL = 100;
+
+    private final File status;
+    private volatile boolean done;
+    private long peakKilobytes;
+
+    PeakRssSampler(File status) {
+      this.status = status;
+      setDaemon(true);
+      start();
+    }
+
+    static PeakRssSampler forProcess(Process process) {
+      int pid = getPid(process);
+      if (pid <= 0) {
+        return null;
+      }
+      File status = new File("/proc/" + pid + "/status");
+      return status.exists() ? new PeakRssSampler(status) : null;
+    }
+
+    @Override
+    public void run() {
+      while (!done) {
+        sample();
+        try {
+          Thread.sleep(SAMPLE_INTERVAL);
+        } catch (InterruptedException e) {
+          break;
+        }
+      }
+    }
+
+    /*
+     * Stops sampling and records the peak resident set size in the build metrics.
+     */
+    void finish() {
+      done = true;
+      interrupt();
+      try {
+        join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      if (peakKilobytes > 0) {
+        BuildMetrics.recordChildPeakRss(peakKilobytes);
+      }
+    }
+
+    private void sample() {
+      try {
+        BufferedReader reader = new BufferedReader(new FileReader(status));
+        try {
+          String line;
+          while ((line = reader.readLine()) != null) {
+            if (line.startsWith("VmHWM:")) {
+              // VmHWM:    123456 kB
+              String value = line.substring("VmHWM:".length()).trim();
+              int space = value.indexOf(' ');
+              long kilobytes = Long.parseLong(space < 0 ? value : value.substring(0, space));
+              peakKilobytes = Math.max(peakKilobytes, kilobytes);
+              break;
+            }
+          }
+        } finally {
+          reader.close();
+        }
+      } catch (IOException e) {
+        // The process has exited.
+      } catch (NumberFormatException e) {
+        // Not the format we know.
+      }
+    }
+
+    /*
+     * Returns the pid of a process, or 0 if it cannot be found. Process.pid() only exists from
+     * Java 9 on; before that, the pid is a private field of the UNIX implementation.
+     */
+    private static int getPid(Process process) {
+      try {
+        Method pid = Process.class.getMethod("pid");
+        return ((Long) pid.invoke(process)).intValue();
+      } catch (Exception e) {
+        // Not Java 9 or later.
+      }
+      try {
+        Field pid = process.getClass().getDeclaredField("pid");
+        pid.setAccessible(true);
+        return pid.getInt(process);
+      } catch (Exception e) {
+        return 0;
+      }
+    }
+  }
+
   private Execution() {
   }
 
@@ -109,9 +214,16 @@ public final class Execution {
     }
     try {
       Process process = Runtime.getRuntime().exec(command, null, workingDir);
+      PeakRssSampler sampler = PeakRssSampler.forProcess(process);
       new RedirectStreamHandler(new PrintWriter(out, true), process.getInputStream());
       new RedirectStreamHandler(new PrintWriter(err, true), process.getErrorStream());
-      return process.waitFor() == 0;
+      try {
+        return process.waitFor() == 0;
+      } finally {
+        if (sampler != null) {
+          sampler.finish();
+        }
+      }
     } catch (Exception e) {
       LOG.log(Level.WARNING, "____Execution failure: ", e);
       return false;
@@ -132,6 +244,7 @@ public final class Execution {
       StringBuffer err) throws IOException {
     LOG.log(Level.INFO, "____Executing " + joiner.join(command));
     Process process = Runtime.getRuntime().exec(command, null, workingDir);
+    PeakRssSampler sampler = PeakRssSampler.forProcess(process);
     Thread outThread = new RedirectStreamToStringBuffer(out, process.getInputStream());
     Thread errThread = new RedirectStreamToStringBuffer(err, process.getErrorStream());
     try {
@@ -140,6 +253,10 @@ public final class Execution {
       errThread.join();
     } catch (InterruptedException e) {
       Thread.currentThread().interrupt();
+    } finally {
+      if (sampler != null) {
+        sampler.finish();
+      }
     }
     return process.exitValue();
   }
@@ -14,7 +14,6 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.io.Files;
-import com.google.common.io.InputSupplier;
 import com.google.common.io.Resources;
 
 import org.codehaus.jettison.json.JSONArray;
@@ -27,6 +26,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -36,6 +36,11 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -60,6 +65,10 @@ public final class ProjectBuilder {
 
   private static final int MAX_COMPILER_MESSAGE_LENGTH = 160;
 
+  // Number of threads used to extract the files of a project
+  private static final int EXTRACT_THREADS =
+      Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
   // Project folder prefixes
   // TODO(user): These constants are (or should be) also defined in
   // appengine/src/com/google/appinventor/server/project/youngandroid/YoungAndroidProjectService
@@ -128,12 +137,20 @@ public final class ProjectBuilder {
       LOG.info("temporary project root: " + projectRoot.getAbsolutePath());
       try {
         List<String> sourceFiles;
+        long startExtract = System.currentTimeMillis();
+        BuildMetrics.StageTimer extractTimer = BuildMetrics.startStage(BuildMetrics.Stage.EXTRACT);
         try {
           sourceFiles = extractProjectFiles(inputZip, projectRoot);
         } catch (IOException e) {
           LOG.severe("unexpected problem extracting project file from zip");
           return Result.createFailingResult("", "Problems processing zip file.");
+        } finally {
+          extractTimer.stop();
         }
+        String extractTimeMessage = "Project extraction time: " +
+            ((System.currentTimeMillis() - startExtract) / 1000.0) + " seconds (" +
+            sourceFiles.size() + " files)";
+        LOG.info(extractTimeMessage);
 
         File keyStoreFile = new File(projectRoot, KEYSTORE_FILE_NAME);
         String keyStorePath = keyStoreFile.getPath();
@@ -151,6 +168,7 @@ public final class ProjectBuilder {
         // Prepare for redirection of compiler message output
         ByteArrayOutputStream output = new ByteArrayOutputStream();
         PrintStream console = new PrintStream(output);
+        console.println(extractTimeMessage);
         ByteArrayOutputStream errors = new ByteArrayOutputStream();
         PrintStream userErrors = new PrintStream(errors);
 
@@ -165,10 +183,15 @@ public final class ProjectBuilder {
         Map<String, Set<String>> componentBlocks = getComponentBlocks(sourceFiles);
 
         // Invoke YoungAndroid compiler
-        boolean success =
-            Compiler.compile(project, componentTypes, componentBlocks, console, console, userErrors,
-                isForCompanion, isForEmulator, includeDangerousPermissions, keyStorePath,
-                childProcessRam, dexCachePath, outputFileName, reporter);
+        boolean success;
+        BuildMetrics.StageTimer buildTimer = BuildMetrics.startStage(BuildMetrics.Stage.BUILD);
+        try {
+          success = Compiler.compile(project, componentTypes, componentBlocks, console, console,
+              userErrors, isForCompanion, isForEmulator, includeDangerousPermissions, keyStorePath,
+              childProcessRam, dexCachePath, outputFileName, reporter);
+        } finally {
+          buildTimer.stop();
+        }
         console.close();
         userErrors.close();
 
@@ -189,7 +212,9 @@ public final class ProjectBuilder {
             LOG.warning("Young Android build - " + outputFile + " does not exist");
           } else {
             outputApk = new File(outputDir, outputFile.getName());
-            Files.copy(outputFile, outputApk);
+            // The project root is deleted below, so the APK can be moved rather than copied.
+            java.nio.file.Files.move(outputFile.toPath(), outputApk.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
             if (saveKeystore) {
               outputKeystore = new File(outputDir, KEYSTORE_FILE_NAME);
               Files.copy(keyStoreFile, outputKeystore);
@@ -221,25 +246,52 @@ public final class ProjectBuilder {
     return compSet;
   }
 
-  private ArrayList<String> extractProjectFiles(ZipFile inputZip, File projectRoot)
+  /*
+   * Extracts the files of the project into projectRoot. The files are written by a few threads at
+   * once, since a project can have hundreds of assets.
+   */
+  private ArrayList<String> extractProjectFiles(final ZipFile inputZip, File projectRoot)
       throws IOException {
     ArrayList<String> projectFileNames = Lists.newArrayList();
+    List<Callable<Void>> extractions = Lists.newArrayList();
     Enumeration<? extends ZipEntry> inputZipEnumeration = inputZip.entries();
     while (inputZipEnumeration.hasMoreElements()) {
-      ZipEntry zipEntry = inputZipEnumeration.nextElement();
-      final InputStream extractedInputStream = inputZip.getInputStream(zipEntry);
-      File extractedFile = new File(projectRoot, zipEntry.getName());
-      LOG.info("extracting " + extractedFile.getAbsolutePath() + " from input zip");
-      Files.createParentDirs(extractedFile); // Do I need this?
-      Files.copy(
-          new InputSupplier<InputStream>() {
-            public InputStream getInput() throws IOException {
-              return extractedInputStream;
-            }
-          },
-          extractedFile);
+      final ZipEntry zipEntry = inputZipEnumeration.nextElement();
+      if (zipEntry.isDirectory()) {
+        continue;
+      }
+      final File extractedFile = new File(projectRoot, zipEntry.getName());
+      // Create the directories before extracting so that the threads don't race to create them.
+      Files.createParentDirs(extractedFile);
+      extractions.add(new Callable<Void>() {
+        @Override
+        public Void call() throws IOException {
+          try (InputStream in = inputZip.getInputStream(zipEntry)) {
+            java.nio.file.Files.copy(in, extractedFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+          }
+          return null;
+        }
+      });
       projectFileNames.add(extractedFile.getPath());
     }
+
+    ExecutorService executor = Executors.newFixedThreadPool(EXTRACT_THREADS);
+    try {
+      for (Future<Void> extraction : executor.invokeAll(extractions)) {
+        extraction.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while extracting project files", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
     return projectFileNames;
   }
 
@@ -198,7 +198,7 @@
 ;;; (get-property 'Label1 'Text)
 (define (get-property component prop-name)
   (let ((component (coerce-to-component-and-verify component)))
-    (sanitize-component-data (invoke component prop-name))))
+    (sanitize-component-data (invoke-component-member component prop-name '()))))
 
 (define (coerce-to-component-and-verify possible-component)
   (let ((component (coerce-to-component possible-component)))
@@ -217,7 +217,7 @@
                  component-type
                  (*:getSimpleName (*:getClass possible-component)))
          "Problem with application")
-        (sanitize-component-data (invoke component prop-name)))))
+        (sanitize-component-data (invoke-component-member component prop-name '())))))
 
 (define (set-and-coerce-property-and-check! possible-component comp-type prop-sym property-value property-type)
   (let ((component (coerce-to-component-of-type possible-component comp-type)))
@@ -976,10 +976,12 @@
 (define-alias Pattern <java.util.regex.Pattern>)
 (define-alias YailList <com.google.appinventor.components.runtime.util.YailList>)
 (define-alias YailDictionary <com.google.appinventor.components.runtime.util.YailDictionary>)
+(define-alias YailListIndex <com.google.appinventor.components.runtime.util.YailListIndex>)
 (define-alias YailNumberToString <com.google.appinventor.components.runtime.util.YailNumberToString>)
 (define-alias YailRuntimeError <com.google.appinventor.components.runtime.errors.YailRuntimeError>)
 (define-alias PermissionException <com.google.appinventor.components.runtime.errors.PermissionException>)
 (define-alias JavaStringUtils <com.google.appinventor.components.runtime.util.JavaStringUtils>)
+(define-alias ComponentInvokers <com.google.appinventor.components.runtime.util.ComponentInvokers>)
 
 (define-alias JavaCollection <java.util.Collection>)
 (define-alias JavaIterator <java.util.Iterator>)
@@ -1049,16 +1051,26 @@
     (let ((result
            (if (all-coercible? coerced-args)
                (try-catch
-                (apply invoke
-                       `(,(lookup-in-current-form-environment component-name)
-                         ,method-name
-                         ,@coerced-args))
+                (invoke-component-member (lookup-in-current-form-environment component-name)
+                                         method-name
+                                         coerced-args)
                 (exception PermissionException
                            (*:dispatchPermissionDeniedEvent (SimpleForm:getActiveForm) (lookup-in-current-form-environment component-name) method-name exception)))
                (generate-runtime-type-error method-name arglist))))
       ;; TODO(markf): this should probably be generalized but for now this is OK, I think
       (sanitize-component-data result))))
 
+;;; Call a component method, property getter (no args) or property setter (one arg).
+;;; The built-in components have invokers, generated by the component annotation
+;;; processor, that call the member directly.  Anything an invoker does not handle,
+;;; such as extensions, overloaded members and arguments of unexpected types, goes
+;;; through Kawa's reflective invoke as before.
+(define (invoke-component-member component member-name args)
+  (let ((result (ComponentInvokers:invoke component member-name args)))
+    (if (eq? result ComponentInvokers:NOT_HANDLED)
+        (apply invoke component member-name args)
+        result)))
+
 ;;; CALL-COMPONENT-TYPE-METHOD
 ;;; Call the component method for the given component object with the given list of args,
 ;;; coercing to the given types.
@@ -1079,10 +1091,7 @@
                                      (list (get-display-representation possible-component)))
         (let ((result
                (if (all-coercible? coerced-args)
-                   (apply invoke
-                          `(,component-value
-                            ,method-name
-                            ,@coerced-args))
+                   (invoke-component-member component-value method-name coerced-args)
                    (generate-runtime-type-error method-name arglist))))
           ;; TODO(markf): this should probably be generalized but for now this is OK, I think
           (sanitize-component-data result)))))
@@ -1124,10 +1133,103 @@
 
 ;;; TODO(halabelson, markf): Get rid of the type list here, and have the primitive
 ;;; keep track of the types rather than forcing the caller to know about them.
-;;; Try removing this code entirely and inlining it in the parser, including
-;;; optimizing out coercion for constants.
 
-(define (call-yail-primitive prim arglist typelist codeblocks-name)
+;;; Since YAIL is compiled together with this file, call-yail-primitive is a
+;;; macro that uses what the YAIL generator knows statically. When the arglist
+;;; is a literal (*list-for-runtime* ...) and the typelist is quoted, each
+;;; argument is coerced with the coercion for its type instead of looking the
+;;; type up at runtime, and the coercion is left out entirely for arguments
+;;; whose type is known: literals of the expected type and the results of the
+;;; numeric primitives. If no argument needs coercion, the primitive is called
+;;; directly, which lets Kawa open-code arithmetic such as
+;;; (call-yail-primitive + (*list-for-runtime* x 1) '(number number) "+").
+;;; Any other call falls back on %call-yail-primitive.
+
+(define-syntax call-yail-primitive
+  (lambda (stx)
+    ;; The primitives the YAIL generator uses for math blocks. All of them
+    ;; return a number or signal an error.
+    (define number-primitives
+      '(+ - * yail-divide expt abs sqrt exp log min max quotient remainder modulo
+        yail-round yail-ceiling yail-floor sin-degrees cos-degrees tan-degrees
+        asin-degrees acos-degrees atan-degrees atan2-degrees
+        degrees->radians radians->degrees))
+    (define (static-type-of datum)
+      (cond ((number? datum) 'number)
+            ((string? datum) 'text)
+            ((boolean? datum) 'boolean)
+            ((and (pair? datum)
+                  (eq? (car datum) 'call-yail-primitive)
+                  (pair? (cdr datum))
+                  (memq (cadr datum) number-primitives))
+             'number)
+            (else #f)))
+    (define (needs-coercion? arg type)
+      (let ((type (syntax-object->datum type))
+            (static-type (static-type-of (syntax-object->datum arg))))
+        (not (and static-type
+                  (or (eq? type static-type) (eq? type 'any))))))
+    (define (coercion value type)
+      (let ((sanitized (list #'sanitize-atomic value)))
+        (case (syntax-object->datum type)
+          ((number) (list #'coerce-to-number sanitized))
+          ((text) (list #'coerce-to-text sanitized))
+          ((boolean) (list #'coerce-to-boolean sanitized))
+          ((list) (list #'coerce-to-yail-list sanitized))
+          ((InstantInTime) (list #'coerce-to-instant sanitized))
+          ((component) (list #'coerce-to-component sanitized))
+          ((pair) (list #'coerce-to-pair sanitized))
+          ((key) (list #'coerce-to-key sanitized))
+          ((dictionary) (list #'coerce-to-dictionary sanitized))
+          ((any) sanitized)
+          (else (list #'coerce-arg value (list #'quote type))))))
+    (define (literal-call? arglist typelist)
+      (let ((args (syntax-object->datum arglist))
+            (types (syntax-object->datum typelist)))
+        (and (pair? args)
+             (eq? (car args) '*list-for-runtime*)
+             (pair? types)
+             (eq? (car types) 'quote)
+             (pair? (cdr types))
+             (list? (cadr types))
+             (= (length (cdr args)) (length (cadr types))))))
+    (syntax-case stx ()
+      ((_ prim (list-for-runtime arg ...) (quote-form (type ...)) codeblocks-name)
+       (literal-call? #'(list-for-runtime arg ...) #'(quote-form (type ...)))
+       (let ((args #'(arg ...))
+             (types #'(type ...)))
+         (if (not (memq #t (map needs-coercion? args types)))
+             #'(prim arg ...)
+             (with-syntax (((value ...) (generate-temporaries #'(arg ...))))
+               (let loop ((temps #'(value ...))
+                          (args args)
+                          (types types)
+                          (coerced '())
+                          (bindings '())
+                          (checks '()))
+                 (cond
+                  ((null? temps)
+                   (with-syntax (((coerced ...) (reverse coerced))
+                                 ((binding ...) (reverse bindings))
+                                 ((check ...) (reverse checks)))
+                     #'(let* ((value arg) ... binding ...)
+                         (if (and check ...)
+                             (prim coerced ...)
+                             (generate-runtime-type-error codeblocks-name
+                                                          (list value ...))))))
+                  ((needs-coercion? (car args) (car types))
+                   (let ((temp (car (generate-temporaries (list (car temps))))))
+                     (loop (cdr temps) (cdr args) (cdr types)
+                           (cons temp coerced)
+                           (cons (list temp (coercion (car temps) (car types))) bindings)
+                           (cons (list #'is-coercible? temp) checks))))
+                  (else
+                   (loop (cdr temps) (cdr args) (cdr types)
+                         (cons (car temps) coerced) bindings checks))))))))
+      ((_ prim arglist typelist codeblocks-name)
+       #'(%call-yail-primitive prim arglist typelist codeblocks-name)))))
+
+(define (%call-yail-primitive prim arglist typelist codeblocks-name)
   ;; (android-log (format #f "applying procedure: ~A to ~A" codeblocks-name arglist))
   (let ((coerced-args (coerce-args codeblocks-name arglist typelist)))
     (if (all-coercible? coerced-args)
@@ -1275,12 +1377,15 @@
 ;;; Call a component's property setter method with argument coercion
 ;;; Ex: (%set-and-coerce-property! Button3 'FontSize 14 'number)
 (define (%set-and-coerce-property! comp prop-name property-value property-type)
-  (android-log (format #f "coercing for setting property ~A -- value ~A to type ~A" prop-name property-value property-type))
+  ;; Check *debug* here so the messages are not formatted on every property set.
+  (when *debug*
+    (android-log (format #f "coercing for setting property ~A -- value ~A to type ~A" prop-name property-value property-type)))
   (let ((coerced-arg (coerce-arg property-value property-type)))
-    (android-log (format #f "coerced property value was: ~A " coerced-arg))
+    (when *debug*
+      (android-log (format #f "coerced property value was: ~A " coerced-arg)))
     (if (all-coercible? (list coerced-arg))
         (try-catch
-         (invoke comp prop-name coerced-arg)
+         (invoke-component-member comp prop-name (list coerced-arg))
          (exception PermissionException
                     (*:dispatchPermissionDeniedEvent (SimpleForm:getActiveForm) comp prop-name exception)))
         (generate-runtime-type-error prop-name (list property-value)))))
@@ -2086,6 +2191,7 @@ list, use the make-yail-list constructor with no arguments.
   (cdr yail-list))
 
 (define (set-yail-list-contents! yail-list contents)
+  (YailListIndex:changed yail-list)
   (set-cdr! yail-list contents))
 
 
@@ -2218,11 +2324,19 @@ list, use the make-yail-list constructor with no arguments.
 ;; Implements the Blocks index in list operation
 ;; returns the 1-based index of the object in the list
 ;; returns 0 if object not in list
+;; A list that is searched repeatedly gets a hash index (see YailListIndex.java),
+;; which gives the positions of the items that might be yail-equal? to the object.
 (define (yail-list-index object yail-list)
-  (let loop ((i 1) (list (yail-list-contents yail-list)))
-    (cond ((null? list) 0)
-          ((yail-equal? object (car list)) i)
-          (else (loop (+ i 1) (cdr list))))))
+  (let ((index (YailListIndex:forItems yail-list object)))
+    (if (eq? index #!null)
+        (let loop ((i 1) (list (yail-list-contents yail-list)))
+          (cond ((null? list) 0)
+                ((yail-equal? object (car list)) i)
+                (else (loop (+ i 1) (cdr list)))))
+        (let loop ((i (*:next (as YailListIndex index) object 0)))
+          (cond ((< i 0) 0)
+                ((yail-equal? object (*:get (as YailListIndex index) i)) (+ i 1))
+                (else (loop (*:next (as YailListIndex index) object (+ i 1)))))))))
 
 ;; Implements the Blocks get list item operation
 (define (yail-list-get-item yail-list index)
@@ -2259,6 +2373,7 @@ list, use the make-yail-list constructor with no arguments.
                  len
                  (get-display-representation yail-list))
          "List index too large")))
+  (YailListIndex:changed yail-list)
   (set-car! (list-tail (yail-list-contents yail-list) (- index 1)) value))
 
 
@@ -2290,6 +2405,7 @@ list, use the make-yail-list constructor with no arguments.
                    len
                    (get-display-representation yail-list))
            "List index too large"))
+      (YailListIndex:changed yail-list)
       (let ((pair-pointing-to-deletion (list-tail yail-list (- index2 1))))
         (set-cdr! pair-pointing-to-deletion (cddr pair-pointing-to-deletion))))))
 
@@ -2320,6 +2436,7 @@ list, use the make-yail-list constructor with no arguments.
                    (get-display-representation yail-list)
                    len+1)
            "List index too large"))
+      (YailListIndex:changed yail-list)
       (let ((contents (yail-list-contents yail-list)))
         (if (= index2 1)
             (set-yail-list-contents! yail-list (cons item contents))
@@ -2340,8 +2457,10 @@ list, use the make-yail-list constructor with no arguments.
     (cons (car l) (list-copy (cdr l)))))
   ;; We have to operate on the yail-list itself, not the contents, because
   ;; the contents might be empty
-  (set-cdr! (list-tail yail-list-A (length (yail-list-contents yail-list-A)))
-        (list-copy (yail-list-contents yail-list-B))))
+  (let ((new-contents (list-copy (yail-list-contents yail-list-B))))
+    (set-cdr! (list-tail yail-list-A (length (yail-list-contents yail-list-A)))
+              new-contents)
+    (YailListIndex:appended yail-list-A new-contents)))
 
 
 ;; Extend list A by appending the items to it
@@ -2350,14 +2469,10 @@ list, use the make-yail-list constructor with no arguments.
 (define (yail-list-add-to-list! yail-list . items)
   (yail-list-append! yail-list (apply make-yail-list items)))
 
-;;;TODO(halabelson): BUG!  We need to recognize that "1" is
-;;; a member of (1 2 3)
-
 ;; Implements the blocks member? operation
 ;; This returns true or false (unlike Scheme's member primitive)
 (define (yail-list-member? object yail-list)
-  (let ((result (member object (yail-list-contents yail-list) yail-equal?)))
-    (if result #t #f)))
+  (> (yail-list-index object yail-list) 0))
 
 
 ;; Returns an element chosen at random from the list
@@ -2465,18 +2580,35 @@ list, use the make-yail-list constructor with no arguments.
 ;;; JSON objects and whether jsonutils.decode.
 
 (define (yail-alist-lookup key yail-list-of-pairs default)
-  (android-log
-   (format #f "List alist lookup key is  ~A and table is ~A" key yail-list-of-pairs))
-  (let loop ((pairs-to-check (yail-list-contents yail-list-of-pairs)))
-    (cond ((null? pairs-to-check) default)
-          ((not (pair-ok? (car pairs-to-check)))
-           (signal-runtime-error
-            (format #f "Lookup in pairs: the list ~A is not a well-formed list of pairs"
-                    (get-display-representation yail-list-of-pairs))
-            "Invalid list of pairs"))
-          ((yail-equal? key (car (yail-list-contents (car pairs-to-check))))
-           (cadr (yail-list-contents (car pairs-to-check))))
-          (else (loop (cdr pairs-to-check))))))
+  (define (lookup-without-index)
+    (let loop ((pairs-to-check (yail-list-contents yail-list-of-pairs)))
+      (cond ((null? pairs-to-check) default)
+            ((not (pair-ok? (car pairs-to-check)))
+             (signal-runtime-error
+              (format #f "Lookup in pairs: the list ~A is not a well-formed list of pairs"
+                      (get-display-representation yail-list-of-pairs))
+              "Invalid list of pairs"))
+            ((yail-equal? key (car (yail-list-contents (car pairs-to-check))))
+             (cadr (yail-list-contents (car pairs-to-check))))
+            (else (loop (cdr pairs-to-check))))))
+  ;; Check *debug* here so the table is not formatted on every lookup.
+  (when *debug*
+    (android-log
+     (format #f "List alist lookup key is  ~A and table is ~A" key yail-list-of-pairs)))
+  (let ((index (YailListIndex:forPairs yail-list-of-pairs key)))
+    (if (eq? index #!null)
+        (lookup-without-index)
+        (let ((malformed (*:firstMalformed (as YailListIndex index))))
+          (let loop ((i (*:next (as YailListIndex index) key 0)))
+            (cond
+             ;; A malformed pair before the match is an error; let the
+             ;; search without the index report it.
+             ((and (>= malformed 0) (or (< i 0) (< malformed i)))
+              (lookup-without-index))
+             ((< i 0) default)
+             ((yail-equal? key (car (yail-list-contents (*:get (as YailListIndex index) i))))
+              (cadr (yail-list-contents (*:get (as YailListIndex index) i))))
+             (else (loop (*:next (as YailListIndex index) key (+ i 1))))))))))
 
 (define (pair-ok? candidate-pair)
   (and (yail-list? candidate-pair)
@@ -2907,6 +3039,20 @@ Dictionary implementation.
     ((_ blockid expr)
      (in-ui blockid (delay expr)))))
 
+;;; process-repl-input-part
+;;; When the blocks editor sends a large chunk of code (for example, the
+;;; whole screen on initial load), the companion evaluates it one top-level
+;;; form at a time, so the UI thread can run the early forms while later ones
+;;; are still being read. POSITION is one of the symbols first, middle or last.
+;;; Only the first failure in the chunk is reported and the rest of the chunk
+;;; is skipped. Otherwise only the last form reports its result, so the blocks
+;;; editor still sees a single result for the whole chunk.
+
+(define-syntax process-repl-input-part
+  (syntax-rules ()
+    ((_ blockid position expr)
+     (in-ui-part blockid 'position (delay expr)))))
+
 ;; This code causes the evaluation of the code sent to the phone. Output
 ;; is normally generated by "Report Execution" balloons attached to blocks
 ;; which cause "(report <return-tag> <exp>)" expressions to surround
@@ -2918,28 +3064,48 @@ Dictionary implementation.
   (set! *this-is-the-repl* #t)          ;; Should do this somewhere else...
   (*ui-handler*:post
    (runnable (lambda ()
-               (send-to-block blockid
-                (try-catch
-                 (try-catch
-                  (list "OK"
-                        (get-display-representation (force promise)))
-                  (exception PermissionException
-                             (exception:printStackTrace)
-                             (list "NOK"
-                                   (string-append "Failed due to missing permission: "
-                                                  (exception:getPermissionNeeded))))
-                  (exception YailRuntimeError
-                             (android-log (exception:getMessage))
-                             (list "NOK"
-                                   (exception:getMessage))))
-                 (exception java.lang.Throwable
-                            (android-log (exception:getMessage))
-                            (exception:printStackTrace)
-                            (list
-                             "NOK"
-                             (if (instance? exception java.lang.Error)
-                                 (exception:toString)
-                                 (exception:getMessage))))))))))
+               (send-to-block blockid (force-repl-promise promise))))))
+
+(define *repl-chunk-failed* #f)
+
+(define (in-ui-part blockid position promise)
+  (set! *this-is-the-repl* #t)
+  (*ui-handler*:post
+   (runnable (lambda ()
+               (when (eq? position 'first)
+                 (set! *repl-chunk-failed* #f))
+               (when (not *repl-chunk-failed*)
+                 (let ((result (force-repl-promise promise)))
+                   (cond ((not (equal? (car result) "OK"))
+                          (set! *repl-chunk-failed* #t)
+                          (send-to-block blockid result))
+                         ((eq? position 'last)
+                          (send-to-block blockid result)))))))))
+
+;; Forces the promise, returning a list of the status ("OK" or "NOK") and
+;; either the display representation of the value or the error message.
+(define (force-repl-promise promise)
+  (try-catch
+   (try-catch
+    (list "OK"
+          (get-display-representation (force promise)))
+    (exception PermissionException
+               (exception:printStackTrace)
+               (list "NOK"
+                     (string-append "Failed due to missing permission: "
+                                    (exception:getPermissionNeeded))))
+    (exception YailRuntimeError
+               (android-log (exception:getMessage))
+               (list "NOK"
+                     (exception:getMessage))))
+   (exception java.lang.Throwable
+              (android-log (exception:getMessage))
+              (exception:printStackTrace)
+              (list
+               "NOK"
+               (if (instance? exception java.lang.Error)
+                   (exception:toString)
+                   (exception:getMessage))))))
 
 ;; send-to-block is used for all communication back to the blocks editor
 ;; Calls on report are also generated for code from the blocks compiler
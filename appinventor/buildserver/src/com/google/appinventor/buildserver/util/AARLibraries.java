@@ -182,7 +182,8 @@ public class AARLibraries extends HashSet<AARLibrary> {
         merger.addDataSet(resourceSet);
       }
 
-      MergedResourceWriter writer = new MergedResourceWriter(outputDir, cruncher, false, false, null);
+      // PNG files, including nine-patch files, are crunched here rather than by AAPT.
+      MergedResourceWriter writer = new MergedResourceWriter(outputDir, cruncher, true, true, null);
       writer.setInsertSourceMarkers(true);
       merger.mergeData(writer, false);
       return true;
@@ -0,0 +1,84 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+package com.google.appinventor.buildserver;
+
+import org.codehaus.jettison.json.JSONObject;
+
+import java.util.Collections;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests BuildMetrics class.
+ */
+public class BuildMetricsTest extends TestCase {
+  private static final Map<String, Number> NO_VALUES = Collections.emptyMap();
+
+  public void testHistogramBuckets() throws Exception {
+    BuildMetrics.Histogram histogram = new BuildMetrics.Histogram(1, 10);
+    histogram.observe(0.5);
+    histogram.observe(5);
+    histogram.observe(50);
+    // The buckets are cumulative: le=1, le=10 and then +Inf, which is the count.
+    assertEquals(1, histogram.getBucketCount(0));
+    assertEquals(2, histogram.getBucketCount(1));
+    assertEquals(3, histogram.getCount());
+    assertEquals(55.5, histogram.getSum(), 1e-6);
+  }
+
+  public void testChildPeakRssIsRecordedAgainstCurrentStage() throws Exception {
+    long before = BuildMetrics.getChildPeakRssMegabytes(BuildMetrics.Stage.ZIPALIGN).getCount();
+    // No stage is running, so this is not recorded.
+    BuildMetrics.recordChildPeakRss(1024);
+    BuildMetrics.StageTimer timer = BuildMetrics.startStage(BuildMetrics.Stage.ZIPALIGN);
+    BuildMetrics.recordChildPeakRss(2048);
+    timer.stop();
+    assertEquals(before + 1,
+        BuildMetrics.getChildPeakRssMegabytes(BuildMetrics.Stage.ZIPALIGN).getCount());
+  }
+
+  public void testNestedStages() throws Exception {
+    long builds = BuildMetrics.getStageSeconds(BuildMetrics.Stage.BUILD).getCount();
+    long aapts = BuildMetrics.getStageSeconds(BuildMetrics.Stage.AAPT).getCount();
+    BuildMetrics.StageTimer build = BuildMetrics.startStage(BuildMetrics.Stage.BUILD);
+    BuildMetrics.StageTimer aapt = BuildMetrics.startStage(BuildMetrics.Stage.AAPT);
+    aapt.stop();
+    long before = BuildMetrics.getChildPeakRssMegabytes(BuildMetrics.Stage.BUILD).getCount();
+    BuildMetrics.recordChildPeakRss(1024);
+    build.stop();
+    assertEquals(builds + 1, BuildMetrics.getStageSeconds(BuildMetrics.Stage.BUILD).getCount());
+    assertEquals(aapts + 1, BuildMetrics.getStageSeconds(BuildMetrics.Stage.AAPT).getCount());
+    // After AAPT stops, child processes count against the enclosing BUILD stage again.
+    assertEquals(before + 1,
+        BuildMetrics.getChildPeakRssMegabytes(BuildMetrics.Stage.BUILD).getCount());
+  }
+
+  public void testPrometheusFormat() throws Exception {
+    BuildMetrics.recordCacheLookup(BuildMetrics.Cache.DEX, true);
+    String text = BuildMetrics.toPrometheus(
+        Collections.<String, Number>singletonMap("buildserver_active_build_tasks", 2),
+        Collections.<String, Number>singletonMap("buildserver_completed_build_tasks", 5));
+    assertTrue(text.contains("# TYPE buildserver_stage_seconds histogram\n"));
+    assertTrue(text.contains("buildserver_stage_seconds_bucket{stage=\"dx\",le=\"+Inf\"} "));
+    assertTrue(text.contains("buildserver_cache_lookups_total{cache=\"dex\",result=\"hit\"} "));
+    assertTrue(text.contains("buildserver_child_process_queue_depth 0\n"));
+    assertTrue(text.contains("# TYPE buildserver_active_build_tasks gauge\n"
+        + "buildserver_active_build_tasks 2\n"));
+    assertTrue(text.contains("# TYPE buildserver_completed_build_tasks counter\n"
+        + "buildserver_completed_build_tasks 5\n"));
+  }
+
+  public void testJsonCacheHitRate() throws Exception {
+    BuildMetrics.recordCacheLookup(BuildMetrics.Cache.RESOURCE, true);
+    BuildMetrics.recordCacheLookup(BuildMetrics.Cache.RESOURCE, false);
+    JSONObject json = BuildMetrics.toJson(NO_VALUES, NO_VALUES);
+    JSONObject resource = json.getJSONObject("caches").getJSONObject("resource");
+    long hits = resource.getLong("hits");
+    long misses = resource.getLong("misses");
+    assertEquals((double) hits / (hits + misses), resource.getDouble("hitRate"), 1e-9);
+    assertTrue(json.getJSONObject("stageSeconds").has("kawa"));
+  }
+}
@@ -0,0 +1,69 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+package com.google.appinventor.buildserver;
+
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Tests BuildResources class.
+ */
+public class BuildResourcesTest extends TestCase {
+  private File baseDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    baseDir = Files.createTempDir();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtils.deleteQuietly(baseDir);
+  }
+
+  public void testResourceDirectoryIsShared() throws Exception {
+    BuildResources resources = new BuildResources(baseDir, null);
+    File resourceDir = resources.getResourceDirectory();
+    assertTrue(resourceDir.isDirectory());
+    assertEquals(resourceDir, resources.getResourceDirectory());
+  }
+
+  public void testResourceDirectoryIsPrivate() throws Exception {
+    BuildResources resources = new BuildResources(baseDir, "key");
+    File resourceDir = resources.getResourceDirectory();
+    assertEquals(new File(baseDir, "appinventor-resources-key").getCanonicalFile(), resourceDir);
+    assertEquals("rwx------", PosixFilePermissions.toString(
+        java.nio.file.Files.getPosixFilePermissions(resourceDir.toPath())));
+    // A later server run with the same jar reuses it.
+    assertEquals(resourceDir, new BuildResources(baseDir, "key").getResourceDirectory());
+  }
+
+  public void testWritableResourceDirectoryIsNotReused() throws Exception {
+    File shared = new File(baseDir, "appinventor-resources-key");
+    assertTrue(shared.mkdir());
+    java.nio.file.Files.setPosixFilePermissions(shared.toPath(),
+        PosixFilePermissions.fromString("rwxrwxrwx"));
+    BuildResources resources = new BuildResources(baseDir, "key");
+    File resourceDir = resources.getResourceDirectory();
+    assertFalse(resourceDir.equals(shared.getCanonicalFile()));
+    assertTrue(resourceDir.isDirectory());
+  }
+
+  public void testStaleResourceDirectoriesAreDeleted() throws Exception {
+    File stale = new File(baseDir, "appinventor-resources-old");
+    assertTrue(new File(stale, "tools").mkdirs());
+    java.nio.file.Files.setPosixFilePermissions(stale.toPath(),
+        PosixFilePermissions.fromString("rwx------"));
+    new BuildResources(baseDir, "new").getResourceDirectory();
+    assertFalse(stale.exists());
+    assertTrue(new File(baseDir, "appinventor-resources-new").isDirectory());
+  }
+}
@@ -0,0 +1,123 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+package com.google.appinventor.buildserver;
+
+import com.android.ide.common.internal.PngException;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Tests CachingPngCruncher class.
+ */
+public class CachingPngCruncherTest extends TestCase {
+  private File tempDir;
+  private File cacheDir;
+  private File crunchCount;
+  private String fakeAapt;
+
+  @Override
+  protected void setUp() throws Exception {
+    tempDir = Files.createTempDir();
+    cacheDir = new File(tempDir, "cache");
+    assertTrue(cacheDir.mkdir());
+    // Stands in for "aapt s -i <from> -o <to>": copies the file and counts the calls.
+    crunchCount = new File(tempDir, "count");
+    File script = new File(tempDir, "aapt");
+    Files.write("#!/bin/sh\n"
+        + "case \"$3\" in *bad*) exit 1;; esac\n"
+        + "echo x >> " + crunchCount.getAbsolutePath() + "\n"
+        + "cp \"$3\" \"$5\"\n", script, Charsets.UTF_8);
+    assertTrue(script.setExecutable(true));
+    fakeAapt = script.getAbsolutePath();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtils.deleteQuietly(tempDir);
+  }
+
+  public void testIdenticalFilesAreCrunchedOnce() throws Exception {
+    File first = writeFile("first/icon.png", "image");
+    File second = writeFile("second/other.png", "image");
+    CachingPngCruncher cruncher = new CachingPngCruncher(fakeAapt, cacheDir);
+    File firstOut = new File(tempDir, "first.png");
+    File secondOut = new File(tempDir, "second.png");
+    cruncher.crunchPng(0, first, firstOut);
+    cruncher.crunchPng(0, second, secondOut);
+    assertEquals("image", Files.toString(firstOut, Charsets.UTF_8));
+    assertEquals("image", Files.toString(secondOut, Charsets.UTF_8));
+    assertEquals(1, Files.readLines(crunchCount, Charsets.UTF_8).size());
+  }
+
+  public void testCrunchIsTimedAsItsOwnStage() throws Exception {
+    long crunches = BuildMetrics.getStageSeconds(BuildMetrics.Stage.PNG_CRUNCH).getCount();
+    long builds = BuildMetrics.getChildPeakRssMegabytes(BuildMetrics.Stage.BUILD).getCount();
+    BuildMetrics.StageTimer build = BuildMetrics.startStage(BuildMetrics.Stage.BUILD);
+    try {
+      new CachingPngCruncher(fakeAapt, cacheDir)
+          .crunchPng(0, writeFile("icon.png", "image"), new File(tempDir, "out.png"));
+    } finally {
+      build.stop();
+    }
+    assertEquals(crunches + 1,
+        BuildMetrics.getStageSeconds(BuildMetrics.Stage.PNG_CRUNCH).getCount());
+    // The AAPT process is not counted against the build.
+    assertEquals(builds,
+        BuildMetrics.getChildPeakRssMegabytes(BuildMetrics.Stage.BUILD).getCount());
+  }
+
+  public void testNinePatchIsCachedSeparately() throws Exception {
+    File plain = writeFile("button.png", "image");
+    File ninePatch = writeFile("button.9.png", "image");
+    CachingPngCruncher cruncher = new CachingPngCruncher(fakeAapt, cacheDir);
+    cruncher.crunchPng(0, plain, new File(tempDir, "out.png"));
+    cruncher.crunchPng(0, ninePatch, new File(tempDir, "out.9.png"));
+    assertEquals(2, Files.readLines(crunchCount, Charsets.UTF_8).size());
+  }
+
+  public void testPlainFileThatCannotBeCrunchedIsCopied() throws Exception {
+    File bad = writeFile("bad.png", "image");
+    File out = new File(tempDir, "out.png");
+    new CachingPngCruncher(fakeAapt, cacheDir).crunchPng(0, bad, out);
+    assertEquals("image", Files.toString(out, Charsets.UTF_8));
+    assertEquals(0, cacheDir.list().length);
+  }
+
+  public void testNinePatchThatCannotBeCrunchedFails() throws Exception {
+    File bad = writeFile("bad.9.png", "image");
+    try {
+      new CachingPngCruncher(fakeAapt, cacheDir).crunchPng(0, bad, new File(tempDir, "out.9.png"));
+      fail("Expected PngException");
+    } catch (PngException e) {
+      // Expected
+    }
+  }
+
+  public void testTrimKeepsMostRecentlyUsedFiles() throws Exception {
+    for (int i = 0; i < 5; i++) {
+      File file = new File(cacheDir, i + ".png");
+      Files.write("image", file, Charsets.UTF_8);
+      assertTrue(file.setLastModified(1000000L * (i + 1)));
+    }
+    CachingPngCruncher.trim(cacheDir, 2);
+    assertEquals(2, cacheDir.list().length);
+    assertTrue(new File(cacheDir, "3.png").exists());
+    assertTrue(new File(cacheDir, "4.png").exists());
+  }
+
+  private File writeFile(String path, String content) throws Exception {
+    File file = new File(tempDir, path);
+    Files.createParentDirs(file);
+    Files.write(content, file, Charsets.UTF_8);
+    return file;
+  }
+}
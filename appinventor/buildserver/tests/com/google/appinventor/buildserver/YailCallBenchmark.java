@@ -0,0 +1,124 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.appinventor.common.testutils.TestUtils;
+import com.google.appinventor.components.runtime.Component;
+import com.google.appinventor.components.runtime.HandlesEventDispatching;
+import com.google.appinventor.components.runtime.util.ComponentInvokers;
+import gnu.mapping.Environment;
+import gnu.mapping.Procedure;
+import gnu.mapping.Symbol;
+import kawa.standard.Scheme;
+
+/**
+ * Measures the per-call cost of the YAIL runtime procedures that call into components, with and
+ * without a {@link ComponentInvokers.Invoker}. This is a benchmark, not a test, so it is not run
+ * with the test suite. Run it with the BuildServerTests classpath:
+ *
+ * <pre>
+ *   java -cp ... com.google.appinventor.buildserver.YailCallBenchmark [iterations]
+ * </pre>
+ */
+public final class YailCallBenchmark {
+
+  /**
+   * A minimal component with a number property and a method, like Ball.X or Canvas.DrawPoint.
+   */
+  public static final class Counter implements Component {
+    private double value;
+
+    @Override
+    public HandlesEventDispatching getDispatchDelegate() {
+      return null;
+    }
+
+    public double Value() {
+      return value;
+    }
+
+    public void Value(double value) {
+      this.value = value;
+    }
+
+    public int Add(int a, int b) {
+      return a + b;
+    }
+  }
+
+  // What the annotation processor would generate for Counter.
+  private static final ComponentInvokers.Invoker COUNTER_INVOKER =
+      new ComponentInvokers.Invoker() {
+        @Override
+        public Object invoke(Component component, String member, Object[] args) {
+          Counter c = (Counter) component;
+          switch (member) {
+            case "Value":
+              if (args.length == 0) {
+                return c.Value();
+              }
+              if (args.length == 1 && args[0] instanceof Number) {
+                c.Value(((Number) args[0]).doubleValue());
+                return null;
+              }
+              break;
+            case "Add":
+              if (args.length == 2 && args[0] instanceof Number && args[1] instanceof Number) {
+                return c.Add(((Number) args[0]).intValue(), ((Number) args[1]).intValue());
+              }
+              break;
+          }
+          return ComponentInvokers.NOT_HANDLED;
+        }
+      };
+
+  private static final String[][] BENCHMARKS = {
+    { "call-component-method",
+      "(call-component-method 'Counter1 'Add (*list-for-runtime* i 1) '(number number))" },
+    { "set-and-coerce-property!",
+      "(set-and-coerce-property! 'Counter1 'Value i 'number)" },
+    { "get-property",
+      "(get-property 'Counter1 'Value)" },
+  };
+
+  private YailCallBenchmark() {
+  }
+
+  public static void main(String[] args) throws Throwable {
+    int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+    Scheme scheme = new Scheme();
+    String yailRuntimeLibrary = TestUtils.windowsToUnix(Compiler.getResource(Compiler.YAIL_RUNTIME));
+    scheme.eval("(load \"" + yailRuntimeLibrary + "\")");
+    // The procedures below are called from Java rather than from eval, so the runtime's globals
+    // must be visible from the current environment.
+    Environment.setCurrent(scheme.getEnvironment());
+    Procedure addComponent = (Procedure) scheme.eval("add-to-current-form-environment");
+    addComponent.apply2(Symbol.valueOf("Counter1"), new Counter());
+
+    System.out.println(String.format("%-26s %14s %14s", "", "reflection", "invoker"));
+    for (String[] benchmark : BENCHMARKS) {
+      Procedure loop = (Procedure) scheme.eval("(lambda (n) (let loop ((i 0)) (when (< i n) "
+          + benchmark[1] + " (loop (+ i 1)))))");
+
+      ComponentInvokers.register(Counter.class, null);
+      double reflective = nanosPerCall(loop, iterations);
+      ComponentInvokers.register(Counter.class, COUNTER_INVOKER);
+      double direct = nanosPerCall(loop, iterations);
+
+      System.out.println(String.format("%-26s %11.0f ns %11.0f ns", benchmark[0], reflective,
+          direct));
+    }
+  }
+
+  private static double nanosPerCall(Procedure loop, int iterations) throws Throwable {
+    // Warm up the JIT before measuring.
+    loop.apply1(iterations / 10);
+    long start = System.nanoTime();
+    loop.apply1(iterations);
+    return (System.nanoTime() - start) / (double) iterations;
+  }
+}
@@ -874,6 +874,69 @@ public class YailEvalTest extends TestCase {
     assertEquals("bad pair", scheme.eval(thunkify(schemeInputString)).toString());
   }
 
+  /* lookups in lists that are searched often enough to be indexed */
+  public void testIndexedListLookup() throws Throwable {
+    String schemeInputString = "(begin " +
+      "(define list1 (make-yail-list \"a\" \"b\" \"c\" \"d\" \"e\" \"f\" \"g\" \"h\" " +
+      "  \"i\" \"j\" \"k\" \"l\" \"m\" \"n\" \"o\" \"p\" \"1.0\" 2 \"c\")) " +
+      "(define (positions) (list (yail-list-index \"c\" list1) (yail-list-index 1 list1) " +
+      "  (yail-list-index \" 2 \" list1) (yail-list-index \"z\" list1) " +
+      "  (yail-list-member? \"p\" list1))) " +
+      "(define before (positions)) " +
+      "(define again (positions)) " +
+      "(yail-list-set-item! list1 3 \"z\") " +
+      "(define after-set (positions)) " +
+      "(yail-list-remove-item! list1 1) " +
+      "(define after-remove (positions)) " +
+      "(yail-list-add-to-list! list1 \"c\" 1) " +
+      "(define after-add (positions)) " +
+      "(list before again after-set after-remove after-add) " +
+      ")";
+    String schemeResultString = "((3 17 18 0 true) (3 17 18 0 true) (19 17 18 3 true) " +
+        "(18 16 17 2 true) (18 16 17 2 true))";
+    assertEquals(schemeResultString, scheme.eval(schemeInputString).toString());
+  }
+
+  public void testIndexedAListLookup() throws Throwable {
+    String schemeInputString = "(begin " +
+      "(define pairs (make-yail-list)) " +
+      "(do ((i 1 (+ i 1))) ((> i 20)) " +
+      "  (yail-list-add-to-list! pairs (make-yail-list (number->string i) (* i i)))) " +
+      "(define (lookups) (list (yail-alist-lookup 3 pairs \"nothing\") " +
+      "  (yail-alist-lookup \"20.0\" pairs \"nothing\") " +
+      "  (yail-alist-lookup \"x\" pairs \"nothing\"))) " +
+      "(define before (lookups)) " +
+      "(define again (lookups)) " +
+      "(yail-list-set-item! (yail-list-get-item pairs 3) 1 \"x\") " +
+      "(define after-set (lookups)) " +
+      "(yail-list-add-to-list! pairs (make-yail-list 3 \"three\")) " +
+      "(define after-add (lookups)) " +
+      "(list before again after-set after-add) " +
+      ")";
+    String schemeResultString = "((9 400 nothing) (9 400 nothing) (nothing 400 9) " +
+        "(three 400 9))";
+    assertEquals(schemeResultString, scheme.eval(schemeInputString).toString());
+  }
+
+  public void testIndexedAListLookupBadPair() throws Throwable {
+    /* check that a bad pair before the match is still an error once the list is indexed */
+    String schemeInnerInputString = "(begin " +
+      "(define pairs (make-yail-list)) " +
+      "(do ((i 1 (+ i 1))) ((> i 20)) " +
+      "  (yail-list-add-to-list! pairs (make-yail-list i i))) " +
+      "(yail-list-insert-item! pairs 10 100) " +
+      "(yail-alist-lookup 5 pairs \"nothing\") " +
+      "(yail-alist-lookup 5 pairs \"nothing\") " +
+      "(yail-alist-lookup 15 pairs \"nothing\") " +
+      ")";
+    String schemeInputString = "(try-catch " +
+          schemeInnerInputString +
+        " (exception com.google.appinventor.components.runtime.errors.YailRuntimeError " +
+        " \"bad pair\" " +
+        "))";
+    assertEquals("bad pair", scheme.eval(thunkify(schemeInputString)).toString());
+  }
+
   public void testListInsertionMiddle() throws Throwable {
     /* test list insertion in middle */
     String schemeInputString = "(begin " +
@@ -1050,6 +1113,19 @@ public class YailEvalTest extends TestCase {
     assertEquals("true", scheme.eval("(stringTest1)").toString());
   }
 
+  public void testPrimitiveCoercion() throws Throwable {
+    assertEquals("true", scheme.eval("(primitiveCoercionTest)").toString());
+  }
+
+  public void testPrimitiveCoercionError() throws Throwable {
+    try {
+      scheme.eval("(call-yail-primitive + (*list-for-runtime* \"x\" 1) '(number number) \"+\")");
+      fail();
+    } catch (YailRuntimeError e) {
+      assertEquals("Bad arguments to +", e.getErrorType());
+    }
+  }
+
   public void testStringToUpperCaseForConstant() throws Throwable {
     assertEquals("ABCDEFG", scheme.eval("(string-to-upper-case \"aBcDeFg\")").toString());
     // Lowercase sharp s (Unicode 00DF) is replaced with SS. This behavior follow the current
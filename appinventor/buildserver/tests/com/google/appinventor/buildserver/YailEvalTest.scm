@@ -12,6 +12,25 @@
                                       '( number number)
                                       "+"))))
 
+;; Calls whose argument types are known statically skip the coercions, but they must
+;; give the same results as the calls that coerce every argument.
+(define (primitiveCoercionTest)
+  (let ((five "5")
+        (types '(number number)))
+    (and
+     (equal? 3 (call-yail-primitive + (*list-for-runtime* 1 2) '(number number) "+"))
+     (equal? 7 (call-yail-primitive + (*list-for-runtime* five 2) '(number number) "+"))
+     (equal? 11 (call-yail-primitive
+                 +
+                 (*list-for-runtime*
+                  1
+                  (call-yail-primitive * (*list-for-runtime* five 2) '(number number) "*"))
+                 '(number number)
+                 "+"))
+     (equal? "ab" (call-yail-primitive string-append (*list-for-runtime* "a" "b")
+                                       '(text text) "join"))
+     (equal? 9 (call-yail-primitive + (list 4 five) types "+")))))
+
 
 
 ;; (define (testCallWithNoCoercions)
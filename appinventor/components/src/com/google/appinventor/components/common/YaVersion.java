@@ -510,8 +510,16 @@ public class YaVersion {
   // - BLOCKS_LANGUAGE_VERSION was incremented to 31
   // For YOUNG_ANDROID_VERSION 206:
   // - YANDEX_COMPONENT_VERSION was incremented to 2.
+  // For YOUNG_ANDROID_VERSION 207:
+  // - WEB_COMPONENT_VERSION was incremented to 8.
+  // For YOUNG_ANDROID_VERSION 208:
+  // - CANVAS_COMPONENT_VERSION was incremented to 14.
+  // For YOUNG_ANDROID_VERSION 209:
+  // - CLOUDDB_COMPONENT_VERSION was incremented to 2.
+  // For YOUNG_ANDROID_VERSION 210:
+  // - CLOUDDB_COMPONENT_VERSION was incremented to 3.
 
-  public static final int YOUNG_ANDROID_VERSION = 206;
+  public static final int YOUNG_ANDROID_VERSION = 210;
 
   // ............................... Blocks Language Version Number ...............................
 
@@ -751,7 +759,10 @@ public class YaVersion {
   // - ExtendMovesOutsideCanvas was added
   // For CANVAS_COMPONENT_VERSION 13
   // - BackgroundImageinBase64 was added
-  public static final int CANVAS_COMPONENT_VERSION = 13;
+  // For CANVAS_COMPONENT_VERSION 14
+  // - SaveInBackground method and Saved event were added
+  // - SaveAs accepts .webp file names
+  public static final int CANVAS_COMPONENT_VERSION = 14;
 
   // For CHECKBOX_COMPONENT_VERSION 2:
   // - The Value property was renamed to Checked.
@@ -1235,7 +1246,11 @@ public class YaVersion {
 
   // For CLOUDDB_COMPONENT_VERSION 1:
   // - CloudDB component introduced
-  public static final int CLOUDDB_COMPONENT_VERSION = 1;
+  // For CLOUDDB_COMPONENT_VERSION 2:
+  // - The StoreValues and GetValues methods and the BatchInterval property were added.
+  // For CLOUDDB_COMPONENT_VERSION 3:
+  // - The DataChangedInterval and WatchedTags properties were added.
+  public static final int CLOUDDB_COMPONENT_VERSION = 3;
 
   // For TWITTER_COMPONENT_VERSION 2:
   // - The Authorize method and IsAuthorized event handler were added to support
@@ -1306,7 +1321,9 @@ public class YaVersion {
   // For WEB_COMPONENT_VERSION 7:
   // - The JsonTextDecodeWithDictionaries method was added
   // - The XMLTextDecodeAsDictionary method was added.
-  public static final int WEB_COMPONENT_VERSION = 7;
+  // For WEB_COMPONENT_VERSION 8:
+  // - The CacheResponses property was added.
+  public static final int WEB_COMPONENT_VERSION = 8;
 
   // For WEBVIEWER_COMPONENT_VERSION 2:
   // - The CanGoForward and CanGoBack methods were added
@@ -23,6 +23,8 @@ import com.google.appinventor.components.runtime.util.SdkLevel;
 import android.util.Log;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -51,6 +53,11 @@ public final class BluetoothClient extends BluetoothConnectionBase {
 
   private final List<Component> attachedComponents = new ArrayList<Component>();
   private Set<Integer> acceptableDeviceClasses;
+  private NxtPollScheduler nxtPollScheduler;
+  private Ev3SensorReader ev3SensorReader;
+
+  // The message counter of the next EV3 command
+  private int ev3CommandCount;
 
   /**
    * Creates a new BluetoothClient.
@@ -60,6 +67,13 @@ public final class BluetoothClient extends BluetoothConnectionBase {
     DisconnectOnError(false);
   }
 
+  /**
+   * This constructor is for testing purposes only.
+   */
+  BluetoothClient(OutputStream outputStream, InputStream inputStream) {
+    super(outputStream, inputStream);
+  }
+
   /**
    * Returns whether BluetoothClient/BluetoothServer should be disconnected automatically when an error occurs.
    */
@@ -119,6 +133,41 @@ public final class BluetoothClient extends BluetoothConnectionBase {
     }
   }
 
+  /**
+   * Returns the scheduler shared by the NXT components that communicate through this
+   * BluetoothClient.
+   */
+  NxtPollScheduler getNxtPollScheduler() {
+    if (nxtPollScheduler == null) {
+      nxtPollScheduler = new NxtPollScheduler(this);
+    }
+    return nxtPollScheduler;
+  }
+
+  /**
+   * Returns the reader shared by the EV3 sensors that communicate through this BluetoothClient.
+   */
+  Ev3SensorReader getEv3SensorReader() {
+    if (ev3SensorReader == null) {
+      ev3SensorReader = new Ev3SensorReader();
+    }
+    return ev3SensorReader;
+  }
+
+  /**
+   * Reserves message counters for EV3 commands. The EV3 components that communicate through this
+   * BluetoothClient share the counters, so that the robot's replies can be matched to the
+   * commands they answer.
+   *
+   * @param count the number of commands
+   * @return the counter of the first command; the others follow it, wrapping around at 16 bits
+   */
+  int takeEv3CommandCounts(int count) {
+    int first = ev3CommandCount;
+    ev3CommandCount = (ev3CommandCount + count) & 0xFFFF;
+    return first;
+  }
+
   /**
    * Checks whether the Bluetooth device with the given address is paired.
    *
@@ -11,6 +11,7 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Color;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Path;
 import android.graphics.PorterDuff;
@@ -45,7 +46,9 @@ import com.google.appinventor.components.runtime.collect.Sets;
 import com.google.appinventor.components.runtime.errors.PermissionException;
 import com.google.appinventor.components.runtime.util.BoundingBox;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
+import com.google.appinventor.components.runtime.util.AsynchUtil;
 import com.google.appinventor.components.runtime.util.FileUtil;
+import com.google.appinventor.components.runtime.util.IceCreamSandwichUtil;
 import com.google.appinventor.components.runtime.util.MediaUtil;
 import com.google.appinventor.components.runtime.util.PaintUtil;
 import com.google.appinventor.components.runtime.util.SdkLevel;
@@ -56,8 +59,11 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -144,6 +150,28 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
   private static final int DEFAULT_TEXTALIGNMENT = Component.ALIGNMENT_CENTER;
   private static final int FLING_INTERVAL = 1000;  // ms
 
+  // Most points whose colors GetPixelColor remembers between redraws
+  private static final int MAX_CACHED_PIXELS = 4096;
+
+  // A picture waiting to be written by SaveInBackground.
+  private static final class PendingSave {
+    final Bitmap picture;
+    final Bitmap.CompressFormat format;
+
+    PendingSave(Bitmap picture, Bitmap.CompressFormat format) {
+      this.picture = picture;
+      this.format = format;
+    }
+  }
+
+  // Pictures waiting to be written by SaveInBackground, by file.  A newer
+  // picture replaces one whose save has not started.
+  private final Map<File, PendingSave> pendingSaves = new HashMap<File, PendingSave>();
+
+  // Files that a background thread is writing.  Only one thread writes to a
+  // given file at a time.  Both collections are guarded by pendingSaves.
+  private final Set<File> savingFiles = new HashSet<File>();
+
   // Keep track of enclosed sprites.  This list should always be
   // sorted by increasing sprite.Z().
   private final List<Sprite> sprites;
@@ -392,10 +420,24 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
     // to null whenever the canvas size or backgroundDrawable changes.
     private Bitmap scaledBackgroundBitmap;
 
-    // completeCache is created if the user calls getPixelColor().  It is set
-    // back to null whenever the view is redrawn.  If available, it is used
-    // when the Canvas is saved to a file.
-    private Bitmap completeCache;
+    // pixelCache remembers the colors returned by getPixelColor() at points
+    // covered by a sprite, keyed by y * width + x.  It is cleared whenever the
+    // view is invalidated, so repeated queries between frames don't composite
+    // the sprites again.
+    private Map<Integer, Integer> pixelCache;
+
+    // A 1x1 bitmap into which getPixelColor() composites a single point.
+    private Bitmap pixelBitmap;
+    private android.graphics.Canvas pixelCanvas;
+
+    // Support for partial invalidation.
+
+    // spriteBounds holds the region each sprite covered when it was last
+    // drawn, so that moving a sprite only redraws where it was and where it
+    // is now.
+    private final Map<Sprite, RectF> spriteBounds = new HashMap<Sprite, RectF>();
+    private final RectF damagedF = new RectF();
+    private final Rect damaged = new Rect();
 
     public CanvasView(Context context) {
       super(context);
@@ -427,10 +469,108 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
       return cache;
     }
 
+    /*
+     * Draws the whole view, including the sprites, into a new bitmap that,
+     * unlike the drawing cache, doesn't belong to the view, so it can be
+     * compressed on another thread while the view changes.  Returns null if
+     * the view has not been laid out yet.
+     *
+     * This is not free: it draws the view once more on the UI thread, which
+     * costs about as much as a frame, and allocates width * height * 4 bytes.
+     * The backing bitmap can't simply be shared with the writer, since it
+     * only holds the drawing layer, and the picture also has to show the
+     * background and the sprites as they are now.  Drawing straight into
+     * the new bitmap at least avoids building the drawing cache and then
+     * copying it.
+     */
+    private Bitmap snapshot() {
+      int width = getWidth();
+      int height = getHeight();
+      if (width == 0 || height == 0) {
+        return null;
+      }
+      Bitmap picture = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+      draw(new android.graphics.Canvas(picture));
+      return picture;
+    }
+
     @Override
-    public void onDraw(android.graphics.Canvas canvas0) {
-      completeCache = null;
+    public void invalidate() {
+      super.invalidate();
+      clearPixelCache();
+    }
+
+    private void clearPixelCache() {
+      // View's constructor may call invalidate() before pixelCache is initialized.
+      if (pixelCache != null) {
+        pixelCache.clear();
+      }
+    }
+
+    /*
+     * Invalidates only the part of the view within the given box, which is
+     * widened by half the stroke width of the paint and a pixel or two for
+     * antialiasing.
+     */
+    private void invalidateRegion(float left, float top, float right, float bottom, Paint p) {
+      float margin = p.getStrokeWidth() / 2 + 2;
+      damaged.set((int) Math.floor(left - margin), (int) Math.floor(top - margin),
+          (int) Math.ceil(right + margin), (int) Math.ceil(bottom + margin));
+      clearPixelCache();
+      invalidate(damaged);
+    }
 
+    private void invalidateRegion(RectF box, Paint p) {
+      invalidateRegion(box.left, box.top, box.right, box.bottom, p);
+    }
+
+    /*
+     * Invalidates the regions a sprite covered when it was last drawn and
+     * covers now.
+     */
+    private void invalidateSprite(Sprite sprite) {
+      getSpriteBounds(sprite, damagedF);
+      RectF old = spriteBounds.get(sprite);
+      if (old != null) {
+        damagedF.union(old);
+      }
+      damagedF.roundOut(damaged);
+      clearPixelCache();
+      invalidate(damaged);
+    }
+
+    /*
+     * Invalidates the region a sprite covered when it was last drawn and
+     * forgets the sprite.
+     */
+    private void forgetSprite(Sprite sprite) {
+      RectF old = spriteBounds.remove(sprite);
+      if (old != null) {
+        old.roundOut(damaged);
+        clearPixelCache();
+        invalidate(damaged);
+      }
+    }
+
+    /*
+     * Computes a box, in pixels, that contains everything the sprite may
+     * draw.  The sprite's own box is in density-independent pixels, and a
+     * rotated image sprite can draw anywhere within the circle around its
+     * box, so this errs on the side of a larger box.
+     */
+    private void getSpriteBounds(Sprite sprite, RectF out) {
+      float density = $form().deviceDensity();
+      double width = sprite.Width() * density;
+      double height = sprite.Height() * density;
+      double centerX = sprite.xLeft * density + width / 2;
+      double centerY = sprite.yTop * density + height / 2;
+      double radius = Math.hypot(width, height) / 2 + 1;
+      out.set((float) (centerX - radius), (float) (centerY - radius),
+          (float) (centerX + radius), (float) (centerY + radius));
+    }
+
+    @Override
+    public void onDraw(android.graphics.Canvas canvas0) {
       // This will draw the background image and color, if present.
       super.onDraw(canvas0);
 
@@ -440,8 +580,18 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
 
       // sprites is sorted by Z level, so sprites with low Z values will be
       // drawn first, potentially being hidden by Sprites with higher Z values.
+      // When only part of the view was invalidated, sprites outside of it
+      // are skipped.
       for (Sprite sprite : sprites) {
-        sprite.onDraw(canvas0);
+        RectF bounds = spriteBounds.get(sprite);
+        if (bounds == null) {
+          bounds = new RectF();
+          spriteBounds.put(sprite, bounds);
+        }
+        getSpriteBounds(sprite, bounds);
+        if (!canvas0.quickReject(bounds, android.graphics.Canvas.EdgeType.AA)) {
+          sprite.onDraw(canvas0);
+        }
       }
       drawn = true;
     }
@@ -645,7 +795,29 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
       canvas.rotate(-angle, x, y);
       canvas.drawText(text, x, y, paint);
       canvas.restore();
-      invalidate();
+      invalidateText(text, x, y, angle);
+    }
+
+    /*
+     * Invalidates the region covered by text drawn with the current paint,
+     * rotated counterclockwise about its origin by angle degrees.
+     */
+    private void invalidateText(String text, float x, float y, float angle) {
+      float width = paint.measureText(text);
+      float left = x;
+      if (paint.getTextAlign() == Paint.Align.CENTER) {
+        left -= width / 2;
+      } else if (paint.getTextAlign() == Paint.Align.RIGHT) {
+        left -= width;
+      }
+      Paint.FontMetrics metrics = paint.getFontMetrics();
+      damagedF.set(left, y + metrics.top, left + width, y + metrics.bottom);
+      if (angle != 0) {
+        Matrix rotation = new Matrix();
+        rotation.setRotate(-angle, x, y);
+        rotation.mapRect(damagedF);
+      }
+      invalidateRegion(damagedF, paint);
     }
 
     // This intentionally ignores sprites.
@@ -697,37 +869,64 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
         return Component.COLOR_NONE;
       }
 
-      // If the cache isn't available, try to avoid rebuilding it.
-      if (completeCache == null) {
-        // If there are no visible sprites, just call getBackgroundPixelColor().
-        boolean anySpritesVisible = false;
-        for (Sprite sprite : sprites) {
-          if (sprite.Visible()) {
-            anySpritesVisible = true;
-            break;
-          }
-        }
-        if (!anySpritesVisible) {
-          return getBackgroundPixelColor(x, y);
+      int key = y * bitmap.getWidth() + x;
+      if (pixelCache != null) {
+        Integer color = pixelCache.get(key);
+        if (color != null) {
+          return color;
         }
+      }
 
-        // TODO(user): If needed for efficiency, check whether there are any
-        // sprites overlapping (x, y).  If not, we can just call getBackgroundPixelColor().
-        // If so, maybe we can just draw those sprites instead of building a full
-        // cache of the view.
+      // Find the visible sprites that may cover (x, y).  If there are none,
+      // the background and drawing layer determine the color.
+      List<Sprite> covering = null;
+      for (Sprite sprite : sprites) {
+        if (sprite.Visible() && mayCover(sprite, x, y)) {
+          if (covering == null) {
+            covering = new ArrayList<Sprite>();
+          }
+          covering.add(sprite);
+        }
+      }
+      if (covering == null) {
+        return getBackgroundPixelColor(x, y);
+      }
 
-        completeCache = buildCache();
+      // Draw just the point (x, y) of the view, the way draw() would: the
+      // background, the drawing layer and then the covering sprites in Z order.
+      if (pixelBitmap == null) {
+        pixelBitmap = Bitmap.createBitmap(1, 1, Bitmap.Config.ARGB_8888);
+        pixelCanvas = new android.graphics.Canvas(pixelBitmap);
+        pixelCache = new HashMap<Integer, Integer>();
+      }
+      pixelCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+      pixelCanvas.save();
+      pixelCanvas.translate(-x, -y);
+      Drawable background = getBackground();
+      if (background != null) {
+        background.setBounds(0, 0, getWidth(), getHeight());
+        background.draw(pixelCanvas);
+      }
+      pixelCanvas.drawBitmap(bitmap, 0, 0, null);
+      for (Sprite sprite : covering) {
+        sprite.onDraw(pixelCanvas);
       }
+      pixelCanvas.restore();
 
-      // Check the complete cache.
-      try {
-        return completeCache.getPixel(x, y);
-      } catch (IllegalArgumentException e) {
-        // This should never occur, since we have checked bounds.
-        Log.e(LOG_TAG,
-            String.format("Returning COLOR_NONE (exception) from getPixelColor."));
-        return Component.COLOR_NONE;
+      int color = pixelBitmap.getPixel(0, 0);
+      if (pixelCache.size() >= MAX_CACHED_PIXELS) {
+        pixelCache.clear();
       }
+      pixelCache.put(key, color);
+      return color;
+    }
+
+    /*
+     * Checks whether the sprite may draw on the pixel (x, y).
+     */
+    private boolean mayCover(Sprite sprite, int x, int y) {
+      getSpriteBounds(sprite, damagedF);
+      return damagedF.contains(x + 0.5f, y + 0.5f);
     }
   }
 
@@ -820,6 +1019,7 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
    */
   void removeSprite(Sprite sprite) {
     sprites.remove(sprite);
+    view.forgetSprite(sprite);
   }
 
   /**
@@ -831,7 +1031,7 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
   void changeSpriteLayer(Sprite sprite) {
     removeSprite(sprite);
     addSprite(sprite);
-    view.invalidate();
+    view.invalidateSprite(sprite);
   }
 
   @Override
@@ -868,7 +1068,7 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
    * @param sprite the sprite whose location, size, or appearance has changed
    */
   void registerChange(Sprite sprite) {
-    view.invalidate();
+    view.invalidateSprite(sprite);
     findSpriteCollisions(sprite);
   }
 
@@ -1322,7 +1522,7 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
     float correctedX = x * $form().deviceDensity();
     float correctedY = y * $form().deviceDensity();
     view.canvas.drawPoint(correctedX, correctedY, paint);
-    view.invalidate();
+    view.invalidateRegion(correctedX, correctedY, correctedX, correctedY, paint);
   }
 
  /**
@@ -1342,7 +1542,8 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
     Paint p = new Paint(paint);
     p.setStyle(fill ? Paint.Style.FILL : Paint.Style.STROKE);
     view.canvas.drawCircle(correctedX, correctedY, correctedR, p);
-    view.invalidate();
+    view.invalidateRegion(correctedX - correctedR, correctedY - correctedR,
+        correctedX + correctedR, correctedY + correctedR, p);
   }
 
   /**
@@ -1360,7 +1561,8 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
     float correctedX2 = x2 * $form().deviceDensity();
     float correctedY2 = y2 * $form().deviceDensity();
     view.canvas.drawLine(correctedX1, correctedY1, correctedX2, correctedY2, paint);
-    view.invalidate();
+    view.invalidateRegion(Math.min(correctedX1, correctedX2), Math.min(correctedY1, correctedY2),
+        Math.max(correctedX1, correctedX2), Math.max(correctedY1, correctedY2), paint);
   }
 
   /**
@@ -1390,7 +1592,9 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
     Paint p = new Paint(paint);
     p.setStyle(fill ? Paint.Style.FILL : Paint.Style.STROKE);
     view.canvas.drawPath(path, p);
-    view.invalidate();
+    RectF bounds = new RectF();
+    path.computeBounds(bounds, true);
+    view.invalidateRegion(bounds, p);
   }
 
   private Path parsePath(float[][] points) throws IllegalArgumentException {
@@ -1463,11 +1667,11 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
     float scalingFactor = $form().deviceDensity();
     Paint p = new Paint(paint);
     p.setStyle(fill ? Paint.Style.FILL : Paint.Style.STROKE);
-    view.canvas.drawArc(
-      new RectF(scalingFactor * left, scalingFactor * top,
-                scalingFactor * right, scalingFactor * bottom),
-      startAngle, sweepAngle, useCenter, p);
-    view.invalidate();
+    RectF oval = new RectF(scalingFactor * left, scalingFactor * top,
+        scalingFactor * right, scalingFactor * bottom);
+    view.canvas.drawArc(oval, startAngle, sweepAngle, useCenter, p);
+    oval.sort();
+    view.invalidateRegion(oval, p);
   }
 
   /**
@@ -1486,7 +1690,7 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
     float correctedX = x * fontScalingFactor;
     float correctedY = y * fontScalingFactor;
     view.canvas.drawText(text, correctedX, correctedY, paint);
-    view.invalidate();
+    view.invalidateText(text, correctedX, correctedY, 0);
   }
 
   /**
@@ -1541,7 +1745,7 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
     int correctedX = (int) (x * $form().deviceDensity());
     int correctedY = (int) (y * $form().deviceDensity());
     view.canvas.drawPoint(correctedX, correctedY, pixelPaint);
-    view.invalidate();
+    view.invalidateRegion(correctedX, correctedY, correctedX, correctedY, pixelPaint);
   }
 
   /**
@@ -1588,27 +1792,23 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
 
   /**
    * Saves a picture of this Canvas to the device's external storage in the file
-   * named fileName. fileName must end with one of ".jpg", ".jpeg", or ".png"
-   * (which determines the file type: JPEG, or PNG).
+   * named fileName. fileName must end with one of ".jpg", ".jpeg", ".png", or ".webp"
+   * (which determines the file type: JPEG, PNG, or WebP).
    *
    * @return the full path name of the saved file, or the empty string if the
    *         save failed
    */
   @SimpleFunction(description =  "Saves a picture of this Canvas to the device's " +
    "external storage in the file " +
-   "named fileName. fileName must end with one of .jpg, .jpeg, or .png, " +
+   "named fileName. fileName must end with one of .jpg, .jpeg, .png, or .webp, " +
    "which determines the file type.")
   public String SaveAs(String fileName) {
     // Figure out desired file format
-    Bitmap.CompressFormat format;
-    if (fileName.endsWith(".jpg") || fileName.endsWith(".jpeg")) {
-      format = Bitmap.CompressFormat.JPEG;
-    } else if (fileName.endsWith(".png")) {
-      format = Bitmap.CompressFormat.PNG;
-    } else if (!fileName.contains(".")) {  // make PNG the default to match Save behavior
+    if (!fileName.contains(".")) {  // make PNG the default to match Save behavior
       fileName = fileName + ".png";
-      format = Bitmap.CompressFormat.PNG;
-    } else {
+    }
+    Bitmap.CompressFormat format = getCompressFormat(fileName);
+    if (format == null) {
       container.$form().dispatchErrorOccurredEvent(this, "SaveAs",
           ErrorMessages.ERROR_MEDIA_IMAGE_FILE_FORMAT);
       return "";
@@ -1628,13 +1828,146 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
     return "";
   }
 
+  /**
+   * Saves a picture of this Canvas like {@link #SaveAs(String)}, but
+   * compresses the picture and writes the file in the background, so that
+   * the app stays responsive while a large Canvas is saved. The
+   * {@link #Saved(String)} event is run when the file has been written.
+   * If fileName is empty, a new file is created in the Pictures directory,
+   * as with {@link #Save()}.
+   *
+   *   If the Canvas is saved to the same file again before an earlier save
+   * to that file has started, only the later picture is written, so apps
+   * that save often, such as drawing apps with autosave, don't fall behind.
+   *
+   * @param fileName the name of the file, or the empty string
+   */
+  @SimpleFunction(description = "Saves a picture of this Canvas like SaveAs, but writes "
+      + "the file in the background. The Saved event is run when the file has been written. "
+      + "If fileName is empty, a new file is created as with Save.")
+  public void SaveInBackground(String fileName) {
+    File file;
+    Bitmap.CompressFormat format;
+    try {
+      if (fileName.length() == 0) {
+        file = FileUtil.getPictureFile($form(), "png");
+        format = Bitmap.CompressFormat.PNG;
+      } else {
+        if (!fileName.contains(".")) {
+          fileName = fileName + ".png";
+        }
+        format = getCompressFormat(fileName);
+        if (format == null) {
+          container.$form().dispatchErrorOccurredEvent(this, "SaveInBackground",
+              ErrorMessages.ERROR_MEDIA_IMAGE_FILE_FORMAT);
+          return;
+        }
+        file = FileUtil.getExternalFile($form(), fileName);
+      }
+    } catch (PermissionException e) {
+      container.$form().dispatchPermissionDeniedEvent(this, "SaveInBackground", e);
+      return;
+    } catch (IOException e) {
+      container.$form().dispatchErrorOccurredEvent(this, "SaveInBackground",
+          ErrorMessages.ERROR_MEDIA_FILE_ERROR, e.getMessage());
+      return;
+    } catch (FileUtil.FileException e) {
+      container.$form().dispatchErrorOccurredEvent(this, "SaveInBackground",
+          e.getErrorMessageNumber());
+      return;
+    }
+
+    // Only taking the snapshot has to happen on the UI thread.
+    Bitmap picture = view.snapshot();
+    if (picture == null) {
+      container.$form().dispatchErrorOccurredEvent(this, "SaveInBackground",
+          ErrorMessages.ERROR_CANVAS_BITMAP_ERROR);
+      return;
+    }
+    boolean start;
+    synchronized (pendingSaves) {
+      PendingSave replaced = pendingSaves.put(file, new PendingSave(picture, format));
+      if (replaced != null) {
+        replaced.picture.recycle();
+      }
+      start = savingFiles.add(file);
+    }
+    if (start) {
+      final File saving = file;
+      AsynchUtil.runAsynchronously(new Runnable() {
+        @Override
+        public void run() {
+          writePendingSaves(saving);
+        }
+      });
+    }
+  }
+
+  /**
+   * Indicates that {@link #SaveInBackground(String)} has written the file.
+   *
+   * @param fileName the full path name of the saved file
+   */
+  @SimpleEvent(description = "Event indicating that SaveInBackground has written the "
+      + "picture of the Canvas to the file fileName.")
+  public void Saved(String fileName) {
+    EventDispatcher.dispatchEvent(this, "Saved", fileName);
+  }
+
+  /*
+   * Writes the pictures waiting to be saved to file, on a background thread,
+   * until there are no more.
+   */
+  private void writePendingSaves(File file) {
+    while (true) {
+      PendingSave save;
+      synchronized (pendingSaves) {
+        save = pendingSaves.remove(file);
+        if (save == null) {
+          savingFiles.remove(file);
+          return;
+        }
+      }
+      final String path = saveFile(file, save.picture, save.format, "SaveInBackground");
+      save.picture.recycle();
+      if (path.length() > 0) {
+        $form().runOnUiThread(new Runnable() {
+          @Override
+          public void run() {
+            Saved(path);
+          }
+        });
+      }
+    }
+  }
+
+  /*
+   * Returns the format in which to save a picture to the named file, or null
+   * if its extension isn't supported.
+   */
+  private static Bitmap.CompressFormat getCompressFormat(String fileName) {
+    if (fileName.endsWith(".jpg") || fileName.endsWith(".jpeg")) {
+      return Bitmap.CompressFormat.JPEG;
+    } else if (fileName.endsWith(".png")) {
+      return Bitmap.CompressFormat.PNG;
+    } else if (fileName.endsWith(".webp")) {
+      // At quality 100, this is lossless on Android 10 and later.
+      return IceCreamSandwichUtil.getWebpFormat();
+    }
+    return null;
+  }
+
   // Helper method for Save and SaveAs
   private String saveFile(File file, Bitmap.CompressFormat format, String method) {
+    // Don't cache, in order to save memory.  It seems unlikely to be used again soon.
+    return saveFile(file, view.buildCache(), format, method);
+  }
+
+  // Writes the bitmap to the file.  This may be called from any thread.
+  private String saveFile(File file, Bitmap bitmap, Bitmap.CompressFormat format, String method) {
     try {
       boolean success = false;
       FileOutputStream fos = new FileOutputStream(file);
-      // Don't cache, in order to save memory.  It seems unlikely to be used again soon.
-      Bitmap bitmap = (view.completeCache == null ? view.buildCache() : view.completeCache);
       try {
         success = bitmap.compress(format,
             100,  // quality: ignored for png
@@ -49,7 +49,10 @@ import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
@@ -65,6 +68,7 @@ import org.json.JSONArray;
 import org.json.JSONException;
 
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
 import redis.clients.jedis.exceptions.JedisConnectionException;
 import redis.clients.jedis.exceptions.JedisDataException;
 import redis.clients.jedis.exceptions.JedisException;
@@ -242,6 +246,21 @@ public final class CloudDB extends AndroidNonvisibleComponent implements Compone
   // iterates over the queue until it is drained.
   private final List<storedValue> storeQueue = Collections.synchronizedList(new ArrayList());
 
+  // The number of milliseconds to wait before sending stores, see BatchInterval.
+  private volatile int batchInterval = 0;
+
+  // Changes received by the listener that have not been dispatched as DataChanged events yet,
+  // oldest first, as {tag, value} pairs. When there are more than MAX_PENDING_CHANGES, or when
+  // DataChangedInterval is set, only the latest change to each tag is kept. If that still leaves
+  // more than MAX_PENDING_CHANGES, the oldest are dropped until MIN_PENDING_CHANGES remain, so
+  // that an app that falls behind on many tags doesn't rescan the queue for every change.
+  private static final int MAX_PENDING_CHANGES = 256;
+  private static final int MIN_PENDING_CHANGES = 192;
+  private final List<Object[]> pendingChanges = new ArrayList<Object[]>();
+  private boolean changesPosted = false;   // Guarded by pendingChanges
+  private volatile int dataChangedInterval = 0;
+  private volatile Set<String> watchedTags = Collections.emptySet();
+
   private ConnectivityManager cm;
 
   private static class storedValue {
@@ -317,6 +336,9 @@ public final class CloudDB extends AndroidNonvisibleComponent implements Compone
   public void onClear() {
     shutdown = true;            // Tell the listener to stop trying
     flushJedis(false);          // to restart
+    synchronized (pendingChanges) {
+      pendingChanges.clear();   // Don't deliver old changes to a new form
+    }
     if (DEBUG) {
       Log.d(LOG_TAG, "onClear() called");
     }
@@ -575,149 +597,287 @@ public final class CloudDB extends AndroidNonvisibleComponent implements Compone
   @SimpleFunction(description = "Store a value at a tag.")
   public void StoreValue(final String tag, final Object valueToStore) {
     checkProjectIDNotBlank();
+    String value = toStoredJson(valueToStore);
+    if (isConnected()) {
+      if (DEBUG) {
+        Log.d(LOG_TAG,"Device is online...");
+      }
+      enqueueStores(Collections.singletonList(tag), Collections.singletonList(value));
+    } else {
+      CloudDBError("Cannot store values off-line.");
+    }
+  }
 
-    final String value;
+  /**
+   * Asks `CloudDB` to store each value in `valuesToStore`{:.variable.block} under the tag at
+   * the same position in `tags`{:.variable.block}. The values are sent to the server together,
+   * which is much faster than calling {@link #StoreValue(String, Object)} for each of them.
+   *
+   * @param tags The list of tags to use
+   * @param valuesToStore The list of values to store, one for each tag.
+   */
+  @SimpleFunction(description = "Store each value in a list at the tag in the same position " +
+      "in a list of tags. The values are sent to the server together.")
+  public void StoreValues(YailList tags, YailList valuesToStore) {
+    checkProjectIDNotBlank();
+    if (tags.size() != valuesToStore.size()) {
+      throw new YailRuntimeError("The list of tags and the list of values must be the same " +
+          "length.", "StoreValues");
+    }
+    // Convert every value before queueing any, so a bad value stores nothing.
+    List<String> tagList = new ArrayList<String>(tags.size());
+    List<String> valueList = new ArrayList<String>(tags.size());
+    for (int i = 0; i < tags.size(); i++) {
+      tagList.add(tags.getString(i));
+      valueList.add(toStoredJson(valuesToStore.getObject(i)));
+    }
+    if (isConnected()) {
+      enqueueStores(tagList, valueList);
+    } else {
+      CloudDBError("Cannot store values off-line.");
+    }
+  }
+
+  /**
+   * The number of milliseconds `CloudDB` waits after a value is stored before sending it to the
+   * server. Values stored while it waits are sent together with it. A setting of 0 sends values
+   * as soon as possible.
+   *
+   *   Values stored in quick succession, for example in a Canvas Dragged event, are always sent
+   * together while an earlier send is still in progress. A short interval also combines values
+   * stored by separate events. Values waiting to be sent are sent right away when
+   * {@link #GetValue(String, Object)} or {@link #GetValues(YailList, Object)} is called, so that
+   * they get the values stored before them.
+   *
+   * @param interval the number of milliseconds to wait
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER,
+      defaultValue = "0")
+  @SimpleProperty
+  public void BatchInterval(int interval) {
+    batchInterval = Math.max(0, interval);
+  }
+
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR,
+      description = "The number of milliseconds to wait after a value is stored before sending " +
+          "it to the server, so that values stored in quick succession are sent together. " +
+          "A setting of 0 sends values as soon as possible.")
+  public int BatchInterval() {
+    return batchInterval;
+  }
+
+  /**
+   * The number of milliseconds `CloudDB` collects changes made by other devices before firing
+   * {@link #DataChanged(String, Object)} events for them. If a tag changes more than once in that
+   * time, only its latest value is given. A setting of 0 fires an event for every change.
+   *
+   *   Use this when other devices change the same tags many times a second, for example to share
+   * the position of a sprite, and only the latest value matters.
+   *
+   * @param interval the number of milliseconds to collect changes
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER,
+      defaultValue = "0")
+  @SimpleProperty
+  public void DataChangedInterval(int interval) {
+    dataChangedInterval = Math.max(0, interval);
+  }
+
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR,
+      description = "The number of milliseconds to collect changes made by other devices " +
+          "before firing DataChanged events for them. If a tag changes more than once in that " +
+          "time, only its latest value is given. A setting of 0 fires an event for every change.")
+  public int DataChangedInterval() {
+    return dataChangedInterval;
+  }
+
+  /**
+   * The tags for which `CloudDB` fires {@link #DataChanged(String, Object)} events. Changes to
+   * other tags are ignored. If the list is empty, which is the default, events are fired for
+   * every tag.
+   *
+   * @param tags the list of tags to watch
+   */
+  @SimpleProperty
+  public void WatchedTags(YailList tags) {
+    Set<String> newTags = new LinkedHashSet<String>();
+    for (int i = 0; i < tags.size(); i++) {
+      newTags.add(tags.getString(i));
+    }
+    watchedTags = newTags;
+  }
+
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR,
+      description = "The tags for which DataChanged events are fired. Changes to other tags " +
+          "are ignored. If the list is empty, events are fired for every tag.")
+  public YailList WatchedTags() {
+    return YailList.makeList(new ArrayList<String>(watchedTags));
+  }
+
+  private boolean isConnected() {
     NetworkInfo networkInfo = cm.getActiveNetworkInfo();
-    boolean isConnected = networkInfo != null && networkInfo.isConnected();
+    return networkInfo != null && networkInfo.isConnected();
+  }
 
+  private String toStoredJson(Object valueToStore) {
     try {
       if (valueToStore != null) {
         String strval = valueToStore.toString();
         if (strval.startsWith("file:///") || strval.startsWith("/storage")) {
-          value = JsonUtil.getJsonRepresentation(readFile(strval));
+          return JsonUtil.getJsonRepresentation(readFile(strval));
         } else {
-          value = JsonUtil.getJsonRepresentation(valueToStore);
+          return JsonUtil.getJsonRepresentation(valueToStore);
         }
       } else {
-        value = "";
+        return "";
       }
     } catch(JSONException e) {
       throw new YailRuntimeError("Value failed to convert to JSON.", "JSON Creation Error.");
     }
+  }
 
-    if (isConnected) {
+  /*
+   * Adds stores to storeQueue and, if the queue was empty, schedules the store worker to send
+   * them. Stores added while the worker is waiting for the batch interval, or while an earlier
+   * batch is being sent, go out with the next batch.
+   */
+  private void enqueueStores(List<String> tags, List<String> values) {
+    synchronized(storeQueue) {
+      boolean kickit = storeQueue.isEmpty();
       if (DEBUG) {
-        Log.d(LOG_TAG,"Device is online...");
+        Log.d(LOG_TAG, "storeQueue has " + storeQueue.size() + " entries");
       }
-      synchronized(storeQueue) {
-        boolean kickit = false;
-        if (storeQueue.size() == 0) { // Need to kick off the background task
-          if (DEBUG) {
-            Log.d(LOG_TAG, "storeQueue is zero length, kicking background");
-          }
-          kickit = true;
-        } else {
-          if (DEBUG) {
-            Log.d(LOG_TAG, "storeQueue has " + storeQueue.size() + " entries");
-          }
-        }
+      for (int i = 0; i < tags.size(); i++) {
         JSONArray valueList = new JSONArray();
         try {
-          valueList.put(0, value);
+          valueList.put(0, values.get(i));
         } catch (JSONException e) {
           throw new YailRuntimeError("JSON Error putting value.", "value is not convertable");
         }
-        storedValue work  = new storedValue(tag, valueList);
-        storeQueue.add(work);
-        if (kickit) {
-          background.submit(new Runnable() {
+        storeQueue.add(new storedValue(tags.get(i), valueList));
+      }
+      if (kickit) {
+        if (batchInterval > 0) {
+          androidUIHandler.postDelayed(new Runnable() {
               public void run() {
-                JSONArray pendingValueList = null;
-                String pendingTag = null;
-                String pendingValue = null;
-                try {
-                  storedValue work;
-                  if (DEBUG) {
-                    Log.d(LOG_TAG, "store background task running.");
-                  }
-                  while (true) {
-                    synchronized(storeQueue) {
-                      if (DEBUG) {
-                        Log.d(LOG_TAG, "store: In background synchronized block");
-                      }
-                      int size = storeQueue.size();
-                      if (size == 0) {
-                        if (DEBUG) {
-                          Log.d(LOG_TAG, "store background task exiting.");
-                        }
-                        work = null;
-                      } else {
-                        if (DEBUG) {
-                          Log.d(LOG_TAG, "store: storeQueue.size() == " + size);
-                        }
-                        work = storeQueue.remove(0);
-                        if (DEBUG) {
-                          Log.d(LOG_TAG, "store: got work.");
-                        }
-                      }
-                    }
-                    if (DEBUG) {
-                      Log.d(LOG_TAG, "store: left synchronized block");
-                    }
-                    if (work == null) {
-                      try {
-                        if (pendingTag != null) {
-                          String jsonValueList = pendingValueList.toString();
-                          if (DEBUG) {
-                            Log.d(LOG_TAG, "Workqueue empty, sending pendingTag, valueListLength = " + pendingValueList.length());
-                          }
-                          jEval(SET_SUB_SCRIPT, SET_SUB_SCRIPT_SHA1, 1, pendingTag, pendingValue, jsonValueList, projectID);
-                        }
-                      } catch (JedisException e) {
-                        CloudDBError(e.getMessage());
-                        flushJedis(true);
-                      }
-                      return;
-                    }
-
-                    String tag = work.getTag();
-                    JSONArray valueList = work.getValueList();
-                    if (tag == null || valueList == null) {
-                      if (DEBUG) {
-                        Log.d(LOG_TAG, "Either tag or value is null!");
-                      }
-                    } else {
-                      if (DEBUG) {
-                        Log.d(LOG_TAG, "Got Work: tag = " + tag + " value = " + valueList.get(0));
-                      }
-                    }
-                    if (pendingTag == null) { // First time through this invocation
-                      pendingTag = tag;
-                      pendingValueList = valueList;
-                      pendingValue = valueList.getString(0);
-                    } else if (pendingTag.equals(tag)) { // work is for the same tag
-                      pendingValue = valueList.getString(0);
-                      pendingValueList.put(pendingValue);
-                    } else {    // Work is for a different tag, send what we have
-                      try {     // and add the new tag,incoming valuelist for the next round
-                        String jsonValueList = pendingValueList.toString();
-                        if (DEBUG) {
-                          Log.d(LOG_TAG, "pendingTag changed sending pendingTag, valueListLength = " + pendingValueList.length());
-                        }
-                        jEval(SET_SUB_SCRIPT, SET_SUB_SCRIPT_SHA1, 1, pendingTag, pendingValue, jsonValueList, projectID);
-                      } catch (JedisException e) {
-                        CloudDBError(e.getMessage());
-                        flushJedis(true);
-                        storeQueue.clear(); // Flush pending changes, we are in
-                        return;             // an error state
-                      }
-                      pendingTag = tag;
-                      pendingValueList = valueList;
-                      pendingValue = valueList.getString(0);
-                    }
-                  }
-                } catch (Exception e) {
-                Log.e(LOG_TAG, "Exception in store worker!", e);
-                }
+                background.submit(storeWorker);
               }
-            });
+            }, batchInterval);
+        } else {
+          background.submit(storeWorker);
         }
       }
-    } else {
-      CloudDBError("Cannot store values off-line.");
     }
   }
 
+  /*
+   * Sends the stores that are waiting for the batch interval now, so that a read that follows
+   * them on the background thread sees the values they store.
+   */
+  private void sendPendingStores() {
+    synchronized(storeQueue) {
+      if (!storeQueue.isEmpty()) {
+        background.submit(storeWorker);
+      }
+    }
+  }
+
+  // Sends everything in storeQueue. We take the whole queue at once, combine consecutive stores
+  // to the same tag into one call of SET_SUB_SCRIPT (so listeners still see every value), and
+  // pipeline the calls so the batch costs a single round trip to the server.
+  private final Runnable storeWorker = new Runnable() {
+      public void run() {
+        List<storedValue> work;
+        synchronized(storeQueue) {
+          work = new ArrayList<storedValue>(storeQueue);
+          storeQueue.clear();
+        }
+        if (DEBUG) {
+          Log.d(LOG_TAG, "store background task running, " + work.size() + " entries.");
+        }
+        try {
+          sendStores(coalesceStores(work));
+        } catch (JedisException e) {
+          CloudDBError(e.getMessage());
+          flushJedis(true);
+          storeQueue.clear();   // Flush pending changes, we are in
+                                // an error state
+        } catch (Exception e) {
+          Log.e(LOG_TAG, "Exception in store worker!", e);
+        }
+      }
+    };
+
+  /*
+   * Combines each run of consecutive stores to the same tag into one storedValue whose value list
+   * holds all of the values in the run, oldest first.
+   */
+  private static List<storedValue> coalesceStores(List<storedValue> work) throws JSONException {
+    List<storedValue> batches = new ArrayList<storedValue>();
+    storedValue pending = null;
+    for (storedValue item : work) {
+      if (item.getTag() == null || item.getValueList() == null) {
+        if (DEBUG) {
+          Log.d(LOG_TAG, "Either tag or value is null!");
+        }
+        continue;
+      }
+      if (pending != null && pending.getTag().equals(item.getTag())) {
+        pending.getValueList().put(item.getValueList().getString(0));
+      } else {
+        JSONArray valueList = new JSONArray();
+        valueList.put(item.getValueList().getString(0));
+        pending = new storedValue(item.getTag(), valueList);
+        batches.add(pending);
+      }
+    }
+    return batches;
+  }
+
+  private void sendStores(List<storedValue> batches) throws JSONException {
+    if (batches.isEmpty()) {
+      return;
+    }
+    Jedis jedis = getJedis();
+    if (jedis == null) {
+      return;                   // getJedis() has already reported the error
+    }
+    List<Object> results = pipelineStores(jedis, batches);
+    for (Object result : results) {
+      if (result instanceof JedisNoScriptException) {
+        // The server doesn't have the script cached (it may have restarted), so load it and
+        // send the batch once more. Every call in the batch failed the same way.
+        if (DEBUG) {
+          Log.d(LOG_TAG, "Got a JedisNoScriptException for " + SET_SUB_SCRIPT_SHA1);
+        }
+        jedis.scriptLoad(SET_SUB_SCRIPT);
+        results = pipelineStores(jedis, batches);
+        break;
+      }
+    }
+    for (Object result : results) {
+      if (result instanceof JedisException) {
+        CloudDBError(((JedisException) result).getMessage());
+      }
+    }
+  }
+
+  private List<Object> pipelineStores(Jedis jedis, List<storedValue> batches)
+      throws JSONException {
+    Pipeline pipeline = jedis.pipelined();
+    for (storedValue batch : batches) {
+      JSONArray valueList = batch.getValueList();
+      String value = valueList.getString(valueList.length() - 1);
+      if (DEBUG) {
+        Log.d(LOG_TAG, "sending tag " + batch.getTag() + ", valueListLength = " +
+            valueList.length());
+      }
+      pipeline.evalsha(SET_SUB_SCRIPT_SHA1, 1, batch.getTag(), value, valueList.toString(),
+          projectID);
+    }
+    return pipeline.syncAndReturnAll();
+  }
+
   /**
    * `GetValue` asks `CloudDB` to get the value stored under the given tag.
    * It will pass the result to the {@link #GotValue(String, Object) event.
@@ -743,6 +903,7 @@ public final class CloudDB extends AndroidNonvisibleComponent implements Compone
     boolean isConnected = networkInfo != null && networkInfo.isConnected();
 
     if (isConnected) {
+      sendPendingStores();
       // Set value to either the JSON from the CloudDB
       // or the JSON representation of valueIfTagNotThere
       background.submit(new Runnable() {
@@ -756,17 +917,7 @@ public final class CloudDB extends AndroidNonvisibleComponent implements Compone
               if (DEBUG) {
                 Log.d(LOG_TAG, "finished call jedis.get()");
               }
-              if (returnValue != null) {
-                String val = JsonUtil.getJsonRepresentationIfValueFileName(form, returnValue);
-                if(val != null) value.set(val);
-                else value.set(returnValue);
-              }
-              else {
-                if (DEBUG) {
-                  Log.d(CloudDB.LOG_TAG,"Value retrieved is null");
-                }
-                value.set(JsonUtil.getJsonRepresentation(valueIfTagNotThere));
-              }
+              value.set(toGotValue(returnValue, valueIfTagNotThere));
             } catch (JSONException e) {
               CloudDBError("JSON conversion error for " + tag);
               return;
@@ -799,6 +950,85 @@ public final class CloudDB extends AndroidNonvisibleComponent implements Compone
     }
   }
 
+  /**
+   * `GetValues` asks `CloudDB` to get the values stored under each of the given tags with a
+   * single request to the server. It will pass each result to the
+   * {@link #GotValue(String, Object)} event, in the order of the tags. If there is no value stored
+   * under a tag, the `valueIfTagNotThere`{:.variable.block} will be given for that tag.
+   *
+   * @param tags The list of tags whose values are to be retrieved.
+   * @param valueIfTagNotThere The value to pass to the event for each tag that does not exist.
+   */
+  @SimpleFunction(description = "Get the Values for a list of tags with a single request to " +
+    "the server. A GotValue event will fire for each tag, in order, when the values are " +
+    "looked up.")
+  public void GetValues(YailList tags, final Object valueIfTagNotThere) {
+    checkProjectIDNotBlank();
+    final String[] tagArray = new String[tags.size()];
+    final String[] keys = new String[tags.size()];
+    for (int i = 0; i < tagArray.length; i++) {
+      tagArray[i] = tags.getString(i);
+      keys[i] = projectID + ":" + tagArray[i];
+    }
+    if (tagArray.length == 0) {
+      return;
+    }
+
+    if (isConnected()) {
+      sendPendingStores();
+      background.submit(new Runnable() {
+          public void run() {
+            Jedis jedis = getJedis();
+            final Object[] values = new Object[tagArray.length];
+            try {
+              List<String> returnValues = jedis.mget(keys);
+              for (int i = 0; i < values.length; i++) {
+                values[i] = toGotValue(returnValues.get(i), valueIfTagNotThere);
+              }
+            } catch (JSONException e) {
+              CloudDBError("JSON conversion error for " + Arrays.toString(tagArray));
+              return;
+            } catch (NullPointerException e) {
+              CloudDBError("System Error getting tags " + Arrays.toString(tagArray));
+              flushJedis(true);
+              return;
+            } catch (JedisException e) {
+              Log.e(LOG_TAG, "Exception in GetValues", e);
+              CloudDBError(e.getMessage());
+              flushJedis(true);
+              return;
+            }
+
+            androidUIHandler.post(new Runnable() {
+                public void run() {
+                  for (int i = 0; i < values.length; i++) {
+                    GotValue(tagArray[i], values[i]);
+                  }
+                }
+              });
+          }
+        });
+    } else {
+      CloudDBError("Cannot fetch variables while off-line.");
+    }
+  }
+
+  /*
+   * Returns the JSON to give to GotValue for a value read from the server, which is null if the
+   * tag does not exist.
+   */
+  private Object toGotValue(String returnValue, Object valueIfTagNotThere) throws JSONException {
+    if (returnValue != null) {
+      String val = JsonUtil.getJsonRepresentationIfValueFileName(form, returnValue);
+      return val != null ? val : returnValue;
+    } else {
+      if (DEBUG) {
+        Log.d(CloudDB.LOG_TAG,"Value retrieved is null");
+      }
+      return JsonUtil.getJsonRepresentation(valueIfTagNotThere);
+    }
+  }
+
   /**
    * Returns `true`{:.logic.block} if we are on the network and will likely be able to connect to
    * the `CloudDB` server.
@@ -1079,6 +1309,9 @@ public final class CloudDB extends AndroidNonvisibleComponent implements Compone
    */
   @SimpleEvent
   public void DataChanged(final String tag, final Object value) {
+    if (!isWatchedTag(tag)) {
+      return;
+    }
     Object tagValue = "";
     try {
       if(value != null && value instanceof String) {
@@ -1087,14 +1320,68 @@ public final class CloudDB extends AndroidNonvisibleComponent implements Compone
     } catch(JSONException e) {
       throw new YailRuntimeError("Value failed to convert from JSON.", "JSON Retrieval Error.");
     }
-    final Object finalTagValue = tagValue;
 
-    androidUIHandler.post(new Runnable() {
+    // The listener can receive changes faster than the app handles them, so rather than post
+    // an event for each one we queue them and let a single runnable on the UI thread dispatch
+    // whatever has arrived by the time it runs.
+    synchronized (pendingChanges) {
+      pendingChanges.add(new Object[] { tag, tagValue });
+      if (pendingChanges.size() > MAX_PENDING_CHANGES) {
+        dropStaleChanges();
+        if (pendingChanges.size() > MAX_PENDING_CHANGES) {
+          pendingChanges.subList(0, pendingChanges.size() - MIN_PENDING_CHANGES).clear();
+        }
+      }
+      if (!changesPosted) {
+        changesPosted = true;
+        androidUIHandler.postDelayed(dispatchChanges, dataChangedInterval);
+      }
+    }
+  }
+
+  private final Runnable dispatchChanges = new Runnable() {
       public void run() {
-        // Invoke the application's "DataChanged" event handler
-        EventDispatcher.dispatchEvent(CloudDB.this, "DataChanged", tag, finalTagValue);
+        List<Object[]> changes;
+        synchronized (pendingChanges) {
+          if (dataChangedInterval > 0) {
+            dropStaleChanges();
+          }
+          changes = new ArrayList<Object[]>(pendingChanges);
+          pendingChanges.clear();
+          changesPosted = false;
+        }
+        for (Object[] change : changes) {
+          // Invoke the application's "DataChanged" event handler
+          EventDispatcher.dispatchEvent(CloudDB.this, "DataChanged", change[0], change[1]);
+        }
+      }
+    };
+
+  /*
+   * Removes each pending change that is followed by a newer change to the same tag, keeping the
+   * order of the rest. Must be called while holding the lock on pendingChanges.
+   */
+  private void dropStaleChanges() {
+    Set<Object> newer = new HashSet<Object>();
+    List<Object[]> latest = new ArrayList<Object[]>();
+    for (int i = pendingChanges.size() - 1; i >= 0; i--) {
+      Object[] change = pendingChanges.get(i);
+      if (newer.add(change[0])) {
+        latest.add(change);
       }
-    });
+    }
+    Collections.reverse(latest);
+    pendingChanges.clear();
+    pendingChanges.addAll(latest);
+  }
+
+  /*
+   * Returns true if DataChanged events should be fired for the given tag, that is, if it is in
+   * WatchedTags or WatchedTags is empty.
+   */
+  private boolean isWatchedTag(String tag) {
+    Set<String> tags = watchedTags;
+    return tags.isEmpty() || tags.contains(tag);
   }
 
   /**
@@ -0,0 +1,95 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the EV3 sensors that share a Bluetooth connection together.
+ *
+ * <p>Each EV3 sensor component polls its sensor on its own schedule. When a sensor is read and
+ * its value was not read recently, the reader also asks for the values of the other sensors that
+ * have been read lately, all in a single write, and keeps the replies for {@link #MAX_AGE}
+ * milliseconds. The other sensors' reads during that time, whether made by their pollers or by
+ * blocks, are answered from the replies instead of making another round trip to the robot.</p>
+ *
+ * <p>Like the sensor components, the reader must only be used on the UI thread.</p>
+ */
+final class Ev3SensorReader {
+  // The longest time that a reply is kept, in milliseconds. This is shorter than the 50 ms
+  // between the polls of a sensor, so that each poll gets a newer value than the last.
+  static final int MAX_AGE = 40;
+
+  // A read that has not been made for this long, in milliseconds, is no longer done along with
+  // the others.
+  private static final int ACTIVE_TIME = 200;
+
+  private static final class Read {
+    final byte[] command;
+    long requestTime;
+    byte[] reply;
+    long replyTime;
+
+    Read(byte[] command) {
+      this.command = command;
+    }
+  }
+
+  // Reads made lately, by key
+  private final Map<Integer, Read> reads = new LinkedHashMap<Integer, Read>();
+
+  /**
+   * Returns the reply to a command that reads a sensor, sending it along with the other recent
+   * reads if its reply is not kept.
+   *
+   * @param requester the component reading the sensor, which sends the commands
+   * @param functionName the name of the block reading the sensor
+   * @param key a number that identifies the read; reads with the same key send the same command
+   * @param command the encoded direct command, which must ask for a reply
+   * @return the reply, or null if it could not be read
+   */
+  byte[] read(LegoMindstormsEv3Base requester, String functionName, int key, byte[] command) {
+    long now = SystemClock.uptimeMillis();
+    Read read = reads.get(key);
+    if (read == null) {
+      read = new Read(command);
+      reads.put(key, read);
+    }
+    read.requestTime = now;
+    if (read.reply != null && now - read.replyTime < MAX_AGE) {
+      return read.reply;
+    }
+
+    List<Read> batch = new ArrayList<Read>();
+    batch.add(read);
+    Iterator<Read> i = reads.values().iterator();
+    while (i.hasNext()) {
+      Read other = i.next();
+      if (now - other.requestTime >= ACTIVE_TIME) {
+        i.remove();
+      } else if (other != read && (other.reply == null || now - other.replyTime >= MAX_AGE)) {
+        batch.add(other);
+      }
+    }
+    byte[][] commands = new byte[batch.size()][];
+    for (int j = 0; j < commands.length; j++) {
+      commands[j] = batch.get(j).command;
+    }
+    byte[][] replies = requester.sendCommands(functionName, commands, true);
+    for (int j = 0; j < commands.length; j++) {
+      Read batched = batch.get(j);
+      batched.reply = replies == null ? null : replies[j];
+      batched.replyTime = now;
+    }
+    return read.reply;
+  }
+}
@@ -35,6 +35,13 @@ import com.google.appinventor.components.runtime.util.Ev3Constants;
                                    "android.permission.WRITE_EXTERNAL_STORAGE," +
                                    "android.permission.READ_EXTERNAL_STORAGE")
 public class Ev3UI extends LegoMindstormsEv3Base {
+  private static final byte[] UPDATE_COMMAND =
+      Ev3BinaryParser.encodeDirectCommand(Ev3Constants.Opcode.UI_DRAW,
+                                          false,
+                                          0,
+                                          0,
+                                          "c",
+                                          Ev3Constants.UIDrawSubcode.UPDATE);
 
   /**
    * Creates a new Ev3UI component.
@@ -64,15 +71,7 @@ public class Ev3UI extends LegoMindstormsEv3Base {
                                                          (byte) color,
                                                          (short) x,
                                                          (short) y);
-    sendCommand(functionName, command, false);
-
-    command = Ev3BinaryParser.encodeDirectCommand(Ev3Constants.Opcode.UI_DRAW,
-                                                  false,
-                                                  0,
-                                                  0,
-                                                  "c",
-                                                  Ev3Constants.UIDrawSubcode.UPDATE);
-    sendCommand(functionName, command, false);
+    drawAndUpdate(functionName, command);
   }
 
   /**
@@ -98,15 +97,7 @@ public class Ev3UI extends LegoMindstormsEv3Base {
                                                          (short) y,
                                                          type,
                                                          no);
-    sendCommand(functionName, command, false);
-
-    command = Ev3BinaryParser.encodeDirectCommand(Ev3Constants.Opcode.UI_DRAW,
-                                                  false,
-                                                  0,
-                                                  0,
-                                                  "c",
-                                                  Ev3Constants.UIDrawSubcode.UPDATE);
-    sendCommand(functionName, command, false);
+    drawAndUpdate(functionName, command);
   }
 
   /**
@@ -132,15 +123,7 @@ public class Ev3UI extends LegoMindstormsEv3Base {
                                                          (short) y1,
                                                          (short) x2,
                                                          (short) y2);
-    sendCommand(functionName, command, false);
-
-    command = Ev3BinaryParser.encodeDirectCommand(Ev3Constants.Opcode.UI_DRAW,
-                                                  false,
-                                                  0,
-                                                  0,
-                                                  "c",
-                                                  Ev3Constants.UIDrawSubcode.UPDATE);
-    sendCommand(functionName, command, false);
+    drawAndUpdate(functionName, command);
   }
 
   /**
@@ -166,15 +149,7 @@ public class Ev3UI extends LegoMindstormsEv3Base {
                                                          (short) y,
                                                          (short) width,
                                                          (short) height);
-    sendCommand(functionName, command, false);
-
-    command = Ev3BinaryParser.encodeDirectCommand(Ev3Constants.Opcode.UI_DRAW,
-                                                  false,
-                                                  0,
-                                                  0,
-                                                  "c",
-                                                  Ev3Constants.UIDrawSubcode.UPDATE);
-    sendCommand(functionName, command, false);
+    drawAndUpdate(functionName, command);
   }
 
   /**
@@ -199,15 +174,7 @@ public class Ev3UI extends LegoMindstormsEv3Base {
                                                          (short) x,
                                                          (short) y,
                                                          (short) radius);
-    sendCommand(functionName, command, false);
-
-    command = Ev3BinaryParser.encodeDirectCommand(Ev3Constants.Opcode.UI_DRAW,
-                                                  false,
-                                                  0,
-                                                  0,
-                                                  "c",
-                                                  Ev3Constants.UIDrawSubcode.UPDATE);
-    sendCommand(functionName, command, false);
+    drawAndUpdate(functionName, command);
   }
 
   /**
@@ -231,14 +198,11 @@ public class Ev3UI extends LegoMindstormsEv3Base {
                                                          (byte) color,
                                                          (short) 0,
                                                          (short) 0);
-    sendCommand(functionName, command, false);
-
-    command = Ev3BinaryParser.encodeDirectCommand(Ev3Constants.Opcode.UI_DRAW,
-                                                  false,
-                                                  0,
-                                                  0,
-                                                  "c",
-                                                  Ev3Constants.UIDrawSubcode.UPDATE);
-    sendCommand(functionName, command, false);
+    drawAndUpdate(functionName, command);
+  }
+
+  // Sends a drawing command and the command that shows it on the screen in one write.
+  private void drawAndUpdate(String functionName, byte[] command) {
+    sendCommands(functionName, new byte[][] { command, UPDATE_COMMAND }, false);
   }
 }
@@ -68,6 +68,7 @@ import com.google.appinventor.components.runtime.errors.PermissionException;
 import com.google.appinventor.components.runtime.multidex.MultiDex;
 import com.google.appinventor.components.runtime.util.AlignmentUtil;
 import com.google.appinventor.components.runtime.util.AnimationUtil;
+import com.google.appinventor.components.runtime.util.AsynchUtil;
 import com.google.appinventor.components.runtime.util.BulkPermissionRequest;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
 import com.google.appinventor.components.runtime.util.FileUtil;
@@ -805,6 +806,9 @@ public class Form extends AppInventorCompatActivity
       onDestroyListener.onDestroy();
     }
 
+    // Cancel any background work started on behalf of this form.
+    AsynchUtil.cancelTasks(this);
+
     // call super method at the end to delegate the destruction of the app to the parent
     super.onDestroy();
   }
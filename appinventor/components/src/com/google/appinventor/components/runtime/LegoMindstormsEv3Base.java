@@ -25,7 +25,8 @@ public class LegoMindstormsEv3Base extends AndroidNonvisibleComponent
   implements BluetoothConnectionListener, Component, Deleteable {
 
   private static final int TOY_ROBOT = 0x0804;
-  protected int commandCount;
+  // Replies to other commands that are skipped while waiting for a reply.
+  private static final int MAX_STALE_REPLIES = 8;
   protected final String logTag;
   protected BluetoothClient bluetooth;
 
@@ -85,42 +86,86 @@ public class LegoMindstormsEv3Base extends AndroidNonvisibleComponent
   }
 
   protected final byte[] sendCommand(String functionName, byte[] command, boolean doReceiveReply) {
+    byte[][] replies = sendCommands(functionName, new byte[][] { command }, doReceiveReply);
+    return replies == null ? null : replies[0];
+  }
+
+  /**
+   * Sends several commands in a single Bluetooth write, so that the robot can
+   * work on them without waiting for the phone between commands. The replies
+   * come back in the order the commands were sent; each is matched to its
+   * command by the message counter in its header.
+   *
+   * @param functionName the name of the block sending the commands
+   * @param commands the encoded direct or system commands
+   * @param doReceiveReply whether the commands ask for replies; if so, every
+   *        command must ask for one
+   * @return the replies, in the order of the commands, or null if no replies
+   *         were asked for or the robot is not connected. A reply that could
+   *         not be read is null.
+   */
+  protected final byte[][] sendCommands(String functionName, byte[][] commands, boolean doReceiveReply) {
     // check connecttivity
     if (!isBluetoothConnected(functionName))
       return null;
 
-    // prepend header and send payload
-    byte[] header = Ev3BinaryParser.pack("hh", (short) (command.length + 2), (short) commandCount);
-    commandCount++;
-
-    bluetooth.write(functionName, header);
-    bluetooth.write(functionName, command);
-
-    // receive reply if required
-    if (doReceiveReply) {
-      header = bluetooth.read(functionName, 4);
-
-      if (header.length == 4) {
-        Object[] decodedHeader = Ev3BinaryParser.unpack("hh", header);
-        int replySize = (int) ((Short) decodedHeader[0]) - 2;
-        int replyCount = (int) ((Short) decodedHeader[1]);
-        byte[] reply = bluetooth.read(functionName, replySize);
-
-        if (reply.length == replySize)
-          return reply;
-        else
-        {
-          form.dispatchErrorOccurredEvent(this, functionName, ErrorMessages.ERROR_EV3_INVALID_REPLY);
-          return null;
-        }
+    // prepend headers and send all the payloads at once
+    int frameLength = 0;
+    for (byte[] command : commands)
+      frameLength += command.length + 4;
+
+    // The counter is shared by all of the components that use the robot, so that a reply left
+    // over from another component's command is never taken for a reply to these.
+    byte[] frame = new byte[frameLength];
+    int firstCount = bluetooth.takeEv3CommandCounts(commands.length);
+    int offset = 0;
+    for (int i = 0; i < commands.length; i++) {
+      offset = Ev3BinaryParser.frameCommand(commands[i], firstCount + i, frame, offset);
+    }
+
+    bluetooth.write(functionName, frame);
+
+    // receive replies if required
+    if (!doReceiveReply)
+      return null;
+
+    byte[][] replies = new byte[commands.length][];
+    int received = 0;
+    int staleReplies = 0;
+
+    while (received < commands.length) {
+      byte[] header = bluetooth.read(functionName, 4);
+
+      if (header.length != 4)
+        break;
+
+      int replySize = Ev3BinaryParser.getUnsignedShort(header, 0) - 2;
+      int replyCount = Ev3BinaryParser.getUnsignedShort(header, 2);
+      if (replySize < 0)
+        break;
+
+      byte[] reply = bluetooth.read(functionName, replySize);
+
+      if (reply.length != replySize)
+        break;
+
+      // The counter wraps around at 16 bits.
+      int index = (replyCount - firstCount) & 0xFFFF;
+      if (index < commands.length && replies[index] == null) {
+        replies[index] = reply;
+        received++;
+      } else if (++staleReplies > MAX_STALE_REPLIES) {
+        // Left over from an earlier command whose reply was not read.
+        break;
       }
+    }
 
+    if (received < commands.length) {
       // handle errors
       form.dispatchErrorOccurredEvent(this, functionName, ErrorMessages.ERROR_EV3_INVALID_REPLY);
-      return null;
-    } else {
-      return null;
     }
+
+    return replies;
   }
 
   protected final int sensorPortLetterToPortNumber(String letter) {
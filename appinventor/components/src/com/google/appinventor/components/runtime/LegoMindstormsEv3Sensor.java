@@ -79,7 +79,8 @@ public class LegoMindstormsEv3Sensor extends LegoMindstormsEv3Base {
                                                          (byte) 1,
                                                          (byte) 0);
 
-    byte[] reply = sendCommand(functionName, command, true);
+    byte[] reply = readSensor(functionName,
+        readKey(Ev3Constants.InputDeviceSubcode.READY_PCT, layer, no, type, mode), command);
     if (reply != null && reply.length == 2 && reply[0] == Ev3Constants.DirectReplyType.DIRECT_REPLY) {
       return (int) reply[1];
     } else {                    // error
@@ -107,7 +108,8 @@ public class LegoMindstormsEv3Sensor extends LegoMindstormsEv3Base {
                                                          (byte) 1,
                                                          (byte) 0); //index always be 0
 
-    byte[] reply = sendCommand(functionName, command, true);
+    byte[] reply = readSensor(functionName,
+        readKey(Ev3Constants.InputDeviceSubcode.READY_SI, layer, no, type, mode), command);
 
     if (reply != null && reply.length == 5 && reply[0] == Ev3Constants.DirectReplyType.DIRECT_REPLY) {
       Object[] values = Ev3BinaryParser.unpack("xf", reply);
@@ -118,4 +120,19 @@ public class LegoMindstormsEv3Sensor extends LegoMindstormsEv3Base {
       return -1.0;
     }
   }
+
+  /*
+   * Reads a sensor along with the other sensors that share the robot, see Ev3SensorReader.
+   */
+  private byte[] readSensor(String functionName, int key, byte[] command) {
+    if (!isBluetoothConnected(functionName))
+      return null;
+
+    return bluetooth.getEv3SensorReader().read(this, functionName, key, command);
+  }
+
+  private static int readKey(int subcode, int layer, int no, int type, int mode) {
+    return ((subcode & 0xFF) << 24) | (layer << 20) | (no << 16) | ((type & 0xFF) << 8)
+        | (mode + 1);
+  }
 }
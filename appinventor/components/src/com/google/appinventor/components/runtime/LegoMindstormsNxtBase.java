@@ -16,6 +16,7 @@ import com.google.appinventor.components.runtime.util.ErrorMessages;
 import android.util.Log;
 
 import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -163,16 +164,25 @@ public class LegoMindstormsNxtBase extends AndroidNonvisibleComponent
     copyUBYTEValueToBytes(sensorType, command, 3);
     copyUBYTEValueToBytes(sensorMode, command, 4);
     sendCommand(functionName, command);
+    bluetooth.getNxtPollScheduler().invalidate(port);
   }
 
+  /*
+   * Returns the input values of a sensor port. Values read less than
+   * NxtPollScheduler.POLLING_INTERVAL milliseconds ago, by this or any other component using the
+   * same BluetoothClient, are returned without asking the robot again.
+   */
   protected final byte[] getInputValues(String functionName, int port) {
-    byte[] command = new byte[3];
-    command[0] = (byte) 0x00;  // Direct command telegram, response required
-    command[1] = (byte) 0x07;  // GETINPUTVALUES command
-    copyUBYTEValueToBytes(port, command, 2);
+    NxtPollScheduler scheduler = bluetooth.getNxtPollScheduler();
+    byte[] cached = scheduler.getInputValues(port);
+    if (cached != null) {
+      return cached;
+    }
+    byte[] command = getInputValuesCommand(port);
     byte[] returnPackage = sendCommandAndReceiveReturnPackage(functionName, command);
     if (evaluateStatus(functionName, returnPackage, command[1])) {
       if (returnPackage.length == 16) {
+        scheduler.putInputValues(port, returnPackage);
         return returnPackage;
       } else {
         Log.w(logTag, functionName + ": unexpected return package length " +
@@ -188,6 +198,27 @@ public class LegoMindstormsNxtBase extends AndroidNonvisibleComponent
     command[1] = (byte) 0x08;  // RESETINPUTSCALEDVALUE command
     copyUBYTEValueToBytes(port, command, 2);
     sendCommand(functionName, command);
+    bluetooth.getNxtPollScheduler().invalidate(port);
+  }
+
+  static byte[] getInputValuesCommand(int port) {
+    byte[] command = new byte[3];
+    command[0] = (byte) 0x00;  // Direct command telegram, response required
+    command[1] = (byte) 0x07;  // GETINPUTVALUES command
+    command[2] = (byte) port;
+    return command;
+  }
+
+  /*
+   * Returns whether the given return package is a successful reply to a GETINPUTVALUES command
+   * for the given port.
+   */
+  static boolean isInputValuesPackage(byte[] returnPackage, int port) {
+    return returnPackage.length == 16
+        && returnPackage[0] == (byte) 0x02  // Reply telegram
+        && returnPackage[1] == (byte) 0x07  // GETINPUTVALUES command
+        && returnPackage[2] == 0            // Success
+        && returnPackage[3] == (byte) port;
   }
 
   protected final int lsGetStatus(String functionName, int port) {
@@ -266,11 +297,54 @@ public class LegoMindstormsNxtBase extends AndroidNonvisibleComponent
     return receiveReturnPackage(functionName);
   }
 
+  /*
+   * Sends several commands with a single write and then receives their return packages, in the
+   * order the commands were given. Every command must require a response.
+   */
+  protected final byte[][] sendCommandsAndReceiveReturnPackages(String functionName,
+      byte[][] commands) {
+    int length = 0;
+    for (byte[] command : commands) {
+      length += 2 + command.length;
+    }
+    byte[] bytes = new byte[length];
+    int offset = 0;
+    for (byte[] command : commands) {
+      copyUWORDValueToBytes(command.length, bytes, offset);
+      System.arraycopy(command, 0, bytes, offset + 2, command.length);
+      offset += 2 + command.length;
+    }
+    bluetooth.write(functionName, bytes);
+
+    byte[][] returnPackages = new byte[commands.length][];
+    int received = 0;
+    while (received < commands.length) {
+      byte[] returnPackage = receiveReturnPackage(functionName);
+      if (returnPackage.length == 0) {
+        break;
+      }
+      returnPackages[received++] = returnPackage;
+    }
+    if (received < commands.length) {
+      // A reply was short or missing, so there is no telling where the next one starts. Discard
+      // whatever has arrived rather than hand it to the wrong command, and let the callers ask
+      // again.
+      int available = bluetooth.BytesAvailableToReceive();
+      if (available > 0) {
+        bluetooth.read(functionName, available);
+      }
+      Arrays.fill(returnPackages, received, commands.length, new byte[0]);
+    }
+    return returnPackages;
+  }
+
   protected final void sendCommand(String functionName, byte[] command) {
-    byte[] header = new byte[2];
-    copyUWORDValueToBytes(command.length, header, 0);
-    bluetooth.write(functionName, header);
-    bluetooth.write(functionName, command);
+    // Send the header and the command with a single write, so that they are not split into two
+    // Bluetooth packets.
+    byte[] bytes = new byte[2 + command.length];
+    copyUWORDValueToBytes(command.length, bytes, 0);
+    System.arraycopy(command, 0, bytes, 2, command.length);
+    bluetooth.write(functionName, bytes);
   }
 
   private byte[] receiveReturnPackage(String functionName) {
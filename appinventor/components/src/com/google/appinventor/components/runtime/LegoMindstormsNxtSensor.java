@@ -55,6 +55,11 @@ public abstract class LegoMindstormsNxtSensor extends LegoMindstormsNxtBase {
   private String sensorPortLetter; // "1" - "4"
   protected int port;
 
+  // The sensor's poller, or null if the sensor is not being polled, and the scheduler that calls
+  // it, or null if the sensor is not connected to a robot.
+  private Runnable poller;
+  private NxtPollScheduler pollScheduler;
+
   /**
    * Creates a new LegoMindstormsNxtSensor.
    */
@@ -96,7 +101,56 @@ public abstract class LegoMindstormsNxtSensor extends LegoMindstormsNxtBase {
   @Override
   public void afterConnect(BluetoothConnectionBase bluetoothConnection) {
     initializeSensor("Connect");
+    updatePolling();
+  }
+
+  @Override
+  public void beforeDisconnect(BluetoothConnectionBase bluetoothConnection) {
+    super.beforeDisconnect(bluetoothConnection);
+    if (pollScheduler != null) {
+      pollScheduler.removePoller(this);
+      pollScheduler = null;
+    }
   }
 
   protected abstract void initializeSensor(String functionName);
+
+  /**
+   * Starts calling the given poller regularly while the sensor is connected to a robot. The
+   * pollers of all of the sensors that use the same BluetoothClient are called one after the
+   * other, on a single cadence.
+   */
+  protected final void startPolling(Runnable poller) {
+    this.poller = poller;
+    updatePolling();
+  }
+
+  /**
+   * Stops calling the poller given to {@link #startPolling}.
+   */
+  protected final void stopPolling() {
+    poller = null;
+    updatePolling();
+  }
+
+  /**
+   * Returns the port whose input values the poller reads, or -1 if the poller reads the sensor
+   * some other way.
+   */
+  int getPolledInputPort() {
+    return port;
+  }
+
+  private void updatePolling() {
+    NxtPollScheduler scheduler = (poller != null && bluetooth != null && bluetooth.IsConnected())
+        ? bluetooth.getNxtPollScheduler()
+        : null;
+    if (pollScheduler != null && pollScheduler != scheduler) {
+      pollScheduler.removePoller(this);
+    }
+    pollScheduler = scheduler;
+    if (scheduler != null) {
+      scheduler.addPoller(this, poller);
+    }
+  }
 }
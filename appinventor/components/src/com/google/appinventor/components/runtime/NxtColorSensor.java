@@ -18,8 +18,6 @@ import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.common.YaVersion;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
 
-import android.os.Handler;
-
 import java.util.HashMap;
 import java.util.Map;
 
@@ -70,7 +68,6 @@ public class NxtColorSensor extends LegoMindstormsNxtSensor implements Deleteabl
   }
 
   private boolean detectColor;
-  private Handler handler;
   private final Runnable sensorReader;
 
   // Fields related to detecting color
@@ -91,7 +88,6 @@ public class NxtColorSensor extends LegoMindstormsNxtSensor implements Deleteabl
    */
   public NxtColorSensor(ComponentContainer container) {
     super(container, "NxtColorSensor");
-    handler = new Handler();
     previousState = State.UNKNOWN;
     previousColor = Component.COLOR_NONE;
     sensorReader = new Runnable() {
@@ -139,9 +135,6 @@ public class NxtColorSensor extends LegoMindstormsNxtSensor implements Deleteabl
             }
           }
         }
-        if (isHandlerNeeded()) {
-          handler.post(sensorReader);
-        }
       }
     };
 
@@ -219,12 +212,12 @@ public class NxtColorSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
     boolean handlerIsNeeded = isHandlerNeeded();
     if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+      stopPolling();
     }
     previousColor = Component.COLOR_NONE;
     previousState = State.UNKNOWN;
     if (!handlerWasNeeded && handlerIsNeeded) {
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -293,11 +286,11 @@ public class NxtColorSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
     boolean handlerIsNeeded = isHandlerNeeded();
     if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+      stopPolling();
     }
     if (!handlerWasNeeded && handlerIsNeeded) {
       previousColor = Component.COLOR_NONE;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -416,11 +409,11 @@ public class NxtColorSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
     boolean handlerIsNeeded = isHandlerNeeded();
     if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+      stopPolling();
     }
     if (!handlerWasNeeded && handlerIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -458,11 +451,11 @@ public class NxtColorSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
     boolean handlerIsNeeded = isHandlerNeeded();
     if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+      stopPolling();
     }
     if (!handlerWasNeeded && handlerIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -497,11 +490,11 @@ public class NxtColorSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
     boolean handlerIsNeeded = isHandlerNeeded();
     if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+      stopPolling();
     }
     if (!handlerWasNeeded && handlerIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -560,7 +553,7 @@ public class NxtColorSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
   @Override
   public void onDelete() {
-    handler.removeCallbacks(sensorReader);
+    stopPolling();
     super.onDelete();
   }
 }
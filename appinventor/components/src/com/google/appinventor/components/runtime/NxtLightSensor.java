@@ -17,8 +17,6 @@ import com.google.appinventor.components.common.ComponentCategory;
 import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.common.YaVersion;
 
-import android.os.Handler;
-
 /**
  * ![NXT component icon](images/legoMindstormsNxt.png)
  *
@@ -40,7 +38,6 @@ public class NxtLightSensor extends LegoMindstormsNxtSensor implements Deleteabl
   private static final int DEFAULT_BOTTOM_OF_RANGE = 256;
   private static final int DEFAULT_TOP_OF_RANGE = 767;
 
-  private Handler handler;
   private final Runnable sensorReader;
   private State previousState;
   private int bottomOfRange;
@@ -55,7 +52,6 @@ public class NxtLightSensor extends LegoMindstormsNxtSensor implements Deleteabl
    */
   public NxtLightSensor(ComponentContainer container) {
     super(container, "NxtLightSensor");
-    handler = new Handler();
     previousState = State.UNKNOWN;
     sensorReader = new Runnable() {
       public void run() {
@@ -86,9 +82,6 @@ public class NxtLightSensor extends LegoMindstormsNxtSensor implements Deleteabl
             previousState = currentState;
           }
         }
-        if (isHandlerNeeded()) {
-          handler.post(sensorReader);
-        }
       }
     };
 
@@ -242,11 +235,11 @@ public class NxtLightSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
     boolean handlerIsNeeded = isHandlerNeeded();
     if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+      stopPolling();
     }
     if (!handlerWasNeeded && handlerIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -279,11 +272,11 @@ public class NxtLightSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
     boolean handlerIsNeeded = isHandlerNeeded();
     if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+      stopPolling();
     }
     if (!handlerWasNeeded && handlerIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -316,11 +309,11 @@ public class NxtLightSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
     boolean handlerIsNeeded = isHandlerNeeded();
     if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+      stopPolling();
     }
     if (!handlerWasNeeded && handlerIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -337,7 +330,7 @@ public class NxtLightSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
   @Override
   public void onDelete() {
-    handler.removeCallbacks(sensorReader);
+    stopPolling();
     super.onDelete();
   }
 }
@@ -0,0 +1,186 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Polls the NXT sensors that share a Bluetooth connection on a single cadence.
+ *
+ * <p>Before each round of polling, the scheduler asks for the input values of every sensor port
+ * that will be read with a single write, and keeps the replies for {@link #POLLING_INTERVAL}
+ * milliseconds. The sensors' own requests for those input values during that time, whether made
+ * by their pollers or by blocks such as IsPressed, are answered from the cache instead of making
+ * another round trip to the robot.</p>
+ *
+ * <p>Like the sensor components, the scheduler must only be used on the UI thread.</p>
+ */
+final class NxtPollScheduler {
+  // The shortest time between two rounds of polling, and the longest time that input values
+  // are kept, in milliseconds.
+  static final int POLLING_INTERVAL = 50;
+
+  private static final int PORT_COUNT = 4;
+
+  // The function named in the errors reported while reading the input values of several ports
+  private static final String FUNCTION_NAME = "GetInputValues";
+
+  private final BluetoothClient bluetooth;
+  private final Handler handler = new Handler();
+  private final Map<LegoMindstormsNxtSensor, Runnable> pollers =
+      new LinkedHashMap<LegoMindstormsNxtSensor, Runnable>();
+  private final byte[][] inputValues = new byte[PORT_COUNT][];
+  private final long[] readTimes = new long[PORT_COUNT];
+  private boolean scheduled;
+
+  private final Runnable round = new Runnable() {
+    public void run() {
+      poll();
+    }
+  };
+
+  NxtPollScheduler(BluetoothClient bluetooth) {
+    this.bluetooth = bluetooth;
+  }
+
+  /**
+   * Starts calling a sensor's poller in each round of polling, replacing any poller that the
+   * sensor already has.
+   */
+  void addPoller(LegoMindstormsNxtSensor sensor, Runnable poller) {
+    pollers.put(sensor, poller);
+    if (!scheduled) {
+      scheduled = true;
+      handler.post(round);
+    }
+  }
+
+  /**
+   * Stops calling a sensor's poller.
+   */
+  void removePoller(LegoMindstormsNxtSensor sensor) {
+    pollers.remove(sensor);
+    if (pollers.isEmpty() && scheduled) {
+      handler.removeCallbacks(round);
+      scheduled = false;
+    }
+  }
+
+  /**
+   * Returns the input values of a port if they were read less than {@link #POLLING_INTERVAL}
+   * milliseconds ago, or null otherwise.
+   */
+  byte[] getInputValues(int port) {
+    if (port < 0 || port >= PORT_COUNT || inputValues[port] == null) {
+      return null;
+    }
+    if (SystemClock.uptimeMillis() - readTimes[port] >= POLLING_INTERVAL) {
+      inputValues[port] = null;
+      return null;
+    }
+    return inputValues[port];
+  }
+
+  /**
+   * Keeps the input values that were just read from a port.
+   */
+  void putInputValues(int port, byte[] returnPackage) {
+    if (port >= 0 && port < PORT_COUNT) {
+      inputValues[port] = returnPackage;
+      readTimes[port] = SystemClock.uptimeMillis();
+    }
+  }
+
+  /**
+   * Forgets the input values of a port, for example because its sensor type or mode has changed.
+   */
+  void invalidate(int port) {
+    if (port >= 0 && port < PORT_COUNT) {
+      inputValues[port] = null;
+    }
+  }
+
+  private void poll() {
+    scheduled = false;
+    long start = SystemClock.uptimeMillis();
+    if (bluetooth.IsConnected()) {
+      readInputValues();
+      // Run the pollers that read input values while those are cached, before the pollers that
+      // read their sensors some other way. Work on a copy, since a poller may cause sensors to
+      // start or stop polling.
+      List<Map.Entry<LegoMindstormsNxtSensor, Runnable>> entries =
+          new ArrayList<Map.Entry<LegoMindstormsNxtSensor, Runnable>>(pollers.size());
+      for (Map.Entry<LegoMindstormsNxtSensor, Runnable> entry : pollers.entrySet()) {
+        if (entry.getKey().getPolledInputPort() >= 0) {
+          entries.add(entry);
+        }
+      }
+      for (Map.Entry<LegoMindstormsNxtSensor, Runnable> entry : pollers.entrySet()) {
+        if (entry.getKey().getPolledInputPort() < 0) {
+          entries.add(entry);
+        }
+      }
+      for (Map.Entry<LegoMindstormsNxtSensor, Runnable> entry : entries) {
+        LegoMindstormsNxtSensor sensor = entry.getKey();
+        if (sensor.bluetooth != bluetooth) {
+          // The sensor has been given another BluetoothClient.
+          pollers.remove(sensor);
+        } else if (pollers.get(sensor) == entry.getValue()) {
+          entry.getValue().run();
+        }
+      }
+    }
+    if (!pollers.isEmpty() && !scheduled) {
+      scheduled = true;
+      long elapsed = SystemClock.uptimeMillis() - start;
+      handler.postDelayed(round, Math.max(0, POLLING_INTERVAL - elapsed));
+    }
+  }
+
+  /*
+   * Asks for the input values of every port that the pollers are about to read and that are not
+   * cached, writing all of the requests before reading any of the replies. The NXT answers direct
+   * commands in the order it receives them, so this saves a round trip per port.
+   */
+  private void readInputValues() {
+    LegoMindstormsNxtSensor requester = null;
+    boolean[] wanted = new boolean[PORT_COUNT];
+    List<Integer> ports = new ArrayList<Integer>(PORT_COUNT);
+    for (LegoMindstormsNxtSensor sensor : pollers.keySet()) {
+      int port = sensor.getPolledInputPort();
+      if (sensor.bluetooth == bluetooth && port >= 0 && port < PORT_COUNT && !wanted[port]
+          && getInputValues(port) == null) {
+        wanted[port] = true;
+        ports.add(port);
+        requester = sensor;
+      }
+    }
+    if (ports.size() < 2) {
+      // A single request is sent by the poller itself.
+      return;
+    }
+
+    byte[][] commands = new byte[ports.size()][];
+    for (int i = 0; i < commands.length; i++) {
+      commands[i] = LegoMindstormsNxtBase.getInputValuesCommand(ports.get(i));
+    }
+    byte[][] returnPackages =
+        requester.sendCommandsAndReceiveReturnPackages(FUNCTION_NAME, commands);
+    for (int i = 0; i < returnPackages.length; i++) {
+      int port = ports.get(i);
+      if (LegoMindstormsNxtBase.isInputValuesPackage(returnPackages[i], port)) {
+        putInputValues(port, returnPackages[i]);
+      }
+      // Otherwise the poller asks again, and reports any error itself.
+    }
+  }
+}
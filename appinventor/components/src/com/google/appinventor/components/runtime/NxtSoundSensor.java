@@ -17,8 +17,6 @@ import com.google.appinventor.components.common.ComponentCategory;
 import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.common.YaVersion;
 
-import android.os.Handler;
-
 /**
  * ![NXT component icon](images/legoMindstormsNxt.png)
  *
@@ -40,7 +38,6 @@ public class NxtSoundSensor extends LegoMindstormsNxtSensor implements Deleteabl
   private static final int DEFAULT_BOTTOM_OF_RANGE = 256;
   private static final int DEFAULT_TOP_OF_RANGE = 767;
 
-  private Handler handler;
   private final Runnable sensorReader;
   private State previousState;
   private int bottomOfRange;
@@ -54,7 +51,6 @@ public class NxtSoundSensor extends LegoMindstormsNxtSensor implements Deleteabl
    */
   public NxtSoundSensor(ComponentContainer container) {
     super(container, "NxtSoundSensor");
-    handler = new Handler();
     previousState = State.UNKNOWN;
     sensorReader = new Runnable() {
       public void run() {
@@ -85,9 +81,6 @@ public class NxtSoundSensor extends LegoMindstormsNxtSensor implements Deleteabl
             previousState = currentState;
           }
         }
-        if (isHandlerNeeded()) {
-          handler.post(sensorReader);
-        }
       }
     };
 
@@ -217,11 +210,11 @@ public class NxtSoundSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
     boolean handlerIsNeeded = isHandlerNeeded();
     if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+      stopPolling();
     }
     if (!handlerWasNeeded && handlerIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -254,11 +247,11 @@ public class NxtSoundSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
     boolean handlerIsNeeded = isHandlerNeeded();
     if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+      stopPolling();
     }
     if (!handlerWasNeeded && handlerIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -291,11 +284,11 @@ public class NxtSoundSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
     boolean handlerIsNeeded = isHandlerNeeded();
     if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+      stopPolling();
     }
     if (!handlerWasNeeded && handlerIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -312,7 +305,7 @@ public class NxtSoundSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
   @Override
   public void onDelete() {
-    handler.removeCallbacks(sensorReader);
+    stopPolling();
     super.onDelete();
   }
 }
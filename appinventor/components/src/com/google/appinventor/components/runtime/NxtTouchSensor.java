@@ -17,8 +17,6 @@ import com.google.appinventor.components.common.ComponentCategory;
 import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.common.YaVersion;
 
-import android.os.Handler;
-
 /**
  * ![NXT component icon](images/legoMindstormsNxt.png)
  *
@@ -39,7 +37,6 @@ public class NxtTouchSensor extends LegoMindstormsNxtSensor implements Deleteabl
   private enum State { UNKNOWN, PRESSED, RELEASED }
   private static final String DEFAULT_SENSOR_PORT = "1";
 
-  private Handler handler;
   private State previousState;
   private final Runnable sensorReader;
   private boolean pressedEventEnabled;
@@ -50,7 +47,6 @@ public class NxtTouchSensor extends LegoMindstormsNxtSensor implements Deleteabl
    */
   public NxtTouchSensor(ComponentContainer container) {
     super(container, "NxtTouchSensor");
-    handler = new Handler();
     previousState = State.UNKNOWN;
     sensorReader = new Runnable() {
       public void run() {
@@ -71,9 +67,6 @@ public class NxtTouchSensor extends LegoMindstormsNxtSensor implements Deleteabl
             previousState = currentState;
           }
         }
-        if (isHandlerNeeded()) {
-          handler.post(sensorReader);
-        }
       }
     };
 
@@ -152,11 +145,11 @@ public class NxtTouchSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
     boolean handlerIsNeeded = isHandlerNeeded();
     if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+      stopPolling();
     }
     if (!handlerWasNeeded && handlerIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -189,11 +182,11 @@ public class NxtTouchSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
     boolean handlerIsNeeded = isHandlerNeeded();
     if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+      stopPolling();
     }
     if (!handlerWasNeeded && handlerIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -210,7 +203,7 @@ public class NxtTouchSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
   @Override
   public void onDelete() {
-    handler.removeCallbacks(sensorReader);
+    stopPolling();
     super.onDelete();
   }
 }
@@ -17,8 +17,6 @@ import com.google.appinventor.components.common.ComponentCategory;
 import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.common.YaVersion;
 
-import android.os.Handler;
-
 /**
  * ![NXT component icon](images/legoMindstormsNxt.png)
  *
@@ -40,7 +38,6 @@ public class NxtUltrasonicSensor extends LegoMindstormsNxtSensor implements Dele
   private static final int DEFAULT_BOTTOM_OF_RANGE = 30;
   private static final int DEFAULT_TOP_OF_RANGE = 90;
 
-  private Handler handler;
   private final Runnable sensorReader;
   private State previousState;
   private int bottomOfRange;
@@ -54,7 +51,6 @@ public class NxtUltrasonicSensor extends LegoMindstormsNxtSensor implements Dele
    */
   public NxtUltrasonicSensor(ComponentContainer container) {
     super(container, "NxtUltrasonicSensor");
-    handler = new Handler();
     previousState = State.UNKNOWN;
     sensorReader = new Runnable() {
       public void run() {
@@ -85,9 +81,6 @@ public class NxtUltrasonicSensor extends LegoMindstormsNxtSensor implements Dele
             previousState = currentState;
           }
         }
-        if (isHandlerNeeded()) {
-          handler.post(sensorReader);
-        }
       }
     };
 
@@ -99,6 +92,12 @@ public class NxtUltrasonicSensor extends LegoMindstormsNxtSensor implements Dele
     AboveRangeEventEnabled(false);
   }
 
+  @Override
+  int getPolledInputPort() {
+    // The ultrasonic sensor is a digital sensor, read with LSWRITE and LSREAD.
+    return -1;
+  }
+
   @Override
   protected void initializeSensor(String functionName) {
     setInputMode(functionName, port, SENSOR_TYPE_LOWSPEED_9V, SENSOR_MODE_RAWMODE);
@@ -239,11 +238,11 @@ public class NxtUltrasonicSensor extends LegoMindstormsNxtSensor implements Dele
 
     boolean handlerIsNeeded = isHandlerNeeded();
     if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+      stopPolling();
     }
     if (!handlerWasNeeded && handlerIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -276,11 +275,11 @@ public class NxtUltrasonicSensor extends LegoMindstormsNxtSensor implements Dele
 
     boolean handlerIsNeeded = isHandlerNeeded();
     if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+      stopPolling();
     }
     if (!handlerWasNeeded && handlerIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -313,11 +312,11 @@ public class NxtUltrasonicSensor extends LegoMindstormsNxtSensor implements Dele
 
     boolean handlerIsNeeded = isHandlerNeeded();
     if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+      stopPolling();
     }
     if (!handlerWasNeeded && handlerIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -334,7 +333,7 @@ public class NxtUltrasonicSensor extends LegoMindstormsNxtSensor implements Dele
 
   @Override
   public void onDelete() {
-    handler.removeCallbacks(sensorReader);
+    stopPolling();
     super.onDelete();
   }
 }
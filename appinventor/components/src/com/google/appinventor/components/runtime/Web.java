@@ -36,6 +36,7 @@ import com.google.appinventor.components.runtime.util.GingerbreadUtil;
 import com.google.appinventor.components.runtime.util.JsonUtil;
 import com.google.appinventor.components.runtime.util.MediaUtil;
 import com.google.appinventor.components.runtime.util.SdkLevel;
+import com.google.appinventor.components.runtime.util.WebResponseCache;
 import com.google.appinventor.components.runtime.util.XmlParser;
 import com.google.appinventor.components.runtime.util.YailDictionary;
 import com.google.appinventor.components.runtime.util.YailList;
@@ -58,6 +59,10 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
 import java.util.List;
 import java.util.Map;
 import javax.xml.parsers.SAXParser;
@@ -142,6 +147,7 @@ public class Web extends AndroidNonvisibleComponent implements Component {
     final boolean saveResponse;
     final String responseFileName;
     final int timeout;
+    final boolean cacheResponses;
     final Map<String, List<String>> requestHeaders;
     final Map<String, List<String>> cookies;
 
@@ -152,6 +158,7 @@ public class Web extends AndroidNonvisibleComponent implements Component {
       saveResponse = web.saveResponse;
       responseFileName = web.responseFileName;
       timeout = web.timeout;
+      cacheResponses = web.cacheResponses;
       requestHeaders = processRequestHeaders(web.requestHeaders);
 
       Map<String, List<String>> cookiesTemp = null;
@@ -170,6 +177,13 @@ public class Web extends AndroidNonvisibleComponent implements Component {
 
   private static final String LOG_TAG = "Web";
 
+  // Buffer size used when copying request and response bodies.
+  private static final int BUFFER_SIZE = 0x2000;
+
+  // Responses cached for revalidation are shared by all Web components in the app, since polling
+  // the same URL from several screens is common.
+  private static final WebResponseCache responseCache = new WebResponseCache(1 << 20);
+
   private static final Map<String, String> mimeTypeToExtension;
   static {
     mimeTypeToExtension = Maps.newHashMap();
@@ -197,6 +211,7 @@ public class Web extends AndroidNonvisibleComponent implements Component {
   private boolean saveResponse;
   private String responseFileName = "";
   private int timeout = 0;
+  private boolean cacheResponses;
 
   /**
    * Creates a new Web component.
@@ -371,6 +386,28 @@ public class Web extends AndroidNonvisibleComponent implements Component {
     this.timeout = timeout;
   }
 
+  /**
+   * Returns whether GET responses are cached and revalidated with the server.
+   */
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR,
+      description = "Whether responses to GET requests should be cached. When true, repeated " +
+      "requests for the same Url ask the server whether the response has changed, and if it has " +
+      "not, the cached response is reported again without downloading it.")
+  public boolean CacheResponses() {
+    return cacheResponses;
+  }
+
+  /**
+   * Specifies whether GET responses that carry an ETag or Last-Modified header should be cached
+   * and revalidated with the server on subsequent requests for the same Url.
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN,
+      defaultValue = "false")
+  @SimpleProperty
+  public void CacheResponses(boolean cacheResponses) {
+    this.cacheResponses = cacheResponses;
+  }
+
   @SimpleFunction(description = "Clears all cookies for this Web component.")
   public void ClearCookies() {
     if (cookieHandler != null) {
@@ -402,7 +439,7 @@ public class Web extends AndroidNonvisibleComponent implements Component {
       return;
     }
 
-    AsynchUtil.runAsynchronously(new Runnable() {
+    AsynchUtil.runAsynchronously(form, new Runnable() {
       @Override
       public void run() {
         try {
@@ -500,7 +537,7 @@ public class Web extends AndroidNonvisibleComponent implements Component {
       return;
     }
 
-    AsynchUtil.runAsynchronously(new Runnable() {
+    AsynchUtil.runAsynchronously(form, new Runnable() {
       @Override
       public void run() {
         try {
@@ -597,7 +634,7 @@ public class Web extends AndroidNonvisibleComponent implements Component {
       return;
     }
 
-    AsynchUtil.runAsynchronously(new Runnable() {
+    AsynchUtil.runAsynchronously(form, new Runnable() {
       @Override
       public void run() {
         try {
@@ -639,7 +676,7 @@ public class Web extends AndroidNonvisibleComponent implements Component {
       return;
     }
 
-    AsynchUtil.runAsynchronously(new Runnable() {
+    AsynchUtil.runAsynchronously(form, new Runnable() {
       @Override
       public void run() {
         try {
@@ -685,7 +722,7 @@ public class Web extends AndroidNonvisibleComponent implements Component {
       return;
     }
 
-    AsynchUtil.runAsynchronously(new Runnable() {
+    AsynchUtil.runAsynchronously(form, new Runnable() {
       @Override
       public void run() {
         // Convert text to bytes using the encoding.
@@ -1102,6 +1139,20 @@ public class Web extends AndroidNonvisibleComponent implements Component {
     // Open the connection.
     HttpURLConnection connection = openConnection(webProps, httpVerb);
     if (connection != null) {
+      // Only unmodified GET responses are reused. Any other verb could change the resource.
+      final boolean cacheable = webProps.cacheResponses && httpVerb.equals("GET");
+      WebResponseCache.Entry cached = null;
+      if (cacheable) {
+        cached = responseCache.get(webProps.urlString);
+        if (cached != null && cached.isUsableFor(webProps.saveResponse)) {
+          addValidators(connection, cached);
+        } else {
+          cached = null;
+        }
+      } else if (!httpVerb.equals("GET")) {
+        responseCache.remove(webProps.urlString);
+      }
+      boolean completed = false;
       try {
         if (postData != null) {
           writeRequestData(connection, postData);
@@ -1110,32 +1161,40 @@ public class Web extends AndroidNonvisibleComponent implements Component {
         }
 
         // Get the response.
-        final int responseCode = connection.getResponseCode();
-        final String responseType = getResponseType(connection);
+        int responseCode = connection.getResponseCode();
+        String responseType = getResponseType(connection);
         processResponseCookies(connection);
 
-        if (saveResponse) {
+        if (cached != null && responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+          // The server confirmed that our copy is current. Consume the (empty) body so that the
+          // connection can be reused, and report the cached response.
+          drainResponse(connection);
+          responseCode = cached.responseCode;
+          responseType = cached.responseType;
+          if (webProps.saveResponse) {
+            dispatchGotFile(webProps, responseCode, responseType, cached.path);
+          } else {
+            dispatchGotText(webProps, responseCode, responseType, cached.content);
+          }
+        } else if (webProps.saveResponse) {
           final String path = saveResponseContent(connection, webProps.responseFileName,
               responseType);
-
-          // Dispatch the event.
-          activity.runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-              GotFile(webProps.urlString, responseCode, responseType, path);
-            }
-          });
+          if (cacheable && responseCode == HttpURLConnection.HTTP_OK) {
+            responseCache.putFile(webProps.urlString, responseCode, responseType,
+                connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"),
+                path);
+          }
+          dispatchGotFile(webProps, responseCode, responseType, path);
         } else {
           final String responseContent = getResponseContent(connection);
-
-          // Dispatch the event.
-          activity.runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-              GotText(webProps.urlString, responseCode, responseType, responseContent);
-            }
-          });
+          if (cacheable && responseCode == HttpURLConnection.HTTP_OK) {
+            responseCache.putContent(webProps.urlString, responseCode, responseType,
+                connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"),
+                responseContent);
+          }
+          dispatchGotText(webProps, responseCode, responseType, responseContent);
         }
+        completed = true;
 
       } catch (SocketTimeoutException e) {
         // Dispatch timeout event.
@@ -1147,8 +1206,42 @@ public class Web extends AndroidNonvisibleComponent implements Component {
         });
         throw new RequestTimeoutException();
       } finally {
-        connection.disconnect();
+        // A response that was read to the end and closed leaves its connection in the platform's
+        // keep-alive pool, so subsequent requests to the same host skip the TCP and TLS handshakes.
+        // Only tear the connection down if something went wrong part way through.
+        if (!completed) {
+          connection.disconnect();
+        }
+      }
+    }
+  }
+
+  private void dispatchGotFile(final CapturedProperties webProps, final int responseCode,
+      final String responseType, final String path) {
+    activity.runOnUiThread(new Runnable() {
+      @Override
+      public void run() {
+        GotFile(webProps.urlString, responseCode, responseType, path);
+      }
+    });
+  }
+
+  private void dispatchGotText(final CapturedProperties webProps, final int responseCode,
+      final String responseType, final String responseContent) {
+    activity.runOnUiThread(new Runnable() {
+      @Override
+      public void run() {
+        GotText(webProps.urlString, responseCode, responseType, responseContent);
       }
+    });
+  }
+
+  private static void addValidators(HttpURLConnection connection, WebResponseCache.Entry cached) {
+    if (cached.etag != null) {
+      connection.setRequestProperty("If-None-Match", cached.etag);
+    }
+    if (cached.lastModified != null) {
+      connection.setRequestProperty("If-Modified-Since", cached.lastModified);
     }
   }
 
@@ -1229,12 +1322,10 @@ public class Web extends AndroidNonvisibleComponent implements Component {
       connection.setChunkedStreamingMode(0);
       BufferedOutputStream out = new BufferedOutputStream(connection.getOutputStream());
       try {
-        while (true) {
-          int b = in.read();
-          if (b == -1) {
-            break;
-          }
-          out.write(b);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+          out.write(buffer, 0, read);
         }
         out.flush();
       } finally {
@@ -1264,18 +1355,18 @@ public class Web extends AndroidNonvisibleComponent implements Component {
   }
 
   private static String getResponseContent(HttpURLConnection connection) throws IOException {
-    // Use the content encoding to convert bytes to characters.
-    String encoding = connection.getContentEncoding();
-    if (encoding == null) {
-      encoding = "UTF-8";
+    InputStream in = getConnectionStream(connection);
+    if (in == null) {
+      return "";
     }
-    InputStreamReader reader = new InputStreamReader(getConnectionStream(connection), encoding);
+    // Decode characters as the bytes arrive rather than buffering the raw body first.
+    InputStreamReader reader = new InputStreamReader(in, getResponseCharset(connection));
     try {
       int contentLength = connection.getContentLength();
       StringBuilder sb = (contentLength != -1)
           ? new StringBuilder(contentLength)
           : new StringBuilder();
-      char[] buf = new char[1024];
+      char[] buf = new char[BUFFER_SIZE];
       int read;
       while ((read = reader.read(buf)) != -1) {
         sb.append(buf, 0, read);
@@ -1286,28 +1377,83 @@ public class Web extends AndroidNonvisibleComponent implements Component {
     }
   }
 
+  /*
+   * Determines the character set of the response. The charset parameter of the Content-Type is
+   * preferred. For compatibility, a Content-Encoding naming a character set is honored next, and
+   * UTF-8 is used otherwise.
+   */
+  private static String getResponseCharset(HttpURLConnection connection) {
+    String contentType = connection.getContentType();
+    if (contentType != null) {
+      for (String param : contentType.split(";")) {
+        param = param.trim();
+        if (param.regionMatches(true, 0, "charset=", 0, 8)) {
+          String charset = param.substring(8).replace("\"", "").trim();
+          if (isSupportedCharset(charset)) {
+            return charset;
+          }
+        }
+      }
+    }
+    String encoding = connection.getContentEncoding();
+    if (encoding != null && isSupportedCharset(encoding)) {
+      return encoding;
+    }
+    return "UTF-8";
+  }
+
+  private static boolean isSupportedCharset(String charset) {
+    try {
+      return Charset.isSupported(charset);
+    } catch (IllegalArgumentException e) {
+      // Illegal charset name.
+      return false;
+    }
+  }
+
+  /*
+   * Reads and discards the remainder of the response so the connection can be reused.
+   */
+  private static void drainResponse(HttpURLConnection connection) throws IOException {
+    InputStream in = getConnectionStream(connection);
+    if (in == null) {
+      return;
+    }
+    try {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      while (in.read(buffer) != -1) {
+        // discard
+      }
+    } finally {
+      in.close();
+    }
+  }
+
   private String saveResponseContent(HttpURLConnection connection,
       String responseFileName, String responseType) throws IOException {
     File file = createFile(responseFileName, responseType);
 
-    BufferedInputStream in = new BufferedInputStream(getConnectionStream(connection), 0x1000);
+    InputStream in = getConnectionStream(connection);
+    FileOutputStream out = new FileOutputStream(file);
     try {
-      BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(file), 0x1000);
-      try {
-        // Copy the contents from the input stream to the output stream.
-        while (true) {
-          int b = in.read();
-          if (b == -1) {
-            break;
-          }
-          out.write(b);
+      if (in != null) {
+        // Move the body straight from the socket to the file without staging it on the heap.
+        ReadableByteChannel source = Channels.newChannel(in);
+        FileChannel destination = out.getChannel();
+        long position = 0;
+        long transferred;
+        while ((transferred = destination.transferFrom(source, position, BUFFER_SIZE * 8)) > 0) {
+          position += transferred;
         }
-        out.flush();
-      } finally {
-        out.close();
       }
     } finally {
-      in.close();
+      try {
+        out.close();
+      } finally {
+        if (in != null) {
+          in.close();
+        }
+      }
     }
 
     return file.getAbsolutePath();
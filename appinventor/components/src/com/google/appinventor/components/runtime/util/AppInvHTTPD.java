@@ -51,6 +51,7 @@ public class AppInvHTTPD extends NanoHTTPD {
   private static byte[] hmacKey;
   private static int seq;
   private static final String MIME_JSON = "application/json"; // Other mime types defined in NanoHTTPD
+  private static final String CHUNKED_BLOCKID = "-2";  // Blocks editor sends whole screens as -2
   private final Handler androidUIHandler = new Handler();
 
   public AppInvHTTPD( int port, File wwwroot, boolean secure, ReplForm form) throws IOException
@@ -176,17 +177,17 @@ public class AppInvHTTPD extends NanoHTTPD {
         return(res);
       }
 
-      code = "(begin (require <com.google.youngandroid.runtime>) (process-repl-input " + blockid + " (begin " +
-        code + " )))";
-
-      Log.d(LOG_TAG, "To Eval: " + code);
-
       Response res;
       try {
         // Don't evaluate a simple "#f" which is used by the poller
         if (input_code.equals("#f")) {
           Log.e(LOG_TAG, "Skipping evaluation of #f");
+        } else if (CHUNKED_BLOCKID.equals(blockid)) {
+          evalChunk(blockid, input_code);
         } else {
+          code = "(begin (require <com.google.youngandroid.runtime>) (process-repl-input " + blockid + " (begin " +
+            code + " )))";
+          Log.d(LOG_TAG, "To Eval: " + code);
           scheme.eval(code);
         }
         res = new Response(HTTP_OK, MIME_JSON, RetValManager.fetch(false));
@@ -250,6 +251,13 @@ public class AppInvHTTPD extends NanoHTTPD {
       return (res);
     } else if (uri.equals("/_extensions")) {
       return processLoadExtensionsRequest(parms);
+    } else if (uri.equals("/_poolstats")) {
+      Response res = new Response(HTTP_OK, MIME_JSON, AsynchUtil.getPoolMetrics().toString());
+      res.addHeader("Access-Control-Allow-Origin", "*");
+      res.addHeader("Access-Control-Allow-Headers", "origin, content-type");
+      res.addHeader("Access-Control-Allow-Methods", "POST,OPTIONS,GET,HEAD,PUT");
+      res.addHeader("Allow", "POST,OPTIONS,GET,HEAD,PUT");
+      return(res);
     }
 
     if (method.equals("PUT")) { // Asset File Upload for newblocks
@@ -348,6 +356,46 @@ public class AppInvHTTPD extends NanoHTTPD {
     }
   }
 
+  /**
+   * Evaluates a chunk of code made of many top-level forms, such as the whole screen sent by the
+   * blocks editor on initial load, one form at a time. Each form is handed to the UI thread as
+   * soon as it has been read, so the UI thread runs the early forms while later forms are still
+   * being read and analyzed, instead of waiting for the entire chunk. See process-repl-input-part
+   * in runtime.scm for how results are reported.
+   *
+   * @param blockid the block id of the chunk
+   * @param input the code sent by the blocks editor
+   */
+  private void evalChunk(String blockid, String input) throws Throwable {
+    YailFormReader forms = new YailFormReader(input);
+    if (!forms.hasNext()) {
+      return;
+    }
+    String form = forms.next();
+    if (!forms.hasNext()) {
+      // Only one form, so there is nothing to pipeline.
+      scheme.eval("(begin (require <com.google.youngandroid.runtime>) (process-repl-input "
+          + blockid + " (begin " + form + " )))");
+      return;
+    }
+    String position = "first";
+    int count = 0;
+    long start = System.currentTimeMillis();
+    while (form != null) {
+      String following = forms.hasNext() ? forms.next() : null;
+      if (following == null) {
+        position = "last";
+      }
+      scheme.eval("(begin (require <com.google.youngandroid.runtime>) (process-repl-input-part "
+          + blockid + " " + position + " " + form + " ))");
+      count++;
+      position = "middle";
+      form = following;
+    }
+    Log.d(LOG_TAG, "Evaluated " + count + " forms in " + (System.currentTimeMillis() - start)
+        + " ms");
+  }
+
   /**
    * Updates the current thread's context class loader to match the main thread's context class
    * loader. This is used to ensure that all threads see the same classes (the "same" class loaded
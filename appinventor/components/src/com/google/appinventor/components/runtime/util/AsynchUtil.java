@@ -1,29 +1,145 @@
 // -*- mode: java; c-basic-offset: 2; -*-
 // Copyright 2009-2011 Google, All Rights reserved
-// Copyright 2011-2012 MIT, All rights reserved
+// Copyright 2011-2020 MIT, All rights reserved
 // Released under the Apache License, Version 2.0
 // http://www.apache.org/licenses/LICENSE-2.0
 
 package com.google.appinventor.components.runtime.util;
 
 import android.os.Handler;
+import android.os.Process;
+import android.util.Log;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONException;
+import org.json.JSONObject;
 
 /**
  * Utilities for handling asynchronous calls.
  *
+ * <p>Work is run on one of two shared pools rather than on a fresh thread per call. The
+ * {@link Pool#IO} pool is intended for blocking work (network, file and Bluetooth I/O) and grows
+ * up to {@link #IO_POOL_MAX} threads. If it is saturated, the task is handed to an overflow pool
+ * of up to {@link #OVERFLOW_POOL_SIZE} threads, which queues the tasks it cannot start yet, so
+ * that a burst of work can never create an unbounded number of threads. The {@link Pool#CPU} pool is sized to the number of processors and orders queued work by
+ * priority.</p>
+ *
  * @author markf@google.com (Mark Friedman)
  */
 
 public class AsynchUtil {
 
+  private static final String LOG_TAG = "AsynchUtil";
+
+  /**
+   * The shared pools available to components.
+   */
+  public enum Pool {
+    /** Blocking work, such as network or file I/O. */
+    IO,
+    /** Computational work, such as image decoding. */
+    CPU
+  }
+
+  /**
+   * Priority for work that the user is waiting on.
+   */
+  public static final int PRIORITY_HIGH = 10;
+
+  /**
+   * Default priority.
+   */
+  public static final int PRIORITY_NORMAL = 0;
+
+  /**
+   * Priority for speculative work, such as prefetching.
+   */
+  public static final int PRIORITY_LOW = -10;
+
+  static final int IO_POOL_CORE = 4;
+  static final int IO_POOL_MAX = 32;
+  static final int OVERFLOW_POOL_SIZE = 16;
+  static final int CPU_POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
+  private static final long KEEP_ALIVE_SECONDS = 30;
+
+  private static final AtomicLong sequence = new AtomicLong();
+  private static final AtomicLong completedTasks = new AtomicLong();
+  private static final AtomicLong cancelledTasks = new AtomicLong();
+  private static final AtomicLong overflowTasks = new AtomicLong();
+
+  // Tasks that are tied to the lifetime of an owner (usually a Form), so they can be cancelled
+  // when the owner is destroyed. Entries are removed as soon as the tasks finish.
+  private static final Map<Object, Set<OwnedTask>> ownedTasks =
+      new HashMap<Object, Set<OwnedTask>>();
+
+  private static final ThreadPoolExecutor ioPool = new ThreadPoolExecutor(IO_POOL_CORE,
+      IO_POOL_MAX, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+      new NamedThreadFactory("AsynchUtil-io", false), new OverflowPolicy());
+
+  // Long-lived blocking tasks, such as a server socket accept, can fill the I/O pool. Tasks that
+  // arrive then run here, or wait here until one of these threads is free.
+  private static final ThreadPoolExecutor overflowPool = new ThreadPoolExecutor(
+      OVERFLOW_POOL_SIZE, OVERFLOW_POOL_SIZE, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+      new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("AsynchUtil-overflow", false));
+
+  private static final ThreadPoolExecutor cpuPool =
+      newPriorityPool(CPU_POOL_SIZE, "AsynchUtil-cpu");
+
+  static {
+    ioPool.allowCoreThreadTimeOut(true);
+    overflowPool.allowCoreThreadTimeOut(true);
+    cpuPool.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Creates a fixed-size pool that runs queued {@link OwnedTask}s in priority order.
+   * @param size the number of threads
+   * @param name the prefix of the thread names
+   */
+  @VisibleForTesting
+  static ThreadPoolExecutor newPriorityPool(int size, String name) {
+    return new ThreadPoolExecutor(size, size, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+        new PriorityBlockingQueue<Runnable>(), new NamedThreadFactory(name, true));
+  }
+
   /**
    * Make an asynchronous call in a separate thread.
    * @param call a {@link Runnable} to run in the thread.
    */
   public static void runAsynchronously(final Runnable call) {
-    Thread thread = new Thread(call);
-    thread.start();
+    submit(Pool.IO, PRIORITY_NORMAL, null, call);
   }
+
+  /**
+   * Make an asynchronous call in a separate thread. The call is cancelled if it has not
+   * completed by the time {@link #cancelTasks(Object)} is called for {@code owner}.
+   * @param owner the object whose lifetime bounds the call, usually the current Form
+   * @param call a {@link Runnable} to run in the thread.
+   * @return a {@link Future} that can be used to cancel the call
+   */
+  public static Future<?> runAsynchronously(final Object owner, final Runnable call) {
+    return submit(Pool.IO, PRIORITY_NORMAL, owner, call);
+  }
+
   /**
    * Make an asynchronous call in a separate thread, with a callback that's run on the current
    * Android UI thread.
@@ -46,7 +162,188 @@ public class AsynchUtil {
         }
       }
     };
-    Thread thread = new Thread(runnable);
-    thread.start();
+    submit(Pool.IO, PRIORITY_NORMAL, null, runnable);
+  }
+
+  /**
+   * Submit a call to one of the shared pools.
+   * @param pool the pool on which to run the call
+   * @param priority the priority of the call; only honored by the {@link Pool#CPU} pool, where
+   *     higher values run first
+   * @param owner the object whose lifetime bounds the call, or null if the call is unbounded
+   * @param call a {@link Runnable} to run in the pool.
+   * @return a {@link Future} that can be used to cancel the call
+   */
+  public static Future<?> submit(Pool pool, int priority, Object owner, Runnable call) {
+    OwnedTask task = new OwnedTask(call, priority, owner);
+    if (owner != null) {
+      synchronized (ownedTasks) {
+        Set<OwnedTask> tasks = ownedTasks.get(owner);
+        if (tasks == null) {
+          tasks = new HashSet<OwnedTask>();
+          ownedTasks.put(owner, tasks);
+        }
+        tasks.add(task);
+      }
+    }
+    if (pool == Pool.CPU) {
+      cpuPool.execute(task);
+    } else {
+      ioPool.execute(task);
+    }
+    return task;
+  }
+
+  /**
+   * Cancel all pending and running calls owned by {@code owner}. Running calls are interrupted.
+   * @param owner the owner passed when the calls were submitted
+   */
+  public static void cancelTasks(Object owner) {
+    Set<OwnedTask> tasks;
+    synchronized (ownedTasks) {
+      tasks = ownedTasks.remove(owner);
+    }
+    if (tasks == null) {
+      return;
+    }
+    for (OwnedTask task : tasks) {
+      if (task.cancel(true)) {
+        cancelledTasks.incrementAndGet();
+      }
+    }
+    // Drop cancelled tasks from the CPU queue so they don't hold on to their closures.
+    cpuPool.purge();
+  }
+
+  /**
+   * Returns a snapshot of the pool metrics, for debugging from the companion.
+   * @return a JSON object describing the state of the pools
+   */
+  public static JSONObject getPoolMetrics() {
+    JSONObject result = new JSONObject();
+    try {
+      result.put("io", describePool(ioPool));
+      result.put("cpu", describePool(cpuPool));
+      result.put("overflow", describePool(overflowPool));
+      result.put("completed", completedTasks.get());
+      result.put("cancelled", cancelledTasks.get());
+      result.put("overflowTasks", overflowTasks.get());
+    } catch (JSONException e) {
+      Log.e(LOG_TAG, "Unable to build pool metrics", e);
+    }
+    return result;
+  }
+
+  private static JSONObject describePool(ThreadPoolExecutor pool) throws JSONException {
+    JSONObject result = new JSONObject();
+    result.put("poolSize", pool.getPoolSize());
+    result.put("active", pool.getActiveCount());
+    result.put("largestPoolSize", pool.getLargestPoolSize());
+    result.put("maximumPoolSize", pool.getMaximumPoolSize());
+    result.put("queued", pool.getQueue().size());
+    result.put("completed", pool.getCompletedTaskCount());
+    return result;
+  }
+
+  /**
+   * A cancellable task that remembers its owner and orders itself by priority (higher first),
+   * then by submission order.
+   */
+  @VisibleForTesting
+  static class OwnedTask extends FutureTask<Void> implements Comparable<OwnedTask> {
+    private final int priority;
+    private final long order;
+    private final Object owner;
+
+    OwnedTask(Runnable call, int priority, Object owner) {
+      super(call, null);
+      this.priority = priority;
+      this.order = sequence.getAndIncrement();
+      this.owner = owner;
+    }
+
+    @Override
+    protected void done() {
+      if (!isCancelled()) {
+        completedTasks.incrementAndGet();
+      }
+      if (owner != null) {
+        synchronized (ownedTasks) {
+          Set<OwnedTask> tasks = ownedTasks.get(owner);
+          if (tasks != null) {
+            tasks.remove(this);
+            if (tasks.isEmpty()) {
+              ownedTasks.remove(owner);
+            }
+          }
+        }
+      }
+    }
+
+    @Override
+    public void run() {
+      super.run();
+      if (!isCancelled()) {
+        try {
+          get();
+        } catch (InterruptedException e) {
+          // Not possible, since the task is done
+        } catch (ExecutionException e) {
+          // The FutureTask would swallow the exception. Rethrow it, so that it reaches the
+          // thread's uncaught exception handler as it did when each call had its own thread.
+          Throwable cause = e.getCause();
+          if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          throw (RuntimeException) cause;
+        }
+      }
+    }
+
+    @Override
+    public int compareTo(OwnedTask other) {
+      if (priority != other.priority) {
+        return priority > other.priority ? -1 : 1;
+      }
+      return order < other.order ? -1 : (order == other.order ? 0 : 1);
+    }
+  }
+
+  /**
+   * Hands the task to the overflow pool when the I/O pool is saturated.
+   */
+  private static class OverflowPolicy implements RejectedExecutionHandler {
+    @Override
+    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+      if (executor.isShutdown()) {
+        throw new RejectedExecutionException("AsynchUtil pool has been shut down");
+      }
+      overflowTasks.incrementAndGet();
+      overflowPool.execute(r);
+    }
+  }
+
+  private static class NamedThreadFactory implements ThreadFactory {
+    private final String prefix;
+    private final boolean background;
+    private final AtomicInteger count = new AtomicInteger();
+
+    NamedThreadFactory(String prefix, boolean background) {
+      this.prefix = prefix;
+      this.background = background;
+    }
+
+    @Override
+    public Thread newThread(final Runnable r) {
+      return new Thread(new Runnable() {
+        @Override
+        public void run() {
+          if (background) {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+          }
+          r.run();
+        }
+      }, prefix + "-" + count.incrementAndGet());
+    }
   }
 }
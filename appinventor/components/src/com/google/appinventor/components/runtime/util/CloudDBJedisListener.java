@@ -54,6 +54,10 @@ public class CloudDBJedisListener extends JedisPubSub {
       }
       String tag = (String) data.get(0);   // The variable that was changed
       List<Object> valueList = (List<Object>) data.get(1);
+      if (cloudDB.DataChangedInterval() > 0 && valueList.size() > 1) {
+        // Only the latest value will be dispatched, so skip converting the others.
+        valueList = valueList.subList(valueList.size() - 1, valueList.size());
+      }
       for (Object value : valueList) {
         // Note: DataChanged will arrange to dispatch the event
         // on the UI thread.
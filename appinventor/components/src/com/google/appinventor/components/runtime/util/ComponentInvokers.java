@@ -0,0 +1,163 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import android.util.Log;
+
+import com.google.appinventor.components.runtime.Component;
+
+import gnu.lists.LList;
+import gnu.mapping.Symbol;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Calls component methods and property getters and setters from YAIL without reflection.
+ *
+ * <p>The component annotation processor generates an {@link Invoker} for each built-in component
+ * that calls the component's blocks directly. The YAIL runtime tries the invoker first and falls
+ * back on Kawa's reflective {@code invoke} when the invoker returns {@link #NOT_HANDLED}, which
+ * happens for extensions, for overloaded members and for arguments of unexpected types.</p>
+ */
+public final class ComponentInvokers {
+
+  private static final String LOG_TAG = "ComponentInvokers";
+
+  /**
+   * The name of the class generated by the annotation processor. It implements {@link Factory}.
+   */
+  static final String GENERATED_FACTORY =
+      "com.google.appinventor.components.runtime.util.GeneratedComponentInvokers";
+
+  /**
+   * Returned by an invoker that cannot make the requested call.
+   */
+  public static final Object NOT_HANDLED = new Object();
+
+  /**
+   * Calls the members of one component type.
+   */
+  public interface Invoker {
+    /**
+     * Calls the named method, property getter (no arguments) or property setter (one argument).
+     *
+     * @param component the component, which is an instance of the invoker's component type
+     * @param member the name of the method or property
+     * @param args the arguments, already coerced to their YAIL types
+     * @return the result of the call, null for void methods and setters, or {@link #NOT_HANDLED}
+     */
+    Object invoke(Component component, String member, Object[] args);
+  }
+
+  /**
+   * Provides the invokers for the built-in components.
+   */
+  public interface Factory {
+    /**
+     * Returns the invoker for the component class with the given binary name, or null if there
+     * is none.
+     */
+    Invoker forClass(String className);
+  }
+
+  private static final Invoker NO_INVOKER = new Invoker() {
+    @Override
+    public Object invoke(Component component, String member, Object[] args) {
+      return NOT_HANDLED;
+    }
+  };
+
+  private static final Map<Class<?>, Invoker> registered = new HashMap<Class<?>, Invoker>();
+  private static final Map<Class<?>, Invoker> resolved =
+      new ConcurrentHashMap<Class<?>, Invoker>();
+  private static Factory factory;
+  private static boolean factoryLoaded;
+
+  private ComponentInvokers() {
+  }
+
+  /**
+   * Calls a member of a component through its invoker.
+   *
+   * @param component the component
+   * @param member the name of the method or property, usually a symbol
+   * @param args the Kawa list of arguments
+   * @return the result of the call, or {@link #NOT_HANDLED} if the caller should fall back on
+   *     reflection
+   */
+  public static Object invoke(Object component, Object member, LList args) {
+    if (!(component instanceof Component)) {
+      return NOT_HANDLED;
+    }
+    Invoker invoker = forClass(component.getClass());
+    if (invoker == NO_INVOKER) {
+      return NOT_HANDLED;
+    }
+    String name = member instanceof Symbol ? ((Symbol) member).getName() : member.toString();
+    return invoker.invoke((Component) component, name, args.toArray());
+  }
+
+  /**
+   * Registers an invoker for a component type that is not processed by the annotation processor.
+   * The invoker is also used for subclasses of {@code type} that have no invoker of their own.
+   *
+   * @param type the component type
+   * @param invoker the invoker, or null to remove a registration
+   */
+  public static synchronized void register(Class<? extends Component> type, Invoker invoker) {
+    if (invoker == null) {
+      registered.remove(type);
+    } else {
+      registered.put(type, invoker);
+    }
+    resolved.clear();
+  }
+
+  static Invoker forClass(Class<?> type) {
+    Invoker invoker = resolved.get(type);
+    if (invoker == null) {
+      synchronized (ComponentInvokers.class) {
+        invoker = lookup(type);
+        resolved.put(type, invoker);
+      }
+    }
+    return invoker;
+  }
+
+  /*
+   * Walks up the class hierarchy, since the component object may be a subclass of the designer
+   * component. For example, each screen of an app is a subclass of Form.
+   */
+  private static Invoker lookup(Class<?> type) {
+    Factory generated = getFactory();
+    for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+      Invoker invoker = registered.get(c);
+      if (invoker == null && generated != null) {
+        invoker = generated.forClass(c.getName());
+      }
+      if (invoker != null) {
+        return invoker;
+      }
+    }
+    return NO_INVOKER;
+  }
+
+  private static Factory getFactory() {
+    if (!factoryLoaded) {
+      factoryLoaded = true;
+      try {
+        factory = (Factory) Class.forName(GENERATED_FACTORY).newInstance();
+      } catch (Exception e) {
+        Log.w(LOG_TAG, "No generated component invokers, using reflection", e);
+      } catch (LinkageError e) {
+        Log.w(LOG_TAG, "Unable to load generated component invokers, using reflection", e);
+      }
+    }
+    return factory;
+  }
+}
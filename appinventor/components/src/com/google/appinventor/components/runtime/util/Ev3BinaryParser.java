@@ -6,6 +6,8 @@
 package com.google.appinventor.components.runtime.util;
 
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.io.UnsupportedEncodingException;
@@ -44,37 +46,66 @@ public class Ev3BinaryParser {
   private static class FormatLiteral {
     public char symbol;
     public int size;
+    public boolean sizeSpecified;
 
-    public FormatLiteral(char symbol, int size) {
+    public FormatLiteral(char symbol, int size, boolean sizeSpecified) {
       this.symbol = symbol;
       this.size = size;
+      this.sizeSpecified = sizeSpecified;
     }
   }
 
-  public static byte[] pack(String format, Object... values) throws IllegalArgumentException {
-    // parse format string
-    String[] formatTokens = format.split("(?<=\\D)");
-    FormatLiteral[] literals = new FormatLiteral[formatTokens.length];
-    int index = 0;
-    int bufferCapacity = 0;
+  // Format strings are constants in the callers, so each is parsed only once.
+  private static final Map<String, FormatLiteral[]> FORMATS =
+      new ConcurrentHashMap<String, FormatLiteral[]>();
+
+  /**
+   * Parses a format string into its literals: each literal is an optional
+   * repeat count followed by a symbol.
+   */
+  private static FormatLiteral[] parseFormat(String format) throws IllegalArgumentException {
+    FormatLiteral[] literals = FORMATS.get(format);
+    if (literals != null)
+      return literals;
+
+    ArrayList<FormatLiteral> parsed = new ArrayList<FormatLiteral>();
+    int i = 0;
+    while (i < format.length()) {
+      int start = i;
+      while (i < format.length() && Character.isDigit(format.charAt(i)))
+        i++;
+
+      if (i == format.length())
+        throw new IllegalArgumentException("Illegal format string");
 
-    // calculate buffer size
-    for (int i = 0; i < formatTokens.length; i++) {
-      String token = formatTokens[i];
-      char symbol = token.charAt(token.length() - 1);
       int size = 1;
-      boolean sizeSpecified = false;
-
-      if (token.length() != 1)
-      {
-        size = Integer.parseInt(token.substring(0, token.length() - 1));
-        sizeSpecified = true;
+      boolean sizeSpecified = i > start;
+      if (sizeSpecified) {
+        size = Integer.parseInt(format.substring(start, i));
 
         if (size < 1)
           throw new IllegalArgumentException("Illegal format string");
       }
 
-      switch (symbol) {
+      parsed.add(new FormatLiteral(format.charAt(i), size, sizeSpecified));
+      i++;
+    }
+
+    literals = parsed.toArray(new FormatLiteral[parsed.size()]);
+    FORMATS.put(format, literals);
+    return literals;
+  }
+
+  public static byte[] pack(String format, Object... values) throws IllegalArgumentException {
+    FormatLiteral[] literals = parseFormat(format);
+    int index = 0;
+    int bufferCapacity = 0;
+
+    // calculate buffer size
+    for (FormatLiteral literal : literals) {
+      int size = literal.size;
+
+      switch (literal.symbol) {
       case 'x':
         bufferCapacity += size;
         break;
@@ -138,7 +169,7 @@ public class Ev3BinaryParser {
         break;
 
       case 'S':
-        if (sizeSpecified)
+        if (literal.sizeSpecified)
           throw new IllegalArgumentException("Illegal format string");
 
         bufferCapacity += ((String) values[index]).length() + 1;
@@ -148,8 +179,6 @@ public class Ev3BinaryParser {
       default:
         throw new IllegalArgumentException("Illegal format string");
       }
-
-      literals[i] = new FormatLiteral(symbol, size);
     }
 
     if (index != values.length)
@@ -259,25 +288,16 @@ public class Ev3BinaryParser {
   }
 
   public static Object[] unpack(String format, byte[] bytes) throws IllegalArgumentException {
-    String[] formatTokens = format.split("(?<=\\D)");
+    FormatLiteral[] literals = parseFormat(format);
     ArrayList<Object> decodedObjects = new ArrayList<Object>();
     ByteBuffer buffer = ByteBuffer.wrap(bytes);
     buffer.order(ByteOrder.LITTLE_ENDIAN);
 
-    for (String token: formatTokens) {
-      boolean sizeSpecified = false;
-      int size = 1;
-      char symbol = token.charAt(token.length() - 1);
-
-      if (token.length() > 1) {
-        sizeSpecified = true;
-        size = Integer.parseInt(token.substring(0, token.length() - 1));
-
-        if (size < 1)
-          throw new IllegalArgumentException("Illegal format string");
-      }
+    for (FormatLiteral literal : literals) {
+      boolean sizeSpecified = literal.sizeSpecified;
+      int size = literal.size;
 
-      switch (symbol) {
+      switch (literal.symbol) {
       case 'x':
         for (int i = 0; i < size; i++)
           buffer.get();
@@ -507,9 +527,9 @@ public class Ev3BinaryParser {
     if (globalAllocation < 0 || globalAllocation > 0x3ff || localAllocation < 0 || localAllocation > 0x3f || paramFormat.length() != parameters.length)
       throw new IllegalArgumentException();
 
-
-    // encode parameters
-    ArrayList<byte[]> payloads = new ArrayList<byte[]>();
+    // calculate buffer size, encoding strings on the way
+    int bufferCapacity = 4;
+    byte[][] strings = null;
 
     for (int i = 0; i < paramFormat.length(); i++) {
       char letter = paramFormat.charAt(i);
@@ -517,59 +537,24 @@ public class Ev3BinaryParser {
 
       switch (letter) {
       case 'c':
-        if (obj instanceof Byte) {
-          if ((((Byte) obj) <= 31) && (((Byte) obj) >= -31))
-            payloads.add(encodeLC0((Byte) obj));
-          else
-            payloads.add(encodeLC1((Byte) obj));
-        }
-        else if (obj instanceof Short)
-          payloads.add(encodeLC2((Short) obj));
-        else if (obj instanceof Integer)
-          payloads.add(encodeLC4((Integer) obj));
-        else
-          throw new IllegalArgumentException();
-        break;
-
       case 'l':
-        if (obj instanceof Byte) {
-          if ((((Byte) obj) <= 31) && (((Byte) obj) >= -31))
-            payloads.add(encodeLV0((Byte) obj));
-          else
-            payloads.add(encodeLV1((Byte) obj));
-        }
-        else if (obj instanceof Short)
-          payloads.add(encodeLV2((Short) obj));
-        else if (obj instanceof Integer)
-          payloads.add(encodeLV4((Integer) obj));
-        else
-          throw new IllegalArgumentException();
-        break;
-
       case 'g':
-        if (obj instanceof Byte) {
-          if ((((Byte) obj) <= 31) && (((Byte) obj) >= -31))
-            payloads.add(encodeGV0((Byte) obj));
-          else
-            payloads.add(encodeGV1((Byte) obj));
-        }
-        else if (obj instanceof Short)
-          payloads.add(encodeGV2((Short) obj));
-        else if (obj instanceof Integer)
-          payloads.add(encodeGV4((Integer) obj));
-        else
-          throw new IllegalArgumentException();
+        bufferCapacity += encodedSize(obj);
         break;
 
       case 's':
         if (!(obj instanceof String))
           throw new IllegalArgumentException();
 
+        if (strings == null)
+          strings = new byte[parameters.length][];
+
         try {
-          payloads.add((((String) obj) + '\0').getBytes("US-ASCII"));
+          strings[i] = ((String) obj).getBytes("US-ASCII");
         } catch (UnsupportedEncodingException e) {
           throw new IllegalArgumentException();
         }
+        bufferCapacity += strings[i].length + 1;
         break;
 
       default:
@@ -577,23 +562,116 @@ public class Ev3BinaryParser {
       }
     }
 
-    // calculate buffer size
-    int bufferCapacity = 4;
-    for (byte[] array : payloads)
-      bufferCapacity += array.length;
-
     // generate byte buffer
     ByteBuffer buffer = ByteBuffer.allocate(bufferCapacity);
     buffer.order(ByteOrder.LITTLE_ENDIAN);
     buffer.put(needReply ? Ev3Constants.DirectCommandType.DIRECT_COMMAND_REPLY :
                            Ev3Constants.DirectCommandType.DIRECT_COMMAND_NO_REPLY);
-    buffer.put(new byte[] {(byte) (globalAllocation & 0xff),
-                           (byte) (((globalAllocation >>> 8) & 0x3) | (localAllocation << 2))});
+    buffer.put((byte) (globalAllocation & 0xff));
+    buffer.put((byte) (((globalAllocation >>> 8) & 0x3) | (localAllocation << 2)));
     buffer.put(opcode);
 
-    for (byte[] array : payloads)
-      buffer.put(array);
+    for (int i = 0; i < paramFormat.length(); i++) {
+      switch (paramFormat.charAt(i)) {
+      case 'c':
+        putConstant(buffer, parameters[i]);
+        break;
+
+      case 'l':
+        putVariable(buffer, parameters[i], PRIMPAR_LOCAL);
+        break;
+
+      case 'g':
+        putVariable(buffer, parameters[i], PRIMPAR_GLOBAL);
+        break;
+
+      case 's':
+        buffer.put(strings[i]);
+        buffer.put((byte) 0);
+        break;
+      }
+    }
 
     return buffer.array();
   }
+
+  // Returns the number of bytes of an encoded constant or variable parameter.
+  private static int encodedSize(Object obj) {
+    if (obj instanceof Byte)
+      return ((Byte) obj <= 31 && (Byte) obj >= -31) ? 1 : 2;
+    else if (obj instanceof Short)
+      return 3;
+    else if (obj instanceof Integer)
+      return 5;
+    else
+      throw new IllegalArgumentException();
+  }
+
+  // Writes the same bytes as encodeLC0, encodeLC1, encodeLC2 or encodeLC4.
+  private static void putConstant(ByteBuffer buffer, Object obj) {
+    if (obj instanceof Byte) {
+      byte v = (Byte) obj;
+      if (v <= 31 && v >= -31) {
+        buffer.put((byte) (v & PRIMPAR_VALUE));
+      } else {
+        buffer.put((byte) (PRIMPAR_LONG | PRIMPAR_CONST | PRIMPAR_1_BYTE));
+        buffer.put(v);
+      }
+    } else if (obj instanceof Short) {
+      buffer.put((byte) (PRIMPAR_LONG | PRIMPAR_CONST | PRIMPAR_2_BYTES));
+      buffer.putShort((Short) obj);
+    } else {
+      buffer.put((byte) (PRIMPAR_LONG | PRIMPAR_CONST | PRIMPAR_4_BYTES));
+      buffer.putInt((Integer) obj);
+    }
+  }
+
+  // Writes the same bytes as encodeLV0, ..., encodeLV4 for local variables
+  // or encodeGV0, ..., encodeGV4 for global variables.
+  private static void putVariable(ByteBuffer buffer, Object obj, byte scope) {
+    if (obj instanceof Byte) {
+      byte i = (Byte) obj;
+      if (i <= 31 && i >= -31) {
+        buffer.put((byte) ((i & PRIMPAR_INDEX) | PRIMPAR_SHORT | PRIMPAR_VARIABEL | scope));
+      } else {
+        buffer.put((byte) (PRIMPAR_LONG | PRIMPAR_VARIABEL | scope | PRIMPAR_1_BYTE));
+        buffer.put(i);
+      }
+    } else if (obj instanceof Short) {
+      buffer.put((byte) (PRIMPAR_LONG | PRIMPAR_VARIABEL | scope | PRIMPAR_2_BYTES));
+      buffer.putShort((Short) obj);
+    } else {
+      buffer.put((byte) (PRIMPAR_LONG | PRIMPAR_VARIABEL | scope | PRIMPAR_4_BYTES));
+      buffer.putInt((Integer) obj);
+    }
+  }
+
+  /**
+   * Writes a command with the header that frames it on the wire: the length
+   * of the rest of the message and the message counter, both little-endian
+   * 16-bit numbers.
+   *
+   * @param command the encoded command
+   * @param counter the message counter, which the robot copies into its reply
+   * @param frame the array to write into
+   * @param offset where to start writing
+   * @return the offset after the framed command
+   */
+  public static int frameCommand(byte[] command, int counter, byte[] frame, int offset) {
+    int length = command.length + 2;
+    frame[offset] = (byte) (length & 0xFF);
+    frame[offset + 1] = (byte) ((length >>> 8) & 0xFF);
+    frame[offset + 2] = (byte) (counter & 0xFF);
+    frame[offset + 3] = (byte) ((counter >>> 8) & 0xFF);
+    System.arraycopy(command, 0, frame, offset + 4, command.length);
+    return offset + 4 + command.length;
+  }
+
+  /**
+   * Reads an unsigned little-endian 16-bit number, such as the length or
+   * counter in the header of a reply.
+   */
+  public static int getUnsignedShort(byte[] bytes, int offset) {
+    return (bytes[offset] & 0xFF) | ((bytes[offset + 1] & 0xFF) << 8);
+  }
 }
@@ -5,6 +5,7 @@
 
 package com.google.appinventor.components.runtime.util;
 
+import android.graphics.Bitmap;
 import android.os.Build.VERSION;
 import android.os.Build.VERSION_CODES;
 import android.widget.TextView;
@@ -29,4 +30,15 @@ public final class IceCreamSandwichUtil {
       view.setAllCaps(allCaps);
     }
   }
+
+  /**
+   * Returns the WebP image format, which was added in Ice Cream Sandwich.
+   * @return the WebP format, or null on earlier versions of Android
+   */
+  public static Bitmap.CompressFormat getWebpFormat() {
+    if (VERSION.SDK_INT >= VERSION_CODES.ICE_CREAM_SANDWICH) {
+      return Bitmap.CompressFormat.WEBP;
+    }
+    return null;
+  }
 }
@@ -0,0 +1,433 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A cache of decoded images used by {@link MediaUtil}.
+ *
+ * <p>The memory tier holds decoded bitmaps in least-recently-used order within a byte budget.
+ * Cached bitmaps are shared between components, each of which wraps the bitmap in its own
+ * drawable, so a bitmap in the memory tier is never handed out for reuse by a later decode.</p>
+ *
+ * <p>The disk tier holds images downloaded from the internet along with their ETag and
+ * Last-Modified validators. Remote images are always revalidated with the server, so an image that
+ * changes over time (such as a web cam) is still fetched fresh whenever it changes. Entries are
+ * read and written under a per-entry lock, which is never held while waiting for the server, and
+ * are written to temporary files that are renamed into place, so a fetch never sees a partly
+ * written or mismatched entry.</p>
+ *
+ * <p>Bitmaps that were only used as an intermediate step while decoding (for example, before
+ * scaling for the device density) are kept in a small pool so that the next decode can reuse
+ * their memory.</p>
+ */
+public final class ImageCache {
+
+  private static final String LOG_TAG = "ImageCache";
+
+  private static final int MAX_REUSABLE_BITMAPS = 2;
+  private static final int BUFFER_SIZE = 4096;
+
+  // Reads and writes of disk entries whose names hash to the same lock are serialized.
+  private static final int DISK_LOCK_COUNT = 16;
+
+  /**
+   * An image fetched from the internet. Either the image was downloaded, or the server reported
+   * that the copy on disk is still current.
+   */
+  public static final class RemoteImage {
+    /**
+     * A version stamp derived from the server's validators, or null if the server gave none, in
+     * which case the image must not be cached.
+     */
+    public final String version;
+    private final byte[] data;
+
+    private RemoteImage(String version, byte[] data) {
+      this.version = version;
+      this.data = data;
+    }
+
+    /**
+     * Returns the encoded image.
+     */
+    public byte[] getData() {
+      return data;
+    }
+  }
+
+  private final long maxBytes;
+  private final long maxDiskBytes;
+  private long currentBytes;
+  private final LinkedHashMap<String, Bitmap> bitmaps =
+      new LinkedHashMap<String, Bitmap>(16, 0.75f, true);
+  private final List<Bitmap> reusable = new ArrayList<Bitmap>();
+  private final Object[] diskLocks = new Object[DISK_LOCK_COUNT];
+  // Held while trimming the disk tier. The cache's own monitor is not, since trimming waits for
+  // the locks of the entries it deletes.
+  private final Object trimLock = new Object();
+
+  /**
+   * Creates a new cache.
+   *
+   * @param maxBytes the maximum number of bytes of decoded bitmaps to hold in memory
+   * @param maxDiskBytes the maximum number of bytes of downloaded images to hold on disk
+   */
+  public ImageCache(long maxBytes, long maxDiskBytes) {
+    this.maxBytes = maxBytes;
+    this.maxDiskBytes = maxDiskBytes;
+    for (int i = 0; i < DISK_LOCK_COUNT; i++) {
+      diskLocks[i] = new Object();
+    }
+  }
+
+  /**
+   * Builds the key identifying a decoded image.
+   *
+   * @param path the media path of the image
+   * @param version a stamp that changes whenever the content at path changes
+   * @param maxWidth the maximum width used to choose the sample size
+   * @param maxHeight the maximum height used to choose the sample size
+   * @param density the device density the bitmap was scaled for
+   */
+  public static String makeKey(String path, String version, int maxWidth, int maxHeight,
+      float density) {
+    return path + '\n' + version + '\n' + maxWidth + 'x' + maxHeight + '@' + density;
+  }
+
+  /**
+   * Returns the cached bitmap for key, or null if it is not in memory.
+   */
+  public synchronized Bitmap get(String key) {
+    return bitmaps.get(key);
+  }
+
+  /**
+   * Adds a decoded bitmap to the memory tier, evicting the least recently used bitmaps as needed.
+   */
+  public synchronized void put(String key, Bitmap bitmap) {
+    long size = sizeOf(bitmap);
+    if (size > maxBytes / 4) {
+      // A single huge image would flush out everything else.
+      return;
+    }
+    // The bitmap is shared from now on, so a later decode must not write into it.
+    reusable.remove(bitmap);
+    Bitmap old = bitmaps.put(key, bitmap);
+    if (old != null) {
+      currentBytes -= sizeOf(old);
+    }
+    currentBytes += size;
+    Iterator<Map.Entry<String, Bitmap>> it = bitmaps.entrySet().iterator();
+    while (currentBytes > maxBytes && it.hasNext()) {
+      currentBytes -= sizeOf(it.next().getValue());
+      it.remove();
+    }
+  }
+
+  /**
+   * Removes all bitmaps from the memory tier.
+   */
+  public synchronized void clear() {
+    bitmaps.clear();
+    reusable.clear();
+    currentBytes = 0;
+  }
+
+  /**
+   * Returns the number of bytes used by the memory tier.
+   */
+  public synchronized long size() {
+    return currentBytes;
+  }
+
+  /**
+   * Removes and returns a pooled intermediate bitmap whose memory can hold a width x height
+   * ARGB_8888 image, or null if there is none. Only meaningful on KitKat and later.
+   */
+  public synchronized Bitmap takeReusable(int width, int height) {
+    Iterator<Bitmap> it = reusable.iterator();
+    while (it.hasNext()) {
+      Bitmap candidate = it.next();
+      if (KitkatUtil.canReuseBitmap(candidate, width, height)) {
+        it.remove();
+        return candidate;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Offers a mutable intermediate bitmap that nothing else references for reuse by a later decode.
+   * Bitmaps in the memory tier are refused, since components may be drawing them.
+   */
+  public synchronized void offerReusable(Bitmap bitmap) {
+    if (bitmap == null || !bitmap.isMutable() || bitmap.isRecycled()
+        || bitmaps.containsValue(bitmap)) {
+      return;
+    }
+    if (reusable.size() >= MAX_REUSABLE_BITMAPS) {
+      reusable.remove(0);
+    }
+    reusable.add(bitmap);
+  }
+
+  /**
+   * Fetches an image from the internet, revalidating the copy in the disk tier if there is one.
+   *
+   * @param cacheDir the directory holding the disk tier
+   * @param url the URL of the image
+   */
+  public RemoteImage fetchRemote(File cacheDir, String url) throws IOException {
+    URLConnection connection = new URL(url).openConnection();
+    if (!(connection instanceof HttpURLConnection)) {
+      return new RemoteImage(null, readConnection(connection));
+    }
+    HttpURLConnection http = (HttpURLConnection) connection;
+    String name = hash(url);
+    File dataFile = new File(cacheDir, name + ".img");
+    File metaFile = new File(cacheDir, name + ".meta");
+    // The entry's lock is only held while reading or writing the entry, never while waiting for
+    // the server.
+    String[] validators;
+    synchronized (diskLockFor(name)) {
+      validators = dataFile.exists() ? readMeta(metaFile, url) : null;
+    }
+    if (validators != null) {
+      if (validators[0].length() > 0) {
+        http.setRequestProperty("If-None-Match", validators[0]);
+      }
+      if (validators[1].length() > 0) {
+        http.setRequestProperty("If-Modified-Since", validators[1]);
+      }
+    }
+    int responseCode = http.getResponseCode();
+    if (validators != null && responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+      readConnection(http);  // Drain so the connection can be reused.
+      RemoteImage image = readDiskEntry(dataFile, metaFile, url, name);
+      if (image != null) {
+        return image;
+      }
+      // The entry was trimmed while the server was being asked, so fetch the whole image.
+      http = (HttpURLConnection) new URL(url).openConnection();
+      responseCode = http.getResponseCode();
+    }
+    byte[] data = readConnection(http);
+    String etag = http.getHeaderField("ETag");
+    String lastModified = http.getHeaderField("Last-Modified");
+    if (responseCode != HttpURLConnection.HTTP_OK || (etag == null && lastModified == null)) {
+      synchronized (diskLockFor(name)) {
+        dataFile.delete();
+        metaFile.delete();
+      }
+      return new RemoteImage(null, data);
+    }
+    synchronized (diskLockFor(name)) {
+      try {
+        writeDiskEntry(cacheDir, dataFile, metaFile, url, etag, lastModified, data);
+      } catch (IOException e) {
+        // The disk tier is only an optimization.
+        Log.w(LOG_TAG, "Unable to cache " + url, e);
+        dataFile.delete();
+        metaFile.delete();
+        return new RemoteImage(null, data);
+      }
+    }
+    // Outside of the entry's lock, since trimming takes the locks of the entries it deletes.
+    trimDisk(cacheDir);
+    return new RemoteImage(version(etag, lastModified), data);
+  }
+
+  /*
+   * Reads a complete entry from the disk tier along with its version, or returns null if there
+   * is none. Another fetch of the same URL may have replaced the entry since its validators were
+   * sent, in which case the newer entry is returned.
+   */
+  private RemoteImage readDiskEntry(File dataFile, File metaFile, String url, String name)
+      throws IOException {
+    synchronized (diskLockFor(name)) {
+      String[] validators = dataFile.exists() ? readMeta(metaFile, url) : null;
+      if (validators == null) {
+        return null;
+      }
+      dataFile.setLastModified(System.currentTimeMillis());
+      InputStream in = new FileInputStream(dataFile);
+      try {
+        return new RemoteImage(version(validators[0], validators[1]), readFully(in));
+      } finally {
+        in.close();
+      }
+    }
+  }
+
+  private Object diskLockFor(String name) {
+    return diskLocks[(name.hashCode() & 0x7fffffff) % DISK_LOCK_COUNT];
+  }
+
+  /*
+   * Writes an entry to temporary files and renames them into place. The metadata goes last, so
+   * an entry whose metadata is present is complete.
+   */
+  private static void writeDiskEntry(File cacheDir, File dataFile, File metaFile, String url,
+      String etag, String lastModified, byte[] data) throws IOException {
+    if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+      throw new IOException("Unable to create " + cacheDir);
+    }
+    File dataTemp = new File(cacheDir, dataFile.getName() + ".tmp");
+    File metaTemp = new File(cacheDir, metaFile.getName() + ".tmp");
+    OutputStream out = new FileOutputStream(dataTemp);
+    try {
+      out.write(data);
+    } finally {
+      out.close();
+    }
+    Writer writer = new FileWriter(metaTemp);
+    try {
+      writer.write(url + "\n" + (etag == null ? "" : etag) + "\n"
+          + (lastModified == null ? "" : lastModified) + "\n");
+    } finally {
+      writer.close();
+    }
+    metaFile.delete();
+    if (!dataTemp.renameTo(dataFile) || !metaTemp.renameTo(metaFile)) {
+      dataTemp.delete();
+      metaTemp.delete();
+      throw new IOException("Unable to rename cache entry for " + url);
+    }
+  }
+
+  private void trimDisk(File cacheDir) {
+    synchronized (trimLock) {
+      trimDiskLocked(cacheDir);
+    }
+  }
+
+  private void trimDiskLocked(File cacheDir) {
+    File[] files = cacheDir.listFiles();
+    if (files == null) {
+      return;
+    }
+    long total = 0;
+    List<File> images = new ArrayList<File>();
+    for (File file : files) {
+      if (file.getName().endsWith(".img")) {
+        images.add(file);
+        total += file.length();
+      }
+    }
+    if (total <= maxDiskBytes) {
+      return;
+    }
+    File[] oldestFirst = images.toArray(new File[images.size()]);
+    Arrays.sort(oldestFirst, new Comparator<File>() {
+      @Override
+      public int compare(File a, File b) {
+        long diff = a.lastModified() - b.lastModified();
+        return diff < 0 ? -1 : (diff == 0 ? 0 : 1);
+      }
+    });
+    for (File file : oldestFirst) {
+      if (total <= maxDiskBytes) {
+        break;
+      }
+      total -= file.length();
+      String name = file.getName();
+      name = name.substring(0, name.length() - 4);
+      synchronized (diskLockFor(name)) {
+        // Metadata first, so that the entry is never seen without its data.
+        new File(cacheDir, name + ".meta").delete();
+        file.delete();
+      }
+    }
+  }
+
+  private static String[] readMeta(File metaFile, String url) {
+    try {
+      BufferedReader reader = new BufferedReader(new FileReader(metaFile));
+      try {
+        String cachedUrl = reader.readLine();
+        String etag = reader.readLine();
+        String lastModified = reader.readLine();
+        if (!url.equals(cachedUrl) || etag == null || lastModified == null) {
+          return null;
+        }
+        return new String[] { etag, lastModified };
+      } finally {
+        reader.close();
+      }
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private static String version(String etag, String lastModified) {
+    return (etag == null ? "" : etag) + '|' + (lastModified == null ? "" : lastModified);
+  }
+
+  private static byte[] readConnection(URLConnection connection) throws IOException {
+    InputStream in = connection.getInputStream();
+    try {
+      return readFully(in);
+    } finally {
+      in.close();
+    }
+  }
+
+  static byte[] readFully(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buf = new byte[BUFFER_SIZE];
+    int read;
+    while ((read = in.read(buf)) > 0) {
+      out.write(buf, 0, read);
+    }
+    return out.toByteArray();
+  }
+
+  private static String hash(String url) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes("UTF-8"));
+      StringBuilder sb = new StringBuilder();
+      for (byte b : digest) {
+        sb.append(String.format("%02x", b));
+      }
+      return sb.toString();
+    } catch (NoSuchAlgorithmException e) {
+      return Integer.toHexString(url.hashCode());
+    } catch (IOException e) {
+      return Integer.toHexString(url.hashCode());
+    }
+  }
+
+  private static long sizeOf(Bitmap bitmap) {
+    return (long) bitmap.getRowBytes() * bitmap.getHeight();
+  }
+}
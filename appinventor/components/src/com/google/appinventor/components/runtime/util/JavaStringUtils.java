@@ -12,6 +12,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeSet;
@@ -31,7 +32,7 @@ public class JavaStringUtils {
    * Default option is to do nothing with the order, which represents
    * the dictionary order.
    */
-  private static class MappingOrder {
+  static class MappingOrder {
     /**
      * Changes the order of the specified key list
      * @param keys  List of keys
@@ -40,6 +41,21 @@ public class JavaStringUtils {
     public void changeOrder(List<String> keys, String text) {
       // Default option: Do nothing (dictionary order)
     }
+
+    /**
+     * Changes the order of the specified list of key indices. This must order
+     * the keys the same way as {@link #changeOrder(List, String)}, but it is
+     * given the first occurrence of each key instead of searching the text.
+     * @param order         List of indices into keys, in dictionary order
+     * @param keys          List of keys
+     * @param firstIndices  Index of the first occurrence of each key in the
+     *                      text, or -1 if the key does not occur
+     * @param textLength    Length of the text
+     */
+    public void changeOrder(List<Integer> order, List<String> keys, int[] firstIndices,
+        int textLength) {
+      // Default option: Do nothing (dictionary order)
+    }
   }
 
   /**
@@ -56,6 +72,18 @@ public class JavaStringUtils {
         }
       });
     }
+
+    @Override
+    public void changeOrder(List<Integer> order, final List<String> keys, int[] firstIndices,
+        int textLength) {
+      Collections.sort(order, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer s, Integer t1) {
+          // Sort in descending order of string length
+          return Integer.compare(keys.get(t1).length(), keys.get(s).length());
+        }
+      });
+    }
   }
 
   /**
@@ -105,6 +133,28 @@ public class JavaStringUtils {
         }
       });
     }
+
+    @Override
+    public void changeOrder(List<Integer> order, final List<String> keys,
+        final int[] firstIndices, final int textLength) {
+      Collections.sort(order, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer s, Integer t1) {
+          // Keys that don't occur are placed after the others, in dictionary
+          // order, exactly as changeOrder(List, String) does.
+          int id1 = firstIndices[s] == -1 ? textLength + s : firstIndices[s];
+          int id2 = firstIndices[t1] == -1 ? textLength + t1 : firstIndices[t1];
+
+          if (id1 == id2) {
+            // Use longer string instead if indices equal
+            return Integer.compare(keys.get(t1).length(), keys.get(s).length());
+          } else {
+            // Take smaller index first
+            return Integer.compare(id1, id2);
+          }
+        }
+      });
+    }
   }
 
   /**
@@ -162,11 +212,26 @@ public class JavaStringUtils {
    * Since mapping orders do not have state, we initialize
    * fixed final MappingOrders to use for replaceAllMappings.
    */
-  private static final MappingOrder mappingOrderDictionary = new MappingOrder();
-  private static final MappingOrder mappingOrderLongestStringFirst = new MappingLongestStringFirstOrder();
-  private static final MappingOrder mappingOrderEarliestOccurrence = new MappingEarliestOccurrenceFirstOrder();
+  static final MappingOrder mappingOrderDictionary = new MappingOrder();
+  static final MappingOrder mappingOrderLongestStringFirst = new MappingLongestStringFirstOrder();
+  static final MappingOrder mappingOrderEarliestOccurrence = new MappingEarliestOccurrenceFirstOrder();
   private static final Comparator<Range> rangeComparator = new RangeComparator();
 
+  /**
+   * Matchers for the keys of recently used mappings. Apps typically apply the
+   * same few dictionaries over and over, and building a matcher costs as much
+   * as searching a long text. Since dictionaries can change between calls,
+   * matchers are looked up by the list of keys rather than by dictionary.
+   */
+  private static final int MAX_CACHED_MATCHERS = 8;
+  private static final Map<List<String>, MultiStringMatcher> matcherCache =
+      new LinkedHashMap<List<String>, MultiStringMatcher>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<String>, MultiStringMatcher> eldest) {
+          return size() > MAX_CACHED_MATCHERS;
+        }
+      };
+
   /**
    * Java implementation of join-strings since the Kawa version appears to run of space.
    * See runtime.scm
@@ -263,9 +328,6 @@ public class JavaStringUtils {
    * @return Text with the mappings applied
    */
   public static String replaceAllMappings(String text, Map<Object, Object> mappings, MappingOrder order) {
-    // Iterate over all the mappings
-    Iterator<Map.Entry<Object, Object>> it = mappings.entrySet().iterator();
-
     // Construct a new map for <String, String> mappings in order to support
     // look-ups for non-pure String values (e.g. numbers)
     Map<String, String> stringMappings = new HashMap<>();
@@ -273,6 +335,82 @@ public class JavaStringUtils {
     // Construct a new List to store the Map's keys
     List<String> keys = new ArrayList<>();
 
+    collectMappings(mappings, stringMappings, keys);
+
+    if (keys.contains("")) {
+      // The empty string occurs between every pair of characters, which the
+      // matcher does not handle, so fall back on searching for each key.
+      order.changeOrder(keys, text);
+      return applyMappings(text, stringMappings, keys);
+    }
+
+    // Find all occurrences of all keys in a single pass over the text
+    int[][] occurrences = getMatcher(keys).findAll(text);
+
+    // Change the order of the keys based on the given Order object
+    int[] firstIndices = new int[keys.size()];
+    List<Integer> keyOrder = new ArrayList<>(keys.size());
+    for (int i = 0; i < keys.size(); i++) {
+      firstIndices[i] = occurrences[i].length > 0 ? occurrences[i][0] : -1;
+      keyOrder.add(i);
+    }
+    order.changeOrder(keyOrder, keys, firstIndices, text.length());
+
+    // Range construction step: add the occurrences of each key in order. As
+    // in applyMappings, a range that overlaps an earlier one is not added.
+    TreeSet<Range> ranges = new TreeSet<Range>(rangeComparator);
+    for (int i : keyOrder) {
+      String key = keys.get(i);
+      String replacement = stringMappings.get(key);
+      for (int start : occurrences[i]) {
+        ranges.add(new Range(start, start + key.length(), replacement));
+      }
+    }
+
+    // The ranges are sorted by descending end index, so walk them backwards
+    // to build the result from left to right.
+    StringBuilder sb = new StringBuilder(text.length());
+    int end = 0;
+    for (Iterator<Range> it = ranges.descendingIterator(); it.hasNext(); ) {
+      Range range = it.next();
+      sb.append(text, end, range.start).append(range.text);
+      end = range.end;
+    }
+    sb.append(text, end, text.length());
+    return sb.toString();
+  }
+
+  /**
+   * Replaces the specified text string with the specified mappings by
+   * searching the text for each key in turn. This is the original
+   * implementation of {@link #replaceAllMappings(String, Map, MappingOrder)},
+   * kept for keys that are empty strings and for comparison in tests.
+   *
+   * @param text     Text to apply mappings to
+   * @param mappings Map containing mappings
+   * @param order    Order to use for replacing mappings
+   * @return Text with the mappings applied
+   */
+  static String replaceAllMappingsByKey(String text, Map<Object, Object> mappings, MappingOrder order) {
+    Map<String, String> stringMappings = new HashMap<>();
+    List<String> keys = new ArrayList<>();
+    collectMappings(mappings, stringMappings, keys);
+    order.changeOrder(keys, text);
+    return applyMappings(text, stringMappings, keys);
+  }
+
+  /**
+   * Converts the keys and values of the mappings to strings.
+   *
+   * @param mappings        Map containing mappings
+   * @param stringMappings  Map to fill with the mappings as strings
+   * @param keys            List to fill with the distinct keys, in dictionary order
+   */
+  private static void collectMappings(Map<Object, Object> mappings,
+      Map<String, String> stringMappings, List<String> keys) {
+    // Iterate over all the mappings
+    Iterator<Map.Entry<Object, Object>> it = mappings.entrySet().iterator();
+
     while (it.hasNext()) {
       Map.Entry<Object, Object> current = it.next();
 
@@ -291,15 +429,24 @@ public class JavaStringUtils {
       // Update map
       stringMappings.put(key, value);
     }
+  }
 
-    // Change the order of the keys based on the given Order object
-    // TODO: If we have stream support, we can sort the stringMappings map
-    // TODO: directly provided we initialize it to a LinkedHashMap.
-    // TODO: It could save some memory in the long run.
-    order.changeOrder(keys, text);
-
-    // Apply mappings owith re-ordered keys and mappings
-    return applyMappings(text, stringMappings, keys);
+  /**
+   * Returns a matcher for the given keys, building it if it is not cached.
+   *
+   * @param keys  List of distinct, non-empty keys
+   * @return Matcher that finds the keys
+   */
+  private static MultiStringMatcher getMatcher(List<String> keys) {
+    synchronized (matcherCache) {
+      MultiStringMatcher matcher = matcherCache.get(keys);
+      if (matcher == null) {
+        matcher = new MultiStringMatcher(keys);
+        // Copy the keys, since the caller's list is not ours to keep
+        matcherCache.put(new ArrayList<String>(keys), matcher);
+      }
+      return matcher;
+    }
   }
 
   /**
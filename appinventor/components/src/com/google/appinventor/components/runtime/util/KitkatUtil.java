@@ -10,6 +10,8 @@ import java.util.Collections;
 import java.util.List;
 
 import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.os.Build;
 import android.provider.Telephony.Sms.Intents;
 import android.telephony.SmsMessage;
@@ -69,4 +71,49 @@ public final class KitkatUtil {
       return view.getHeight();
     }
   }
+
+  /**
+   * Tests whether a decode of a width x height ARGB_8888 image can reuse the memory of candidate
+   * via {@link BitmapFactory.Options#inBitmap}. Prior to Kitkat, reuse required identical
+   * dimensions, so we only report reuse on Kitkat and later.
+   *
+   * @param candidate a mutable bitmap that is no longer in use
+   * @param width the width of the image to decode
+   * @param height the height of the image to decode
+   * @return true if candidate is large enough to hold the decoded image
+   */
+  public static boolean canReuseBitmap(Bitmap candidate, int width, int height) {
+    return Build.VERSION.SDK_INT >= 19 && candidate.isMutable()
+        && candidate.getAllocationByteCount() >= (long) width * height * 4;
+  }
+
+  /**
+   * Configures options so that the next decode writes into the memory of bitmap. If bitmap is
+   * null, the decode allocates a new mutable bitmap whose memory can be reused later. This is a
+   * no-op prior to Kitkat.
+   *
+   * @param options the options for the decode
+   * @param bitmap a bitmap for which {@link #canReuseBitmap(Bitmap, int, int)} returned true, or
+   *     null
+   */
+  public static void setInBitmap(BitmapFactory.Options options, Bitmap bitmap) {
+    if (Build.VERSION.SDK_INT >= 19) {
+      options.inMutable = true;
+      options.inBitmap = bitmap;
+    }
+  }
+
+  /**
+   * Removes the bitmap set by {@link #setInBitmap(BitmapFactory.Options, Bitmap)}, if any.
+   *
+   * @param options the options for the decode
+   * @return true if options held a bitmap to decode into
+   */
+  public static boolean clearInBitmap(BitmapFactory.Options options) {
+    if (Build.VERSION.SDK_INT >= 19 && options.inBitmap != null) {
+      options.inBitmap = null;
+      return true;
+    }
+    return false;
+  }
 }
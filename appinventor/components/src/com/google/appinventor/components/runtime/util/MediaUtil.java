@@ -30,7 +30,6 @@ import com.google.appinventor.components.runtime.ReplForm;
 import com.google.appinventor.components.runtime.errors.PermissionException;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileDescriptor;
 import java.io.FileInputStream;
@@ -59,6 +58,14 @@ public class MediaUtil {
   // tempFileMap maps cached media (assets, etc) to their respective temp files.
   private static final Map<String, File> tempFileMap = new HashMap<String, File>();
 
+  // Name of the directory, under the app's cache directory, holding downloaded images.
+  private static final String IMAGE_CACHE_DIR = "AppInventorImages";
+
+  // Decoded images shared by all components. The memory budget is an eighth of the heap, which
+  // leaves plenty of room for the app while making repeated image swaps free.
+  private static final ImageCache imageCache =
+      new ImageCache(Runtime.getRuntime().maxMemory() / 8, 16 * 1024 * 1024);
+
   // this class is used by getBitmapDrawable so it can call the asynchronous version
   // (getBitMapDrawableAsync) and await the result (blocking the UI Thread :-()
   private static class Synchronizer<T> {
@@ -469,23 +476,38 @@ public class MediaUtil {
     Runnable loadImage = new Runnable() {
       @Override
       public void run() {
-        // Unlike other types of media, we don't cache image files from the internet to temp files.
-        // The image at a particular URL, such as an image from a web cam, may change over time.
-        // When the app says to fetch the image, we need to get the latest image, not one that we
-        // cached previously.
+        // Images from the internet are always revalidated with the server. The image at a
+        // particular URL, such as an image from a web cam, may change over time. When the app says
+        // to fetch the image, we need to get the latest image. The server's ETag or Last-Modified
+        // header tells us whether the copy we cached previously is still the latest.
 
         Log.d(LOG_TAG, "mediaPath = " + mediaPath);
-        InputStream is = null;
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        byte[] buf = new byte[4096];
-        int read;
+        String cacheKey = null;
+        byte[] buf;
         try {
-          // copy the input stream to an in-memory buffer
-          is = openMedia(form, mediaPath, mediaSource);
-          while ((read = is.read(buf)) > 0) {
-            bos.write(buf, 0, read);
+          ImageCache.RemoteImage remoteImage = null;
+          String version;
+          if (mediaSource == MediaSource.URL) {
+            remoteImage = imageCache.fetchRemote(new File(form.getCacheDir(), IMAGE_CACHE_DIR),
+                mediaPath);
+            version = remoteImage.version;
+          } else {
+            version = getMediaVersion(form, mediaPath, mediaSource);
+          }
+          if (version != null) {
+            int[] maxSize = getMaxImageSize(form);
+            cacheKey = ImageCache.makeKey(mediaPath, version, maxSize[0], maxSize[1],
+                form.deviceDensity());
+            Bitmap cached = imageCache.get(cacheKey);
+            if (cached != null) {
+              BitmapDrawable drawable = new BitmapDrawable(form.getResources(), cached);
+              drawable.setTargetDensity(form.getResources().getDisplayMetrics());
+              continuation.onSuccess(drawable);
+              return;
+            }
           }
-          buf = bos.toByteArray();
+          buf = (remoteImage != null) ? remoteImage.getData() : readMedia(form, mediaPath,
+              mediaSource);
         } catch (PermissionException e) {
           continuation.onFailure("PERMISSION_DENIED:" + e.getPermissionNeeded());
           return;
@@ -501,37 +523,29 @@ public class MediaUtil {
           Log.d(LOG_TAG, "IOException reading file.", e);
           continuation.onFailure(e.getMessage());
           return;
-        } finally {
-          if (is != null) {
-            try {
-              is.close();
-            } catch(IOException e) {
-              // suppress error on close
-              Log.w(LOG_TAG, "Unexpected error on close", e);
-            }
-          }
-          is = null;
-          try {
-            bos.close();
-          } catch(IOException e) {
-            // Should never fail to close a ByteArrayOutputStream
-          }
-          bos = null;
         }
         ByteArrayInputStream bis = new ByteArrayInputStream(buf);
-        read = buf.length;
+        int read = buf.length;
         buf = null;
         try {
           bis.mark(read);
           BitmapFactory.Options options = getBitmapOptions(form, bis, mediaPath);
           bis.reset();
-          BitmapDrawable originalBitmapDrawable = new BitmapDrawable(form.getResources(), decodeStream(bis, null, options));
           // If options.inSampleSize == 1, then the image was not unreasonably large and may represent
           // the actual size the user intended for the image. However we still have to scale it by
           // the device density.
           // However if we *did* sample the image to make it smaller, then that means that the image
           // was not sized specifically for the application. In that case it makes no sense to
           // scale it, so we don't.
+          boolean willScale = (options.inSampleSize == 1) && (form.deviceDensity() != 1.0f);
+          if (willScale) {
+            // The decoded bitmap is only an intermediate step, so it can live in the memory of an
+            // earlier intermediate bitmap rather than a fresh allocation.
+            KitkatUtil.setInBitmap(options,
+                imageCache.takeReusable(options.outWidth, options.outHeight));
+          }
+          Bitmap decoded = decodeWithReuse(bis, options);
+          BitmapDrawable originalBitmapDrawable = new BitmapDrawable(form.getResources(), decoded);
           // When we scale the image we do the following steps:
           //   1. set the density in the returned bitmap drawable.
           //   2. calculate scaled width and height
@@ -540,7 +554,10 @@ public class MediaUtil {
           //   5. set the density in the scaled bitmap.
 
           originalBitmapDrawable.setTargetDensity(form.getResources().getDisplayMetrics());
-          if ((options.inSampleSize != 1) || (form.deviceDensity() == 1.0f)) {
+          if (!willScale) {
+            if (cacheKey != null && decoded != null) {
+              imageCache.put(cacheKey, decoded);
+            }
             continuation.onSuccess(originalBitmapDrawable);
             return;
           }
@@ -549,12 +566,17 @@ public class MediaUtil {
           Log.d(LOG_TAG, "form.deviceDensity() = " + form.deviceDensity());
           Log.d(LOG_TAG, "originalBitmapDrawable.getIntrinsicWidth() = " + originalBitmapDrawable.getIntrinsicWidth());
           Log.d(LOG_TAG, "originalBitmapDrawable.getIntrinsicHeight() = " + originalBitmapDrawable.getIntrinsicHeight());
-          Bitmap scaledBitmap = Bitmap.createScaledBitmap(originalBitmapDrawable.getBitmap(),
-              scaledWidth, scaledHeight, false);
+          Bitmap scaledBitmap = Bitmap.createScaledBitmap(decoded, scaledWidth, scaledHeight,
+              false);
           BitmapDrawable scaledBitmapDrawable = new BitmapDrawable(form.getResources(), scaledBitmap);
           scaledBitmapDrawable.setTargetDensity(form.getResources().getDisplayMetrics());
-          originalBitmapDrawable = null; // So it will get GC'd on the next line
-          System.gc();                   // We likely used a lot of memory, so gc now.
+          if (scaledBitmap != decoded) {
+            // Nothing else references the unscaled bitmap, so its memory can be reused.
+            imageCache.offerReusable(decoded);
+          }
+          if (cacheKey != null) {
+            imageCache.put(cacheKey, scaledBitmap);
+          }
           continuation.onSuccess(scaledBitmapDrawable);
         } catch(Exception e) {
           Log.w(LOG_TAG, "Exception while loading media.", e);
@@ -574,6 +596,79 @@ public class MediaUtil {
     AsynchUtil.runAsynchronously(loadImage);
   }
 
+  /**
+   * Copies the media specified by mediaPath into an in-memory buffer.
+   */
+  private static byte[] readMedia(Form form, String mediaPath, MediaSource mediaSource)
+      throws IOException {
+    InputStream is = openMedia(form, mediaPath, mediaSource);
+    try {
+      return ImageCache.readFully(is);
+    } finally {
+      try {
+        is.close();
+      } catch(IOException e) {
+        // suppress error on close
+        Log.w(LOG_TAG, "Unexpected error on close", e);
+      }
+    }
+  }
+
+  /**
+   * Returns a stamp that changes whenever the content of the media changes, or null if the media
+   * must not be cached.
+   */
+  private static String getMediaVersion(Form form, String mediaPath, MediaSource mediaSource)
+      throws IOException {
+    File file;
+    switch (mediaSource) {
+      case ASSET:
+        // Packaged assets cannot change while the app is running.
+        return "asset";
+      case REPL_ASSET:
+        form.assertPermission(READ_EXTERNAL_STORAGE);
+        file = new File(URI.create(form.getAssetPath(mediaPath)));
+        break;
+      case SDCARD:
+        form.assertPermission(READ_EXTERNAL_STORAGE);
+        file = new File(mediaPath);
+        break;
+      case FILE_URL:
+        if (isExternalFileUrl(form, mediaPath)) {
+          form.assertPermission(READ_EXTERNAL_STORAGE);
+        }
+        file = new File(fileUrlToFilePath(mediaPath));
+        break;
+      default:
+        // Content providers give us no cheap way to tell whether their content changed.
+        return null;
+    }
+    if (!file.exists()) {
+      return null;
+    }
+    return file.lastModified() + ":" + file.length();
+  }
+
+  private static Bitmap decodeWithReuse(ByteArrayInputStream bis, BitmapFactory.Options options) {
+    try {
+      return decodeStream(bis, null, options);
+    } catch (IllegalArgumentException e) {
+      if (!KitkatUtil.clearInBitmap(options)) {
+        throw e;
+      }
+      // The pooled bitmap was not compatible after all; decode into fresh memory instead.
+      bis.reset();
+      return decodeStream(bis, null, options);
+    }
+  }
+
+  /**
+   * Evicts all decoded images from the in-memory image cache.
+   */
+  public static void clearImageCache() {
+    imageCache.clear();
+  }
+
   private static Bitmap decodeStream(InputStream is, Rect outPadding, BitmapFactory.Options opts) {
     // We wrap a FlushedInputStream around the given InputStream. This works around a problem in
     // BitmapFactory.decodeStream where it fails to load the image if the InputStream's skip method
@@ -615,6 +710,31 @@ public class MediaUtil {
     int imageWidth = options.outWidth;
     int imageHeight = options.outHeight;
 
+    int[] maxSize = getMaxImageSize(form);
+    int maxWidth = maxSize[0];
+    int maxHeight = maxSize[1];
+
+    int sampleSize = 1;
+    while ((imageWidth / sampleSize > maxWidth) && (imageHeight / sampleSize > maxHeight)) {
+      sampleSize *= 2;
+    }
+    options = new BitmapFactory.Options();
+    Log.d(LOG_TAG, "getBitmapOptions: sampleSize = " + sampleSize + " mediaPath = " + mediaPath
+      + " maxWidth = " + maxWidth + " maxHeight = " + maxHeight);
+    options.inSampleSize = sampleSize;
+    // Remember the dimensions so the caller can pick a bitmap to decode into. The decode itself
+    // overwrites these fields.
+    options.outWidth = imageWidth;
+    options.outHeight = imageHeight;
+    return options;
+  }
+
+  /**
+   * Computes the size beyond which images are sampled down when decoded.
+   *
+   * @return an array holding the maximum width and height
+   */
+  private static int[] getMaxImageSize(Form form) {
     // Get the screen size.
     Display display = ((WindowManager) form.getSystemService(Context.WINDOW_SERVICE)).
         getDefaultDisplay();
@@ -634,17 +754,7 @@ public class MediaUtil {
       maxWidth = (int) (display.getWidth() / form.deviceDensity());
       maxHeight = (int) (display.getHeight() / form.deviceDensity());
     }
-
-    int sampleSize = 1;
-    while ((imageWidth / sampleSize > maxWidth) && (imageHeight / sampleSize > maxHeight)) {
-      sampleSize *= 2;
-    }
-    options = new BitmapFactory.Options();
-    Log.d(LOG_TAG, "getBitmapOptions: sampleSize = " + sampleSize + " mediaPath = " + mediaPath
-      + " maxWidth = " + maxWidth + " maxHeight = " + maxHeight +
-      " display width = " + display.getWidth() + " display height = " + display.getHeight());
-    options.inSampleSize = sampleSize;
-    return options;
+    return new int[] { maxWidth, maxHeight };
   }
 
   // SoundPool related methods
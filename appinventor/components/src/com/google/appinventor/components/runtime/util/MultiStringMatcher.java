@@ -0,0 +1,137 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the occurrences of a fixed set of strings in a text with a single pass over the text,
+ * using the Aho-Corasick algorithm. Building the matcher takes time proportional to the total
+ * length of the strings, so a matcher should be reused for as long as the strings don't change.
+ *
+ * <p>Instances are immutable and may be shared between threads.</p>
+ */
+final class MultiStringMatcher {
+
+  private static final class Node {
+    final Map<Character, Node> next = new HashMap<Character, Node>();
+    Node fail;
+    // This node if it ends a key, otherwise the nearest node along the fail links that ends a
+    // key, or null if there is none.
+    Node output;
+    int key = -1;
+    int depth;
+  }
+
+  private static final int[] NO_OCCURRENCES = new int[0];
+
+  private final Node root = new Node();
+  private final int keyCount;
+
+  /**
+   * Creates a matcher for the given keys.
+   *
+   * @param keys the strings to find, which must be distinct and not empty
+   */
+  MultiStringMatcher(List<String> keys) {
+    keyCount = keys.size();
+    for (int i = 0; i < keyCount; i++) {
+      String key = keys.get(i);
+      if (key.length() == 0) {
+        throw new IllegalArgumentException("Keys must not be empty");
+      }
+      Node node = root;
+      for (int j = 0; j < key.length(); j++) {
+        Character c = key.charAt(j);
+        Node child = node.next.get(c);
+        if (child == null) {
+          child = new Node();
+          child.depth = node.depth + 1;
+          node.next.put(c, child);
+        }
+        node = child;
+      }
+      node.key = i;
+    }
+
+    // Set the fail and output links breadth first, so that the links of shorter prefixes are
+    // ready when they are needed.
+    List<Node> queue = new ArrayList<Node>();
+    for (Node child : root.next.values()) {
+      child.fail = root;
+      child.output = child.key >= 0 ? child : null;
+      queue.add(child);
+    }
+    for (int head = 0; head < queue.size(); head++) {
+      Node node = queue.get(head);
+      for (Map.Entry<Character, Node> entry : node.next.entrySet()) {
+        Character c = entry.getKey();
+        Node child = entry.getValue();
+        Node fail = node.fail;
+        while (fail != root && !fail.next.containsKey(c)) {
+          fail = fail.fail;
+        }
+        Node target = fail.next.get(c);
+        child.fail = target != null ? target : root;
+        child.output = child.key >= 0 ? child : child.fail.output;
+        queue.add(child);
+      }
+    }
+  }
+
+  /**
+   * Finds the occurrences of each key in the text the way repeated calls of
+   * {@link java.util.regex.Matcher#find()} would: scanning from the start of the text, each
+   * occurrence of a key begins at or after the end of the previous occurrence of the same key.
+   * Occurrences of different keys may overlap.
+   *
+   * @param text the text to search
+   * @return for each key, in the order the keys were given, the start indices of its occurrences
+   *     in ascending order
+   */
+  int[][] findAll(String text) {
+    int[][] starts = new int[keyCount][];
+    int[] counts = new int[keyCount];
+    int[] lastEnds = new int[keyCount];
+    Node state = root;
+    for (int i = 0; i < text.length(); i++) {
+      Character c = text.charAt(i);
+      Node next = state.next.get(c);
+      while (next == null && state != root) {
+        state = state.fail;
+        next = state.next.get(c);
+      }
+      state = next != null ? next : root;
+      for (Node out = state.output; out != null; out = out.fail.output) {
+        int key = out.key;
+        int start = i + 1 - out.depth;
+        if (start >= lastEnds[key]) {
+          if (starts[key] == null) {
+            starts[key] = new int[4];
+          } else if (counts[key] == starts[key].length) {
+            starts[key] = copyOf(starts[key], counts[key] * 2);
+          }
+          starts[key][counts[key]++] = start;
+          lastEnds[key] = i + 1;
+        }
+      }
+    }
+    for (int key = 0; key < keyCount; key++) {
+      starts[key] = starts[key] == null ? NO_OCCURRENCES : copyOf(starts[key], counts[key]);
+    }
+    return starts;
+  }
+
+  // Arrays.copyOf needs API 9.
+  private static int[] copyOf(int[] array, int length) {
+    int[] copy = new int[length];
+    System.arraycopy(array, 0, copy, 0, Math.min(length, array.length));
+    return copy;
+  }
+}
@@ -0,0 +1,145 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A small in-memory cache of HTTP GET responses that can be revalidated with the server using
+ * the ETag and Last-Modified response headers. Apps frequently poll the same URL, and most of the
+ * time the content has not changed, so a conditional request lets the server answer with a body-less
+ * 304 (Not Modified) response and the cached content is reused.
+ *
+ * <p>Entries are evicted in least-recently-used order once the cached text exceeds the character
+ * budget given at construction time. Responses saved to files only cost their path.</p>
+ */
+public final class WebResponseCache {
+
+  /**
+   * A cached response, along with the validators needed to revalidate it.
+   */
+  public static final class Entry {
+    public final int responseCode;
+    public final String responseType;
+    public final String etag;
+    public final String lastModified;
+    // Exactly one of content and path is non-null.
+    public final String content;
+    public final String path;
+
+    private Entry(int responseCode, String responseType, String etag, String lastModified,
+        String content, String path) {
+      this.responseCode = responseCode;
+      this.responseType = responseType;
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.content = content;
+      this.path = path;
+    }
+
+    /**
+     * Whether this entry can satisfy a request whose response is saved to a file
+     * ({@code saveResponse} is true) or delivered as text ({@code saveResponse} is false). Saved
+     * responses are only usable if their file still exists.
+     */
+    public boolean isUsableFor(boolean saveResponse) {
+      if (saveResponse) {
+        return path != null && new File(path).exists();
+      }
+      return content != null;
+    }
+
+    private int cost() {
+      return content == null ? path.length() : content.length();
+    }
+  }
+
+  private final int maxChars;
+  private int currentChars;
+  private final LinkedHashMap<String, Entry> entries =
+      new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+  /**
+   * Creates a new cache.
+   *
+   * @param maxChars the maximum number of characters of content held by the cache
+   */
+  public WebResponseCache(int maxChars) {
+    this.maxChars = maxChars;
+  }
+
+  /**
+   * Returns the cached entry for {@code url}, or null if there is none.
+   */
+  public synchronized Entry get(String url) {
+    return entries.get(url);
+  }
+
+  /**
+   * Caches a text response if it carries a validator.
+   *
+   * @return true if the response was cached
+   */
+  public boolean putContent(String url, int responseCode, String responseType, String etag,
+      String lastModified, String content) {
+    return put(url, new Entry(responseCode, responseType, etag, lastModified, content, null));
+  }
+
+  /**
+   * Caches the path of a response that was saved to a file if it carries a validator.
+   *
+   * @return true if the response was cached
+   */
+  public boolean putFile(String url, int responseCode, String responseType, String etag,
+      String lastModified, String path) {
+    return put(url, new Entry(responseCode, responseType, etag, lastModified, null, path));
+  }
+
+  /**
+   * Removes the entry for {@code url}, if any.
+   */
+  public synchronized void remove(String url) {
+    Entry old = entries.remove(url);
+    if (old != null) {
+      currentChars -= old.cost();
+    }
+  }
+
+  /**
+   * Removes all entries.
+   */
+  public synchronized void clear() {
+    entries.clear();
+    currentChars = 0;
+  }
+
+  /**
+   * Returns the number of cached entries.
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  private synchronized boolean put(String url, Entry entry) {
+    remove(url);
+    if ((entry.etag == null && entry.lastModified == null) || entry.cost() > maxChars) {
+      // Without a validator we could never revalidate the entry, and oversized entries would
+      // evict everything else.
+      return false;
+    }
+    entries.put(url, entry);
+    currentChars += entry.cost();
+    Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+    while (currentChars > maxChars && it.hasNext()) {
+      currentChars -= it.next().getValue().cost();
+      it.remove();
+    }
+    return true;
+  }
+}
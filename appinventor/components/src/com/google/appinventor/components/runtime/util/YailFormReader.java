@@ -0,0 +1,210 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Splits YAIL source text into its top-level forms without parsing them.
+ *
+ * <p>The companion uses this to evaluate a large chunk of code sent by the blocks editor one form
+ * at a time. Forms are scanned lazily, so the first form can be evaluated before the rest of the
+ * text has been examined.</p>
+ *
+ * <p>The scanner understands enough of the Kawa reader syntax to find form boundaries: strings
+ * with escapes, character literals such as {@code #\(}, line comments, block comments and the
+ * quote prefixes. If the text is unbalanced, the remainder of the text is returned as a single
+ * final form so that the evaluator reports the syntax error.</p>
+ */
+public final class YailFormReader implements Iterator<String> {
+
+  private final String text;
+  private int position;
+  private String next;
+
+  /**
+   * Creates a reader over the given YAIL source text.
+   *
+   * @param text the source text
+   */
+  public YailFormReader(String text) {
+    this.text = text;
+    this.next = scan();
+  }
+
+  @Override
+  public boolean hasNext() {
+    return next != null;
+  }
+
+  @Override
+  public String next() {
+    if (next == null) {
+      throw new NoSuchElementException();
+    }
+    String result = next;
+    next = scan();
+    return result;
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  private String scan() {
+    skipAtmosphere();
+    if (position >= text.length()) {
+      return null;
+    }
+    int start = position;
+    // Quote prefixes belong to the datum that follows.
+    while (position < text.length()) {
+      char c = text.charAt(position);
+      if (c == '\'' || c == '`') {
+        position++;
+      } else if (c == ',') {
+        position++;
+        if (position < text.length() && text.charAt(position) == '@') {
+          position++;
+        }
+      } else {
+        break;
+      }
+      skipAtmosphere();
+    }
+    if (!skipDatum()) {
+      position = text.length();
+    }
+    return text.substring(start, position);
+  }
+
+  /**
+   * Skips whitespace and comments.
+   */
+  private void skipAtmosphere() {
+    while (position < text.length()) {
+      char c = text.charAt(position);
+      if (Character.isWhitespace(c)) {
+        position++;
+      } else if (c == ';') {
+        skipLineComment();
+      } else if (c == '#' && peek(1) == '|') {
+        if (!skipBlockComment()) {
+          return;
+        }
+      } else {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Skips one datum starting at position.
+   *
+   * @return false if the text ended before the datum was complete
+   */
+  private boolean skipDatum() {
+    int depth = 0;
+    while (position < text.length()) {
+      char c = text.charAt(position);
+      switch (c) {
+        case '(':
+        case '[':
+          depth++;
+          position++;
+          break;
+        case ')':
+        case ']':
+          depth--;
+          position++;
+          if (depth <= 0) {
+            return depth == 0;
+          }
+          break;
+        case '"':
+          if (!skipString()) {
+            return false;
+          }
+          if (depth == 0) {
+            return true;
+          }
+          break;
+        case ';':
+          skipLineComment();
+          break;
+        case '#':
+          if (peek(1) == '|') {
+            if (!skipBlockComment()) {
+              return false;
+            }
+          } else if (peek(1) == '\\') {
+            // Character literal: #\( or #\space. The first character is always part of it.
+            position += 3;
+            while (position < text.length() && !isDelimiter(text.charAt(position))) {
+              position++;
+            }
+            if (depth == 0) {
+              return true;
+            }
+          } else {
+            position++;
+          }
+          break;
+        default:
+          if (depth == 0 && Character.isWhitespace(c)) {
+            return true;
+          }
+          position++;
+          if (depth == 0 && (position >= text.length() || isDelimiter(text.charAt(position)))) {
+            return true;
+          }
+          break;
+      }
+    }
+    return depth == 0;
+  }
+
+  private boolean skipString() {
+    position++;  // opening quote
+    while (position < text.length()) {
+      char c = text.charAt(position++);
+      if (c == '\\') {
+        position++;
+      } else if (c == '"') {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void skipLineComment() {
+    while (position < text.length() && text.charAt(position) != '\n') {
+      position++;
+    }
+  }
+
+  private boolean skipBlockComment() {
+    int end = text.indexOf("|#", position + 2);
+    if (end < 0) {
+      position = text.length();
+      return false;
+    }
+    position = end + 2;
+    return true;
+  }
+
+  private char peek(int offset) {
+    int index = position + offset;
+    return index < text.length() ? text.charAt(index) : '\0';
+  }
+
+  private static boolean isDelimiter(char c) {
+    return Character.isWhitespace(c) || c == '(' || c == ')' || c == '[' || c == ']'
+        || c == '"' || c == ';';
+  }
+}
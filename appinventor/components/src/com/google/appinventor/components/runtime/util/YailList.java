@@ -35,6 +35,12 @@ public class YailList extends Pair implements YailObject {
   // legitimate Yail data types.  See the definition of sanitization
   // in runtime.scm.
 
+  // Lookup indexes of this list and its state for building them; see YailListIndex.
+  YailListIndex itemIndex;
+  YailListIndex pairIndex;
+  int searches;
+  boolean isPair;
+
   /**
    * Create an empty YailList.
    */
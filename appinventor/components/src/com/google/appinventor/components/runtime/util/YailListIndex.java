@@ -0,0 +1,252 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import gnu.kawa.lispexpr.LispReader;
+import gnu.lists.Pair;
+import gnu.mapping.Symbol;
+import gnu.math.Numeric;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A hash index of the items of a YailList, used by the "index in list", "is in list?" and
+ * "look up in pairs" blocks to avoid comparing the object they look for with every item.
+ *
+ * <p>Items are hashed so that any two items that are yail-equal? have the same hash key: numbers,
+ * and strings that can be read as numbers, hash by their value as a double, other strings by
+ * their characters. Items of other types, such as lists and dictionaries, are not indexed. None
+ * of them can be yail-equal? to a number, string, boolean or symbol, and the index is only used
+ * to look for one of those. The index only narrows down the candidates; runtime.scm still
+ * compares each candidate with yail-equal?.</p>
+ *
+ * <p>An index is built the second time a list is searched without having been changed, so that
+ * searching a list only once costs no more than before. The runtime must call {@link #changed}
+ * before it changes a list and {@link #appended} after it adds items to the end of a list. An
+ * index of pairs also depends on the pairs it contains, so changing a list that is a pair in
+ * any index of pairs invalidates every index of pairs. Like the rest of the YAIL runtime, this
+ * class must only be used on the UI thread.</p>
+ */
+public final class YailListIndex {
+  // Lists shorter than this are searched faster than they are indexed.
+  private static final int MIN_INDEXED_SIZE = 16;
+
+  // Number of times a list that is a pair in an index of pairs has been changed.
+  private static int pairChanges;
+
+  private static final class Positions {
+    int[] positions = new int[2];
+    int size;
+
+    void add(int position) {
+      if (size == positions.length) {
+        int[] grown = new int[size * 2];
+        System.arraycopy(positions, 0, grown, 0, size);
+        positions = grown;
+      }
+      positions[size++] = position;
+    }
+  }
+
+  private final boolean byPairKey;
+  private final int pairChangesSeen;
+  private final List<Object> items = new ArrayList<Object>();
+  private final Map<Object, Positions> positions = new HashMap<Object, Positions>();
+  private int firstMalformed = -1;
+
+  private YailListIndex(boolean byPairKey) {
+    this.byPairKey = byPairKey;
+    this.pairChangesSeen = pairChanges;
+  }
+
+  /**
+   * Returns the index of the items of a list, building it if needed, or null if the list should
+   * be searched without one.
+   *
+   * @param list the list to search
+   * @param key the object to look for
+   */
+  public static YailListIndex forItems(Object list, Object key) {
+    return find(list, key, false);
+  }
+
+  /**
+   * Returns the index of a list of pairs by the first item of each pair, building it if needed,
+   * or null if the list should be searched without one.
+   *
+   * @param list the list of pairs to search
+   * @param key the key to look up
+   */
+  public static YailListIndex forPairs(Object list, Object key) {
+    return find(list, key, true);
+  }
+
+  /**
+   * Drops the indexes of a list that is about to be changed.
+   */
+  public static void changed(Object list) {
+    if (list instanceof YailList) {
+      YailList yailList = (YailList) list;
+      yailList.itemIndex = null;
+      yailList.pairIndex = null;
+      yailList.searches = 0;
+      if (yailList.isPair) {
+        pairChanges++;
+      }
+    }
+  }
+
+  /**
+   * Adds items that have just been added to the end of a list to its indexes.
+   *
+   * @param list the list
+   * @param contents the pairs holding the new items
+   */
+  public static void appended(Object list, Object contents) {
+    if (list instanceof YailList) {
+      YailList yailList = (YailList) list;
+      if (yailList.isPair) {
+        pairChanges++;
+      }
+      if (yailList.itemIndex != null) {
+        yailList.itemIndex.add(contents);
+      }
+      if (yailList.pairIndex != null) {
+        yailList.pairIndex.add(contents);
+      }
+    }
+  }
+
+  /**
+   * Returns the first position at or after {@code from} that may hold the key, or -1 if there
+   * is none. Positions start at 0.
+   */
+  public int next(Object key, int from) {
+    Positions candidates = positions.get(hashKey(key));
+    if (candidates == null) {
+      return -1;
+    }
+    int low = 0;
+    int high = candidates.size;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (candidates.positions[mid] < from) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low < candidates.size ? candidates.positions[low] : -1;
+  }
+
+  /**
+   * Returns the item at a position.
+   */
+  public Object get(int position) {
+    return items.get(position);
+  }
+
+  /**
+   * Returns the position of the first item of a list of pairs that is not a pair, or -1 if
+   * every item is a pair.
+   */
+  public int firstMalformed() {
+    return firstMalformed;
+  }
+
+  private static YailListIndex find(Object list, Object key, boolean byPairKey) {
+    if (!(list instanceof YailList) || hashKey(key) == null) {
+      return null;
+    }
+    YailList yailList = (YailList) list;
+    YailListIndex index = byPairKey ? yailList.pairIndex : yailList.itemIndex;
+    if (index != null && (!byPairKey || index.pairChangesSeen == pairChanges)) {
+      return index;
+    }
+    if (yailList.searches++ == 0 || yailList.size() < MIN_INDEXED_SIZE) {
+      return null;
+    }
+    index = new YailListIndex(byPairKey);
+    index.add(yailList.getCdr());
+    if (byPairKey) {
+      yailList.pairIndex = index;
+    } else {
+      yailList.itemIndex = index;
+    }
+    return index;
+  }
+
+  private void add(Object contents) {
+    for (Object rest = contents; rest instanceof Pair; rest = ((Pair) rest).getCdr()) {
+      Object item = ((Pair) rest).getCar();
+      int position = items.size();
+      items.add(item);
+      Object key;
+      if (byPairKey) {
+        if (!(item instanceof YailList) || ((YailList) item).size() != 2) {
+          if (firstMalformed < 0) {
+            firstMalformed = position;
+          }
+          continue;
+        }
+        ((YailList) item).isPair = true;
+        key = hashKey(((YailList) item).getObject(0));
+      } else {
+        key = hashKey(item);
+      }
+      if (key != null) {
+        Positions keyPositions = positions.get(key);
+        if (keyPositions == null) {
+          keyPositions = new Positions();
+          positions.put(key, keyPositions);
+        }
+        keyPositions.add(position);
+      }
+    }
+  }
+
+  /**
+   * Returns the hash key of an item, or null if items of its type are not indexed.
+   */
+  static Object hashKey(Object item) {
+    if (item instanceof Number) {
+      return numberKey((Number) item);
+    } else if (item instanceof CharSequence) {
+      // Strings are compared as numbers if both can be read as numbers, the way
+      // padded-string->number in runtime.scm reads them.
+      String text = item.toString();
+      String trimmed = text.trim();
+      if (mayBeNumber(trimmed)) {
+        Object number = LispReader.parseNumber(trimmed, 10);
+        if (number instanceof Numeric) {
+          return numberKey((Number) number);
+        }
+      }
+      return text;
+    } else if (item instanceof Boolean || item instanceof Symbol) {
+      return item;
+    }
+    return null;
+  }
+
+  private static Double numberKey(Number number) {
+    double value = number.doubleValue();
+    // 0.0 and -0.0 are =, but are not equal as Doubles.
+    return value == 0 ? 0.0 : value;
+  }
+
+  // Saves parsing strings that cannot be numbers, such as most words.
+  private static boolean mayBeNumber(String text) {
+    if (text.length() == 0) {
+      return false;
+    }
+    char c = text.charAt(0);
+    return (c >= '0' && c <= '9') || c == '+' || c == '-' || c == '.' || c == '#';
+  }
+}
@@ -0,0 +1,258 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.scripts;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates {@code GeneratedComponentInvokers}, which lets the YAIL runtime call the methods and
+ * property getters and setters of the built-in components directly instead of through Kawa's
+ * reflective {@code invoke}. See
+ * {@link com.google.appinventor.components.runtime.util.ComponentInvokers}.
+ *
+ * <p>Only members that can be called unambiguously are generated. Members that are overloaded
+ * for the same number of arguments, that are varargs, or that declare exceptions are left to
+ * reflection.</p>
+ */
+public final class ComponentInvokerGenerator extends ComponentProcessor {
+  private static final String OUTPUT_PACKAGE = "com.google.appinventor.components.runtime.util";
+  private static final String OUTPUT_CLASS = "GeneratedComponentInvokers";
+
+  @Override
+  protected void outputResults() throws IOException {
+    Elements elements = processingEnv.getElementUtils();
+    Types types = processingEnv.getTypeUtils();
+
+    // Keyed by the binary class name, which is what Class.getName() returns at runtime.
+    Map<String, String> invokerClasses = new TreeMap<>();
+    StringBuilder invokers = new StringBuilder();
+    int count = 0;
+    for (ComponentInfo component : components.values()) {
+      if (component.external) {
+        // Extensions are packaged separately from the runtime and use reflection.
+        continue;
+      }
+      TypeElement element = elements.getTypeElement(component.type);
+      if (element == null) {
+        continue;
+      }
+      String invokerClass = "Invoker" + (count++);
+      invokerClasses.put(elements.getBinaryName(element).toString(), invokerClass);
+      outputInvoker(invokers, invokerClass, component, element, elements, types);
+    }
+    if (invokerClasses.isEmpty()) {
+      // Nothing to generate, for example when building extensions on their own.
+      return;
+    }
+
+    StringBuilder sb = new StringBuilder();
+    sb.append("// Generated by ").append(getClass().getName()).append(". Do not edit.\n\n");
+    sb.append("package ").append(OUTPUT_PACKAGE).append(";\n\n");
+    sb.append("import com.google.appinventor.components.runtime.Component;\n\n");
+    sb.append("@SuppressWarnings({\"rawtypes\", \"unchecked\"})\n");
+    sb.append("public final class ").append(OUTPUT_CLASS)
+        .append(" implements ComponentInvokers.Factory {\n");
+    sb.append("  private static final Object NOT_HANDLED = ComponentInvokers.NOT_HANDLED;\n\n");
+    sb.append("  @Override\n");
+    sb.append("  public ComponentInvokers.Invoker forClass(String className) {\n");
+    sb.append("    switch (className) {\n");
+    for (Map.Entry<String, String> entry : invokerClasses.entrySet()) {
+      sb.append("      case \"").append(entry.getKey()).append("\":\n");
+      sb.append("        return new ").append(entry.getValue()).append("();\n");
+    }
+    sb.append("      default:\n");
+    sb.append("        return null;\n");
+    sb.append("    }\n");
+    sb.append("  }\n\n");
+    sb.append("  private static boolean isText(Object arg) {\n");
+    sb.append("    return arg == null || arg instanceof CharSequence;\n");
+    sb.append("  }\n\n");
+    sb.append("  private static String toText(Object arg) {\n");
+    sb.append("    return arg == null ? null : arg.toString();\n");
+    sb.append("  }\n");
+    sb.append(invokers);
+    sb.append("}\n");
+
+    JavaFileObject src =
+        processingEnv.getFiler().createSourceFile(OUTPUT_PACKAGE + "." + OUTPUT_CLASS);
+    Writer writer = src.openWriter();
+    try {
+      writer.write(sb.toString());
+      writer.flush();
+    } finally {
+      writer.close();
+    }
+  }
+
+  private void outputInvoker(StringBuilder sb, String invokerClass, ComponentInfo component,
+      TypeElement element, Elements elements, Types types) {
+    // The members reachable from YAIL: blocks methods, property getters and setters, and
+    // designer property setters.
+    Set<String> names = new TreeSet<>();
+    names.addAll(component.methods.keySet());
+    names.addAll(component.properties.keySet());
+    names.addAll(component.designerProperties.keySet());
+
+    // Group the callable members by name and then by number of arguments.
+    Map<String, Map<Integer, List<ExecutableElement>>> members = new TreeMap<>();
+    for (Element member : elements.getAllMembers(element)) {
+      if (member.getKind() != ElementKind.METHOD
+          || !member.getModifiers().contains(Modifier.PUBLIC)
+          || member.getModifiers().contains(Modifier.STATIC)
+          || !names.contains(member.getSimpleName().toString())) {
+        continue;
+      }
+      ExecutableElement method = (ExecutableElement) member;
+      String name = method.getSimpleName().toString();
+      Map<Integer, List<ExecutableElement>> byArity = members.get(name);
+      if (byArity == null) {
+        byArity = new TreeMap<>();
+        members.put(name, byArity);
+      }
+      int arity = method.getParameters().size();
+      List<ExecutableElement> overloads = byArity.get(arity);
+      if (overloads == null) {
+        overloads = new ArrayList<>();
+        byArity.put(arity, overloads);
+      }
+      if (!containsSignature(overloads, method, types)) {
+        // An overriding method and the method it overrides compile to the same call.
+        overloads.add(method);
+      }
+    }
+
+    String componentType = component.type;
+    sb.append("\n  // ").append(componentType).append("\n");
+    sb.append("  private static final class ").append(invokerClass)
+        .append(" implements ComponentInvokers.Invoker {\n");
+    sb.append("    @Override\n");
+    sb.append("    public Object invoke(Component component, String member, Object[] args) {\n");
+    sb.append("      ").append(componentType).append(" c = (").append(componentType)
+        .append(") component;\n");
+    sb.append("      switch (member) {\n");
+    for (Map.Entry<String, Map<Integer, List<ExecutableElement>>> entry : members.entrySet()) {
+      StringBuilder cases = new StringBuilder();
+      for (List<ExecutableElement> overloads : entry.getValue().values()) {
+        if (overloads.size() == 1) {
+          outputCall(cases, overloads.get(0), types);
+        }
+      }
+      if (cases.length() > 0) {
+        sb.append("        case \"").append(entry.getKey()).append("\":\n");
+        sb.append(cases);
+        sb.append("          break;\n");
+      }
+    }
+    sb.append("      }\n");
+    sb.append("      return NOT_HANDLED;\n");
+    sb.append("    }\n");
+    sb.append("  }\n");
+  }
+
+  private static boolean containsSignature(List<ExecutableElement> methods,
+      ExecutableElement method, Types types) {
+    for (ExecutableElement other : methods) {
+      List<? extends VariableElement> a = other.getParameters();
+      List<? extends VariableElement> b = method.getParameters();
+      boolean same = true;
+      for (int i = 0; i < a.size() && same; i++) {
+        same = types.isSameType(types.erasure(a.get(i).asType()),
+            types.erasure(b.get(i).asType()));
+      }
+      if (same) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /*
+   * Outputs a guarded direct call. The guard checks the number and classes of the arguments so
+   * that anything unexpected falls through to reflection, which reports errors the way it always
+   * has.
+   */
+  private void outputCall(StringBuilder sb, ExecutableElement method, Types types) {
+    if (method.isVarArgs() || !method.getThrownTypes().isEmpty()
+        || method.getReturnType().getKind() == TypeKind.CHAR) {
+      // Kawa converts chars to its own character type, so leave those to reflection too.
+      return;
+    }
+    List<? extends VariableElement> parameters = method.getParameters();
+    StringBuilder guard = new StringBuilder("args.length == ").append(parameters.size());
+    StringBuilder call = new StringBuilder("c.").append(method.getSimpleName()).append('(');
+    for (int i = 0; i < parameters.size(); i++) {
+      TypeMirror type = parameters.get(i).asType();
+      String arg = "args[" + i + "]";
+      String check;
+      String value;
+      switch (type.getKind()) {
+        case BOOLEAN:
+          check = arg + " instanceof Boolean";
+          value = "((Boolean) " + arg + ").booleanValue()";
+          break;
+        case BYTE:
+        case SHORT:
+        case INT:
+        case LONG:
+        case FLOAT:
+        case DOUBLE:
+          String primitive = type.getKind().name().toLowerCase(Locale.ENGLISH);
+          check = arg + " instanceof Number";
+          value = "((Number) " + arg + ")." + primitive + "Value()";
+          break;
+        case DECLARED:
+          String erased = types.erasure(type).toString();
+          if (erased.equals("java.lang.String")) {
+            check = "isText(" + arg + ")";
+            value = "toText(" + arg + ")";
+          } else if (erased.equals("java.lang.Object")) {
+            check = null;
+            value = arg;
+          } else {
+            check = "(" + arg + " == null || " + arg + " instanceof " + erased + ")";
+            value = "(" + erased + ") " + arg;
+          }
+          break;
+        default:
+          // Arrays, chars and type variables are left to reflection.
+          return;
+      }
+      if (check != null) {
+        guard.append(" && ").append(check);
+      }
+      call.append(i == 0 ? "" : ", ").append(value);
+    }
+    call.append(')');
+
+    sb.append("          if (").append(guard).append(") {\n");
+    if (method.getReturnType().getKind() == TypeKind.VOID) {
+      sb.append("            ").append(call).append(";\n");
+      sb.append("            return null;\n");
+    } else {
+      sb.append("            return ").append(call).append(";\n");
+    }
+    sb.append("          }\n");
+  }
+}
@@ -0,0 +1,297 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.Manifest;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.widget.FrameLayout;
+import com.google.appinventor.components.runtime.shadows.ShadowAsynchUtil;
+import com.google.appinventor.components.runtime.shadows.ShadowEventDispatcher;
+import com.google.appinventor.components.runtime.util.ErrorMessages;
+import com.google.appinventor.components.runtime.util.QUtil;
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.Shadows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for the Canvas component.
+ */
+public class CanvasTest extends RobolectricTestBase {
+
+  private static final int WIDTH = 100;
+  private static final int HEIGHT = 80;
+
+  private Canvas canvas;
+
+  @Before
+  public void setUp() {
+    super.setUp();
+    ShadowAsynchUtil.getPendingRunnables().clear();
+    canvas = new Canvas(getForm());
+    canvas.getView().layout(0, 0, WIDTH, HEIGHT);
+  }
+
+  /**
+   * Tests that SaveInBackground writes the file on a background thread and
+   * then runs the Saved event.
+   */
+  @Test
+  public void testSaveInBackground() {
+    grantFilePermissions();
+    canvas.SaveInBackground("canvas.png");
+    ShadowEventDispatcher.assertEventNotFired(canvas, "Saved");
+    assertEquals(1, ShadowAsynchUtil.getPendingRunnables().size());
+
+    ShadowAsynchUtil.runAllPendingRunnables();
+    runAllEvents();
+    java.io.File file = getExternalFile("canvas.png");
+    ShadowEventDispatcher.assertEventFired(canvas, "Saved", file.getAbsolutePath());
+    assertTrue(file.length() > 0);
+  }
+
+  /**
+   * Tests that a save to a file replaces an earlier save to that file that
+   * has not started, so only the later picture is written.
+   */
+  @Test
+  public void testSaveInBackgroundReplacesWaitingSave() {
+    grantFilePermissions();
+    canvas.SaveInBackground("canvas.png");
+    canvas.DrawCircle(10, 10, 5, true);
+    canvas.SaveInBackground("canvas.png");
+    // The first save started the writer, which picks up the second picture.
+    assertEquals(1, ShadowAsynchUtil.getPendingRunnables().size());
+
+    ShadowAsynchUtil.runAllPendingRunnables();
+    runAllEvents();
+    assertEquals(1, ShadowEventDispatcher.countEventsFired(canvas, "Saved"));
+  }
+
+  /**
+   * Tests that saves to different files are written independently.
+   */
+  @Test
+  public void testSaveInBackgroundToDifferentFiles() {
+    grantFilePermissions();
+    canvas.SaveInBackground("first.png");
+    canvas.SaveInBackground("second.jpg");
+    assertEquals(2, ShadowAsynchUtil.getPendingRunnables().size());
+
+    ShadowAsynchUtil.runAllPendingRunnables();
+    runAllEvents();
+    assertEquals(2, ShadowEventDispatcher.countEventsFired(canvas, "Saved"));
+    assertTrue(getExternalFile("first.png").exists());
+    assertTrue(getExternalFile("second.jpg").exists());
+  }
+
+  /**
+   * Tests that SaveInBackground reports an unsupported file type without
+   * taking a snapshot.
+   */
+  @Test
+  public void testSaveInBackgroundUnsupportedFormat() {
+    grantFilePermissions();
+    canvas.SaveInBackground("canvas.gif");
+    assertEquals(0, ShadowAsynchUtil.getPendingRunnables().size());
+    ShadowEventDispatcher.assertErrorOccurred(ErrorMessages.ERROR_MEDIA_IMAGE_FILE_FORMAT);
+  }
+
+  /**
+   * Tests that SaveInBackground reports an error rather than failing when
+   * the Canvas has not been laid out yet.
+   */
+  @Test
+  public void testSaveInBackgroundBeforeLayout() {
+    grantFilePermissions();
+    canvas.getView().layout(0, 0, 0, 0);
+    canvas.SaveInBackground("canvas.png");
+    assertEquals(0, ShadowAsynchUtil.getPendingRunnables().size());
+    ShadowEventDispatcher.assertErrorOccurred(ErrorMessages.ERROR_CANVAS_BITMAP_ERROR);
+  }
+
+  /**
+   * Tests that GetPixelColor returns the background color where nothing has
+   * been drawn and no sprite covers the point, without compositing anything.
+   */
+  @Test
+  public void testGetPixelColorWithoutSprites() {
+    List<Sprite> drawn = new ArrayList<Sprite>();
+    RecordingBall ball = new RecordingBall(canvas, drawn);
+    ball.MoveTo(50, 50);
+    canvas.BackgroundColor(Component.COLOR_RED);
+    assertEquals(Component.COLOR_RED, canvas.GetPixelColor(10, 10));
+    assertEquals(Component.COLOR_NONE, canvas.GetPixelColor(WIDTH, 10));
+    assertTrue(drawn.isEmpty());
+  }
+
+  /**
+   * Tests that GetPixelColor composites the sprites that cover the point, in
+   * Z order, on top of the background and drawing, and skips the others.
+   */
+  @Test
+  public void testGetPixelColorCompositesCoveringSprites() {
+    List<Sprite> drawn = new ArrayList<Sprite>();
+    RecordingBall top = new RecordingBall(canvas, drawn);
+    top.Z(2);
+    RecordingBall bottom = new RecordingBall(canvas, drawn);
+    bottom.Z(1);
+    RecordingBall elsewhere = new RecordingBall(canvas, drawn);
+    elsewhere.MoveTo(60, 50);
+    RecordingBall hidden = new RecordingBall(canvas, drawn);
+    hidden.Visible(false);
+    canvas.DrawCircle(5, 5, 3, true);
+
+    canvas.GetPixelColor(5, 5);
+    assertEquals(Arrays.<Sprite>asList(bottom, top), drawn);
+  }
+
+  /**
+   * Tests that GetPixelColor remembers the colors of points covered by
+   * sprites until the Canvas changes.
+   */
+  @Test
+  public void testGetPixelColorCache() {
+    List<Sprite> drawn = new ArrayList<Sprite>();
+    RecordingBall ball = new RecordingBall(canvas, drawn);
+    int color = canvas.GetPixelColor(5, 5);
+    assertEquals(1, drawn.size());
+    assertEquals(color, canvas.GetPixelColor(5, 5));
+    assertEquals(1, drawn.size());
+
+    // Drawing on the Canvas forgets the remembered colors.
+    canvas.DrawPoint(5, 5);
+    canvas.GetPixelColor(5, 5);
+    assertEquals(2, drawn.size());
+
+    // So does moving a sprite.
+    ball.MoveTo(1, 1);
+    canvas.GetPixelColor(5, 5);
+    assertEquals(3, drawn.size());
+  }
+
+  /**
+   * Tests that drawing on the Canvas only invalidates the region around what
+   * was drawn, widened by half the stroke width and a margin of 2 pixels.
+   */
+  @Test
+  public void testDrawInvalidatesDrawnRegion() {
+    RecordingLayout layout = attachToRecordingLayout();
+
+    canvas.DrawLine(10, 10, 30, 20);
+    assertEquals(Arrays.asList(new Rect(7, 7, 33, 23)), layout.invalidated);
+
+    redraw(layout);
+    canvas.DrawCircle(50, 40, 10, true);
+    assertEquals(Arrays.asList(new Rect(37, 27, 63, 53)), layout.invalidated);
+
+    redraw(layout);
+    canvas.LineWidth(10);
+    canvas.DrawPoint(20, 20);
+    assertEquals(Arrays.asList(new Rect(13, 13, 27, 27)), layout.invalidated);
+  }
+
+  /**
+   * Tests that moving a sprite only invalidates the region it covered when it
+   * was last drawn together with the region it covers now.
+   */
+  @Test
+  public void testMoveSpriteInvalidatesOldAndNewRegions() {
+    RecordingLayout layout = attachToRecordingLayout();
+    Ball ball = new Ball(canvas);
+    ball.MoveTo(10, 10);
+    ball.Initialize();
+    redraw(layout);
+
+    // The ball's box is 10x10, so the region around it reaches
+    // hypot(10, 10) / 2 + 1 pixels from its center.
+    ball.MoveTo(30, 10);
+    assertEquals(Arrays.asList(new Rect(6, 6, 44, 24)), layout.invalidated);
+  }
+
+  /// Helper functions
+
+  /**
+   * A layout that records the regions its children invalidate.
+   */
+  private static class RecordingLayout extends FrameLayout {
+    final List<Rect> invalidated = new ArrayList<Rect>();
+
+    RecordingLayout(Context context) {
+      super(context);
+    }
+
+    @Override
+    public ViewParent invalidateChildInParent(int[] location, Rect dirty) {
+      invalidated.add(new Rect(dirty));
+      return super.invalidateChildInParent(location, dirty);
+    }
+  }
+
+  /**
+   * Moves the Canvas view into a {@link RecordingLayout} attached to the
+   * window, and draws it so that later invalidations reach the layout.
+   */
+  private RecordingLayout attachToRecordingLayout() {
+    View view = canvas.getView();
+    ((ViewGroup) view.getParent()).removeView(view);
+    RecordingLayout layout = new RecordingLayout(getForm());
+    layout.addView(view);
+    ((ViewGroup) getForm().findViewById(android.R.id.content)).addView(layout);
+    layout.layout(0, 0, WIDTH, HEIGHT);
+    view.layout(0, 0, WIDTH, HEIGHT);
+    redraw(layout);
+    return layout;
+  }
+
+  /**
+   * Draws the Canvas view, as the next frame would, and forgets the regions
+   * invalidated so far.
+   */
+  private void redraw(RecordingLayout layout) {
+    Bitmap frame = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+    canvas.getView().draw(new android.graphics.Canvas(frame));
+    layout.invalidated.clear();
+  }
+
+  /**
+   * A ball that records when it is drawn.
+   */
+  private static class RecordingBall extends Ball {
+    private final List<Sprite> drawn;
+
+    RecordingBall(Canvas canvas, List<Sprite> drawn) {
+      super(canvas);
+      this.drawn = drawn;
+    }
+
+    @Override
+    protected void onDraw(android.graphics.Canvas canvas) {
+      drawn.add(this);
+      super.onDraw(canvas);
+    }
+  }
+
+  private void grantFilePermissions() {
+    Shadows.shadowOf(getForm()).grantPermissions(Manifest.permission.READ_EXTERNAL_STORAGE);
+    Shadows.shadowOf(getForm()).grantPermissions(Manifest.permission.WRITE_EXTERNAL_STORAGE);
+  }
+
+  private java.io.File getExternalFile(String name) {
+    return new java.io.File(QUtil.getExternalStoragePath(getForm()), name);
+  }
+}
@@ -0,0 +1,189 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.appinventor.components.runtime.shadows.ShadowEventDispatcher;
+import com.google.appinventor.components.runtime.test.FakeRedisServer;
+import com.google.appinventor.components.runtime.util.CloudDBJedisListener;
+import com.google.appinventor.components.runtime.util.YailList;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the requests that CloudDB sends to the Redis server.
+ */
+public class CloudDBTest extends RobolectricTestBase {
+  private static final String PROJECT = "CloudDBTest";
+
+  private FakeRedisServer server;
+  private CloudDB cloudDB;
+
+  @Before
+  public void setUp() {
+    super.setUp();
+    try {
+      server = new FakeRedisServer();
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+    cloudDB = new CloudDB(getForm());
+    cloudDB.ProjectID(PROJECT);
+    cloudDB.Token("secret");
+    cloudDB.RedisServer("127.0.0.1");
+    cloudDB.RedisPort(server.getPort());
+    cloudDB.UseSSL(false);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    cloudDB.onDestroy();
+    server.close();
+  }
+
+  @Test
+  public void testStoreValuesSendsOneBatch() throws Exception {
+    cloudDB.StoreValues(list("a", "b", "c"), list(1, 2, 3));
+    waitForBackground();
+    assertEquals("1", server.get(PROJECT + ":a"));
+    assertEquals("2", server.get(PROJECT + ":b"));
+    assertEquals("3", server.get(PROJECT + ":c"));
+    // The first batch finds the store script missing, loads it, and sends the batch again.
+    assertEquals(Arrays.asList("AUTH", "EVALSHA", "EVALSHA", "EVALSHA", "SCRIPT LOAD",
+        "EVALSHA", "EVALSHA", "EVALSHA"), server.getCommands());
+
+    server.clearCommands();
+    cloudDB.StoreValues(list("a", "b"), list(4, 5));
+    waitForBackground();
+    assertEquals("4", server.get(PROJECT + ":a"));
+    assertEquals("5", server.get(PROJECT + ":b"));
+    assertEquals(Arrays.asList("EVALSHA", "EVALSHA"), server.getCommands());
+  }
+
+  @Test
+  public void testBatchIntervalCombinesStores() throws Exception {
+    cloudDB.StoreValue("x", 0);
+    waitForBackground();
+    server.clearCommands();
+
+    cloudDB.BatchInterval(100);
+    for (int i = 1; i <= 50; i++) {
+      cloudDB.StoreValue("x", i);
+      cloudDB.StoreValue("y", -i);
+    }
+    for (int i = 1; i <= 50; i++) {
+      cloudDB.StoreValue("z", i);
+    }
+    assertEquals(0, server.getCommands().size());
+    advance(100);
+    waitForBackground();
+    assertEquals("50", server.get(PROJECT + ":x"));
+    assertEquals("-50", server.get(PROJECT + ":y"));
+    assertEquals("50", server.get(PROJECT + ":z"));
+    // Alternating stores to x and y each need a script call, but the run of stores to z
+    // is combined into one.
+    assertEquals(101, server.count("EVALSHA"));
+  }
+
+  @Test
+  public void testGetValuesUsesOneRequest() throws Exception {
+    cloudDB.StoreValues(list("a", "b"), list("one", "two"));
+    waitForBackground();
+    server.clearCommands();
+
+    cloudDB.GetValues(list("a", "b", "missing"), "");
+    waitForBackground();
+    assertEquals(Arrays.asList("MGET"), server.getCommands());
+    runAllEvents();
+    assertEquals(3, ShadowEventDispatcher.countEventsFired(cloudDB, "GotValue"));
+    ShadowEventDispatcher.assertEventFired(cloudDB, "GotValue", "a", "one");
+    ShadowEventDispatcher.assertEventFired(cloudDB, "GotValue", "b", "two");
+    ShadowEventDispatcher.assertEventFired(cloudDB, "GotValue", "missing", "");
+  }
+
+  @Test
+  public void testGetValueSendsPendingStores() throws Exception {
+    cloudDB.BatchInterval(1000);
+    cloudDB.StoreValue("a", "new");
+    cloudDB.GetValue("a", "");
+    waitForBackground();
+    // The store is sent before the read rather than after the batch interval.
+    assertEquals("\"new\"", server.get(PROJECT + ":a"));
+    runAllEvents();
+    ShadowEventDispatcher.assertEventFired(cloudDB, "GotValue", "a", "new");
+  }
+
+  @Test
+  public void testDataChangedFiresForEveryChange() {
+    CloudDBJedisListener listener = new CloudDBJedisListener(cloudDB);
+    listener.onMessage(PROJECT, "[\"a\", [\"1\", \"2\"]]");
+    listener.onMessage(PROJECT, "[\"a\", [\"3\"]]");
+    runAllEvents();
+    assertEquals(3, ShadowEventDispatcher.countEventsFired(cloudDB, "DataChanged"));
+    ShadowEventDispatcher.assertEventFired(cloudDB, "DataChanged", "a", 1);
+    ShadowEventDispatcher.assertEventFired(cloudDB, "DataChanged", "a", 3);
+  }
+
+  @Test
+  public void testDataChangedIntervalKeepsLatestValues() {
+    cloudDB.DataChangedInterval(100);
+    CloudDBJedisListener listener = new CloudDBJedisListener(cloudDB);
+    listener.onMessage(PROJECT, "[\"a\", [\"1\", \"2\"]]");
+    listener.onMessage(PROJECT, "[\"b\", [\"10\"]]");
+    listener.onMessage(PROJECT, "[\"a\", [\"3\"]]");
+    ShadowEventDispatcher.assertEventNotFired(cloudDB, "DataChanged");
+    advance(100);
+    assertEquals(2, ShadowEventDispatcher.countEventsFired(cloudDB, "DataChanged"));
+    ShadowEventDispatcher.assertEventFired(cloudDB, "DataChanged", "b", 10);
+    ShadowEventDispatcher.assertEventFired(cloudDB, "DataChanged", "a", 3);
+  }
+
+  @Test
+  public void testWatchedTags() {
+    cloudDB.WatchedTags(list("b"));
+    CloudDBJedisListener listener = new CloudDBJedisListener(cloudDB);
+    listener.onMessage(PROJECT, "[\"a\", [\"1\"]]");
+    runAllEvents();
+    ShadowEventDispatcher.assertEventNotFired(cloudDB, "DataChanged");
+    listener.onMessage(PROJECT, "[\"b\", [\"2\"]]");
+    runAllEvents();
+    ShadowEventDispatcher.assertEventFired(cloudDB, "DataChanged", "b", 2);
+  }
+
+  @Test
+  public void testPendingChangesAreCapped() {
+    CloudDBJedisListener listener = new CloudDBJedisListener(cloudDB);
+    for (int i = 0; i < 300; i++) {
+      listener.onMessage(PROJECT, "[\"tag" + i + "\", [\"" + i + "\"]]");
+    }
+    runAllEvents();
+    // The 257th change drops the oldest 65, leaving 192, and 43 more changes follow.
+    assertEquals(235, ShadowEventDispatcher.countEventsFired(cloudDB, "DataChanged"));
+    ShadowEventDispatcher.assertEventFired(cloudDB, "DataChanged", "tag65", 65);
+    ShadowEventDispatcher.assertEventFired(cloudDB, "DataChanged", "tag299", 299);
+  }
+
+  private static YailList list(Object... items) {
+    return YailList.makeList(items);
+  }
+
+  /**
+   * Waits for the work already given to CloudDB's background thread to finish.
+   */
+  private void waitForBackground() throws Exception {
+    cloudDB.getBackground().submit(new Runnable() {
+      @Override
+      public void run() {
+      }
+    }).get(5, TimeUnit.SECONDS);
+  }
+}
@@ -0,0 +1,130 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import android.os.SystemClock;
+import com.google.appinventor.components.runtime.shadows.ShadowEventDispatcher;
+import com.google.appinventor.components.runtime.util.ErrorMessages;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Tests Ev3SensorReader and how the replies it reads are matched to its
+ * commands by their message counters.
+ */
+public class Ev3SensorReaderTest extends RobolectricTestBase {
+  private static final String FUNCTION_NAME = "Test";
+  private static final int KEY_1 = 1;
+  private static final int KEY_2 = 2;
+  private static final byte[] COMMAND_1 = { 0x11 };
+  private static final byte[] COMMAND_2 = { 0x22 };
+
+  private LegoMindstormsEv3Base ev3;
+  private BluetoothClient bluetooth;
+  private ByteArrayOutputStream output;
+  private Ev3SensorReader reader;
+
+  @Before
+  public void setUp() {
+    super.setUp();
+    ev3 = new LegoMindstormsEv3Base(getForm(), "Ev3SensorReaderTest");
+    output = new ByteArrayOutputStream();
+    reader = new Ev3SensorReader();
+  }
+
+  @Test
+  public void testBatchedRepliesAreMatchedByCounter() {
+    checkBatchedReplies(0);
+  }
+
+  @Test
+  public void testBatchedRepliesAfterCounterWrapsAround() {
+    // The batch is sent with the counters 0xFFFF and 0x0000.
+    checkBatchedReplies(0xFFFD);
+  }
+
+  @Test
+  public void testReadGivesUpAfterTooManyStaleReplies() {
+    byte[][] replies = new byte[9][];
+    for (int i = 0; i < replies.length; i++) {
+      replies[i] = reply(0x100 + i, 0);
+    }
+    connect(replies);
+    assertNull(reader.read(ev3, FUNCTION_NAME, KEY_1, COMMAND_1));
+    ShadowEventDispatcher.assertErrorOccurred(ErrorMessages.ERROR_EV3_INVALID_REPLY);
+  }
+
+  private void checkBatchedReplies(int firstCount) {
+    connect(reply(firstCount, 1), reply(firstCount + 1, 2),
+        // A reply left over from an earlier command, then the replies to the
+        // batch in the opposite order.
+        reply(firstCount + 100, 9), reply(firstCount + 3, 4), reply(firstCount + 2, 3));
+    bluetooth.takeEv3CommandCounts(firstCount);
+
+    // Sensors that have not been read lately are read on their own.
+    assertArrayEquals(new byte[] { 1 }, reader.read(ev3, FUNCTION_NAME, KEY_1, COMMAND_1));
+    assertArrayEquals(new byte[] { 2 }, reader.read(ev3, FUNCTION_NAME, KEY_2, COMMAND_2));
+    assertArrayEquals(concat(frame(firstCount, COMMAND_1), frame(firstCount + 1, COMMAND_2)),
+        output.toByteArray());
+
+    // Once the replies are too old, reading one sensor reads both.
+    SystemClock.sleep(Ev3SensorReader.MAX_AGE + 10);
+    output.reset();
+    assertArrayEquals(new byte[] { 3 }, reader.read(ev3, FUNCTION_NAME, KEY_1, COMMAND_1));
+    assertArrayEquals(concat(frame(firstCount + 2, COMMAND_1), frame(firstCount + 3, COMMAND_2)),
+        output.toByteArray());
+
+    // The other sensor's reply is kept for its next read.
+    output.reset();
+    assertArrayEquals(new byte[] { 4 }, reader.read(ev3, FUNCTION_NAME, KEY_2, COMMAND_2));
+    assertEquals(0, output.size());
+    ShadowEventDispatcher.assertEventNotFired(getForm(), "ErrorOccurred");
+  }
+
+  /// Helper functions
+
+  /**
+   * Connects the EV3 to a robot that sends the given replies.
+   */
+  private void connect(byte[]... replies) {
+    bluetooth = new BluetoothClient(output, new ByteArrayInputStream(concat(replies)));
+    ev3.bluetooth = bluetooth;
+  }
+
+  /**
+   * Returns a command as it is written to the robot.
+   */
+  private static byte[] frame(int counter, byte[] command) {
+    byte[] frame = new byte[command.length + 4];
+    frame[0] = (byte) (command.length + 2);
+    frame[2] = (byte) counter;
+    frame[3] = (byte) (counter >>> 8);
+    System.arraycopy(command, 0, frame, 4, command.length);
+    return frame;
+  }
+
+  /**
+   * Returns a one byte reply as it is read from the robot.
+   */
+  private static byte[] reply(int counter, int value) {
+    return new byte[] { 3, 0, (byte) counter, (byte) (counter >>> 8), (byte) value };
+  }
+
+  private static byte[] concat(byte[]... arrays) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    for (byte[] array : arrays) {
+      bytes.write(array, 0, array.length);
+    }
+    return bytes.toByteArray();
+  }
+}
@@ -116,4 +116,21 @@ public class LegoMindstormsNxtBaseTest extends TestCase {
     legoMindstormsNxtBase.copyULONGValueToBytes(value, buffer, 0);
     assertEquals(value, legoMindstormsNxtBase.getULONGValueFromBytes(buffer, 0));
   }
+
+  public void testInputValuesPackage() throws Exception {
+    byte[] command = LegoMindstormsNxtBase.getInputValuesCommand(2);
+    assertEquals(3, command.length);
+    assertEquals(0x07, command[1]);
+    assertEquals(2, command[2]);
+
+    byte[] returnPackage = new byte[16];
+    returnPackage[0] = 0x02;
+    returnPackage[1] = 0x07;
+    returnPackage[3] = 2;
+    assertTrue(LegoMindstormsNxtBase.isInputValuesPackage(returnPackage, 2));
+    assertFalse(LegoMindstormsNxtBase.isInputValuesPackage(returnPackage, 3));
+    returnPackage[2] = (byte) 0xC0;  // Error status
+    assertFalse(LegoMindstormsNxtBase.isInputValuesPackage(returnPackage, 2));
+    assertFalse(LegoMindstormsNxtBase.isInputValuesPackage(new byte[0], 2));
+  }
 }
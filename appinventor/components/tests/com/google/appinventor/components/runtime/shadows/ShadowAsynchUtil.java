@@ -12,6 +12,8 @@ import org.robolectric.annotation.Implements;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 @Implements(AsynchUtil.class)
 public class ShadowAsynchUtil {
@@ -37,6 +39,18 @@ public class ShadowAsynchUtil {
     runnables.add(call);
   }
 
+  @Implementation
+  public static Future<?> runAsynchronously(final Object owner, final Runnable call) {
+    runnables.add(call);
+    return new FutureTask<Void>(call, null);
+  }
+
+  @Implementation
+  public static Future<?> submit(AsynchUtil.Pool pool, int priority, Object owner, Runnable call) {
+    runnables.add(call);
+    return new FutureTask<Void>(call, null);
+  }
+
   @Implementation
   public static void runAsynchronously(final Handler androidUIHandler,
                                        final Runnable call,
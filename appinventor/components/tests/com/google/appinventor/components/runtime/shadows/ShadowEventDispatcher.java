@@ -108,6 +108,26 @@ public class ShadowEventDispatcher {
     throw new AssertionError(String.format("Component %s did not receive event %s", component, eventName));
   }
 
+  /**
+   * Counts the number of times the given {@code eventName} has fired for {@code component}.
+   *
+   * @param component The component to check for events
+   * @param eventName The name of the event
+   * @return The number of times the event fired
+   */
+  public static int countEventsFired(Component component, String eventName) {
+    int count = 0;
+    Set<EventWithArgs> events = firedEvents.get(component);
+    if (events != null) {
+      for (EventWithArgs e : events) {
+        if (e.eventName.equals(eventName)) {
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
   public static void assertErrorOccurred() {
     for (Set<EventWithArgs> events : firedEvents.values()) {
       for (EventWithArgs event : events) {
@@ -0,0 +1,245 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A small stand-in for a Redis server, for testing CloudDB without a network. It speaks enough
+ * of the Redis protocol for Jedis to connect, authenticate, get and set values and run CloudDB's
+ * store script, and it records the commands it receives so that tests can count the requests a
+ * component makes.
+ *
+ * <p>Scripts are not interpreted. Any script run with EVAL or EVALSHA behaves like CloudDB's
+ * store script: it sets {@code ARGV[3]:KEYS[1]} to {@code ARGV[1]}. As on a real server, EVALSHA
+ * fails with NOSCRIPT until the script has been loaded with SCRIPT LOAD or EVAL.</p>
+ */
+public final class FakeRedisServer {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final ServerSocket serverSocket;
+  private final Map<String, String> data = new HashMap<String, String>();
+  private final Set<String> scripts = new HashSet<String>();
+  private final List<String> commands = new ArrayList<String>();
+  private final List<Socket> clients = new ArrayList<Socket>();
+
+  public FakeRedisServer() throws IOException {
+    serverSocket = new ServerSocket(0, 10, InetAddress.getByName("127.0.0.1"));
+    Thread acceptor = new Thread("FakeRedisServer") {
+      @Override
+      public void run() {
+        try {
+          while (true) {
+            final Socket client = serverSocket.accept();
+            synchronized (FakeRedisServer.this) {
+              clients.add(client);
+            }
+            new Thread("FakeRedisServer client") {
+              @Override
+              public void run() {
+                serve(client);
+              }
+            }.start();
+          }
+        } catch (IOException e) {
+          // The server was closed.
+        }
+      }
+    };
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  /**
+   * Closes the server and every connection to it.
+   */
+  public synchronized void close() throws IOException {
+    serverSocket.close();
+    for (Socket client : clients) {
+      client.close();
+    }
+  }
+
+  public synchronized String get(String key) {
+    return data.get(key);
+  }
+
+  /**
+   * Returns the names of the commands received so far, in upper case. SCRIPT subcommands are
+   * recorded with their subcommand, for example "SCRIPT LOAD".
+   */
+  public synchronized List<String> getCommands() {
+    return new ArrayList<String>(commands);
+  }
+
+  /**
+   * Returns the number of times a command has been received.
+   */
+  public synchronized int count(String command) {
+    int count = 0;
+    for (String received : commands) {
+      if (received.equals(command)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  public synchronized void clearCommands() {
+    commands.clear();
+  }
+
+  private void serve(Socket client) {
+    try {
+      InputStream in = new BufferedInputStream(client.getInputStream());
+      OutputStream out = new BufferedOutputStream(client.getOutputStream());
+      List<String> request;
+      while ((request = readRequest(in)) != null) {
+        String reply = execute(request);
+        out.write(reply.getBytes(UTF_8));
+        if (in.available() == 0) {
+          // Answer a pipelined batch all at once, as Redis does.
+          out.flush();
+        }
+      }
+    } catch (IOException e) {
+      // The client went away.
+    } finally {
+      try {
+        client.close();
+      } catch (IOException e) {
+        // Nothing else to do.
+      }
+    }
+  }
+
+  private synchronized String execute(List<String> request) {
+    String command = request.get(0).toUpperCase(Locale.ENGLISH);
+    if (command.equals("SCRIPT") && request.size() > 1) {
+      command += " " + request.get(1).toUpperCase(Locale.ENGLISH);
+    }
+    commands.add(command);
+    if (command.equals("AUTH") || command.equals("PING")) {
+      return "+OK\r\n";
+    } else if (command.equals("GET")) {
+      return bulk(data.get(request.get(1)));
+    } else if (command.equals("MGET")) {
+      StringBuilder sb = new StringBuilder("*").append(request.size() - 1).append("\r\n");
+      for (int i = 1; i < request.size(); i++) {
+        sb.append(bulk(data.get(request.get(i))));
+      }
+      return sb.toString();
+    } else if (command.equals("SET")) {
+      data.put(request.get(1), request.get(2));
+      return "+OK\r\n";
+    } else if (command.equals("DEL")) {
+      return ":" + (data.remove(request.get(1)) == null ? 0 : 1) + "\r\n";
+    } else if (command.equals("SCRIPT LOAD")) {
+      String sha = sha1(request.get(2));
+      scripts.add(sha);
+      return bulk(sha);
+    } else if (command.equals("EVAL") || command.equals("EVALSHA")) {
+      if (command.equals("EVAL")) {
+        scripts.add(sha1(request.get(1)));
+      } else if (!scripts.contains(request.get(1))) {
+        return "-NOSCRIPT No matching script. Please use EVAL.\r\n";
+      }
+      int keyCount = Integer.parseInt(request.get(2));
+      String key = request.get(3);
+      String value = request.get(3 + keyCount);
+      String project = request.get(5 + keyCount);
+      data.put(project + ":" + key, value);
+      return "+OK\r\n";
+    }
+    return "-ERR unknown command '" + request.get(0) + "'\r\n";
+  }
+
+  private static List<String> readRequest(InputStream in) throws IOException {
+    String header = readLine(in);
+    if (header == null) {
+      return null;
+    }
+    if (!header.startsWith("*")) {
+      throw new IOException("Expected an array, got " + header);
+    }
+    int count = Integer.parseInt(header.substring(1));
+    List<String> request = new ArrayList<String>(count);
+    for (int i = 0; i < count; i++) {
+      String length = readLine(in);
+      if (length == null || !length.startsWith("$")) {
+        throw new IOException("Expected a bulk string, got " + length);
+      }
+      byte[] content = new byte[Integer.parseInt(length.substring(1))];
+      int read = 0;
+      while (read < content.length) {
+        int n = in.read(content, read, content.length - read);
+        if (n < 0) {
+          throw new IOException("Unexpected end of request");
+        }
+        read += n;
+      }
+      readLine(in);  // The CRLF after the content
+      request.add(new String(content, UTF_8));
+    }
+    return request;
+  }
+
+  private static String readLine(InputStream in) throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    int c;
+    while ((c = in.read()) != '\n') {
+      if (c < 0) {
+        return null;
+      }
+      if (c != '\r') {
+        line.write(c);
+      }
+    }
+    return new String(line.toByteArray(), UTF_8);
+  }
+
+  private static String bulk(String value) {
+    if (value == null) {
+      return "$-1\r\n";
+    }
+    return "$" + value.getBytes(UTF_8).length + "\r\n" + value + "\r\n";
+  }
+
+  private static String sha1(String script) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-1").digest(script.getBytes(UTF_8));
+      StringBuilder sb = new StringBuilder();
+      for (byte b : digest) {
+        sb.append(String.format("%02x", b & 0xff));
+      }
+      return sb.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
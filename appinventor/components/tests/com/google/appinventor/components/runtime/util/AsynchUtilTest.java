@@ -0,0 +1,181 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Tests AsynchUtil class.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 23, manifest="tests/AndroidManifest.xml")
+public class AsynchUtilTest {
+
+  @Test
+  public void testRunAsynchronously() throws InterruptedException {
+    final CountDownLatch latch = new CountDownLatch(1);
+    AsynchUtil.runAsynchronously(new Runnable() {
+      @Override
+      public void run() {
+        latch.countDown();
+      }
+    });
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testCpuPoolHonorsPriority() throws InterruptedException {
+    // A single thread makes the order in which queued tasks run deterministic.
+    ThreadPoolExecutor pool = AsynchUtil.newPriorityPool(1, "AsynchUtilTest");
+    try {
+      final CountDownLatch blocker = new CountDownLatch(1);
+      final CountDownLatch started = new CountDownLatch(1);
+      pool.execute(new AsynchUtil.OwnedTask(new Runnable() {
+        @Override
+        public void run() {
+          started.countDown();
+          try {
+            blocker.await();
+          } catch (InterruptedException e) {
+            // exit
+          }
+        }
+      }, AsynchUtil.PRIORITY_NORMAL, null));
+      assertTrue(started.await(5, TimeUnit.SECONDS));
+      final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+      String[] names = {"normal1", "low", "high1", "normal2", "high2"};
+      int[] priorities = {AsynchUtil.PRIORITY_NORMAL, AsynchUtil.PRIORITY_LOW,
+          AsynchUtil.PRIORITY_HIGH, AsynchUtil.PRIORITY_NORMAL, AsynchUtil.PRIORITY_HIGH};
+      final CountDownLatch done = new CountDownLatch(names.length);
+      for (int i = 0; i < names.length; i++) {
+        final String name = names[i];
+        pool.execute(new AsynchUtil.OwnedTask(new Runnable() {
+          @Override
+          public void run() {
+            order.add(name);
+            done.countDown();
+          }
+        }, priorities[i], null));
+      }
+      blocker.countDown();
+      assertTrue(done.await(5, TimeUnit.SECONDS));
+      // Higher priorities first, and tasks of equal priority in the order they were submitted.
+      assertEquals(Arrays.asList("high1", "high2", "normal1", "normal2", "low"), order);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testCancelTasksByOwner() throws Exception {
+    final Object owner = new Object();
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch interrupted = new CountDownLatch(1);
+    Future<?> future = AsynchUtil.runAsynchronously(owner, new Runnable() {
+      @Override
+      public void run() {
+        started.countDown();
+        try {
+          Thread.sleep(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+          interrupted.countDown();
+        }
+      }
+    });
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    AsynchUtil.cancelTasks(owner);
+    assertTrue(future.isCancelled());
+    assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testUncaughtExceptionReachesHandler() throws InterruptedException {
+    final CountDownLatch caught = new CountDownLatch(1);
+    final RuntimeException failure = new IllegalStateException("failure");
+    Thread.UncaughtExceptionHandler oldHandler = Thread.getDefaultUncaughtExceptionHandler();
+    Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+      @Override
+      public void uncaughtException(Thread thread, Throwable e) {
+        if (e == failure) {
+          caught.countDown();
+        }
+      }
+    });
+    ThreadPoolExecutor pool = AsynchUtil.newPriorityPool(1, "AsynchUtilTest");
+    try {
+      pool.execute(new AsynchUtil.OwnedTask(new Runnable() {
+        @Override
+        public void run() {
+          throw failure;
+        }
+      }, AsynchUtil.PRIORITY_NORMAL, null));
+      assertTrue(caught.await(5, TimeUnit.SECONDS));
+    } finally {
+      pool.shutdownNow();
+      Thread.setDefaultUncaughtExceptionHandler(oldHandler);
+    }
+  }
+
+  @Test
+  public void testSaturatedIoPoolDoesNotCreateMoreThreads() throws InterruptedException {
+    final CountDownLatch blocker = new CountDownLatch(1);
+    int tasks = AsynchUtil.IO_POOL_MAX + AsynchUtil.OVERFLOW_POOL_SIZE + 8;
+    final CountDownLatch done = new CountDownLatch(tasks);
+    final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+    for (int i = 0; i < tasks; i++) {
+      AsynchUtil.runAsynchronously(new Runnable() {
+        @Override
+        public void run() {
+          threads.add(Thread.currentThread());
+          try {
+            blocker.await();
+          } catch (InterruptedException e) {
+            // exit
+          }
+          done.countDown();
+        }
+      });
+    }
+    // The last tasks wait in the overflow queue until threads are free.
+    Thread.sleep(500);
+    assertTrue(threads.size() <= AsynchUtil.IO_POOL_MAX + AsynchUtil.OVERFLOW_POOL_SIZE);
+    blocker.countDown();
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testCancelTasksWithoutOwnerIsNoop() {
+    AsynchUtil.cancelTasks(new Object());
+  }
+
+  @Test
+  public void testPoolMetrics() throws Exception {
+    JSONObject metrics = AsynchUtil.getPoolMetrics();
+    assertTrue(metrics.has("io"));
+    assertTrue(metrics.has("cpu"));
+    assertEquals(AsynchUtil.IO_POOL_MAX, metrics.getJSONObject("io").getInt("maximumPoolSize"));
+    assertFalse(metrics.getJSONObject("cpu").getInt("poolSize")
+        > metrics.getJSONObject("cpu").getInt("maximumPoolSize"));
+  }
+}
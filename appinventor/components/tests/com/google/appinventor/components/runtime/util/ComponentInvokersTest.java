@@ -0,0 +1,101 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.google.appinventor.components.runtime.Component;
+import com.google.appinventor.components.runtime.HandlesEventDispatching;
+import gnu.lists.LList;
+import gnu.mapping.Symbol;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests ComponentInvokers class.
+ */
+public class ComponentInvokersTest {
+
+  private static class Counter implements Component {
+    int count;
+
+    @Override
+    public HandlesEventDispatching getDispatchDelegate() {
+      return null;
+    }
+  }
+
+  private static class SubCounter extends Counter {
+  }
+
+  private static final ComponentInvokers.Invoker COUNTER_INVOKER =
+      new ComponentInvokers.Invoker() {
+        @Override
+        public Object invoke(Component component, String member, Object[] args) {
+          Counter counter = (Counter) component;
+          if (member.equals("Count")) {
+            if (args.length == 0) {
+              return counter.count;
+            } else if (args.length == 1 && args[0] instanceof Number) {
+              counter.count = ((Number) args[0]).intValue();
+              return null;
+            }
+          }
+          return ComponentInvokers.NOT_HANDLED;
+        }
+      };
+
+  private static LList list(Object... args) {
+    return LList.makeList(args, 0);
+  }
+
+  @After
+  public void tearDown() {
+    ComponentInvokers.register(Counter.class, null);
+  }
+
+  @Test
+  public void testRegisteredInvoker() {
+    ComponentInvokers.register(Counter.class, COUNTER_INVOKER);
+    Counter counter = new Counter();
+    assertNull(ComponentInvokers.invoke(counter, Symbol.valueOf("Count"), list(42)));
+    assertEquals(42, counter.count);
+    assertEquals(42, ComponentInvokers.invoke(counter, "Count", LList.Empty));
+  }
+
+  @Test
+  public void testSubclassUsesSuperclassInvoker() {
+    ComponentInvokers.register(Counter.class, COUNTER_INVOKER);
+    SubCounter counter = new SubCounter();
+    ComponentInvokers.invoke(counter, "Count", list(7));
+    assertEquals(7, counter.count);
+  }
+
+  @Test
+  public void testUnknownMemberIsNotHandled() {
+    ComponentInvokers.register(Counter.class, COUNTER_INVOKER);
+    assertSame(ComponentInvokers.NOT_HANDLED,
+        ComponentInvokers.invoke(new Counter(), "Reset", LList.Empty));
+    assertSame(ComponentInvokers.NOT_HANDLED,
+        ComponentInvokers.invoke(new Counter(), "Count", list("many")));
+  }
+
+  @Test
+  public void testNonComponentIsNotHandled() {
+    assertSame(ComponentInvokers.NOT_HANDLED,
+        ComponentInvokers.invoke("Counter1", "Count", LList.Empty));
+  }
+
+  @Test
+  public void testUnregister() {
+    ComponentInvokers.register(Counter.class, COUNTER_INVOKER);
+    ComponentInvokers.register(Counter.class, null);
+    assertSame(ComponentInvokers.NOT_HANDLED,
+        ComponentInvokers.invoke(new Counter(), "Count", LList.Empty));
+  }
+}
@@ -0,0 +1,107 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * Tests for Ev3BinaryParser.
+ */
+public class Ev3BinaryParserTest {
+
+  @Test
+  public void testPackAndUnpack() {
+    byte[] bytes = Ev3BinaryParser.pack("hhx2iS", (short) 7, (short) -2, 100000, 700000, "ev3");
+    assertArrayEquals(new byte[] {
+        7, 0, (byte) 0xFE, (byte) 0xFF, 0, (byte) 0xA0, (byte) 0x86, 0x01, 0x00,
+        0x60, (byte) 0xAE, 0x0A, 0x00, 'e', 'v', '3', 0
+    }, bytes);
+
+    Object[] values = Ev3BinaryParser.unpack("hhx2iS", bytes);
+    assertEquals(5, values.length);
+    assertEquals((short) 7, values[0]);
+    assertEquals((short) -2, values[1]);
+    assertEquals(100000, values[2]);
+    assertEquals(700000, values[3]);
+    assertEquals("ev3", values[4]);
+  }
+
+  @Test
+  public void testUnpackArrays() {
+    byte[] bytes = Ev3BinaryParser.pack("3H2F", new short[] {1, 2, 3}, new float[] {0.5f, -1f});
+    Object[] values = Ev3BinaryParser.unpack("3H2F", bytes);
+    assertArrayEquals(new short[] {1, 2, 3}, (short[]) values[0]);
+    assertArrayEquals(new float[] {0.5f, -1f}, (float[]) values[1], 0f);
+  }
+
+  @Test
+  public void testIllegalFormats() {
+    assertIllegalFormat("h2");      // count without a symbol
+    assertIllegalFormat("0h");      // count less than 1
+    assertIllegalFormat("2S");      // counted zero-terminated string
+    assertIllegalFormat("q");       // unknown symbol
+    // The same format is rejected again once it has been parsed.
+    assertIllegalFormat("2S");
+  }
+
+  @Test
+  public void testEncodeDirectCommandMatchesParameterEncodings() {
+    byte[] command = Ev3BinaryParser.encodeDirectCommand((byte) 0x99, true, 0x123, 5,
+        "ccccllggs",
+        (byte) 3, (byte) 100, (short) 1000, 100000, (byte) -4, (short) 300, (byte) 40, 70000,
+        "ab");
+
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    write(expected, new byte[] {
+        Ev3Constants.DirectCommandType.DIRECT_COMMAND_REPLY, 0x23, (byte) (0x1 | (5 << 2)),
+        (byte) 0x99 });
+    write(expected, Ev3BinaryParser.encodeLC0((byte) 3));
+    write(expected, Ev3BinaryParser.encodeLC1((byte) 100));
+    write(expected, Ev3BinaryParser.encodeLC2((short) 1000));
+    write(expected, Ev3BinaryParser.encodeLC4(100000));
+    write(expected, Ev3BinaryParser.encodeLV0((byte) -4));
+    write(expected, Ev3BinaryParser.encodeLV2((short) 300));
+    write(expected, Ev3BinaryParser.encodeGV1((byte) 40));
+    write(expected, Ev3BinaryParser.encodeGV4(70000));
+    write(expected, new byte[] {'a', 'b', 0});
+    assertArrayEquals(expected.toByteArray(), command);
+  }
+
+  @Test
+  public void testFrameCommand() {
+    byte[] frame = new byte[12];
+    int offset = Ev3BinaryParser.frameCommand(new byte[] {1, 2}, 0xFFFF, frame, 0);
+    offset = Ev3BinaryParser.frameCommand(new byte[] {3, 4}, 0x10000, frame, offset);
+    assertEquals(12, offset);
+    assertArrayEquals(new byte[] {4, 0, (byte) 0xFF, (byte) 0xFF, 1, 2, 4, 0, 0, 0, 3, 4}, frame);
+    assertEquals(4, Ev3BinaryParser.getUnsignedShort(frame, 0));
+    assertEquals(0xFFFF, Ev3BinaryParser.getUnsignedShort(frame, 2));
+  }
+
+  private static void assertIllegalFormat(String format) {
+    try {
+      Ev3BinaryParser.pack(format, (short) 1);
+      fail("Expected format \"" + format + "\" to be rejected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  private static void write(ByteArrayOutputStream out, byte[] bytes) {
+    try {
+      out.write(bytes);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
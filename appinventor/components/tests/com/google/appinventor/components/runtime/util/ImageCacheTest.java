@@ -0,0 +1,81 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import android.graphics.Bitmap;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Tests ImageCache class.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 23, manifest="tests/AndroidManifest.xml")
+public class ImageCacheTest {
+
+  private static Bitmap bitmap(int width, int height) {
+    return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+  }
+
+  @Test
+  public void testKeyDependsOnVersionSizeAndDensity() {
+    String key = ImageCache.makeKey("kitty.png", "asset", 100, 200, 2.0f);
+    assertFalse(key.equals(ImageCache.makeKey("kitty.png", "v2", 100, 200, 2.0f)));
+    assertFalse(key.equals(ImageCache.makeKey("kitty.png", "asset", 200, 200, 2.0f)));
+    assertFalse(key.equals(ImageCache.makeKey("kitty.png", "asset", 100, 200, 1.5f)));
+    assertEquals(key, ImageCache.makeKey("kitty.png", "asset", 100, 200, 2.0f));
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsed() {
+    Bitmap a = bitmap(10, 10);
+    long size = (long) a.getRowBytes() * a.getHeight();
+    // Room for exactly three bitmaps of this size.
+    ImageCache cache = new ImageCache(size * 3 + size / 2, 0);
+    cache.put("a", a);
+    cache.put("b", bitmap(10, 10));
+    cache.put("c", bitmap(10, 10));
+    assertSame(a, cache.get("a"));  // a is now the most recently used
+    cache.put("d", bitmap(10, 10));
+    assertSame(a, cache.get("a"));
+    assertNull(cache.get("b"));
+    assertEquals(size * 3, cache.size());
+  }
+
+  @Test
+  public void testSkipsHugeBitmaps() {
+    Bitmap small = bitmap(10, 10);
+    long size = (long) small.getRowBytes() * small.getHeight();
+    ImageCache cache = new ImageCache(size * 4, 0);
+    cache.put("huge", bitmap(20, 20));
+    assertNull(cache.get("huge"));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testClear() {
+    ImageCache cache = new ImageCache(1 << 20, 0);
+    cache.put("a", bitmap(10, 10));
+    cache.clear();
+    assertNull(cache.get("a"));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testOnlyMutableBitmapsAreReusable() {
+    ImageCache cache = new ImageCache(1 << 20, 0);
+    Bitmap immutable = bitmap(10, 10).copy(Bitmap.Config.ARGB_8888, false);
+    cache.offerReusable(immutable);
+    assertNull(cache.takeReusable(10, 10));
+  }
+}
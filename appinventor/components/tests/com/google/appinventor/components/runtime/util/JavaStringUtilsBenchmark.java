@@ -0,0 +1,93 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Measures the cost of the "replace all mappings" text block with many keys, finding the keys
+ * in a single pass and searching for each key in turn. This is a benchmark, not a test, so it is
+ * not run with the test suite. Run it with the components test classpath:
+ *
+ * <pre>
+ *   java -cp ... com.google.appinventor.components.runtime.util.JavaStringUtilsBenchmark [keys]
+ * </pre>
+ */
+public final class JavaStringUtilsBenchmark {
+
+  private static final String[] ORDER_NAMES = {
+    "dictionary order", "longest string first", "earliest occurrence"
+  };
+
+  private static final JavaStringUtils.MappingOrder[] ORDERS = {
+    JavaStringUtils.mappingOrderDictionary,
+    JavaStringUtils.mappingOrderLongestStringFirst,
+    JavaStringUtils.mappingOrderEarliestOccurrence
+  };
+
+  private JavaStringUtilsBenchmark() {
+  }
+
+  public static void main(String[] args) {
+    int keyCount = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+    Random random = new Random(1);
+
+    // A dictionary of words, like one used to translate or censor text.
+    Map<Object, Object> mappings = new LinkedHashMap<>();
+    while (mappings.size() < keyCount) {
+      String word = randomWord(random);
+      mappings.put(word, word.toUpperCase());
+    }
+    Object[] words = mappings.keySet().toArray();
+    StringBuilder sb = new StringBuilder();
+    while (sb.length() < 20000) {
+      sb.append(random.nextInt(4) == 0 ? words[random.nextInt(words.length)] : randomWord(random))
+          .append(' ');
+    }
+    String text = sb.toString();
+
+    System.out.println(String.format("%d keys, %d characters", keyCount, text.length()));
+    System.out.println(String.format("%-22s %14s %14s", "", "each key", "single pass"));
+    for (int i = 0; i < ORDERS.length; i++) {
+      double byKey = millisPerCall(text, mappings, ORDERS[i], false);
+      double singlePass = millisPerCall(text, mappings, ORDERS[i], true);
+      System.out.println(String.format("%-22s %11.2f ms %11.2f ms", ORDER_NAMES[i], byKey,
+          singlePass));
+    }
+  }
+
+  private static double millisPerCall(String text, Map<Object, Object> mappings,
+      JavaStringUtils.MappingOrder order, boolean singlePass) {
+    int iterations = 20;
+    // Warm up the JIT before measuring.
+    for (int i = 0; i < iterations; i++) {
+      replace(text, mappings, order, singlePass);
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      replace(text, mappings, order, singlePass);
+    }
+    return (System.nanoTime() - start) / 1e6 / iterations;
+  }
+
+  private static String replace(String text, Map<Object, Object> mappings,
+      JavaStringUtils.MappingOrder order, boolean singlePass) {
+    return singlePass
+        ? JavaStringUtils.replaceAllMappings(text, mappings, order)
+        : JavaStringUtils.replaceAllMappingsByKey(text, mappings, order);
+  }
+
+  private static String randomWord(Random random) {
+    int length = 3 + random.nextInt(6);
+    StringBuilder sb = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      sb.append((char) ('a' + random.nextInt(26)));
+    }
+    return sb.toString();
+  }
+}
@@ -10,6 +10,7 @@ import org.junit.Test;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Random;
 
 import static junit.framework.Assert.assertEquals;
 
@@ -269,4 +270,64 @@ public class JavaStringUtilsTest {
 
     assertEquals(expected, result);
   }
+
+  /**
+   * Test case to verify that overlapping keys are resolved the same
+   * way when keys are found in a single pass over the text.
+   */
+  @Test
+  public void testReplaceOverlappingKeys() {
+    final String text = "aaaa abcd bcde";
+    Map<Object, Object> mappings = new LinkedHashMap<>();
+    mappings.put("aa", "1");
+    mappings.put("aaa", "2");
+    mappings.put("bcd", "3");
+    mappings.put("abcd", "4");
+    mappings.put("cde", "5");
+
+    assertEquals("11 a3 3e",
+        JavaStringUtils.replaceAllMappingsDictionaryOrder(text, mappings));
+    assertEquals("2a 4 3e",
+        JavaStringUtils.replaceAllMappingsLongestStringOrder(text, mappings));
+    assertEquals("2a 4 3e",
+        JavaStringUtils.replaceAllMappingsEarliestOccurrenceOrder(text, mappings));
+  }
+
+  /**
+   * Test case to verify that replacing mappings gives the same result
+   * as searching for each key in turn, for random texts and keys.
+   */
+  @Test
+  public void testReplaceMatchesSearchingEachKey() {
+    final Random random = new Random(42);
+    final JavaStringUtils.MappingOrder[] orders = {
+        JavaStringUtils.mappingOrderDictionary,
+        JavaStringUtils.mappingOrderLongestStringFirst,
+        JavaStringUtils.mappingOrderEarliestOccurrence
+    };
+
+    for (int i = 0; i < 500; i++) {
+      final String text = randomString(random, random.nextInt(40));
+      Map<Object, Object> mappings = new LinkedHashMap<>();
+      int count = 1 + random.nextInt(8);
+      for (int j = 0; j < count; j++) {
+        mappings.put(randomString(random, 1 + random.nextInt(4)), "<" + j + ">");
+      }
+
+      for (JavaStringUtils.MappingOrder order : orders) {
+        assertEquals(text + " " + mappings,
+            JavaStringUtils.replaceAllMappingsByKey(text, mappings, order),
+            JavaStringUtils.replaceAllMappings(text, mappings, order));
+      }
+    }
+  }
+
+  private static String randomString(Random random, int length) {
+    // A small alphabet, so that keys overlap often
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < length; i++) {
+      sb.append((char) ('a' + random.nextInt(3)));
+    }
+    return sb.toString();
+  }
 }
@@ -0,0 +1,67 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests WebResponseCache class.
+ */
+public class WebResponseCacheTest {
+
+  @Test
+  public void testRequiresValidator() {
+    WebResponseCache cache = new WebResponseCache(100);
+    assertFalse(cache.putContent("http://a", 200, "text/plain", null, null, "abc"));
+    assertNull(cache.get("http://a"));
+    assertTrue(cache.putContent("http://a", 200, "text/plain", "\"v1\"", null, "abc"));
+    WebResponseCache.Entry entry = cache.get("http://a");
+    assertNotNull(entry);
+    assertEquals("\"v1\"", entry.etag);
+    assertEquals("abc", entry.content);
+    assertTrue(entry.isUsableFor(false));
+    assertFalse(entry.isUsableFor(true));
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsed() {
+    WebResponseCache cache = new WebResponseCache(10);
+    cache.putContent("http://a", 200, "", "a", null, "aaaa");
+    cache.putContent("http://b", 200, "", "b", null, "bbbb");
+    // Touch a so that b becomes the eldest entry.
+    cache.get("http://a");
+    cache.putContent("http://c", 200, "", "c", null, "cccc");
+    assertNotNull(cache.get("http://a"));
+    assertNull(cache.get("http://b"));
+    assertNotNull(cache.get("http://c"));
+    assertEquals(2, cache.size());
+  }
+
+  @Test
+  public void testRejectsOversizedEntries() {
+    WebResponseCache cache = new WebResponseCache(3);
+    assertFalse(cache.putContent("http://a", 200, "", null, "yesterday", "abcd"));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testReplaceAndRemove() {
+    WebResponseCache cache = new WebResponseCache(8);
+    cache.putContent("http://a", 200, "", "1", null, "aaaa");
+    cache.putContent("http://a", 200, "", "2", null, "bbbbbbbb");
+    assertEquals("2", cache.get("http://a").etag);
+    cache.remove("http://a");
+    assertNull(cache.get("http://a"));
+    // The budget is fully available again after removal.
+    assertTrue(cache.putContent("http://b", 200, "", "3", null, "cccccccc"));
+  }
+}
@@ -0,0 +1,64 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Tests YailFormReader class.
+ */
+public class YailFormReaderTest {
+
+  private static List<String> read(String text) {
+    List<String> forms = new ArrayList<String>();
+    YailFormReader reader = new YailFormReader(text);
+    while (reader.hasNext()) {
+      forms.add(reader.next());
+    }
+    return forms;
+  }
+
+  @Test
+  public void testEmpty() {
+    assertEquals(0, read("").size());
+    assertEquals(0, read("  \n ; just a comment\n").size());
+  }
+
+  @Test
+  public void testTopLevelForms() {
+    assertEquals(Arrays.asList("(def a 1)", "(def b (+ a 2))", "#t", "42"),
+        read("(def a 1)\n(def b (+ a 2)) #t\n42"));
+  }
+
+  @Test
+  public void testStringsAndCharacters() {
+    assertEquals(Arrays.asList("(display \"(not a form\\\" ;\")", "(list #\\( #\\) #\\space)"),
+        read("(display \"(not a form\\\" ;\") (list #\\( #\\) #\\space)"));
+  }
+
+  @Test
+  public void testComments() {
+    assertEquals(Arrays.asList("(a ; ignore )\n b)", "(c)"),
+        read("; header )\n(a ; ignore )\n b) #| block ( |# (c)"));
+  }
+
+  @Test
+  public void testQuotePrefixes() {
+    assertEquals(Arrays.asList("'(1 2)", "`(a ,b ,@c)", "'sym"),
+        read("'(1 2) `(a ,b ,@c) 'sym"));
+  }
+
+  @Test
+  public void testUnbalancedRemainderIsOneForm() {
+    assertEquals(Arrays.asList("(ok)", "(broken (form)"), read("(ok) (broken (form)"));
+    assertEquals(Arrays.asList("(ok)", ") (x)"), read("(ok) ) (x)"));
+  }
+}